@@ -1,21 +1,15 @@
-
 //GLSL Version
 #version 330
 
 //Inputs
 in vec2 textureCoordsFrag;
+in vec4 colorFrag;
 out vec4 fragColor;
 
 //Uniforms
-uniform sampler2D textureSampler;
-uniform vec4 color;
-uniform int hasTexture; //1 -> true; 0 -> false
+uniform sampler2D textureSampler; //white for untextured items
 
 //Main Function
 void main() {
-    if (hasTexture == 1) {
-        fragColor = color * texture(textureSampler, textureCoordsFrag);
-    } else {
-        fragColor = color;
-    }
+    fragColor = colorFrag * texture(textureSampler, textureCoordsFrag);
 }
@@ -1,20 +1,18 @@
-
 //GLSL Version
 #version 330
 
 //Inputs
-layout (location=0) in vec3 position;
+layout (location=0) in vec3 position; //already projected (see HudBatch)
 layout (location=1) in vec2 textureCoordsVertex;
-layout (location=2) in vec3 vertexNormal;
+layout (location=2) in vec4 colorVertex;
 
 //Outputs
 out vec2 textureCoordsFrag;
-
-//Uniforms
-uniform mat4 projectionModel; //orthographic * model
+out vec4 colorFrag;
 
 //Main Function
 void main() {
-    gl_Position = projectionModel * vec4(position, 1.0);
+    gl_Position = vec4(position, 1.0);
     textureCoordsFrag = textureCoordsVertex;
+    colorFrag = colorVertex;
 }
@@ -0,0 +1,56 @@
+//GLSL Version
+#version 330
+
+//Constants
+const float TWO_PI = 6.2831853;
+
+//VAO Inputs
+layout (location = 0) in vec3 position;
+layout (location = 1) in vec2 textureCoordsVertex;
+layout (location = 2) in vec3 vertexNormal;
+
+//Outs
+out vec2 textureCoordsFrag;     //texture coordinates
+out vec3 mvVertexNormal;        //pass through normal in model view space for lighting
+out vec3 mvVertexPos;           //pass through position in model view space for lighting
+out vec4 mlightviewVertexPos;   //for shadow calculations
+out mat4 modelViewFrag;         //pass through the ModelView matrix for normal maps
+out float occlusionFrag;        //baked ambient occlusion (none for scattered instances)
+
+//Uniforms
+uniform mat4 projection;
+uniform mat4 modelView;             //view matrix - instances are placed in world space
+uniform mat4 modelLightViewMatrix;  //light view matrix
+uniform mat4 orthoProjectionMatrix;
+uniform samplerBuffer instanceSampler; //x, y, z and scale of each instance
+uniform int instanceOffset;         //first instance of the current layer within the buffer
+
+//Main Function
+void main()
+{
+    //fetch instance and derive a rotation about the y axis from its position
+    vec4 instance = texelFetch(instanceSampler, instanceOffset + gl_InstanceID);
+    float angle = fract(sin(dot(instance.xz, vec2(12.9898, 78.233))) * 43758.5453) * TWO_PI;
+    float s = sin(angle);
+    float c = cos(angle);
+    mat3 rotation = mat3(c, 0, -s, 0, 1, 0, s, 0, c);
+
+    //place vertex in world space
+    vec4 worldPos = vec4(rotation * position * instance.w + instance.xyz, 1.0);
+    vec4 mvPos = modelView * worldPos;
+    gl_Position = projection * mvPos;
+
+    //texture coordinates
+    textureCoordsFrag = textureCoordsVertex;
+
+    //normals and position for lighting
+    mvVertexNormal = normalize(modelView * vec4(rotation * vertexNormal, 0.0)).xyz;
+    mvVertexPos = mvPos.xyz;
+
+    //orthographically project light view for shadow calculations
+    mlightviewVertexPos = orthoProjectionMatrix * modelLightViewMatrix * worldPos;
+
+    //pass through ModelView Matrix and occlusion
+    modelViewFrag = modelView;
+    occlusionFrag = 0.0;
+}
@@ -12,6 +12,7 @@ in vec3 mvVertexNormal;     //vertex normal vector from vertex shader for lighti
 in vec3 mvVertexPos;        //vertex position from vertex shader for lighting calculations (model view space)
 in vec4 mlightviewVertexPos;
 in mat4 modelViewFrag;      //ModelView matrix used for normal maps
+in float occlusionFrag;     //baked ambient occlusion (0.0 unoccluded - 1.0 fully occluded)
 
 //Out
 out vec4 fragColor;        //output variable definition
@@ -65,6 +66,7 @@ struct Material {
     vec4 specular;
     int hasTexture;
     int hasNormalMap;
+    int hasTwoChannelNormalMap; //normal map stores only x and y (BC5) - z is rebuilt
     float reflectance;
 };
 
@@ -181,8 +183,9 @@ vec4 calculateFog(vec3 pos, vec4 color, Fog fog, vec3 ambientLight, DirectionalL
 vec3 calcNormal(Material material, vec3 normal, vec2 texCoord, mat4 modelViewMatrix) {
     vec3 newNormal = normal;
     if (material.hasNormalMap == 1) {
-        newNormal = texture(normalMapSampler, texCoord).rgb;
-        newNormal = normalize(newNormal * 2 - 1);
+        newNormal = texture(normalMapSampler, texCoord).rgb * 2 - 1;
+        if (material.hasTwoChannelNormalMap == 1) newNormal.z = sqrt(max(0.0, 1.0 - dot(newNormal.xy, newNormal.xy)));
+        newNormal = normalize(newNormal);
         newNormal = normalize(modelViewMatrix * vec4(newNormal, 0.0)).xyz;
     }
     return newNormal;
@@ -238,7 +241,7 @@ void main() {
 
     //account for ambient light
     float shadow = calculateShadow(mlightviewVertexPos);
-    fragColor = clamp(ambientC * vec4(ambientLight, 1) + diffuseSpecularComp * shadow, 0, 1); //add ambient light (unaffected by atten.) and return final fragment color
+    fragColor = clamp(ambientC * vec4(ambientLight * (1.0 - occlusionFrag), 1) + diffuseSpecularComp * shadow, 0, 1); //add ambient light (unaffected by atten.) and return final fragment color
 
     //account for fog
     if (fog.activeFog == 1) {
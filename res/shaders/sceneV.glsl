@@ -12,6 +12,7 @@ layout (location = 1) in vec2 textureCoordsVertex;
 layout (location = 2) in vec3 vertexNormal;
 layout (location = 3) in vec4 jointWeights;
 layout (location = 4) in ivec4 jointIndices;
+layout (location = 5) in float vertexOcclusion; //baked ambient occlusion (0.0 for meshes without it)
 
 //Outs
 out vec2 textureCoordsFrag;     //texture coordinates
@@ -19,6 +20,7 @@ out vec3 mvVertexNormal;        //pass through normal in model view space for li
 out vec3 mvVertexPos;           //pass through position in model view space for lighting
 out vec4 mlightviewVertexPos;   //for shadow calculations
 out mat4 modelViewFrag;         //pass through the ModelView matrix for normal maps
+out float occlusionFrag;        //pass through baked ambient occlusion
 
 //Uniforms
 uniform mat4 projection;
@@ -71,6 +73,7 @@ void main()
     //orthographically project light view for shadow calculations
     mlightviewVertexPos = orthoProjectionMatrix * modelLightViewMatrix * vec4(position, 1.0);
 
-    //pass through ModelView Matrix
+    //pass through ModelView Matrix and occlusion
     modelViewFrag = modelView;
+    occlusionFrag = vertexOcclusion;
 }
\ No newline at end of file
@@ -0,0 +1,67 @@
+//GLSL Version
+#version 330
+
+//Constants
+const vec2 TERRAIN_START = vec2(-0.5, -0.5); //local position of the terrain's minimum x/z corner (HeightMap.STARTX/STARTZ)
+const vec2 TERRAIN_SIZE = vec2(1.0, 1.0);    //local size of the terrain (HeightMap.getXLength/getZLength)
+
+//Outs
+out vec2 textureCoordsFrag;     //texture coordinates
+out vec3 mvVertexNormal;        //pass through normal in model view space for lighting
+out vec3 mvVertexPos;           //pass through position in model view space for lighting
+out vec4 mlightviewVertexPos;   //for shadow calculations
+out mat4 modelViewFrag;         //pass through the ModelView matrix for normal maps
+out float occlusionFrag;        //baked ambient occlusion (not baked for this path)
+
+//Uniforms
+uniform mat4 projection;
+uniform mat4 modelView;
+uniform mat4 modelLightViewMatrix;
+uniform mat4 orthoProjectionMatrix;
+uniform sampler2D heightMapSampler; //normalized 16-bit heights, one texel per vertex
+uniform float minY;
+uniform float maxY;
+uniform float textureInc;
+
+//Height Function
+//fetches the height of a grid vertex, clamping to the grid's edges
+float heightAt(ivec2 cell, ivec2 size)
+{
+    ivec2 c = clamp(cell, ivec2(0), size - 1);
+    return minY + (maxY - minY) * texelFetch(heightMapSampler, c, 0).r;
+}
+
+//Main Function
+void main()
+{
+    //derive grid position from the vertex index
+    ivec2 size = textureSize(heightMapSampler, 0);
+    ivec2 cell = ivec2(gl_VertexID % size.x, gl_VertexID / size.x);
+    vec2 spacing = TERRAIN_SIZE / vec2(size - 1);
+    vec3 position = vec3(TERRAIN_START.x + cell.x * spacing.x, heightAt(cell, size), TERRAIN_START.y + cell.y * spacing.y);
+
+    //calculate normal from central differences of the neighbouring heights
+    float hL = heightAt(cell - ivec2(1, 0), size);
+    float hR = heightAt(cell + ivec2(1, 0), size);
+    float hD = heightAt(cell - ivec2(0, 1), size);
+    float hU = heightAt(cell + ivec2(0, 1), size);
+    vec3 normal = normalize(vec3((hL - hR) / (2.0 * spacing.x), 1.0, (hD - hU) / (2.0 * spacing.y)));
+
+    //set model view position and final gl position
+    vec4 mvPos = modelView * vec4(position, 1.0);
+    gl_Position = projection * mvPos;
+
+    //texture coordinates (matching the standard height map mesh)
+    textureCoordsFrag = textureInc * vec2(cell) / vec2(size);
+
+    //normals and position for lighting
+    mvVertexNormal = normalize(modelView * vec4(normal, 0.0)).xyz;
+    mvVertexPos = mvPos.xyz;
+
+    //orthographically project light view for shadow calculations
+    mlightviewVertexPos = orthoProjectionMatrix * modelLightViewMatrix * vec4(position, 1.0);
+
+    //pass through ModelView Matrix and occlusion
+    modelViewFrag = modelView;
+    occlusionFrag = 0.0;
+}
@@ -0,0 +1,77 @@
+//GLSL Version
+#version 330
+
+//Constants
+const vec2 TERRAIN_START = vec2(-0.5, -0.5); //local position of the terrain's minimum x/z corner (HeightMap.STARTX/STARTZ)
+
+//VAO Inputs
+layout (location = 0) in vec3 position; //grid position with x and z in [0, 1]
+
+//Outs
+out vec2 textureCoordsFrag;     //texture coordinates
+out vec3 mvVertexNormal;        //pass through normal in model view space for lighting
+out vec3 mvVertexPos;           //pass through position in model view space for lighting
+out vec4 mlightviewVertexPos;   //for shadow calculations
+out mat4 modelViewFrag;         //pass through the ModelView matrix for normal maps
+out float occlusionFrag;        //baked ambient occlusion (not baked for this path)
+
+//Uniforms
+uniform mat4 projection;
+uniform mat4 modelView;
+uniform mat4 modelLightViewMatrix;
+uniform mat4 orthoProjectionMatrix;
+uniform sampler2D heightMapSampler;
+uniform vec3 cameraPos;         //camera position in terrain local space
+uniform vec3 nodeParams;        //node x offset, z offset and size in [0, 1] terrain space
+uniform float morphStart;       //distance at which vertices start morphing into the next coarser level
+uniform float morphEnd;         //distance at which vertices have fully morphed
+uniform float gridDim;          //amount of cells along one side of the grid mesh
+uniform float textureInc;
+
+//Height Sampling Function
+//samples at texel centres so that grid vertices hit height map pixels exactly
+float sampleHeight(vec2 uv)
+{
+    vec2 size = vec2(textureSize(heightMapSampler, 0));
+    return texture(heightMapSampler, (uv * (size - 1.0) + 0.5) / size).r;
+}
+
+//Main Function
+void main()
+{
+    //calculate unmorphed position to find the morph factor
+    vec2 uv = nodeParams.xy + position.xz * nodeParams.z;
+    vec3 localPos = vec3(TERRAIN_START.x + uv.x, sampleHeight(uv), TERRAIN_START.y + uv.y);
+    float morph = clamp((distance(localPos, cameraPos) - morphStart) / (morphEnd - morphStart), 0.0, 1.0);
+
+    //morph odd vertices onto the even vertices of the next coarser level
+    vec2 gridPos = position.xz - fract(position.xz * gridDim * 0.5) * 2.0 / gridDim * morph;
+    uv = nodeParams.xy + gridPos * nodeParams.z;
+    localPos = vec3(TERRAIN_START.x + uv.x, sampleHeight(uv), TERRAIN_START.y + uv.y);
+
+    //calculate normal from central differences of the neighbouring heights
+    vec2 texel = 1.0 / (vec2(textureSize(heightMapSampler, 0)) - 1.0);
+    float hL = sampleHeight(uv - vec2(texel.x, 0));
+    float hR = sampleHeight(uv + vec2(texel.x, 0));
+    float hD = sampleHeight(uv - vec2(0, texel.y));
+    float hU = sampleHeight(uv + vec2(0, texel.y));
+    vec3 normal = normalize(vec3((hL - hR) / (2.0 * texel.x), 1.0, (hD - hU) / (2.0 * texel.y)));
+
+    //set model view position and final gl position
+    vec4 mvPos = modelView * vec4(localPos, 1.0);
+    gl_Position = projection * mvPos;
+
+    //texture coordinates
+    textureCoordsFrag = uv * textureInc;
+
+    //normals and position for lighting
+    mvVertexNormal = normalize(modelView * vec4(normal, 0.0)).xyz;
+    mvVertexPos = mvPos.xyz;
+
+    //orthographically project light view for shadow calculations
+    mlightviewVertexPos = orthoProjectionMatrix * modelLightViewMatrix * vec4(localPos, 1.0);
+
+    //pass through ModelView Matrix and occlusion
+    modelViewFrag = modelView;
+    occlusionFrag = 0.0;
+}
@@ -0,0 +1,131 @@
+package engine;
+
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+//a classpath resource read into a direct byte buffer. resources which are files on disk are memory mapped, and resources
+//inside a jar are streamed into a pooled buffer taken from power of two size classes. closing the resource returns its
+//buffer to the pool, so the buffer must not be used afterwards. safe to use from multiple threads
+public class ResourceBuffer implements AutoCloseable {
+
+    //Static Data
+    private static final int MIN_SIZE_CLASS = 16; //64 KiB
+    private static final int MAX_SIZE_CLASS = 26; //64 MiB - larger resources get unpooled buffers
+    private static final int MAX_POOLED_PER_CLASS = 4;
+    private static final List<Queue<ByteBuffer>> POOL = createPool(); //indexed by size class
+
+    //Stats
+    private static final AtomicInteger MAPPED = new AtomicInteger(), STREAMED = new AtomicInteger();
+    private static final AtomicInteger POOL_HITS = new AtomicInteger(), POOL_MISSES = new AtomicInteger();
+
+    //Data
+    private ByteBuffer buffer; //positioned at zero with its limit at the end of the resource
+    private final boolean pooled;
+
+    //Constructor
+    private ResourceBuffer(ByteBuffer buffer, boolean pooled) {
+        this.buffer = buffer;
+        this.pooled = pooled;
+    }
+
+    //Read Method
+    //reads a resource, mapping it if it is a file and streaming it into a pooled buffer otherwise
+    public static ResourceBuffer read(String fileName) throws Exception {
+        URL url = ResourceBuffer.class.getResource(fileName);
+        if (url == null) throw new Exception("Resource [" + fileName + "] not found");
+
+        //map files on disk
+        if ("file".equals(url.getProtocol())) {
+            try (FileChannel channel = FileChannel.open(Paths.get(url.toURI()), StandardOpenOption.READ)) {
+                MAPPED.incrementAndGet();
+                return new ResourceBuffer(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), false);
+            }
+        }
+
+        //stream anything else (e.g. jar entries), sizing the buffer from the content length when it is known
+        URLConnection connection = url.openConnection();
+        long length = connection.getContentLengthLong();
+        ByteBuffer buffer = obtain(length >= 0 && length < Integer.MAX_VALUE ? (int)length + 1 : 1 << MIN_SIZE_CLASS);
+        try (InputStream in = connection.getInputStream(); ReadableByteChannel channel = Channels.newChannel(in)) {
+            while (true) {
+                if (!buffer.hasRemaining()) { //grow into the next size class
+                    ByteBuffer larger = obtain(buffer.capacity() * 2);
+                    buffer.flip();
+                    larger.put(buffer);
+                    recycle(buffer);
+                    buffer = larger;
+                }
+                if (channel.read(buffer) < 0) break;
+            }
+        } catch (Exception e) {
+            recycle(buffer);
+            throw e;
+        }
+        buffer.flip();
+        STREAMED.incrementAndGet();
+        return new ResourceBuffer(buffer, true);
+    }
+
+    //Pool Methods
+    //returns a cleared buffer with at least the given capacity
+    private static ByteBuffer obtain(int size) {
+        int sizeClass = getSizeClass(size);
+        if (sizeClass > MAX_SIZE_CLASS) return ByteBuffer.allocateDirect(size);
+        ByteBuffer buffer = POOL.get(sizeClass - MIN_SIZE_CLASS).poll();
+        if (buffer != null) {
+            POOL_HITS.incrementAndGet();
+            return buffer;
+        }
+        POOL_MISSES.incrementAndGet();
+        return ByteBuffer.allocateDirect(1 << sizeClass);
+    }
+
+    //returns a buffer to its size class, dropping it if it is unpooled or its class is full
+    private static void recycle(ByteBuffer buffer) {
+        int sizeClass = getSizeClass(buffer.capacity());
+        if (sizeClass > MAX_SIZE_CLASS || buffer.capacity() != 1 << sizeClass) return;
+        Queue<ByteBuffer> pool = POOL.get(sizeClass - MIN_SIZE_CLASS);
+        if (pool.size() >= MAX_POOLED_PER_CLASS) return;
+        buffer.clear();
+        pool.offer(buffer);
+    }
+
+    private static int getSizeClass(int size) {
+        return Math.max(MIN_SIZE_CLASS, 32 - Integer.numberOfLeadingZeros(Math.max(size, 1) - 1));
+    }
+
+    private static List<Queue<ByteBuffer>> createPool() {
+        List<Queue<ByteBuffer>> pool = new ArrayList<>();
+        for (int sizeClass = MIN_SIZE_CLASS; sizeClass <= MAX_SIZE_CLASS; sizeClass++) pool.add(new ConcurrentLinkedQueue<>());
+        return pool;
+    }
+
+    //Accessors
+    public ByteBuffer getBuffer() { return this.buffer; }
+    public boolean isMapped() { return !this.pooled; }
+    public static String getReport() {
+        return "Resource buffers: " + MAPPED.get() + " mapped, " + STREAMED.get() + " streamed, " + POOL_HITS.get() +
+                " pool hits, " + POOL_MISSES.get() + " pool misses";
+    }
+
+    //Close Method
+    //returns a streamed resource's buffer to the pool - mapped buffers are unmapped by the garbage collector
+    @Override
+    public void close() {
+        if (this.buffer == null) return;
+        if (this.pooled) recycle(this.buffer);
+        this.buffer = null;
+    }
+}
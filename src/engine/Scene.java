@@ -4,6 +4,10 @@ import engine.gameitem.GameItem;
 import engine.gameitem.SkyBox;
 import engine.graphics.Mesh;
 import engine.graphics.light.SceneLighting;
+import engine.graphics.terrain.HorizonCuller;
+import engine.graphics.terrain.TerrainLOD;
+import engine.graphics.terrain.TerrainMesh;
+import engine.graphics.terrain.TerrainScatter;
 import engine.graphics.weather.Fog;
 
 import java.util.ArrayList;
@@ -17,6 +21,10 @@ public class Scene {
     private Map<Mesh, List<GameItem>> meshMap;
     private SkyBox skyBox;
     private SceneLighting lighting;
+    private TerrainLOD terrainLOD;
+    private TerrainMesh terrainMesh;
+    private TerrainScatter terrainScatter;
+    private HorizonCuller horizonCuller;
     private Fog fog;
 
     //Constructor
@@ -29,25 +37,40 @@ public class Scene {
     public Map<Mesh, List<GameItem>> getMeshMap() { return this.meshMap; }
     public SkyBox getSkyBox() { return this.skyBox; }
     public SceneLighting getLighting() { return this.lighting; }
+    public TerrainLOD getTerrainLOD() { return this.terrainLOD; }
+    public TerrainMesh getTerrainMesh() { return this.terrainMesh; }
+    public TerrainScatter getTerrainScatter() { return this.terrainScatter; }
+    public HorizonCuller getHorizonCuller() { return this.horizonCuller; }
     public Fog getFog() { return this.fog; }
 
     //Mutators
     public void setSkyBox(SkyBox skyBox) { this.skyBox = skyBox; }
     public void setLighting(SceneLighting lighting) { this.lighting = lighting; }
+    public void setTerrainLOD(TerrainLOD terrainLOD) { this.terrainLOD = terrainLOD; }
+    public void setTerrainMesh(TerrainMesh terrainMesh) { this.terrainMesh = terrainMesh; }
+    public void setTerrainScatter(TerrainScatter terrainScatter) { this.terrainScatter = terrainScatter; }
+    public void setHorizonCuller(HorizonCuller horizonCuller) { this.horizonCuller = horizonCuller; }
     public void setGameItems(GameItem[] gameItems) {
 
         //sort game items by mesh for optimal rendering
         int n = gameItems != null ? gameItems.length : 0;
-        for (int i = 0; i < n; i ++) {
-            GameItem gi = gameItems[i];
-            Mesh m = gi.getMesh();
-            List<GameItem> l = meshMap.get(m);
-            if (l == null) {
-                l = new ArrayList<>();
-                meshMap.put(m, l);
-            }
-            l.add(gi);
+        for (int i = 0; i < n; i ++) this.addGameItem(gameItems[i]);
+    }
+    public void addGameItem(GameItem gameItem) {
+        Mesh m = gameItem.getMesh();
+        List<GameItem> l = meshMap.get(m);
+        if (l == null) {
+            l = new ArrayList<>();
+            meshMap.put(m, l);
         }
+        l.add(gameItem);
+    }
+    public void removeGameItem(GameItem gameItem) {
+        Mesh m = gameItem.getMesh();
+        List<GameItem> l = meshMap.get(m);
+        if (l == null) return;
+        l.remove(gameItem);
+        if (l.isEmpty()) meshMap.remove(m);
     }
     public void setFog(Fog fog) { this.fog = fog; }
 }
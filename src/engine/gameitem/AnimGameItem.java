@@ -1,42 +1,203 @@
 package engine.gameitem;
 
 import engine.graphics.Mesh;
+import engine.graphics.Transformation;
+import engine.graphics.anim.AnimClip;
+import engine.graphics.anim.AnimLOD;
+import engine.graphics.anim.AnimSkeleton;
 import engine.graphics.anim.AnimatedFrame;
 import org.joml.Matrix4f;
+import org.joml.Quaternionf;
+import org.joml.Vector3f;
 
+import java.util.Arrays;
 import java.util.List;
 
 public class AnimGameItem extends GameItem {
 
-    //Data
+    //Static Data
+    private static final float DEFAULT_FRAME_RATE = 24f;
+
+    //Shared Data
+    private final AnimSkeleton skeleton;
+    private AnimClip clip;
+
+    //Playback Data
+    private final Matrix4f[] jointMatrices; //joint palette uploaded to the shaders
+    private final Vector3f minBound, maxBound; //model space bounds of the current pose
+    private final Matrix4f worldMatrix;
+    private final Quaternionf rotation, nextRotation; //used when interpolating joints
+    private final Vector3f translation, nextTranslation;
     private int currentFrame;
-    private List<AnimatedFrame> frames;
-    private List<Matrix4f> invJointMatrices;
+    private float frameProgress; //progress from the current frame towards the next one (0.0f - 1.0f)
+    private float frameRate;
+    private int lodLevel;
+    private boolean skipLeafJoints;
+    private int updateCount;
 
-    //Constructor
+    //Constructors
     public AnimGameItem(Mesh[] meshes, List<AnimatedFrame> frames, List<Matrix4f> invJointMatrices) {
-        super(meshes);
-        this.frames = frames;
-        this.invJointMatrices = invJointMatrices;
-        this.currentFrame = 0;
+        this(meshes, frames, invJointMatrices, null);
+    }
+
+    public AnimGameItem(Mesh[] meshes, List<AnimatedFrame> frames, List<Matrix4f> invJointMatrices, int[] jointParents) {
+        this(new AnimSkeleton(null, meshes, invJointMatrices, getRootParents(jointParents, invJointMatrices.size()),
+                getBindPoseRadius(meshes)), new AnimClip(null, frames, DEFAULT_FRAME_RATE));
+    }
+
+    public AnimGameItem(AnimSkeleton skeleton, AnimClip clip) { //shared skeleton constructor
+        super(skeleton.getMeshes());
+        this.skeleton = skeleton;
+        this.lodLevel = AnimLOD.LEVEL_FULL;
+
+        //create joint palette and bounds
+        int numJoints = skeleton.getJointCount();
+        this.jointMatrices = new Matrix4f[numJoints];
+        for (int i = 0; i < numJoints; i++) this.jointMatrices[i] = new Matrix4f();
+        this.minBound = new Vector3f();
+        this.maxBound = new Vector3f();
+        this.worldMatrix = new Matrix4f();
+        this.rotation = new Quaternionf();
+        this.nextRotation = new Quaternionf();
+        this.translation = new Vector3f();
+        this.nextTranslation = new Vector3f();
+
+        //set clip and evaluate first pose
+        this.setClip(clip);
+    }
+
+    //Joint Parents Method
+    //joints without parent information are treated as roots
+    private static int[] getRootParents(int[] jointParents, int numJoints) {
+        if (jointParents != null) return jointParents;
+        int[] result = new int[numJoints];
+        Arrays.fill(result, -1);
+        return result;
+    }
+
+    //Bind Pose Radius Method
+    //calculates the radius of a sphere around the model origin containing every mesh's bind pose bounds
+    private static float getBindPoseRadius(Mesh[] meshes) {
+        Vector3f corner = new Vector3f();
+        float radius = 0;
+        for (Mesh mesh : meshes) {
+            Vector3f min = mesh.getMinBound(), max = mesh.getMaxBound();
+            corner.set(Math.max(Math.abs(min.x), Math.abs(max.x)), Math.max(Math.abs(min.y), Math.abs(max.y)),
+                    Math.max(Math.abs(min.z), Math.abs(max.z)));
+            radius = Math.max(radius, corner.length());
+        }
+        return radius;
     }
 
     //Accessors
-    public List<AnimatedFrame> getFrames() { return this.frames; }
-    public List<Matrix4f> getInvJointMatrices() { return this.invJointMatrices; }
-    public AnimatedFrame getCurrentFrame() { return this.frames.get(currentFrame); }
+    public AnimSkeleton getSkeleton() { return this.skeleton; }
+    public AnimClip getClip() { return this.clip; }
+    public List<AnimatedFrame> getFrames() { return this.clip.getFrames(); }
+    public List<Matrix4f> getInvJointMatrices() { return this.skeleton.getInvJointMatrices(); }
+    public Matrix4f[] getJointMatrices() { return this.jointMatrices; }
+    public float getFrameRate() { return this.frameRate; }
+    public float getBoundingRadius() { return this.skeleton.getBoundingRadius(); }
+    public Vector3f getMinBound() { return this.minBound; }
+    public Vector3f getMaxBound() { return this.maxBound; }
+    public int getLODLevel() { return this.lodLevel; }
+    public AnimatedFrame getCurrentFrame() { return this.clip.getFrames().get(currentFrame); }
     public AnimatedFrame getNextFrame() {
         int nf = this.currentFrame + 1;
-        if (nf >= this.frames.size()) nf = 0;
-        return this.frames.get(nf);
+        if (nf >= this.clip.getFrameCount()) nf = 0;
+        return this.clip.getFrames().get(nf);
     }
 
     //Mutators
-    public void setFrames(List<AnimatedFrame> frames) { this.frames = frames; }
+    public void setFrameRate(float frameRate) { this.frameRate = frameRate; }
+    public void setFrames(List<AnimatedFrame> frames) { this.setClip(new AnimClip(null, frames, this.frameRate)); }
+    public void setClip(AnimClip clip) {
+        this.clip = clip;
+        this.frameRate = clip.getFrameRate();
+        this.currentFrame = 0;
+        this.frameProgress = 0;
+        this.evaluatePose();
+    }
+    public void setLOD(int lodLevel, boolean skipLeafJoints) {
+        this.lodLevel = lodLevel;
+        this.skipLeafJoints = skipLeafJoints;
+    }
 
     //Frame Cycling Method
     public void nextFrame() {
         this.currentFrame++;
-        if (this.currentFrame >= this.frames.size()) this.currentFrame = 0;
+        if (this.currentFrame >= this.clip.getFrameCount()) this.currentFrame = 0;
+        this.frameProgress = 0;
+        this.evaluatePose();
+    }
+
+    //Update Method
+    //advances the animation and re-evaluates the pose as often as the current level of detail allows
+    public void update(float interval) {
+
+        //off-screen items are frozen completely
+        if (this.lodLevel == AnimLOD.LEVEL_FROZEN) return;
+
+        //advance animation
+        this.frameProgress += interval * this.frameRate;
+        while (this.frameProgress >= 1.0f) {
+            this.frameProgress -= 1.0f;
+            this.currentFrame++;
+            if (this.currentFrame >= this.clip.getFrameCount()) this.currentFrame = 0;
+        }
+
+        //evaluate pose if this update is not skipped - skipped updates reuse the last palette
+        this.updateCount++;
+        if (this.updateCount % AnimLOD.getUpdateInterval(this.lodLevel) == 0) this.evaluatePose();
+    }
+
+    //Pose Evaluation Method
+    //interpolates the joint palette between the current and next frame - each rigid joint matrix is split into its
+    //rotation, which is slerped, and its translation, which is lerped (component-wise matrix lerps shear joints)
+    private void evaluatePose() {
+        Matrix4f[] current = this.getCurrentFrame().getJointMatrices();
+        Matrix4f[] next = this.getNextFrame().getJointMatrices();
+        int numJoints = this.jointMatrices.length;
+        for (int i = 0; i < numJoints; i++) {
+            if (this.skipLeafJoints && this.skeleton.isLeafJoint(i)) continue;
+            this.interpolateJoint(current[i], next[i], this.jointMatrices[i]);
+        }
+
+        //leaf joints that are not evaluated follow their parent rigidly
+        if (this.skipLeafJoints) {
+            for (int i = 0; i < numJoints; i++) {
+                if (this.skeleton.isLeafJoint(i)) this.jointMatrices[i].set(this.jointMatrices[this.skeleton.getJointParent(i)]);
+            }
+        }
+
+        //keep bounds in sync with the palette
+        this.evaluateBounds();
+    }
+
+    private void interpolateJoint(Matrix4f current, Matrix4f next, Matrix4f dest) {
+        current.getNormalizedRotation(this.rotation).slerp(next.getNormalizedRotation(this.nextRotation), this.frameProgress);
+        current.getTranslation(this.translation).lerp(next.getTranslation(this.nextTranslation), this.frameProgress);
+        dest.translationRotate(this.translation.x, this.translation.y, this.translation.z, this.rotation);
+    }
+
+    //Bounds Evaluation Method
+    //interpolates the bounds between the current and next frame, falling back to the bounding radius
+    private void evaluateBounds() {
+        AnimatedFrame current = this.getCurrentFrame();
+        AnimatedFrame next = this.getNextFrame();
+        if (current.hasBounds() && next.hasBounds()) {
+            current.getMinBound().lerp(next.getMinBound(), this.frameProgress, this.minBound);
+            current.getMaxBound().lerp(next.getMaxBound(), this.frameProgress, this.maxBound);
+        } else {
+            this.minBound.set(-this.skeleton.getBoundingRadius());
+            this.maxBound.set(this.skeleton.getBoundingRadius());
+        }
+    }
+
+    //World Bounds Method
+    //transforms the current pose's bounds by this item's world matrix into an axis-aligned box
+    @Override
+    public void getWorldBounds(Vector3f worldMin, Vector3f worldMax) {
+        Transformation.updateWorldMatrix(this, this.worldMatrix);
+        this.worldMatrix.transformAab(this.minBound, this.maxBound, worldMin, worldMax);
     }
 }
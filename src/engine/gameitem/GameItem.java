@@ -1,6 +1,8 @@
 package engine.gameitem;
 
 import engine.graphics.Mesh;
+import engine.graphics.Transformation;
+import org.joml.Matrix4f;
 import org.joml.Vector3f;
 
 public class GameItem {
@@ -10,6 +12,7 @@ public class GameItem {
     private final Vector3f rotation;
     private float scale;
     private Mesh[] meshes;
+    private Matrix4f worldMatrix; //created on first bounds query
 
     //Default Constructor
     public GameItem() {
@@ -65,6 +68,27 @@ public class GameItem {
         this.rotation.z = xyz.z;
     }
 
+    //World Bounds Method
+    //transforms the union of the meshes' bounds by this item's world matrix into an axis-aligned box
+    public void getWorldBounds(Vector3f worldMin, Vector3f worldMax) {
+        if (this.worldMatrix == null) this.worldMatrix = new Matrix4f();
+        Transformation.updateWorldMatrix(this, this.worldMatrix);
+        float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE, minZ = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE, maxZ = -Float.MAX_VALUE;
+        for (Mesh mesh : this.meshes) {
+            Vector3f min = mesh.getMinBound(), max = mesh.getMaxBound();
+            this.worldMatrix.transformAab(min.x, min.y, min.z, max.x, max.y, max.z, worldMin, worldMax);
+            minX = Math.min(minX, worldMin.x);
+            minY = Math.min(minY, worldMin.y);
+            minZ = Math.min(minZ, worldMin.z);
+            maxX = Math.max(maxX, worldMax.x);
+            maxY = Math.max(maxY, worldMax.y);
+            maxZ = Math.max(maxZ, worldMax.z);
+        }
+        worldMin.set(minX, minY, minZ);
+        worldMax.set(maxX, maxY, maxZ);
+    }
+
     //Cleanup Method
     public void cleanup() {
         if (this.meshes != null) {
@@ -4,13 +4,14 @@ import engine.graphics.Material;
 import engine.graphics.Mesh;
 import engine.graphics.loaders.obj.OBJLoader;
 import engine.graphics.Texture;
+import engine.graphics.TextureCache;
 
 public class SkyBox extends GameItem {
 
     //Constructor
     public SkyBox(String objModel, String textureFile) throws Exception {
         Mesh m = OBJLoader.loadMesh(objModel);
-        Texture t = new Texture(textureFile);
+        Texture t = TextureCache.acquire(textureFile);
         m.setMaterial(new Material(t, 0.0f));
         this.setMesh(m, true);
         this.setPosition(0, 0, 0);
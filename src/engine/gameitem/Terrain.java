@@ -1,211 +1,362 @@
 package engine.gameitem;
 
 import engine.graphics.HeightMap;
+import engine.graphics.Image;
+import engine.graphics.Material;
 import engine.graphics.Texture;
+import engine.graphics.TextureCache;
+import engine.graphics.terrain.HeightFieldCollider;
+import engine.graphics.terrain.HeightPyramid;
+import engine.graphics.terrain.RawHeightField;
+import engine.graphics.terrain.TerrainContact;
+import engine.graphics.terrain.TerrainGenerator;
+import engine.graphics.terrain.TerrainLOD;
+import engine.graphics.terrain.TerrainMesh;
 import org.joml.Vector3f;
-import org.lwjgl.system.MemoryStack;
 
-import java.io.File;
-import java.net.URL;
-import java.nio.ByteBuffer;
-import java.nio.IntBuffer;
-import java.nio.file.Paths;
-
-import static org.lwjgl.stb.STBImage.*;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
 
 public class Terrain {
 
+    //Static Data
+    private static final int RAYMARCH_REFINEMENTS = 16;
+    private static final int MAX_MESH_SIZE = 1025; //vertices along either side of a height field's mesh (~59MB to build)
+
     //Data
     private final GameItem[] chunks;
     private final HeightMap heightMap;
-    private final Box2D[][] boundingBoxes;
     private final int terrainSize;
-    private final int verticesPerRow;
-    private final int verticesPerCol;
-
-    //Constructor
+    private final int cellsPerRow; //cells along the x axis of a single chunk
+    private final int cellsPerCol; //cells along the z axis of a single chunk
+    private final float originX, originZ; //world position of the terrain's minimum x/z corner
+    private final float chunkWidth, chunkDepth; //world size of a single chunk
+    private volatile HeightPyramid heightPyramid; //min/max pyramid for raycasting (built on first use)
+    private final HeightFieldCollider collider;
+    private boolean castShadows = true; //passed on to the level of detail renderers and meshes created
+
+    //Constructors
     public Terrain(int terrainSize, float scale, float minY, float maxY, String heightMapFile, String textureFile, int textureInc) throws Exception {
+        this(terrainSize, scale, loadHeightMap(minY, maxY, heightMapFile, textureFile, textureInc));
+    }
+
+    //raw 16-bit height field constructor - the mesh samples every step-th height of the mapped field, without a copy.
+    //the mesh is built whole, so the step must be coarse enough to keep it within MAX_MESH_SIZE vertices a side (see
+    //getMinStep) - e.g. at least 8 for an 8192x8192 field
+    public Terrain(int terrainSize, float scale, RawHeightField heightField, int step, String textureFile, int textureInc) throws Exception {
+        this(terrainSize, scale, createHeightMap(heightField, step, textureFile, textureInc));
+    }
+
+    //procedural constructor - generates a square height map of the given size on the common pool
+    public Terrain(int terrainSize, float scale, float minY, float maxY, TerrainGenerator generator, int size, String textureFile, int textureInc) throws Exception {
+        this(terrainSize, scale, new HeightMap(minY, maxY, generator, size, size, textureFile, textureInc, false, ForkJoinPool.getCommonPoolParallelism()));
+    }
+
+    private Terrain(int terrainSize, float scale, HeightMap heightMap) {
 
         //initialize terrain size and chunka array
         this.terrainSize = terrainSize;
         this.chunks = new GameItem[terrainSize * terrainSize];
 
-        //get width and height of image
-        ByteBuffer buf = null;
-        int w, h;
-        try (MemoryStack stack = MemoryStack.stackPush()) {
-            IntBuffer wBuf = stack.mallocInt(1);
-            IntBuffer hBuf = stack.mallocInt(1);
-            IntBuffer channelsBuff = stack.mallocInt(1);
-
-            URL url = Texture.class.getResource(heightMapFile);
-            File file = Paths.get(url.toURI()).toFile();
-            String filePath = file.getAbsolutePath();
-            buf = stbi_load(filePath, wBuf, hBuf, channelsBuff, 4);
-            if (buf == null) throw new Exception("Image file [" + filePath + "] not loaded: " + stbi_failure_reason());
-
-            w = wBuf.get();
-            h = hBuf.get();
-        }
-
-        //set vertcies per row and column
-        this.verticesPerRow = w - 1;
-        this.verticesPerCol = h - 1;
+        //set cells per row and column
+        this.heightMap = heightMap;
+        this.cellsPerRow = heightMap.getCols() - 1;
+        this.cellsPerCol = heightMap.getRows() - 1;
 
-        //create height map and bounding boxes array
-        this.heightMap = new HeightMap(minY, maxY, buf, w, h, textureFile, textureInc);
-        this.boundingBoxes = new Box2D[terrainSize][terrainSize];
+        //calculate chunk grid
+        this.chunkWidth = HeightMap.getXLength() * scale;
+        this.chunkDepth = HeightMap.getZLength() * scale;
+        this.originX = HeightMap.STARTX * scale - ((float)terrainSize - 1) / 2.0f * this.chunkWidth;
+        this.originZ = HeightMap.STARTZ * scale - ((float)terrainSize - 1) / 2.0f * this.chunkDepth;
 
         //add chunks
         for (int row = 0; row < terrainSize; row++) {
             for (int col = 0; col < terrainSize; col++) {
-                float xDisplacement = (col - ((float)terrainSize - 1) / 2.0f) * scale * heightMap.getXLength();
-                float zDisplacement = (row - ((float)terrainSize - 1) / 2.0f) * scale * heightMap.getZLength();
+                float xDisplacement = (col - ((float)terrainSize - 1) / 2.0f) * scale * HeightMap.getXLength();
+                float zDisplacement = (row - ((float)terrainSize - 1) / 2.0f) * scale * HeightMap.getZLength();
 
                 GameItem chunk = new GameItem(heightMap.getMesh());
                 chunk.setScale(scale);
                 chunk.setPosition(xDisplacement, 0, zDisplacement);
                 chunks[row * terrainSize + col] = chunk;
-                boundingBoxes[row][col] = getBoundingBox(chunk);
             }
         }
+        this.collider = new HeightFieldCollider(heightMap, this.chunks);
+    }
+
+    //Height Map Loading Method
+    //decodes a heightmap image and creates a height map from it
+    private static HeightMap loadHeightMap(float minY, float maxY, String heightMapFile, String textureFile, int textureInc) throws Exception {
 
-        //free image memory
-        stbi_image_free(buf);
+        //decode image, then create height map and free image memory
+        Image image = Image.load(heightMapFile);
+        try {
+            return new HeightMap(minY, maxY, image.getPixels(), image.getWidth(), image.getHeight(), textureFile, textureInc);
+        } finally {
+            image.free();
+        }
     }
 
-    //Height Calculation Method
-    public float getHeight(Vector3f position) {
+    //Height Field Height Map Creation Method
+    //creates a height map covering a whole raw height field, sampling every step-th height
+    private static HeightMap createHeightMap(RawHeightField heightField, int step, String textureFile, int textureInc) throws Exception {
+        if (step < getMinStep(heightField)) throw new Exception("Height field step [" + step + "] must be at least " +
+                getMinStep(heightField) + " to keep the mesh within " + MAX_MESH_SIZE + "x" + MAX_MESH_SIZE + " vertices");
+        int w = (heightField.getWidth() - 1) / step + 1;
+        int h = (heightField.getHeight() - 1) / step + 1;
+        HeightMap heightMap = new HeightMap(heightField, 0, 0, step, w, h, textureInc, ForkJoinPool.getCommonPoolParallelism());
+        heightMap.upload(new Material(TextureCache.acquire(textureFile), 0.0f));
+        return heightMap;
+    }
 
-        //set variables
-        boolean found = false;
-        float result = Float.MIN_VALUE;
-        Box2D boundingBox = null;
-        GameItem chunk = null;
+    //Minimum Step Method
+    //returns the finest step a height field's mesh can sample it at
+    public static int getMinStep(RawHeightField heightField) {
+        int cells = Math.max(heightField.getWidth(), heightField.getHeight()) - 1;
+        return Math.max(1, (cells + MAX_MESH_SIZE - 2) / (MAX_MESH_SIZE - 1));
+    }
 
-        //find chunk that contains this position
-        for (int row= 0; row < this.terrainSize && !found; row++) {
-            for (int col = 0; col < this.terrainSize && !found; col++) {
-                boundingBox = boundingBoxes[row][col];
-                if (boundingBox.contains(position.x, position.z)) {
-                    chunk = this.chunks[row * terrainSize * col];
-                    found = boundingBox.contains(position.x, position.z);
-                }
-            }
+    //Height Calculation Methods
+    public float getHeight(Vector3f position) { return this.getHeight(position.x, position.z); }
+
+    //calculates the height of the terrain at a world x/z position (minimum float value if outside of the terrain)
+    //does not allocate and may be called from multiple threads at once
+    public float getHeight(float x, float z) {
+
+        //find chunk through direct grid lookup
+        float chunkX = (x - this.originX) / this.chunkWidth;
+        float chunkZ = (z - this.originZ) / this.chunkDepth;
+        if (chunkX < 0 || chunkZ < 0 || chunkX > this.terrainSize || chunkZ > this.terrainSize) return Float.MIN_VALUE;
+        int col = Math.min((int)chunkX, this.terrainSize - 1);
+        int row = Math.min((int)chunkZ, this.terrainSize - 1);
+        GameItem chunk = this.chunks[row * this.terrainSize + col];
+
+        //find cell within chunk and the position within that cell
+        float cellX = (chunkX - col) * this.cellsPerRow;
+        float cellZ = (chunkZ - row) * this.cellsPerCol;
+        int cx = Math.min((int)cellX, this.cellsPerRow - 1);
+        int cz = Math.min((int)cellZ, this.cellsPerCol - 1);
+        float fx = cellX - cx;
+        float fz = cellZ - cz;
+
+        //interpolate within the cell's triangle (cells are split along the bottom-left to top-right diagonal)
+        float topLeft = this.heightMap.getHeight(cz, cx);
+        float topRight = this.heightMap.getHeight(cz, cx + 1);
+        float bottomLeft = this.heightMap.getHeight(cz + 1, cx);
+        float y;
+        if (fx + fz <= 1.0f) y = topLeft + (topRight - topLeft) * fx + (bottomLeft - topLeft) * fz;
+        else {
+            float bottomRight = this.heightMap.getHeight(cz + 1, cx + 1);
+            y = bottomRight + (bottomLeft - bottomRight) * (1.0f - fx) + (topRight - bottomRight) * (1.0f - fz);
         }
 
-        //calculate the height of the terrain on that position if found
-        if (found) {
-            Vector3f[] triangle = getTriangle(position, boundingBox, chunk); //calculate the triangle we are currently in
-            result = interpolateHeight(triangle[0], triangle[1], triangle[2], position.x, position.z);
-        }
+        //convert to world height
+        return y * chunk.getScale() + chunk.getPosition().y;
+    }
 
-        //return result (minimum float value if not foud)
-        return result;
+    //Batched Height Calculation Methods
+    //fills heights[i] with the height at xs[i]/zs[i]
+    public void getHeights(float[] xs, float[] zs, float[] heights) { this.getHeights(xs, zs, heights, false); }
+
+    public void getHeights(float[] xs, float[] zs, float[] heights, boolean parallel) {
+        IntStream indices = IntStream.range(0, heights.length);
+        if (parallel) indices = indices.parallel();
+        indices.forEach(i -> heights[i] = this.getHeight(xs[i], zs[i]));
+    }
+
+    //fills heights[from] through heights[to - 1] so callers can split work across their own streams/threads
+    public void getHeights(float[] xs, float[] zs, float[] heights, int from, int to) {
+        for (int i = from; i < to; i++) heights[i] = this.getHeight(xs[i], zs[i]);
     }
 
-    //Triangle Calculation Method
-    //gets the triangle below a certain position of the terrain
-    protected Vector3f[] getTriangle(Vector3f position, Box2D boundingBox, GameItem chunk) {
-
-        //get the column and row of the heightmap associated with the current position
-        float cellWidth = boundingBox.w / (float)verticesPerCol;
-        float cellHeight = boundingBox.h / (float)verticesPerRow;
-        int col = (int) ((position.x - boundingBox.x) / cellWidth);
-        int row = (int) ((position.z - boundingBox.y) / cellHeight);
-
-        //get first two triangle vertices
-        Vector3f[] triangle = new Vector3f[3];
-        triangle[1] = new Vector3f(boundingBox.x + col * cellWidth,
-                getWorldHeight(row + 1, col, chunk),
-                boundingBox.y + (row + 1) * cellHeight);
-        triangle[2] = new Vector3f(boundingBox.x + (col + 1) * cellWidth,
-                getWorldHeight(row, col + 1, chunk),
-                boundingBox.y + row * cellHeight);
-
-        //get final triangle vertex by determining if the z is above or below the diagonal
-        if (position.z < getDiagonalZCoord(triangle[1].x, triangle[1].z, triangle[2].x, triangle[2].z, position.x)) {
-            triangle[0] = new Vector3f(boundingBox.x + col * cellWidth,
-                    getWorldHeight(row, col, chunk),
-                    boundingBox.y + row * cellHeight);
-        } else {
-            triangle[0] = new Vector3f(boundingBox.x + (col + 1) * cellWidth,
-                    getWorldHeight(row + 2, col + 1, chunk),
-                    boundingBox.y + (row + 1) * cellHeight);
+    //Height Query Report Method
+    //measures height query throughput over random positions on the terrain - single queries, then sequential and
+    //parallel batches (e.g. getHeightReport(1_000_000, seed) for a million queries)
+    public String getHeightReport(int queryCount, long seed) {
+        Random random = new Random(seed);
+        float[] xs = new float[queryCount], zs = new float[queryCount], heights = new float[queryCount];
+        for (int i = 0; i < queryCount; i++) {
+            xs[i] = this.originX + random.nextFloat() * this.getWidth();
+            zs[i] = this.originZ + random.nextFloat() * this.getDepth();
         }
 
-        //return triangle
-        return triangle;
+        //time single queries, then both batches
+        long start = System.nanoTime();
+        float sum = 0;
+        for (int i = 0; i < queryCount; i++) sum += this.getHeight(xs[i], zs[i]);
+        long singleTime = System.nanoTime() - start;
+        start = System.nanoTime();
+        this.getHeights(xs, zs, heights, false);
+        long batchTime = System.nanoTime() - start;
+        start = System.nanoTime();
+        this.getHeights(xs, zs, heights, true);
+        long parallelTime = System.nanoTime() - start;
+        return "Height " + queryCount + " queries (mean height " + sum / queryCount + "): single " +
+                (long)(queryCount / (singleTime / 1e9)) + " queries/s (" + singleTime / queryCount + " ns each), batched " +
+                (long)(queryCount / (batchTime / 1e9)) + " queries/s, parallel batched " +
+                (long)(queryCount / (parallelTime / 1e9)) + " queries/s";
     }
 
-    //Diagonal Z Coordinate Calculation Method
-    //gets position.x's corresponding z coordinate in the triangle
-    protected float getDiagonalZCoord(float x1, float z1, float x2, float z2, float x) {
-        return ((z1 - z2) / (x1 - x2)) * (x - x1) + z1;
+    //Raycasting Methods
+    //returns the smallest ray parameter in [0, maxT] at which a world space ray hits the terrain, or HeightPyramid.MISS
+    //with a unit direction the result is the distance to the hit. safe to call from multiple threads at once
+    public float raycast(float ox, float oy, float oz, float dx, float dy, float dz, float maxT) {
+        return this.raycast(ox, oy, oz, dx, dy, dz, maxT, false);
     }
 
-    //World Height Calculation Method
-    //calculates the height of a single vertex
-    protected float getWorldHeight(int row, int col, GameItem chunk) {
-        float y = heightMap.getHeight(row, col);
-        return y * chunk.getScale() + chunk.getPosition().y;
+    public float raycast(Vector3f origin, Vector3f direction, float maxT) {
+        return this.raycast(origin.x, origin.y, origin.z, direction.x, direction.y, direction.z, maxT, false);
     }
 
-    //Height Interpolation Method
-    //interpolates the height of a point in a plane using three triangular points to define the plane
-    protected float interpolateHeight(Vector3f pA, Vector3f pB, Vector3f pC, float x, float z) {
+    //fills hit with the hit position and returns true if the ray hits the terrain
+    public boolean raycast(Vector3f origin, Vector3f direction, float maxT, Vector3f hit) {
+        float t = this.raycast(origin, direction, maxT);
+        if (t == HeightPyramid.MISS) return false;
+        hit.set(direction).mul(t).add(origin);
+        return true;
+    }
 
-        //plane equation: ax + by + cz + d = 0
-        float a = (pB.y - pA.y) * (pC.z - pA.z) - (pC.y - pA.y) * (pB.z - pA.z);
-        float b = (pB.z - pA.z) * (pC.x - pA.x) - (pC.z - pA.z) * (pB.x - pA.x);
-        float c = (pB.x - pA.x) * (pC.y - pA.y) - (pC.x - pA.x) * (pB.y - pA.y);
-        float d = -(a * pA.x + b * pA.y + c * pA.z);
-        float y = (-d - a * x - c * z) / b;
-        return y;
+    //returns true if nothing on the terrain blocks the segment between the two positions
+    public boolean hasLineOfSight(Vector3f from, Vector3f to) {
+        return this.raycast(from.x, from.y, from.z, to.x - from.x, to.y - from.y, to.z - from.z, 1.0f) == HeightPyramid.MISS;
     }
 
-    //Bounding Box Calculation Method
-    private Box2D getBoundingBox(GameItem chunk) {
+    //naive reference raycast - marches along the ray in half cell steps instead of traversing the pyramid
+    public float raymarch(float ox, float oy, float oz, float dx, float dy, float dz, float maxT) {
+        return this.raycast(ox, oy, oz, dx, dy, dz, maxT, true);
+    }
 
-        //get scale and position
-        float scale = chunk.getScale();
-        Vector3f position = chunk.getPosition();
+    //tests the ray against each chunk in the chunk's local space - the ray parameter is the same in both spaces
+    private float raycast(float ox, float oy, float oz, float dx, float dy, float dz, float maxT, boolean march) {
+        HeightPyramid pyramid = this.getHeightPyramid();
+        float result = HeightPyramid.MISS;
+        for (GameItem chunk : this.chunks) {
+            Vector3f position = chunk.getPosition();
+            float invScale = 1.0f / chunk.getScale();
+            float lox = (ox - position.x) * invScale, loy = (oy - position.y) * invScale, loz = (oz - position.z) * invScale;
+            float ldx = dx * invScale, ldy = dy * invScale, ldz = dz * invScale;
+            float limit = result == HeightPyramid.MISS ? maxT : result;
+            float t = march ? pyramid.march(lox, loy, loz, ldx, ldy, ldz, limit, RAYMARCH_REFINEMENTS)
+                    : pyramid.intersect(lox, loy, loz, ldx, ldy, ldz, limit);
+            if (t != HeightPyramid.MISS && (result == HeightPyramid.MISS || t < result)) result = t;
+        }
+        return result;
+    }
 
-        //calculate bounding box
-        float x = HeightMap.STARTX * scale + position.x; //x
-        float y = HeightMap.STARTZ * scale + position.z; //y
-        float w = Math.abs(HeightMap.STARTX * 2) * scale; //w
-        float h = Math.abs(HeightMap.STARTZ * 2) * scale; //h
+    //Batched Raycasting Method
+    //origins and directions hold packed x/y/z triples - results[i] receives the ray parameter of ray i, or MISS
+    //rays to a target with maxT 1 give line of sight checks. parallel batches run on the common fork-join pool
+    public void raycast(float[] origins, float[] directions, float maxT, float[] results, boolean parallel) {
+        IntStream indices = IntStream.range(0, results.length);
+        if (parallel) indices = indices.parallel();
+        indices.forEach(i -> results[i] = this.raycast(origins[i * 3], origins[i * 3 + 1], origins[i * 3 + 2],
+                directions[i * 3], directions[i * 3 + 1], directions[i * 3 + 2], maxT));
+    }
+
+    //Raycast Report Method
+    //measures pyramid raycasting throughput against naive ray marching with random rays aimed down at the terrain
+    public String getRaycastReport(int rayCount, long seed) {
+        Random random = new Random(seed);
+        float[] origins = new float[rayCount * 3], directions = new float[rayCount * 3];
+        float extentX = this.chunkWidth * this.terrainSize, extentZ = this.chunkDepth * this.terrainSize;
+        float top = this.heightMap.getMaxY() * this.chunks[0].getScale() + this.chunkWidth;
+        for (int i = 0; i < rayCount; i++) {
+            origins[i * 3] = this.originX + random.nextFloat() * extentX;
+            origins[i * 3 + 1] = top;
+            origins[i * 3 + 2] = this.originZ + random.nextFloat() * extentZ;
+            directions[i * 3] = (this.originX + random.nextFloat() * extentX) - origins[i * 3];
+            directions[i * 3 + 1] = -top * 2;
+            directions[i * 3 + 2] = (this.originZ + random.nextFloat() * extentZ) - origins[i * 3 + 2];
+        }
 
-        //create box object and return it
-        Box2D b = new Box2D(x, y, w, h);
-        return b;
+        //time both methods (building the pyramid is not timed)
+        this.getHeightPyramid();
+        long start = System.nanoTime();
+        int hits = 0;
+        for (int i = 0; i < rayCount; i++) {
+            if (this.raycast(origins[i * 3], origins[i * 3 + 1], origins[i * 3 + 2], directions[i * 3],
+                    directions[i * 3 + 1], directions[i * 3 + 2], 1.0f) != HeightPyramid.MISS) hits++;
+        }
+        long pyramidTime = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int i = 0; i < rayCount; i++) {
+            this.raymarch(origins[i * 3], origins[i * 3 + 1], origins[i * 3 + 2], directions[i * 3],
+                    directions[i * 3 + 1], directions[i * 3 + 2], 1.0f);
+        }
+        long marchTime = System.nanoTime() - start;
+        return "Raycast " + rayCount + " rays (" + hits + " hits): pyramid " + (long)(rayCount / (pyramidTime / 1e9)) +
+                " rays/s, ray march " + (long)(rayCount / (marchTime / 1e9)) + " rays/s";
     }
 
-    //Accessor
-    public GameItem[] getChunks() { return this.chunks; }
+    //Collision Methods
+    //contact queries against the terrain's triangles. each fills the given contact and allocates nothing, so one contact
+    //per caller (or per thread) keeps them garbage free. safe to call from multiple threads at once
+    public boolean collideSphere(Vector3f center, float radius, TerrainContact contact) {
+        return this.collider.collideSphere(center, radius, contact);
+    }
 
-    //Box2D Class
-    static class Box2D {
+    public boolean collideCapsule(Vector3f a, Vector3f b, float radius, TerrainContact contact) {
+        return this.collider.collideCapsule(a, b, radius, contact);
+    }
 
-        //Data
-        public float x, y;
-        public float w, h;
+    //returns true if the sphere hits the terrain while moving along the displacement - see TerrainContact.getTime()
+    public boolean sweepSphere(Vector3f center, float radius, Vector3f displacement, TerrainContact contact) {
+        return this.collider.sweepSphere(center, radius, displacement, contact);
+    }
 
-        //Constructor
-        public Box2D(float x, float y, float w, float h) {
-            this.x = x;
-            this.y = y;
-            this.w = w;
-            this.h = h;
-        }
+    //centers hold packed x/y/z triples - results receive packed depth/normal x/y/z quadruples (depth 0 if apart)
+    public void collideSpheres(float[] centers, float[] radii, float[] results, boolean parallel) {
+        this.collider.collideSpheres(centers, radii, results, parallel);
+    }
+
+    //Lighting Methods
+    //bakes ambient occlusion into the chunks' shared mesh - must be called on the OpenGL thread
+    public void bakeOcclusion(int directions, int radius) {
+        this.heightMap.bakeOcclusion(directions, radius, ForkJoinPool.getCommonPoolParallelism());
+    }
+
+    //leaving the terrain out of the shadow pass saves its depth triangles - valleys then rely on baked occlusion. applies
+    //to the chunks' mesh and to level of detail renderers and compact meshes created afterwards (set theirs directly)
+    public void setCastShadows(boolean castShadows) {
+        this.castShadows = castShadows;
+        if (this.heightMap.getMesh() != null) this.heightMap.getMesh().setShadowCaster(castShadows);
+    }
 
-        //Contains Method
-        public boolean contains(float thisX, float thisY) {
-            return thisX >= this.x
-                    && thisY >= this.y
-                    && thisX <= this.x + this.w
-                    && thisY <= this.y + this.h;
+    //Accessors
+    public GameItem[] getChunks() { return this.chunks; }
+    public float getWidth() { return this.chunkWidth * this.terrainSize; } //world size along the x axis
+    public float getDepth() { return this.chunkDepth * this.terrainSize; } //world size along the z axis
+    public float getCellSize() { return this.chunkWidth / this.cellsPerRow; } //world size of a single cell
+    public float getOriginX() { return this.originX; } //world x of the terrain's minimum corner
+    public float getOriginZ() { return this.originZ; } //world z of the terrain's minimum corner
+    public HeightMap getHeightMap() { return this.heightMap; }
+    public HeightFieldCollider getCollider() { return this.collider; }
+    public HeightPyramid getHeightPyramid() { //built on first use
+        HeightPyramid pyramid = this.heightPyramid;
+        if (pyramid == null) {
+            synchronized (this) {
+                if (this.heightPyramid == null) this.heightPyramid = new HeightPyramid(this.heightMap);
+                pyramid = this.heightPyramid;
+            }
         }
+        return pyramid;
+    }
+
+    //Level of Detail Creation Method
+    //creates a quadtree level of detail renderer for this terrain's chunks - gridSize must be a power of two
+    public TerrainLOD createLOD(int gridSize) throws Exception {
+        if (Integer.bitCount(gridSize) != 1 || gridSize < 2) throw new Exception("Terrain LOD grid size [" + gridSize + "] is not a power of two");
+        TerrainLOD terrainLOD = new TerrainLOD(this.heightMap, this.chunks, gridSize);
+        terrainLOD.setShadowCaster(this.castShadows);
+        return terrainLOD;
+    }
+
+    //Compact Mesh Creation Method
+    //creates a heights-only mesh for this terrain's chunks - render it through the scene instead of the chunks' mesh
+    public TerrainMesh createMesh() {
+        TerrainMesh terrainMesh = new TerrainMesh(this.heightMap, this.chunks);
+        terrainMesh.setShadowCaster(this.castShadows);
+        return terrainMesh;
     }
 }
@@ -1,111 +1,107 @@
 package engine.gameitem;
 
-import engine.Utils;
 import engine.graphics.FontTexture;
 import engine.graphics.Material;
 import engine.graphics.Mesh;
-import engine.graphics.Texture;
+import org.lwjgl.system.MemoryUtil;
 
-import java.nio.charset.Charset;
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.FloatBuffer;
 
+//a line of text drawn with a font texture. its glyph quads are written in place into a buffer, which grows only when the
+//text outgrows it, and are drawn from there by the hud batch - its mesh holds only the material, so changing the text
+//allocates nothing and uploads nothing, and setting unchanged text does nothing at all
 public class TextItem extends GameItem {
 
     //Static Data
     private static final float ZPOS = 0.0f;
     private static final int VERTICES_PER_QUAD = 4;
+    private static final int MIN_CAPACITY = 32; //glyph quads reserved initially
 
     //Instance Data
     private final FontTexture fontTexture;
-    private String text;
+    private final StringBuilder text; //reused as the text changes
+    private FloatBuffer vertices; //glyph quads, reused as the text changes
+    private int capacity; //glyph quads the vertex buffer can hold
+    private int glyphCount; //glyph quads written for the current text
 
     //Constructor
     public TextItem(String text, FontTexture fontTexture) throws Exception {
         super();
-        this.text = text;
+        this.text = new StringBuilder();
         this.fontTexture = fontTexture;
-        this.setMesh(buildMesh(), true);
+        this.capacity = Math.max(MIN_CAPACITY, text.length());
+        this.vertices = MemoryUtil.memAllocFloat(this.capacity * VERTICES_PER_QUAD * Mesh.DYNAMIC_VERTEX_SIZE);
+        this.setMesh(new Mesh(new Material(fontTexture.getTexture())), false);
+        this.updateQuads(text);
     }
 
-    //Mesh-Building Method
-    private Mesh buildMesh() {
+    //Quad Updating Method
+    //writes a quad for each character into the vertex buffer over the previous text's quads
+    private void updateQuads(CharSequence text) {
 
-        //create lists for vao attributes
-        List<Float> positions = new ArrayList<>();
-        List<Float> textureCoords = new ArrayList<>();
-        List<Integer> indices = new ArrayList<>();
-        float[] normalsArr = new float[0];
-
-        //get text characters and calculate length of text
-        char[] characters = this.text.toCharArray();
-        int numChars = characters.length;
+        //remember text and grow the buffer if it does not fit
+        this.text.setLength(0);
+        this.text.append(text);
+        if (text.length() > this.capacity) {
+            this.capacity = Math.max(text.length(), this.capacity * 2);
+            this.vertices = MemoryUtil.memRealloc(this.vertices, this.capacity * VERTICES_PER_QUAD * Mesh.DYNAMIC_VERTEX_SIZE);
+        }
 
-        //create each character
+        //create each character (characters missing from the font are skipped)
+        this.vertices.clear();
         float startX = 0;
-        for (int i = 0; i < numChars; i++) { //SCREEN SPACE
+        float height = this.fontTexture.getLineHeight();
+        int quads = 0;
+        for (int i = 0; i < text.length(); i++) { //SCREEN SPACE
 
             //get current character info
-            FontTexture.CharInfo charInfo = this.fontTexture.getCharInfo(characters[i]);
-
-            //top-left vertex
-            positions.add(startX); //x
-            positions.add(0.0f); //y
-            positions.add(ZPOS); //z
-            textureCoords.add((float)charInfo.getStartX() / (float)fontTexture.getWidth()); //x
-            textureCoords.add(0.0f); //y
-            indices.add(i * VERTICES_PER_QUAD);
-
-            //bottom-left vertex
-            positions.add(startX); //x
-            positions.add((float)this.fontTexture.getHeight()); //y
-            positions.add(ZPOS); //z
-            textureCoords.add((float)charInfo.getStartX() / (float)fontTexture.getWidth()); //x
-            textureCoords.add(1.0f); //y
-            indices.add(i * VERTICES_PER_QUAD + 1);
-
-            //bottom-right vertex
-            positions.add(startX + charInfo.getWidth()); //x
-            positions.add((float)this.fontTexture.getHeight()); //y
-            positions.add(ZPOS); //z
-            textureCoords.add((float)(charInfo.getStartX() + charInfo.getWidth()) / (float)fontTexture.getWidth()); //x
-            textureCoords.add(1.0f); //y
-            indices.add(i * VERTICES_PER_QUAD + 2);
-
-            //top-right vertex
-            positions.add(startX + charInfo.getWidth()); //x
-            positions.add(0.0f); //y
-            positions.add(ZPOS); //z
-            textureCoords.add((float)(charInfo.getStartX() + charInfo.getWidth()) / (float)fontTexture.getWidth()); //x
-            textureCoords.add(0.0f); //y
-            indices.add(i * VERTICES_PER_QUAD + 3);
-
-            //add indices for top-left and bottom-right vertices (they get repeated)
-            indices.add(i * VERTICES_PER_QUAD);
-            indices.add(i * VERTICES_PER_QUAD + 2);
+            FontTexture.CharInfo charInfo = this.fontTexture.getCharInfo(text.charAt(i));
+            if (charInfo == null) continue;
+
+            //get glyph's texture coordinates within the atlas
+            float left = (float)charInfo.getStartX() / (float)this.fontTexture.getWidth();
+            float right = (float)(charInfo.getStartX() + charInfo.getWidth()) / (float)this.fontTexture.getWidth();
+            float top = (float)charInfo.getStartY() / (float)this.fontTexture.getHeight();
+            float bottom = (charInfo.getStartY() + height) / (float)this.fontTexture.getHeight();
+
+            //top-left, bottom-left, bottom-right and top-right vertices
+            this.vertices.put(startX).put(0.0f).put(ZPOS).put(left).put(top);
+            this.vertices.put(startX).put(height).put(ZPOS).put(left).put(bottom);
+            this.vertices.put(startX + charInfo.getWidth()).put(height).put(ZPOS).put(right).put(bottom);
+            this.vertices.put(startX + charInfo.getWidth()).put(0.0f).put(ZPOS).put(right).put(top);
 
             //iterate startX
             startX += charInfo.getWidth();
+            quads++;
         }
 
-        //convert lists to arrays
-        float[] positionsArr = Utils.listToArray(positions);
-        float[] textureCoordsArr = Utils.listToArray(textureCoords);
-        int[] indicesArr = indices.stream().mapToInt(i->i).toArray();
-
-        //create mesh and return it
-        Mesh mesh = new Mesh(positionsArr, textureCoordsArr, normalsArr, indicesArr);
-        mesh.setMaterial(new Material(fontTexture.getTexture()));
-        return mesh;
+        this.glyphCount = quads;
+        this.vertices.flip();
     }
 
     //Accessors
-    public String getText() { return this.text; }
+    public String getText() { return this.text.toString(); }
+    public FloatBuffer getGlyphVertices() { return this.vertices; } //four x, y, z, u, v vertices per glyph quad
+    public int getGlyphCount() { return this.glyphCount; }
 
     //Mutators
-    public void setText(String text) {
-        this.text = text;
-        this.getMesh().deleteBuffers();
-        this.setMesh(buildMesh(), true);
+    //sets the text, doing nothing if it is unchanged - a reused string builder can be passed to avoid allocation
+    public void setText(CharSequence text) {
+        if (this.isText(text)) return;
+        this.updateQuads(text);
+    }
+
+    private boolean isText(CharSequence text) {
+        if (text.length() != this.text.length()) return false;
+        for (int i = 0; i < text.length(); i++) if (text.charAt(i) != this.text.charAt(i)) return false;
+        return true;
+    }
+
+    //Cleanup Method
+    @Override
+    public void cleanup() {
+        super.cleanup();
+        if (this.vertices != null) MemoryUtil.memFree(this.vertices);
+        this.vertices = null;
     }
 }
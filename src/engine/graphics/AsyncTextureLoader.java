@@ -0,0 +1,218 @@
+package engine.graphics;
+
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+//decodes texture images on worker threads and uploads them on the OpenGL thread. load returns a placeholder texture
+//straight away, and update uploads decoded images into their placeholders until the frame's upload budget is used up.
+//textures are loaded as the texture cache loads them - from their baked container if one exists, otherwise compressed
+//on the worker threads by the cache's compressor if it has one. textures which fail to load keep their placeholder and
+//their errors are queued for pollFailure (finish throws them instead). downgraded textures are restored the same way
+//(see TextureResidency), so that decoding and compressing them never stalls the OpenGL thread
+//load, restore, update, finish, pollFailure and cleanup must be called on the OpenGL thread
+public class AsyncTextureLoader {
+
+    //Static Data
+    private static final int DEFAULT_DECODER_THREADS = 2;
+
+    //Data
+    private final ExecutorService decoder;
+    private final Queue<DecodedImage> decodedImages; //filled by the decoder threads, drained on the OpenGL thread
+    private final Queue<Exception> failures; //errors of textures which failed to load, oldest first
+    private int pendingCount; //loaded but not yet uploaded
+    private long uploadBudget; //per-frame upload time in nanoseconds
+
+    //Stats
+    private int uploadCount, totalUploadCount, failureCount;
+    private long uploadTime, uploadedBytes;
+
+    //Constructors
+    public AsyncTextureLoader() { this(DEFAULT_DECODER_THREADS); }
+
+    public AsyncTextureLoader(int decoderThreads) {
+
+        //create decoder threads - daemons so that they never keep the game alive
+        this.decoder = Executors.newFixedThreadPool(decoderThreads, r -> {
+            Thread thread = new Thread(r, "texture-decoder");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.decodedImages = new ConcurrentLinkedQueue<>();
+        this.failures = new ArrayDeque<>();
+        this.uploadBudget = 2_000_000L;
+    }
+
+    //Load Method
+    //returns a placeholder texture and queues the image for decoding. the cache's compressor and the formats the
+    //driver supports are captured here, since the decoder threads cannot query OpenGL
+    public Texture load(String fileName) throws Exception {
+        URL url = Texture.class.getResource(fileName);
+        if (url == null) throw new Exception("Texture file [" + fileName + "] not found");
+        Texture texture = new Texture();
+        this.queue(texture, fileName, false);
+        return texture;
+    }
+
+    //Restore Method
+    //queues a downgraded texture for reloading from its file - the full texture is adopted on update
+    void restore(Texture texture) {
+        texture.restoring = true;
+        this.queue(texture, texture.sourceFile, true);
+    }
+
+    private void queue(Texture texture, String fileName, boolean restore) {
+        this.pendingCount++;
+        String bakedName = TextureContainer.getBakedName(fileName);
+        if (Texture.class.getResource(bakedName) != null) { //baked containers are mapped and uploaded on update
+            this.decodedImages.add(new DecodedImage(texture, fileName, restore, bakedName, null, null, null));
+            return;
+        }
+        TextureCompressor compressor = TextureCache.getCompressor();
+        boolean s3tc = compressor != null && TextureCompressor.isSupported(TextureCompressor.BC1);
+        boolean rgtc = compressor != null && TextureCompressor.isSupported(TextureCompressor.BC5);
+        this.decoder.submit(() -> this.decodedImages.add(this.decode(texture, fileName, restore, compressor, s3tc, rgtc)));
+    }
+
+    //Decode Method
+    //decodes an image to RGBA, compressing it if a compressor is given and the driver supports the format chosen for
+    //it, without touching OpenGL - runs on a decoder thread
+    private DecodedImage decode(Texture texture, String fileName, boolean restore, TextureCompressor compressor, boolean s3tc,
+                                boolean rgtc) {
+        try {
+            Image image = Image.load(fileName);
+            if (compressor == null) return new DecodedImage(texture, fileName, restore, null, image, null, null);
+            int format = TextureCompressor.chooseFormat(fileName, image);
+            if (!(format == TextureCompressor.BC5 ? rgtc : s3tc)) {
+                return new DecodedImage(texture, fileName, restore, null, image, null, null);
+            }
+            try {
+                return new DecodedImage(texture, fileName, restore, null, null, compressor.compress(image, format), null);
+            } finally {
+                image.free();
+            }
+        } catch (Exception e) {
+            return new DecodedImage(texture, fileName, restore, null, null, null, e);
+        }
+    }
+
+    //Update Method
+    //uploads decoded images until the frame's upload budget is used up
+    public void update() {
+        long start = System.nanoTime();
+        this.uploadCount = 0;
+        DecodedImage image;
+        while (System.nanoTime() - start < this.uploadBudget && (image = this.decodedImages.poll()) != null) {
+            this.upload(image);
+        }
+        this.uploadTime = System.nanoTime() - start;
+    }
+
+    //Finish Method
+    //blocks until every loaded image is decoded and uploaded, ignoring the upload budget, then throws the first error
+    //queued (the others stay queued for pollFailure)
+    public void finish() throws Exception {
+        long start = System.nanoTime();
+        this.uploadCount = 0;
+        while (this.pendingCount > 0) {
+            DecodedImage image = this.decodedImages.poll();
+            if (image != null) this.upload(image);
+            else {
+                try { Thread.sleep(1); }
+                catch (InterruptedException e) { e.printStackTrace(); return; }
+            }
+        }
+        this.uploadTime = System.nanoTime() - start;
+        Exception failure = this.pollFailure();
+        if (failure != null) throw failure;
+    }
+
+    //Upload Method
+    //uploads a decoded image into its placeholder (or the downgraded texture it restores) and frees the decoded pixels,
+    //queueing the error of an image which failed to decode or upload
+    private void upload(DecodedImage image) {
+        this.pendingCount--;
+        try {
+            if (image.error != null) throw image.error;
+            if (image.texture.deleted) return; //textures deleted while decoding are dropped
+            if (image.bakedName != null) image.texture.adopt(TextureContainer.load(image.bakedName));
+            else if (image.compressed != null) image.texture.adopt(new Texture(image.compressed));
+            else if (image.restore) image.texture.adopt(new Texture(image.image));
+            else image.texture.upload(image.image.getPixels(), image.image.getWidth(), image.image.getHeight());
+            if (image.restore) TextureResidency.restored();
+            this.uploadedBytes += image.texture.getMemorySize();
+            this.uploadCount++;
+            this.totalUploadCount++;
+        } catch (Exception e) {
+            String action = image.restore ? "restore" : "load";
+            this.failures.add(new Exception("Unable to " + action + " texture [" + image.fileName + "]: " + e.getMessage(), e));
+            this.failureCount++;
+        } finally {
+            if (image.restore) image.texture.restoring = false;
+            image.free();
+        }
+    }
+
+    //Failure Method
+    //returns the oldest queued error of a texture which failed to load, removing it (null if there is none)
+    public Exception pollFailure() { return this.failures.poll(); }
+
+    //Accessors
+    public int getPendingCount() { return this.pendingCount; }
+    public boolean isIdle() { return this.pendingCount == 0; }
+    public int getUploadCount() { return this.uploadCount; } //textures uploaded during the last update
+    public float getUploadTime() { return this.uploadTime / 1000_000.0f; } //of the last update, in milliseconds
+    public int getTotalUploadCount() { return this.totalUploadCount; }
+    public int getFailureCount() { return this.failureCount; }
+    public long getUploadedBytes() { return this.uploadedBytes; } //including mipmaps
+
+    //Mutators
+    public void setUploadBudget(float milliseconds) { this.uploadBudget = (long)(milliseconds * 1000_000); }
+
+    //Cleanup Method
+    //stops the decoder threads and frees images which were decoded but never uploaded
+    public void cleanup() {
+        this.decoder.shutdownNow();
+        try { this.decoder.awaitTermination(1, TimeUnit.SECONDS); }
+        catch (InterruptedException e) { e.printStackTrace(); }
+        DecodedImage image;
+        while ((image = this.decodedImages.poll()) != null) image.free();
+        this.failures.clear();
+        this.pendingCount = 0;
+    }
+
+    //a texture waiting to be uploaded into its placeholder - as a baked container, compressed levels or decoded pixels
+    private static class DecodedImage {
+
+        //Data
+        private final Texture texture;
+        private final String fileName;
+        private final boolean restore; //true if the texture is a downgraded one being restored
+        private final String bakedName; //null unless loaded from a baked container
+        private final Image image; //null unless uploaded uncompressed
+        private final CompressedImage compressed; //null unless compressed
+        private final Exception error; //null unless loading failed
+
+        //Constructor
+        DecodedImage(Texture texture, String fileName, boolean restore, String bakedName, Image image,
+                     CompressedImage compressed, Exception error) {
+            this.texture = texture;
+            this.fileName = fileName;
+            this.restore = restore;
+            this.bakedName = bakedName;
+            this.image = image;
+            this.compressed = compressed;
+            this.error = error;
+        }
+
+        //Free Method
+        private void free() {
+            if (this.image != null) this.image.free();
+            if (this.compressed != null) this.compressed.free();
+        }
+    }
+}
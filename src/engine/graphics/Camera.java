@@ -7,21 +7,25 @@ public class Camera {
     //Data
     private final Vector3f position;
     private final Vector3f rotation;
+    private final Vector3f movement; //world space displacement from movePosition since the last velocity update
+    private final Vector3f velocity; //world space units per second
 
     //Constructors
     public Camera() { //default
-        this.position = new Vector3f(0, 0, 0);
-        this.rotation = new Vector3f(0, 0, 0);
+        this(new Vector3f(0, 0, 0), new Vector3f(0, 0, 0));
     }
 
     public Camera(Vector3f position, Vector3f rotation) { //parameterized
          this.position = position;
          this.rotation = rotation;
+         this.movement = new Vector3f();
+         this.velocity = new Vector3f();
     }
 
     //Accessors
     public Vector3f getPosition() { return this.position; }
     public Vector3f getRotation() { return this.rotation; }
+    public Vector3f getVelocity() { return this.velocity; }
 
     //Mutators
     public void setPosition(Vector3f newPos) { this.setPosition(newPos.x, newPos.y, newPos.z); }
@@ -40,15 +44,24 @@ public class Camera {
 
     //Other Methods
     public void movePosition(float offsetX, float offsetY, float offsetZ) {
+        float dx = 0, dz = 0;
         if (offsetZ != 0) {
-            this.position.x += (float)Math.sin(Math.toRadians(this.rotation.y)) * -1.0f * offsetZ;
-            this.position.z += (float)Math.cos(Math.toRadians(this.rotation.y)) * offsetZ;
+            dx += (float)Math.sin(Math.toRadians(this.rotation.y)) * -1.0f * offsetZ;
+            dz += (float)Math.cos(Math.toRadians(this.rotation.y)) * offsetZ;
         }
         if (offsetX != 0) {
-            this.position.x += (float)Math.sin(Math.toRadians(this.rotation.y - 90)) * -1.0f * offsetX;
-            this.position.z += (float)Math.cos(Math.toRadians(this.rotation.y - 90)) * offsetX;
+            dx += (float)Math.sin(Math.toRadians(this.rotation.y - 90)) * -1.0f * offsetX;
+            dz += (float)Math.cos(Math.toRadians(this.rotation.y - 90)) * offsetX;
         }
-        this.position.y += offsetY;
+        this.position.add(dx, offsetY, dz);
+        this.movement.add(dx, offsetY, dz);
+    }
+
+    //Velocity Update Method
+    //turns the movement accumulated by movePosition over the given interval (in seconds) into a velocity
+    public void updateVelocity(float interval) {
+        if (interval > 0) this.velocity.set(this.movement).div(interval);
+        this.movement.zero();
     }
 
     public void moveRotation(float offsetX, float offsetY, float offsetZ) {
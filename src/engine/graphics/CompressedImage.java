@@ -0,0 +1,43 @@
+package engine.graphics;
+
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+
+//a block compressed image with its mip chain, as encoded by a texture compressor. each level is a row-major run of
+//4x4 texel blocks, partial blocks at the right and bottom edges included
+public class CompressedImage {
+
+    //Data
+    private final int format; //one of the texture compressor's formats
+    private final int width, height; //of the base level
+    private ByteBuffer[] levels;
+
+    //Constructor
+    public CompressedImage(int format, int width, int height, ByteBuffer[] levels) {
+        this.format = format;
+        this.width = width;
+        this.height = height;
+        this.levels = levels;
+    }
+
+    //Accessors
+    public int getFormat() { return this.format; }
+    public int getWidth() { return this.width; }
+    public int getHeight() { return this.height; }
+    public int getLevelCount() { return this.levels.length; }
+    public ByteBuffer getLevel(int level) { return this.levels[level]; }
+    public long getSize() { //bytes of every level
+        long size = 0;
+        for (ByteBuffer level : this.levels) size += level.remaining();
+        return size;
+    }
+
+    //Free Method
+    //frees levels allocated by the texture compressor
+    public void free() {
+        if (this.levels == null) return;
+        for (ByteBuffer level : this.levels) MemoryUtil.memFree(level);
+        this.levels = null;
+    }
+}
@@ -1,26 +1,48 @@
 package engine.graphics;
 
-import javax.imageio.ImageIO;
+import org.lwjgl.system.MemoryUtil;
+
 import java.awt.*;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayOutputStream;
+import java.awt.image.DataBufferInt;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
-import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
 import java.util.HashMap;
 import java.util.Map;
 
+//a texture holding every glyph of a font's charset, packed row by row into a roughly square atlas and uploaded
+//straight from the rendered pixels. built atlases are cached on disk by font and charset, so later runs only map the
+//cached file and upload it
 public class FontTexture {
 
     //Static Data
-    private static final String IMAGE_FORMAT = "png";
+    private static final int PADDING = 2; //texels between glyphs, so that filtering does not bleed between them
+    private static final int CACHE_MAGIC = 0x544E4F46; //"FONT"
+    private static final int CACHE_VERSION = 1;
+    private static final int CACHE_HEADER_SIZE = 24;
+    private static final int MAX_SEQUENCE_LENGTH = 3; //longest byte sequence decoded - enough for any character a char holds
+    private static Path cacheDirectory = Paths.get(System.getProperty("java.io.tmpdir"), "font-atlases"); //null to disable
 
     //Instance Data
     private final Font font;
     private final String charSetName;
     private final Map<Character, CharInfo> charMap;
     private Texture texture;
-    private int width, height;
+    private int width, height; //of the atlas
+    private int lineHeight; //of every glyph
+    private boolean cached; //whether the atlas was read from the disk cache
+    private float buildTime; //milliseconds taken to build or read and upload the atlas
 
     //Constructor
     public FontTexture(Font font, String charSetName) throws  Exception {
@@ -32,96 +54,207 @@ public class FontTexture {
 
     //Texture Building Method
     private void buildTexture() throws Exception {
+        long start = System.nanoTime();
+
+        //read the cached atlas, or build and cache it
+        Path cacheFile = cacheDirectory == null ? null : cacheDirectory.resolve(this.getCacheName());
+        ByteBuffer pixels = null;
+        if (cacheFile != null && Files.exists(cacheFile)) {
+            try {
+                pixels = this.readCache(cacheFile);
+                this.cached = true;
+            } catch (Exception e) {
+                System.err.println("Ignoring font atlas cache [" + cacheFile + "]: " + e.getMessage());
+                this.charMap.clear();
+            }
+        }
+        if (pixels == null) {
+            pixels = this.buildAtlas();
+            try {
+                if (cacheFile != null) this.writeCache(cacheFile, pixels);
+            } catch (Exception e) {
+                System.err.println("Unable to cache font atlas [" + cacheFile + "]: " + e.getMessage());
+            }
+        }
+
+        //upload the raw pixels (cached pixels are mapped and need no freeing)
+        try {
+            this.texture = new Texture(this.width, this.height, new ByteBuffer[]{ pixels });
+        } finally {
+            if (!this.cached) MemoryUtil.memFree(pixels);
+        }
+        this.buildTime = (System.nanoTime() - start) / 1_000_000f;
+    }
 
-        //get font metrics for each character for the selected font by using image
+    //Atlas Building Method
+    //measures, packs and draws every glyph, returning the atlas as RGBA pixels
+    private ByteBuffer buildAtlas() throws Exception {
+
+        //measure glyphs
+        char[] chars = getCharsetChars(this.charSetName);
         BufferedImage image = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
         Graphics2D g2D = image.createGraphics();
         g2D.setFont(this.font);
         FontMetrics fontMetrics = g2D.getFontMetrics();
-
-        //get characters and initialize width and height
-        String allChars = getAllAvailableChars();
-        this.width = this.height = 0;
-
-        int ww = fontMetrics.charWidth(2);
-
-        //loop through each character
-        for (char c : allChars.toCharArray()) {
-
-            //get size for each character and update global image size
-            CharInfo charInfo = new CharInfo(width, fontMetrics.charWidth(c));
-            this.charMap.put(c, charInfo);
-            this.width += charInfo.getWidth();
-            this.height = Math.max(this.height, fontMetrics.getHeight());
+        g2D.dispose();
+        this.lineHeight = fontMetrics.getHeight();
+        int[] widths = new int[chars.length];
+        long area = 0;
+        for (int i = 0; i < chars.length; i++) {
+            widths[i] = fontMetrics.charWidth(chars[i]);
+            area += (long)(widths[i] + PADDING) * (this.lineHeight + PADDING);
         }
 
-        //dispose
-        g2D.dispose();
+        //pack glyphs into rows of a power of two wide atlas, about as high as it is wide
+        this.width = Integer.highestOneBit((int)Math.ceil(Math.sqrt(area)) * 2 - 1);
+        for (int width : widths) this.width = Math.max(this.width, width + PADDING);
+        int x = 0, y = 0;
+        int[] xs = new int[chars.length], ys = new int[chars.length];
+        for (int i = 0; i < chars.length; i++) {
+            if (x + widths[i] + PADDING > this.width) {
+                x = 0;
+                y += this.lineHeight + PADDING;
+            }
+            xs[i] = x;
+            ys[i] = y;
+            this.charMap.put(chars[i], new CharInfo(x, y, widths[i]));
+            x += widths[i] + PADDING;
+        }
+        this.height = y + this.lineHeight;
 
-        //create image associated with the charset
-        //this image will not have a power of two, but that's ok for most modern cards
-        //and can be circumvented by adding extra space
-        image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        //draw glyphs
+        image = new BufferedImage(this.width, this.height, BufferedImage.TYPE_INT_ARGB);
         g2D = image.createGraphics();
         g2D.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
         g2D.setFont(this.font);
-        fontMetrics = g2D.getFontMetrics();
         g2D.setColor(Color.WHITE);
-        g2D.drawString(allChars, 0, fontMetrics.getAscent());
+        for (int i = 0; i < chars.length; i++) g2D.drawChars(chars, i, 1, xs[i], ys[i] + fontMetrics.getAscent());
         g2D.dispose();
 
-        //flush image into a byte buffer
-        ByteBuffer buffer = null;
-        try (ByteArrayOutputStream out = new ByteArrayOutputStream()) {
-            ImageIO.write(image, IMAGE_FORMAT, out);
-            out.flush();
-            byte[] data = out.toByteArray();
-            buffer = ByteBuffer.allocateDirect(data.length);
-            buffer.put(data, 0, data.length);
-            buffer.flip();
-        }
+        //convert ARGB pixels to RGBA bytes
+        int[] argb = ((DataBufferInt)image.getRaster().getDataBuffer()).getData();
+        ByteBuffer pixels = MemoryUtil.memAlloc(argb.length * 4).order(ByteOrder.BIG_ENDIAN);
+        for (int i = 0; i < argb.length; i++) pixels.putInt(i * 4, (argb[i] << 8) | (argb[i] >>> 24));
+        return pixels;
+    }
 
-        //create texture
-        this.texture = new Texture(buffer);
+    //Charset Methods
+    //returns the characters a charset can encode, in code point order. they are enumerated by decoding the charset's own
+    //byte sequences - every byte value, then only the sequences extending a byte that begins a longer character - so
+    //that a multi-byte charset costs a walk of its code space rather than a scan of the basic multilingual plane
+    private static char[] getCharsetChars(String charSetName) {
+        Charset charset = Charset.forName(charSetName);
+        CharsetDecoder decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        int maxLength = Math.min(MAX_SEQUENCE_LENGTH, (int)Math.ceil(charset.newEncoder().maxBytesPerChar()));
+        BitSet chars = new BitSet(Character.MAX_VALUE + 1);
+        decodeSequences(decoder, ByteBuffer.allocate(maxLength), 0, maxLength, CharBuffer.allocate(2), chars);
+        char[] result = new char[chars.cardinality()];
+        for (int c = chars.nextSetBit(0), i = 0; c >= 0; c = chars.nextSetBit(c + 1)) result[i++] = (char)c;
+        return result;
     }
 
-    //Other Methods
-    private String getAllAvailableChars() {
+    //decodes every byte following the given prefix, recording each single character decoded and descending into the
+    //sequences that decode to nothing yet (incomplete characters), up to the given length
+    private static void decodeSequences(CharsetDecoder decoder, ByteBuffer sequence, int prefixLength, int maxLength,
+                                        CharBuffer decoded, BitSet chars) {
+        for (int b = 0; b < 256; b++) {
+            sequence.limit(prefixLength + 1).position(0);
+            sequence.put(prefixLength, (byte)b);
+            decoded.clear();
+            decoder.reset();
+            if (decoder.decode(sequence, decoded, false).isError()) continue; //malformed or unmapped
+            decoded.flip();
+            if (decoded.remaining() == 1 && !sequence.hasRemaining()) {
+                if (!Character.isSurrogate(decoded.get(0))) chars.set(decoded.get(0));
+            } else if (decoded.remaining() == 0 && prefixLength + 1 < maxLength) {
+                decodeSequences(decoder, sequence, prefixLength + 1, maxLength, decoded, chars);
+            }
+        }
+    }
 
-        //create charset encoder and stringbuilder for result
-        CharsetEncoder ce = Charset.forName(this.charSetName).newEncoder();
-        StringBuilder result = new StringBuilder();
+    //Cache Methods
+    //names the cached atlas by font, size, style and charset
+    private String getCacheName() {
+        String name = this.font.getFontName() + "-" + this.font.getStyle() + "-" + this.font.getSize2D() + "-" + this.charSetName;
+        return name.replaceAll("[^A-Za-z0-9.-]", "_") + ".font";
+    }
 
-        //loop through each character
-        for (char c = 0; c < Character.MAX_VALUE; c++) {
-            if (ce.canEncode(c)) result.append(c);
+    //maps a cached atlas - a little endian header (magic, version, width, height, line height and glyph count), each
+    //glyph's character, x, y and width, then the RGBA pixels - returning its pixels
+    private ByteBuffer readCache(Path cacheFile) throws Exception {
+        ByteBuffer file;
+        try (FileChannel channel = FileChannel.open(cacheFile, StandardOpenOption.READ)) {
+            file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        if (file.limit() < CACHE_HEADER_SIZE || file.getInt(0) != CACHE_MAGIC || file.getInt(4) != CACHE_VERSION)
+            throw new Exception("not a font atlas of version " + CACHE_VERSION);
+        this.width = file.getInt(8);
+        this.height = file.getInt(12);
+        this.lineHeight = file.getInt(16);
+        int glyphCount = file.getInt(20);
+        int pixelOffset = CACHE_HEADER_SIZE + glyphCount * 16;
+        if (this.width < 1 || this.height < 1 || glyphCount < 0 || file.limit() != pixelOffset + this.width * this.height * 4)
+            throw new Exception("corrupt font atlas");
+        for (int i = 0, p = CACHE_HEADER_SIZE; i < glyphCount; i++, p += 16) {
+            this.charMap.put((char)file.getInt(p), new CharInfo(file.getInt(p + 4), file.getInt(p + 8), file.getInt(p + 12)));
         }
+        file.position(pixelOffset);
+        return file.slice();
+    }
 
-        //return string
-        return result.toString();
+    //writes the atlas beside a temporary name, then moves it into place so that readers never see a partial file
+    private void writeCache(Path cacheFile, ByteBuffer pixels) throws Exception {
+        Files.createDirectories(cacheFile.getParent());
+        ByteBuffer header = ByteBuffer.allocate(CACHE_HEADER_SIZE + this.charMap.size() * 16).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(CACHE_MAGIC).putInt(CACHE_VERSION).putInt(this.width).putInt(this.height).putInt(this.lineHeight)
+                .putInt(this.charMap.size());
+        for (Map.Entry<Character, CharInfo> entry : this.charMap.entrySet()) {
+            CharInfo charInfo = entry.getValue();
+            header.putInt(entry.getKey()).putInt(charInfo.getStartX()).putInt(charInfo.getStartY()).putInt(charInfo.getWidth());
+        }
+        header.flip();
+        Path temporary = cacheFile.resolveSibling(cacheFile.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer body = pixels.duplicate();
+            body.clear();
+            while (header.hasRemaining()) channel.write(header);
+            while (body.hasRemaining()) channel.write(body);
+        }
+        Files.move(temporary, cacheFile, StandardCopyOption.REPLACE_EXISTING);
     }
 
+    //Static Mutator
+    //sets the directory built atlases are cached in (null to always build them)
+    public static void setCacheDirectory(Path directory) { cacheDirectory = directory; }
+
     //Accessors
-    public int getWidth() { return this.width; }
-    public int getHeight() { return this.height; }
+    public int getWidth() { return this.width; } //of the atlas
+    public int getHeight() { return this.height; } //of the atlas
+    public int getLineHeight() { return this.lineHeight; }
     public Texture getTexture() { return this.texture; }
     public CharInfo getCharInfo(char c) { return this.charMap.get(c); }
+    public boolean isCached() { return this.cached; }
+    public float getBuildTime() { return this.buildTime; } //in milliseconds
 
     //CharInfo Inner Class
     public static class CharInfo {
 
         //Data
-        private final int startX;
+        private final int startX, startY; //top-left of the glyph within the atlas
         private final int width;
 
         //Constructor
-        public CharInfo(int startX, int width) {
+        public CharInfo(int startX, int startY, int width) {
             this.startX = startX;
+            this.startY = startY;
             this.width = width;
         }
 
         //Accessors
         public int getStartX() { return this.startX; }
+        public int getStartY() { return this.startY; }
         public int getWidth() { return this.width; }
     }
-}
\ No newline at end of file
+}
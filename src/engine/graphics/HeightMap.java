@@ -1,190 +1,420 @@
 package engine.graphics;
 
-import engine.Utils;
-import org.joml.Vector3f;
-import org.joml.Vector4f;
-import org.lwjgl.system.MemoryStack;
+import engine.graphics.terrain.RawHeightField;
+import engine.graphics.terrain.TerrainGenerator;
 
-import java.io.File;
-import java.net.URL;
 import java.nio.ByteBuffer;
-import java.nio.IntBuffer;
-import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.List;
-
-import static org.lwjgl.stb.STBImage.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
 
 public class HeightMap {
 
     //Static Data
-    private static final int MAX_COLOR = 255 * 255 * 255;
+    private static final int MAX_COLOR = 0xFFFFFF; //24-bit rgb - alpha is ignored
+    private static final int MAX_QUANTIZED = 0xFFFF;
+    private static final int ROWS_PER_TASK = 32;
     public static final float STARTX = -0.5f;
     public static final float STARTZ = -0.5f;
 
     //Instance Data
     private final float minY, maxY;
-    private final Mesh mesh;
-    private float[][] heights;
+    private final int rows, cols;
+    private final int textureInc;
+    private Mesh mesh; //null until uploaded
+    private final float[] heights; //flat row-major heights (null if quantized)
+    private final short[] quantizedHeights; //flat row-major 16-bit heights (null if not quantized)
+    private float quantizedMin, quantizedMax; //range of the heights present, which quantized heights span
+    private final RawHeightField heightField; //mapped heights sampled directly (null unless field backed)
+    private final int fieldRow, fieldCol, fieldStep; //region of the height field covered by this height map
+    private float[] positions, textureCoordinates, normals; //mesh data awaiting upload (null once uploaded)
+    private int[] indices;
+    private float[] occlusion; //baked per-vertex ambient occlusion (null until baked)
+    private long occlusionBakeTime; //in nanoseconds
+    private final boolean generated; //true if the heights are procedural
+    private final int buildThreads;
+    private final long buildTime; //in nanoseconds
+
+    //Constructors
+    public HeightMap(float minY, float maxY, ByteBuffer heightMapImage, int width, int height, String textureFile, int textureInc) throws Exception {
+        this(minY, maxY, heightMapImage, width, height, textureFile, textureInc, false, ForkJoinPool.getCommonPoolParallelism());
+    }
 
-    //Constructor
-    public HeightMap(float minY, float maxY, ByteBuffer heightMapImage, int width, int height, String textureFile,  int textureInc) throws Exception {
+    public HeightMap(float minY, float maxY, ByteBuffer heightMapImage, int width, int height, String textureFile,
+                     int textureInc, boolean quantize, int threads) throws Exception {
+        this(minY, maxY, heightMapImage, width, height, textureInc, quantize, threads);
+        this.upload(new Material(TextureCache.acquire(textureFile), 0.0f));
+    }
 
-        //set min and max y values
-        this.minY = minY;
-        this.maxY = maxY;
+    public HeightMap(float minY, float maxY, ByteBuffer heightMapImage, int width, int height,
+                     int textureInc, boolean quantize, int threads) { //deferred constructor - does not touch OpenGL
+        this(minY, maxY, heightMapImage, null, null, 0, 0, 1, width, height, textureInc, quantize, threads);
+    }
 
-        //create height array
-        this.heights = new float[height][width];
+    public HeightMap(float minY, float maxY, TerrainGenerator generator, int width, int height, String textureFile,
+                     int textureInc, boolean quantize, int threads) throws Exception {
+        this(minY, maxY, generator, width, height, textureInc, quantize, threads);
+        this.upload(new Material(TextureCache.acquire(textureFile), 0.0f));
+    }
 
-        //load heightmap texture and calculate x/z increments
-        Texture texture = new Texture(textureFile);
-        float incx = HeightMap.getXLength() / (width - 1);
-        float incz = HeightMap.getZLength() / (height - 1);
+    public HeightMap(float minY, float maxY, TerrainGenerator generator, int width, int height, int textureInc,
+                     boolean quantize, int threads) { //procedural deferred constructor - does not touch OpenGL
+        this(minY, maxY, null, generator, null, 0, 0, 1, width, height, textureInc, quantize, threads);
+    }
+
+    public HeightMap(RawHeightField heightField, int fromRow, int fromCol, int step, int width, int height,
+                     int textureInc, int threads) { //height field deferred constructor - heights are not copied
+        this(heightField.getMinY(), heightField.getMaxY(), null, null, heightField, fromRow, fromCol, step, width, height,
+                textureInc, false, threads);
+    }
 
-        //lists for mesh construction
-        List<Float> positions = new ArrayList<>();
-        List<Float> textureCoordinates = new ArrayList<>();
-        List<Integer> indices = new ArrayList<>();
-
-        //iterate over the image, creating a vertex per each pixel, setting up the texture coordinates and indices
-        for (int row = 0; row < height; row++) {
-            for (int col = 0; col < width; col++) {
-
-                //create vertex
-                positions.add(STARTX + col * incx); //x
-                float currentHeight = this.calculateHeight(col, row, width, heightMapImage);
-                positions.add(currentHeight); //y
-                this.heights[row][col] = currentHeight;
-                positions.add(STARTZ + row * incz); //z
-
-                //set texture coordinates
-                textureCoordinates.add((float)textureInc * (float)col / (float)width);
-                textureCoordinates.add((float)textureInc * (float)row / (float)height);
-
-                //create indices
-                if (col < width - 1 && row < height - 1) {
-                    int topLeft = row * width + col;
-                    int bottomLeft = (row + 1) * width + col;
-                    int bottomRight = (row + 1) * width + col + 1;
-                    int topRight = row * width + col + 1;
-
-                    indices.add(topLeft);
-                    indices.add(bottomLeft);
-                    indices.add(topRight);
-                    indices.add(topRight);
-                    indices.add(bottomLeft);
-                    indices.add(bottomRight);
+    private HeightMap(float minY, float maxY, ByteBuffer heightMapImage, TerrainGenerator generator, RawHeightField heightField,
+                      int fieldRow, int fieldCol, int fieldStep, int width, int height, int textureInc, boolean quantize, int threads) {
+
+        //set min and max y values and size
+        long start = System.nanoTime();
+        this.minY = minY;
+        this.maxY = maxY;
+        this.rows = height;
+        this.cols = width;
+        this.textureInc = textureInc;
+        this.buildThreads = threads;
+        this.heightField = heightField;
+        this.fieldRow = fieldRow;
+        this.fieldCol = fieldCol;
+        this.fieldStep = fieldStep;
+        this.generated = generator != null;
+
+        //create flat height storage (unless sampling a height field) and primitive mesh arrays
+        boolean store = heightField == null;
+        this.heights = store && !quantize ? new float[width * height] : null;
+        this.quantizedHeights = store && quantize ? new short[width * height] : null;
+        this.positions = new float[width * height * 3];
+        this.textureCoordinates = new float[width * height * 2];
+        this.normals = new float[width * height * 3];
+        this.indices = new int[(width - 1) * (height - 1) * 6];
+
+        //fill heights, then the mesh (normals need the neighbouring rows' heights). quantized heights are found in a
+        //first pass, which finds each row's range, and stored in a second pass against the range of the whole map
+        float[] rowMin = quantize ? new float[height] : null, rowMax = quantize ? new float[height] : null;
+        IntConsumer heightFiller = row -> this.fillHeights(row, heightMapImage, rowMin, rowMax);
+        IntConsumer heightQuantizer = row -> this.quantizeHeights(row, heightMapImage);
+        IntConsumer meshFiller = row -> this.fillMeshRow(row, textureInc, this.positions, this.textureCoordinates, this.normals, this.indices);
+        ForkJoinPool pool = threads <= 1 ? null : //single threaded builds (e.g. on a loader thread) skip the pool
+                (threads == ForkJoinPool.getCommonPoolParallelism() ? ForkJoinPool.commonPool() : new ForkJoinPool(threads));
+        try {
+            if (generator != null) this.fillGeneratedHeights(generator, pool);
+            else if (store) {
+                runRows(pool, height, heightFiller);
+                if (quantize) {
+                    this.setQuantizedRange(rowMin, rowMax);
+                    runRows(pool, height, heightQuantizer);
                 }
             }
+            runRows(pool, height, meshFiller);
+        } finally {
+            if (pool != null && pool != ForkJoinPool.commonPool()) pool.shutdown();
         }
+        this.buildTime = System.nanoTime() - start;
+    }
 
-        //convert to arrays
-        float[] posArr = Utils.listToArray(positions);
-        float[] textureCoordinatesArr = Utils.listToArray(textureCoordinates);
-        float[] normalsArr = calculateNormals(posArr, width, height);
-        int[] indicesArr = indices.stream().mapToInt(i -> i).toArray();
-
-        //create mesh
-        this.mesh = new Mesh(posArr, textureCoordinatesArr, normalsArr, indicesArr);
-        Material material = new Material(texture, 0.0f);
+    //Upload Method
+    //creates the mesh from the built data - must be called on the OpenGL thread
+    public void upload(Material material) {
+        if (this.mesh != null) return;
+        this.mesh = new Mesh(this.positions, this.textureCoordinates, this.normals, this.indices);
         this.mesh.setMaterial(material);
+        if (this.occlusion != null) this.mesh.setOcclusion(this.occlusion);
+        this.positions = this.textureCoordinates = this.normals = null;
+        this.indices = null;
+    }
+
+    //Occlusion Baking Method
+    //bakes horizon-based ambient occlusion per vertex. along each direction the steepest terrain elevation within the
+    //radius (in cells) is found, and the direction occludes by how far that horizon rises above the vertex's tangent
+    //plane (as a difference of sines). rows are baked in parallel. the result becomes a vertex attribute of the mesh -
+    //when already uploaded, it must be called on the OpenGL thread
+    public void bakeOcclusion(int directions, int radius, int threads) {
+        long start = System.nanoTime();
+        float[] occlusion = new float[this.rows * this.cols];
+        float[] dirX = new float[directions], dirZ = new float[directions];
+        for (int d = 0; d < directions; d++) {
+            double angle = d * Math.PI * 2 / directions;
+            dirX[d] = (float)Math.cos(angle);
+            dirZ[d] = (float)Math.sin(angle);
+        }
+        float incx = HeightMap.getXLength() / (this.cols - 1);
+        float incz = HeightMap.getZLength() / (this.rows - 1);
+        IntConsumer rowBaker = row -> {
+            for (int col = 0; col < this.cols; col++) {
+
+                //slope of the surface from central differences
+                float h0 = this.getHeight(row, col), sum = 0;
+                int left = Math.max(col - 1, 0), right = Math.min(col + 1, this.cols - 1);
+                int up = Math.max(row - 1, 0), down = Math.min(row + 1, this.rows - 1);
+                float slopeX = (this.getHeight(row, right) - this.getHeight(row, left)) / ((right - left) * incx);
+                float slopeZ = (this.getHeight(down, col) - this.getHeight(up, col)) / ((down - up) * incz);
+                for (int d = 0; d < directions; d++) {
+
+                    //march outward a cell at a time, keeping the steepest slope above the tangent
+                    float tangent = slopeX * dirX[d] + slopeZ * dirZ[d], horizon = tangent;
+                    for (int step = 1; step <= radius; step++) {
+                        int r = row + Math.round(dirZ[d] * step), c = col + Math.round(dirX[d] * step);
+                        if (r < 0 || r >= this.rows || c < 0 || c >= this.cols) break;
+                        float dx = (c - col) * incx, dz = (r - row) * incz;
+                        float slope = (this.getHeight(r, c) - h0) / (float)Math.sqrt(dx * dx + dz * dz);
+                        if (slope > horizon) horizon = slope;
+                    }
+                    sum += sine(horizon) - sine(tangent);
+                }
+                occlusion[row * this.cols + col] = Math.min(1, sum / directions);
+            }
+        };
+        ForkJoinPool pool = threads <= 1 ? null :
+                (threads == ForkJoinPool.getCommonPoolParallelism() ? ForkJoinPool.commonPool() : new ForkJoinPool(threads));
+        try {
+            runRows(pool, this.rows, rowBaker);
+        } finally {
+            if (pool != null && pool != ForkJoinPool.commonPool()) pool.shutdown();
+        }
+        this.occlusion = occlusion;
+        if (this.mesh != null) this.mesh.setOcclusion(occlusion);
+        this.occlusionBakeTime = System.nanoTime() - start;
     }
 
+    //sine of the angle of a slope
+    private static float sine(float slope) { return slope / (float)Math.sqrt(1 + slope * slope); }
+
     //Accessors
     public static float getXLength() { return 2 * Math.abs(-STARTX); }
     public static float getZLength() { return 2 * Math.abs(-STARTZ); }
     public Mesh getMesh() { return this.mesh; }
+    public boolean isUploaded() { return this.mesh != null; }
+    public int getRows() { return this.rows; }
+    public int getCols() { return this.cols; }
+    public int getTextureInc() { return this.textureInc; }
+    public float getMinY() { return this.minY; }
+    public float getMaxY() { return this.maxY; }
+    public boolean isQuantized() { return this.quantizedHeights != null; }
+    public boolean isFieldBacked() { return this.heightField != null; }
+    public boolean isGenerated() { return this.generated; }
+    public boolean hasOcclusion() { return this.occlusion != null; }
+    public float getOcclusion(int row, int col) { return this.occlusion != null ? this.occlusion[row * this.cols + col] : 0; }
+    public float getOcclusionBakeTime() { return this.occlusionBakeTime / 1000_000.0f; } //in milliseconds
+    public int getBuildThreads() { return this.buildThreads; }
+    public float getBuildTime() { return this.buildTime / 1000_000.0f; } //in milliseconds
+    public long getMemorySize() { //approximate size in bytes of the heights and the mesh's vertex data
+        long vertices = (long)this.rows * this.cols;
+        long indexCount = (long)(this.rows - 1) * (this.cols - 1) * 6;
+        long heightBytes = this.heightField != null ? 0 : vertices * (this.isQuantized() ? 2 : 4);
+        long occlusionBytes = this.occlusion != null ? vertices * 4 : 0;
+        return heightBytes + occlusionBytes + vertices * (3 + 2 + 3) * 4 + indexCount * 4;
+    }
+    public String getBuildReport() {
+        return "HeightMap " + this.cols + "x" + this.rows + (this.isQuantized() ? " (16-bit)" : "") + (this.isFieldBacked() ? " (mapped)" : "") +
+                (this.isGenerated() ? " (generated)" : "") + " built in " +
+                this.getBuildTime() + "ms using " + this.buildThreads + " threads";
+    }
     public float getHeight(int row, int col) {
-        if (row >= 0 && row < this.heights.length) {
-            if (col >= 0 && col < this.heights[row].length) return this.heights[row][col];
+        if (row >= 0 && row < this.rows && col >= 0 && col < this.cols) {
+            if (this.heightField != null) return this.heightField.getHeight(this.fieldRow + row * this.fieldStep, this.fieldCol + col * this.fieldStep);
+            int i = row * this.cols + col;
+            if (this.heights != null) return this.heights[i];
+            return this.quantizedMin + (this.quantizedMax - this.quantizedMin) * ((this.quantizedHeights[i] & MAX_QUANTIZED) / (float)MAX_QUANTIZED);
         }
         return 0;
     }
 
+    //Height Filling Methods
+    //calculates and stores the heights for a single row - when quantizing, only finds the row's range
+    private void fillHeights(int row, ByteBuffer heightMapImage, float[] rowMin, float[] rowMax) {
+        float min = Float.MAX_VALUE, max = -Float.MAX_VALUE;
+        for (int col = 0; col < this.cols; col++) {
+            float currentHeight = this.calculateHeight(col, row, this.cols, heightMapImage);
+            if (this.heights != null) this.heights[row * this.cols + col] = currentHeight;
+            min = Math.min(min, currentHeight);
+            max = Math.max(max, currentHeight);
+        }
+        if (rowMin != null) {
+            rowMin[row] = min;
+            rowMax[row] = max;
+        }
+    }
+
+    //stores a row's heights as 16-bit values spanning the range of the heights present
+    private void quantizeHeights(int row, ByteBuffer heightMapImage) {
+        for (int col = 0; col < this.cols; col++) {
+            this.quantizedHeights[row * this.cols + col] = this.quantize(this.calculateHeight(col, row, this.cols, heightMapImage));
+        }
+    }
+
+    private short quantize(float height) {
+        float range = this.quantizedMax - this.quantizedMin;
+        float t = range != 0 ? (height - this.quantizedMin) / range : 0;
+        return (short)Math.round(Math.max(0, Math.min(1, t)) * MAX_QUANTIZED);
+    }
+
+    private void setQuantizedRange(float[] rowMin, float[] rowMax) {
+        this.quantizedMin = Float.MAX_VALUE;
+        this.quantizedMax = -Float.MAX_VALUE;
+        for (int row = 0; row < rowMin.length; row++) {
+            this.quantizedMin = Math.min(this.quantizedMin, rowMin[row]);
+            this.quantizedMax = Math.max(this.quantizedMax, rowMax[row]);
+        }
+    }
+
+    //Generated Height Filling Method
+    //generates normalized heights straight into the float storage (or a scratch array when quantizing) and scales them
+    private void fillGeneratedHeights(TerrainGenerator generator, ForkJoinPool pool) {
+        float[] normalized = this.heights != null ? this.heights : new float[this.rows * this.cols];
+        generator.generate(normalized, this.cols, this.rows, pool);
+        float range = this.maxY - this.minY;
+        float[] rowMin = new float[this.rows], rowMax = new float[this.rows];
+        runRows(pool, this.rows, row -> {
+            float min = Float.MAX_VALUE, max = -Float.MAX_VALUE;
+            for (int i = row * this.cols; i < (row + 1) * this.cols; i++) {
+                normalized[i] = this.minY + range * Math.max(0, Math.min(1, normalized[i]));
+                min = Math.min(min, normalized[i]);
+                max = Math.max(max, normalized[i]);
+            }
+            rowMin[row] = min;
+            rowMax[row] = max;
+        });
+        if (this.quantizedHeights == null) return;
+        this.setQuantizedRange(rowMin, rowMax);
+        runRows(pool, this.rows, row -> {
+            for (int i = row * this.cols; i < (row + 1) * this.cols; i++) this.quantizedHeights[i] = this.quantize(normalized[i]);
+        });
+    }
+
+    //Mesh Row Filling Method
+    //creates a vertex per each pixel of a single row, setting up the texture coordinates, normals and indices
+    private void fillMeshRow(int row, int textureInc, float[] positions, float[] textureCoordinates, float[] normals, int[] indices) {
+        int width = this.cols;
+        int height = this.rows;
+        float incx = HeightMap.getXLength() / (width - 1);
+        float incz = HeightMap.getZLength() / (height - 1);
+        for (int col = 0; col < width; col++) {
+
+            //create vertex
+            int v = row * width + col;
+            positions[v * 3] = STARTX + col * incx; //x
+            positions[v * 3 + 1] = this.getHeight(row, col); //y
+            positions[v * 3 + 2] = STARTZ + row * incz; //z
+
+            //set texture coordinates
+            textureCoordinates[v * 2] = (float)textureInc * (float)col / (float)width;
+            textureCoordinates[v * 2 + 1] = (float)textureInc * (float)row / (float)height;
+
+            //set normal
+            this.calculateNormal(row, col, incx, incz, normals, v * 3);
+
+            //create indices
+            if (col < width - 1 && row < height - 1) {
+                int topLeft = row * width + col;
+                int bottomLeft = (row + 1) * width + col;
+                int bottomRight = (row + 1) * width + col + 1;
+                int topRight = row * width + col + 1;
+
+                int i = (row * (width - 1) + col) * 6;
+                indices[i] = topLeft;
+                indices[i + 1] = bottomLeft;
+                indices[i + 2] = topRight;
+                indices[i + 3] = topRight;
+                indices[i + 4] = bottomLeft;
+                indices[i + 5] = bottomRight;
+            }
+        }
+    }
+
     //Gets the height for a single pixel of a heightmap
     private float calculateHeight(int x, int z, int width, ByteBuffer buf) {
         byte r = buf.get(x * 4 + 0 + z * 4 * width);
-        byte g = buf.get(x * 4 + 1 * z * 4 * width);
+        byte g = buf.get(x * 4 + 1 + z * 4 * width);
         byte b = buf.get(x * 4 + 2 + z * 4 * width);
         byte a = buf.get(x * 4 + 3 + z * 4 * width);
         int argb = ((0xFF & a) << 24) | ((0xFF & r) << 16) | ((0xFF & g) << 8) | (0xFF & b);
-        return this.minY + Math.abs(this.maxY - this.minY) * ((float) argb / (float) MAX_COLOR);
+        return this.minY + Math.abs(this.maxY - this.minY) * ((float)(argb & MAX_COLOR) / (float)MAX_COLOR);
     }
 
     //Normal Calculation Method
-    private float[] calculateNormals(float[] posArr, int width, int height) {
-
-        //create vectors and lists
-        Vector3f v0 = new Vector3f();
-        Vector3f v1 = new Vector3f();
-        Vector3f v2 = new Vector3f();
-        Vector3f v3 = new Vector3f();
-        Vector3f v4 = new Vector3f();
-        Vector3f v12 = new Vector3f();
-        Vector3f v23 = new Vector3f();
-        Vector3f v34 = new Vector3f();
-        Vector3f v41 = new Vector3f();
-        List<Float> normals = new ArrayList<>();
-        Vector3f normal = new Vector3f();
-
-        //calculate normals
-        for (int row = 0; row < height; row++) {
-            for (int col = 0; col < width; col++) {
-                if (row > 0 && row < height - 1 && col > 0 && col < width - 1) {
-                    int i0 = row * width * 3 + col * 3;
-                    v0.x = posArr[i0];
-                    v0.y = posArr[i0 + 1];
-                    v0.z = posArr[i0 + 2];
-
-                    int i1 = row * width * 3 + (col - 1) * 3;
-                    v1.x = posArr[i1];
-                    v1.y = posArr[i1 + 1];
-                    v1.z = posArr[i1 + 2];
-                    v1 = v1.sub(v0);
-
-                    int i2 = (row + 1) * width * 3 + col * 3;
-                    v2.x = posArr[i2];
-                    v2.y = posArr[i2 + 1];
-                    v2.z = posArr[i2 + 2];
-                    v2 = v2.sub(v0);
-
-                    int i3 = row * width * 3 + (col + 1) * 3;
-                    v3.x = posArr[i3];
-                    v3.y = posArr[i3 + 1];
-                    v3.z = posArr[i3 + 2];
-                    v3 = v3.sub(v0);
-
-                    int i4 = (row - 1) * width * 3 + col * 3;
-                    v4.x = posArr[i4];
-                    v4.y = posArr[i4 + 1];
-                    v4.z = posArr[i4 + 2];
-                    v4 = v4.sub(v0);
-
-                    v1.cross(v2, v12);
-                    v12.normalize();
-
-                    v2.cross(v3, v23);
-                    v23.normalize();
-
-                    v3.cross(v4, v34);
-                    v34.normalize();
-
-                    v4.cross(v1, v41);
-                    v41.normalize();
-
-                    normal = v12.add(v23).add(v34).add(v41);
-                    normal.normalize();
-                } else {
-                    normal.x = normal.z = 0;
-                    normal.y = 1;
-                }
-                normal.normalize();
-                normals.add(normal.x);
-                normals.add(normal.y);
-                normals.add(normal.z);
+    //averages the normalized normals of the four triangles around a vertex, using its neighbouring heights
+    private void calculateNormal(int row, int col, float incx, float incz, float[] normals, int i) {
+
+        //edge vertices point straight up
+        if (row <= 0 || row >= this.rows - 1 || col <= 0 || col >= this.cols - 1) {
+            normals[i] = 0;
+            normals[i + 1] = 1;
+            normals[i + 2] = 0;
+            return;
+        }
+
+        //height differences to the left, down, right and up neighbours
+        float h0 = this.getHeight(row, col);
+        float d1 = this.getHeight(row, col - 1) - h0;
+        float d2 = this.getHeight(row + 1, col) - h0;
+        float d3 = this.getHeight(row, col + 1) - h0;
+        float d4 = this.getHeight(row - 1, col) - h0;
+
+        //v1 = (-incx, d1, 0), v2 = (0, d2, incz), v3 = (incx, d3, 0), v4 = (0, d4, -incz)
+        normals[i] = normals[i + 1] = normals[i + 2] = 0;
+        addNormalizedCross(-incx, d1, 0, 0, d2, incz, normals, i); //v1 x v2
+        addNormalizedCross(0, d2, incz, incx, d3, 0, normals, i); //v2 x v3
+        addNormalizedCross(incx, d3, 0, 0, d4, -incz, normals, i); //v3 x v4
+        addNormalizedCross(0, d4, -incz, -incx, d1, 0, normals, i); //v4 x v1
+
+        //normalize result
+        float length = (float)Math.sqrt(normals[i] * normals[i] + normals[i + 1] * normals[i + 1] + normals[i + 2] * normals[i + 2]);
+        normals[i] /= length;
+        normals[i + 1] /= length;
+        normals[i + 2] /= length;
+    }
+
+    //Cross Product Accumulation Method
+    private static void addNormalizedCross(float ax, float ay, float az, float bx, float by, float bz, float[] out, int i) {
+        float x = ay * bz - az * by;
+        float y = az * bx - ax * bz;
+        float z = ax * by - ay * bx;
+        float length = (float)Math.sqrt(x * x + y * y + z * z);
+        out[i] += x / length;
+        out[i + 1] += y / length;
+        out[i + 2] += z / length;
+    }
+
+    //Row Running Method
+    //runs a row processor over every row on the pool, or in order on the calling thread if the pool is null
+    private static void runRows(ForkJoinPool pool, int rows, IntConsumer rowProcessor) {
+        if (pool == null) for (int row = 0; row < rows; row++) rowProcessor.accept(row);
+        else pool.invoke(new RowTask(0, rows, rowProcessor));
+    }
+
+    //Row Task Inner Class
+    //splits a range of rows across fork-join workers
+    private static class RowTask extends RecursiveAction {
+
+        //Static Data
+        private static final long serialVersionUID = 1L;
+
+        //Data
+        private final int from, to;
+        private final IntConsumer rowProcessor;
+
+        //Constructor
+        public RowTask(int from, int to, IntConsumer rowProcessor) {
+            this.from = from;
+            this.to = to;
+            this.rowProcessor = rowProcessor;
+        }
+
+        //Compute Method
+        @Override
+        protected void compute() {
+            if (this.to - this.from <= ROWS_PER_TASK) {
+                for (int row = this.from; row < this.to; row++) this.rowProcessor.accept(row);
+            } else {
+                int mid = (this.from + this.to) >>> 1;
+                invokeAll(new RowTask(this.from, mid, this.rowProcessor), new RowTask(mid, this.to, this.rowProcessor));
             }
         }
-        return Utils.listToArray(normals);
     }
 }
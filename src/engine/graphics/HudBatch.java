@@ -0,0 +1,255 @@
+package engine.graphics;
+
+import engine.gameitem.GameItem;
+import engine.gameitem.TextItem;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.joml.Vector4f;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL13.GL_TEXTURE0;
+import static org.lwjgl.opengl.GL13.glActiveTexture;
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL20.*;
+import static org.lwjgl.opengl.GL30.*;
+
+//draws a hud's items with as few draw calls as possible. every item's vertices are transformed by its orthographic
+//projection and model matrix on the CPU and written, with its material's colour, into one streaming buffer in
+//submission order - each run of consecutive items sharing a texture (e.g. text items sharing a font texture) is then a
+//single draw, and untextured items share a white texture. items are never reordered, so overlapping items layer as
+//they were submitted. text items are written straight from their glyph quads, while other meshes are read back from
+//their buffers once and cached until their contents change
+public class HudBatch {
+
+    //Static Data
+    private static final int VERTEX_SIZE = 24; //bytes: x, y, z, u, v floats and r, g, b, a bytes
+    private static final int MIN_CAPACITY = 1024; //vertices and indices reserved initially
+
+    //Data
+    private final int vaoID, vboID, eboID;
+    private ByteBuffer vertices; //written every frame, then streamed
+    private IntBuffer indices;
+    private int vertexCapacity, indexCapacity; //of the buffers
+    private final Texture white; //bound for untextured items
+    private final Map<Mesh, Geometry> geometries; //read back from meshes
+    private final List<Texture> textures; //of each item
+    private int[] indexEnds; //end of each item's indices
+    private final Vector3f vertex;
+    private int drawCalls, vertexCount; //during the last frame
+
+    //Constructor
+    public HudBatch() {
+        this.geometries = new WeakHashMap<>();
+        this.textures = new ArrayList<>();
+        this.indexEnds = new int[16];
+        this.vertex = new Vector3f();
+        this.white = new Texture();
+        this.vertexCapacity = this.indexCapacity = MIN_CAPACITY;
+        this.vertices = MemoryUtil.memAlloc(this.vertexCapacity * VERTEX_SIZE);
+        this.indices = MemoryUtil.memAllocInt(this.indexCapacity);
+
+        //create VAO with an interleaved position, texture coordinate and colour VBO
+        this.vaoID = glGenVertexArrays();
+        glBindVertexArray(this.vaoID);
+        this.vboID = glGenBuffers();
+        glBindBuffer(GL_ARRAY_BUFFER, this.vboID);
+        glBufferData(GL_ARRAY_BUFFER, (long)this.vertexCapacity * VERTEX_SIZE, GL_STREAM_DRAW);
+        glVertexAttribPointer(0, 3, GL_FLOAT, false, VERTEX_SIZE, 0);
+        glVertexAttribPointer(1, 2, GL_FLOAT, false, VERTEX_SIZE, 12);
+        glVertexAttribPointer(2, 4, GL_UNSIGNED_BYTE, true, VERTEX_SIZE, 20);
+        this.eboID = glGenBuffers();
+        glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, this.eboID);
+        glBufferData(GL_ELEMENT_ARRAY_BUFFER, 4L * this.indexCapacity, GL_STREAM_DRAW);
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+        glBindVertexArray(0);
+    }
+
+    //Render Method
+    //batches and draws the items - the hud shader must be bound, with its sampler on texture unit 0
+    public void render(GameItem[] gameItems, Matrix4f ortho, Transformation transformation) {
+
+        //write texture, vertices and indices of every item in submission order
+        this.textures.clear();
+        this.vertices.clear();
+        this.indices.clear();
+        if (this.indexEnds.length < gameItems.length) this.indexEnds = new int[gameItems.length * 2];
+        for (int i = 0; i < gameItems.length; i++) {
+            GameItem gameItem = gameItems[i];
+            Material material = gameItem.getMesh().getMaterial();
+            this.textures.add(material.isTextured() ? material.getTexture() : this.white);
+            Matrix4f projectionModel = transformation.updateOrthoProjModelMatrix(gameItem, ortho);
+            int rgba = packColor(material.getAmbientColor());
+            if (gameItem instanceof TextItem) {
+                TextItem textItem = (TextItem)gameItem;
+                this.writeQuads(textItem.getGlyphVertices(), textItem.getGlyphCount(), projectionModel, rgba);
+            } else this.writeGeometry(this.getGeometry(gameItem.getMesh()), projectionModel, rgba);
+            this.indexEnds[i] = this.indices.position();
+        }
+        this.vertexCount = this.vertices.position() / VERTEX_SIZE;
+
+        //stream buffers, orphaning the previous frame's storage
+        this.vertices.flip();
+        this.indices.flip();
+        glBindVertexArray(this.vaoID);
+        glBindBuffer(GL_ARRAY_BUFFER, this.vboID);
+        glBufferData(GL_ARRAY_BUFFER, (long)this.vertexCapacity * VERTEX_SIZE, GL_STREAM_DRAW);
+        glBufferSubData(GL_ARRAY_BUFFER, 0, this.vertices);
+        glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, this.eboID);
+        glBufferData(GL_ELEMENT_ARRAY_BUFFER, 4L * this.indexCapacity, GL_STREAM_DRAW);
+        glBufferSubData(GL_ELEMENT_ARRAY_BUFFER, 0, this.indices);
+
+        //draw each run of consecutive items sharing a texture
+        glEnableVertexAttribArray(0);
+        glEnableVertexAttribArray(1);
+        glEnableVertexAttribArray(2);
+        glActiveTexture(GL_TEXTURE0);
+        this.drawCalls = 0;
+        int start = 0;
+        for (int i = 0; i < gameItems.length; i++) {
+            int end = this.indexEnds[i];
+            if (i + 1 < gameItems.length && this.textures.get(i + 1) == this.textures.get(i)) continue;
+            if (end > start) {
+                TextureResidency.touch(this.textures.get(i));
+                glBindTexture(GL_TEXTURE_2D, this.textures.get(i).getID());
+                glDrawElements(GL_TRIANGLES, end - start, GL_UNSIGNED_INT, 4L * start);
+                this.drawCalls++;
+            }
+            start = end;
+        }
+
+        //restore state
+        glDisableVertexAttribArray(0);
+        glDisableVertexAttribArray(1);
+        glDisableVertexAttribArray(2);
+        glBindTexture(GL_TEXTURE_2D, 0);
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+        glBindVertexArray(0);
+    }
+
+    //Writing Methods
+    //writes glyph quads - four interleaved x, y, z, u, v vertices each
+    private void writeQuads(FloatBuffer quads, int quadCount, Matrix4f projectionModel, int rgba) {
+        this.ensureCapacity(quadCount * 4, quadCount * 6);
+        int base = this.vertices.position() / VERTEX_SIZE;
+        for (int i = 0; i < quadCount * 4; i++) this.writeVertex(quads, i * 5, projectionModel, rgba);
+        for (int i = 0; i < quadCount; i++) {
+            int v = base + i * 4;
+            this.indices.put(v).put(v + 1).put(v + 2).put(v + 3).put(v).put(v + 2);
+        }
+    }
+
+    //writes a mesh's geometry
+    private void writeGeometry(Geometry geometry, Matrix4f projectionModel, int rgba) {
+        this.ensureCapacity(geometry.vertexCount, geometry.indices.length);
+        int base = this.vertices.position() / VERTEX_SIZE;
+        for (int i = 0; i < geometry.vertexCount; i++) this.writeVertex(geometry.vertices, i * 5, projectionModel, rgba);
+        for (int index : geometry.indices) this.indices.put(base + index);
+    }
+
+    private void writeVertex(FloatBuffer source, int offset, Matrix4f projectionModel, int rgba) {
+        projectionModel.transformPosition(source.get(offset), source.get(offset + 1), source.get(offset + 2), this.vertex);
+        this.vertices.putFloat(this.vertex.x).putFloat(this.vertex.y).putFloat(this.vertex.z);
+        this.vertices.putFloat(source.get(offset + 3)).putFloat(source.get(offset + 4)).putInt(rgba);
+    }
+
+    //grows the client and GPU buffers to hold more vertices and indices
+    private void ensureCapacity(int vertexCount, int indexCount) {
+        int vertexNeeded = this.vertices.position() / VERTEX_SIZE + vertexCount;
+        if (vertexNeeded > this.vertexCapacity) {
+            this.vertexCapacity = Math.max(vertexNeeded, this.vertexCapacity * 2);
+            this.vertices = MemoryUtil.memRealloc(this.vertices, this.vertexCapacity * VERTEX_SIZE);
+        }
+        int indexNeeded = this.indices.position() + indexCount;
+        if (indexNeeded > this.indexCapacity) {
+            this.indexCapacity = Math.max(indexNeeded, this.indexCapacity * 2);
+            this.indices = MemoryUtil.memRealloc(this.indices, this.indexCapacity);
+        }
+    }
+
+    //packs a colour into r, g, b, a bytes in memory order
+    private int packColor(Vector4f color) {
+        int r = Math.round(Math.max(0, Math.min(1, color.x)) * 255), g = Math.round(Math.max(0, Math.min(1, color.y)) * 255);
+        int b = Math.round(Math.max(0, Math.min(1, color.z)) * 255), a = Math.round(Math.max(0, Math.min(1, color.w)) * 255);
+        return this.vertices.order() == ByteOrder.LITTLE_ENDIAN ? r | g << 8 | b << 16 | a << 24 : a | b << 8 | g << 16 | r << 24;
+    }
+
+    //Geometry Method
+    //returns a mesh's vertices and indices, reading them back from its buffers on first use and again only once its
+    //contents have changed (text items, the dynamic meshes huds change every frame, are written without reading back)
+    private Geometry getGeometry(Mesh mesh) {
+        Geometry geometry = this.geometries.get(mesh);
+        if (geometry != null && geometry.revision == mesh.getRevision()) return geometry;
+        boolean dynamic = mesh.getVertexCapacity() > 0;
+        int[] indices = new int[mesh.getVertexCount()];
+        glBindVertexArray(mesh.getVaoID());
+        glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, mesh.getIndexBufferID());
+        glGetBufferSubData(GL_ELEMENT_ARRAY_BUFFER, 0, indices);
+        glBindVertexArray(0);
+        float[] vertices;
+        if (dynamic) {
+            int vertexCount = 0;
+            for (int index : indices) vertexCount = Math.max(vertexCount, index + 1);
+            vertices = new float[vertexCount * Mesh.DYNAMIC_VERTEX_SIZE];
+            glBindBuffer(GL_ARRAY_BUFFER, mesh.getPositionBufferID());
+            glGetBufferSubData(GL_ARRAY_BUFFER, 0, vertices);
+        } else {
+            glBindBuffer(GL_ARRAY_BUFFER, mesh.getPositionBufferID());
+            float[] positions = new float[glGetBufferParameteri(GL_ARRAY_BUFFER, GL_BUFFER_SIZE) / 4];
+            glGetBufferSubData(GL_ARRAY_BUFFER, 0, positions);
+            glBindBuffer(GL_ARRAY_BUFFER, mesh.getTextureCoordBufferID());
+            float[] textureCoords = new float[glGetBufferParameteri(GL_ARRAY_BUFFER, GL_BUFFER_SIZE) / 4];
+            glGetBufferSubData(GL_ARRAY_BUFFER, 0, textureCoords);
+            vertices = new float[positions.length / 3 * Mesh.DYNAMIC_VERTEX_SIZE];
+            for (int i = 0; i < positions.length / 3; i++) {
+                System.arraycopy(positions, i * 3, vertices, i * 5, 3);
+                if (i * 2 + 1 < textureCoords.length) System.arraycopy(textureCoords, i * 2, vertices, i * 5 + 3, 2);
+            }
+        }
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+        geometry = new Geometry(vertices, indices, mesh.getRevision());
+        this.geometries.put(mesh, geometry);
+        return geometry;
+    }
+
+    //Accessors
+    public int getDrawCalls() { return this.drawCalls; } //during the last frame
+    public int getVertexCount() { return this.vertexCount; } //during the last frame
+
+    //Cleanup Method
+    public void cleanup() {
+        glDeleteBuffers(this.vboID);
+        glDeleteBuffers(this.eboID);
+        glDeleteVertexArrays(this.vaoID);
+        this.white.cleanup();
+        MemoryUtil.memFree(this.vertices);
+        MemoryUtil.memFree(this.indices);
+    }
+
+    //a mesh's interleaved x, y, z, u, v vertices and its indices
+    private static class Geometry {
+
+        //Data
+        private final FloatBuffer vertices;
+        private final int vertexCount;
+        private final int[] indices;
+        private final int revision; //of the mesh when read back
+
+        //Constructor
+        Geometry(float[] vertices, int[] indices, int revision) {
+            this.vertices = FloatBuffer.wrap(vertices);
+            this.vertexCount = vertices.length / Mesh.DYNAMIC_VERTEX_SIZE;
+            this.indices = indices;
+            this.revision = revision;
+        }
+    }
+}
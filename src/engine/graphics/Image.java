@@ -0,0 +1,76 @@
+package engine.graphics;
+
+import engine.ResourceBuffer;
+import org.lwjgl.system.MemoryStack;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
+import static org.lwjgl.stb.STBImage.*;
+
+//an image decoded to RGBA pixels with stb_image. the pixels are owned by stb_image and must be freed once they have been
+//uploaded or copied. loading and decoding never touch OpenGL, so images can be loaded from any thread
+public class Image {
+
+    //Data
+    private ByteBuffer pixels; //four bytes per pixel: r, g, b, a
+    private final int width, height;
+
+    //Constructor
+    private Image(ByteBuffer pixels, int width, int height) {
+        this.pixels = pixels;
+        this.width = width;
+        this.height = height;
+    }
+
+    //Load Method
+    //reads a resource without copying it (or into a pooled buffer inside a jar) and decodes it
+    public static Image load(String fileName) throws Exception {
+        try (ResourceBuffer resource = ResourceBuffer.read(fileName)) {
+            return decode(resource.getBuffer(), fileName);
+        }
+    }
+
+    //Decode Method
+    //decodes an encoded image (e.g. a png file's bytes) held in a direct buffer
+    public static Image decode(ByteBuffer imageBuffer, String name) throws Exception {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            IntBuffer w = stack.mallocInt(1);
+            IntBuffer h = stack.mallocInt(1);
+            IntBuffer channels = stack.mallocInt(1);
+            ByteBuffer pixels = stbi_load_from_memory(imageBuffer, w, h, channels, 4);
+            if (pixels == null) throw new Exception("Image file [" + name + "] not loaded: " + stbi_failure_reason());
+            return new Image(pixels, w.get(), h.get());
+        }
+    }
+
+    //Downsample Method
+    //averages each 2x2 block of RGBA texels into one texel of the next mip level, clamping odd sized edges
+    public static void downsample(ByteBuffer source, int sourceWidth, int sourceHeight, ByteBuffer target, int width, int height) {
+        for (int y = 0; y < height; y++) {
+            int y0 = Math.min(y * 2, sourceHeight - 1), y1 = Math.min(y * 2 + 1, sourceHeight - 1);
+            for (int x = 0; x < width; x++) {
+                int x0 = Math.min(x * 2, sourceWidth - 1), x1 = Math.min(x * 2 + 1, sourceWidth - 1);
+                int a = (y0 * sourceWidth + x0) * 4, b = (y0 * sourceWidth + x1) * 4;
+                int c = (y1 * sourceWidth + x0) * 4, d = (y1 * sourceWidth + x1) * 4;
+                for (int channel = 0; channel < 4; channel++) {
+                    int sum = (source.get(a + channel) & 0xFF) + (source.get(b + channel) & 0xFF) +
+                            (source.get(c + channel) & 0xFF) + (source.get(d + channel) & 0xFF);
+                    target.put((y * width + x) * 4 + channel, (byte)((sum + 2) >> 2));
+                }
+            }
+        }
+    }
+
+    //Accessors
+    public ByteBuffer getPixels() { return this.pixels; }
+    public int getWidth() { return this.width; }
+    public int getHeight() { return this.height; }
+
+    //Free Method
+    public void free() {
+        if (this.pixels == null) return;
+        stbi_image_free(this.pixels);
+        this.pixels = null;
+    }
+}
@@ -41,8 +41,10 @@ public class Material {
     }
 
     //Cleanup Method
+    //cached textures are only deleted once their last user cleans up
     public void cleanup() {
         if (this.texture != null) this.texture.cleanup();
+        if (this.normalMap != null) this.normalMap.cleanup();
     }
 
     //Accessors
@@ -6,11 +6,15 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+import java.util.function.IntUnaryOperator;
+import java.util.function.Predicate;
 
 import static org.lwjgl.opengl.GL11.*;
 import static org.lwjgl.opengl.GL15.*;
 import static org.lwjgl.opengl.GL20.*;
 import static org.lwjgl.opengl.GL30.*;
+import static org.lwjgl.opengl.GL31.glDrawElementsInstanced;
 
 import engine.gameitem.GameItem;
 import org.joml.Vector3f;
@@ -20,11 +24,24 @@ public class Mesh {
 
     //Static Data
     public static final int MAX_WEIGHTS = 4;
+    public static final int DYNAMIC_VERTEX_SIZE = 5; //floats per vertex of a dynamic mesh
+    private static final int[] BOUND_TEXTURES = new int[2]; //textures bound on units 0 and 1 during a batch
+    private static boolean batching; //true to keep textures bound between meshes
+    private static long textureBinds; //texture binds made by meshes since start
 
     //Instance Data
     private final int vaoID;
     private final List<Integer> vboIDs;
-    private final int vertexCount;
+    private int vertexCount; //indices drawn (changed by dynamic meshes as their contents change)
+    private int vertexCapacity, indexCapacity; //of a dynamic mesh's buffers (0 for static meshes)
+    private final Vector3f minBound, maxBound; //model space bounds of the positions
+    private long bufferSize; //bytes of vertex and index data uploaded
+    private int attributeCount = 5; //vertex attributes read from the buffers, besides ambient occlusion
+    private boolean hasOcclusion; //true if an ambient occlusion attribute has been added
+    private int occlusionVboID; //of the ambient occlusion attribute, reused when it is baked again
+    private int indexVboID; //of the indices
+    private int revision; //incremented whenever a dynamic mesh's vertices, indices or index count change
+    private boolean shadowCaster = true; //false to leave this mesh out of the shadow map
     private Material material;
 
     //Static Constructor
@@ -47,8 +64,13 @@ public class Mesh {
         //fill vao
         try {
 
-            //set vertex count and create vbo list
+            //set vertex count and bounds and create vbo list
             vertexCount = indices.length;
+            this.minBound = new Vector3f();
+            this.maxBound = new Vector3f();
+            calculateBounds(positions, this.minBound, this.maxBound);
+            this.bufferSize = 4L * (positions.length + textureCoords.length + normals.length + weights.length +
+                    jointIndices.length + indices.length);
             this.vboIDs = new ArrayList();
 
             //create and bind VAO
@@ -117,6 +139,7 @@ public class Mesh {
             //Index VBO creation, data storage
             vbo = glGenBuffers();
             this.vboIDs.add(vbo);
+            this.indexVboID = vbo;
             glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, vbo);
             glBufferData(GL_ELEMENT_ARRAY_BUFFER, indicesBuffer, GL_STATIC_DRAW);
 
@@ -136,13 +159,133 @@ public class Mesh {
         }
     }
 
+    //Dynamic Constructor
+    //creates an empty mesh whose interleaved vertices (x, y, z, u, v) and indices are replaced in place, growing its
+    //buffers only when their contents outgrow them. the normal, weight and joint attributes are left disabled, so
+    //shaders declaring them (e.g. the hud shader) read their constant defaults. dynamic meshes keep zero bounds
+    public Mesh(int vertexCapacity, int indexCapacity) {
+        this.minBound = new Vector3f();
+        this.maxBound = new Vector3f();
+        this.vboIDs = new ArrayList<>();
+        this.vertexCapacity = vertexCapacity;
+        this.indexCapacity = indexCapacity;
+        this.attributeCount = 2;
+
+        //create and bind VAO
+        this.vaoID = glGenVertexArrays();
+        glBindVertexArray(this.vaoID);
+
+        //interleaved vertex VBO, reserved but not filled
+        int vbo = glGenBuffers();
+        this.vboIDs.add(vbo);
+        glBindBuffer(GL_ARRAY_BUFFER, vbo);
+        glBufferData(GL_ARRAY_BUFFER, 4L * DYNAMIC_VERTEX_SIZE * vertexCapacity, GL_DYNAMIC_DRAW);
+        glVertexAttribPointer(0, 3, GL_FLOAT, false, 4 * DYNAMIC_VERTEX_SIZE, 0);
+        glVertexAttribPointer(1, 2, GL_FLOAT, false, 4 * DYNAMIC_VERTEX_SIZE, 12);
+
+        //index VBO, reserved but not filled
+        vbo = glGenBuffers();
+        this.vboIDs.add(vbo);
+        this.indexVboID = vbo;
+        glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, vbo);
+        glBufferData(GL_ELEMENT_ARRAY_BUFFER, 4L * indexCapacity, GL_DYNAMIC_DRAW);
+
+        //unbind VBO, VAO
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+        glBindVertexArray(0);
+        this.bufferSize = 4L * (DYNAMIC_VERTEX_SIZE * vertexCapacity + indexCapacity);
+    }
+
+    //Material Constructor
+    //creates a mesh without buffers, holding only a material - for items whose geometry is drawn from elsewhere (e.g.
+    //text items, which the hud batch draws from their glyph quads). such meshes are never rendered themselves
+    public Mesh(Material material) {
+        this.minBound = new Vector3f();
+        this.maxBound = new Vector3f();
+        this.vboIDs = new ArrayList<>();
+        this.vaoID = 0;
+        this.attributeCount = 0;
+        this.material = material;
+    }
+
+    //Dynamic Update Methods
+    //replaces the start of a dynamic mesh's vertices with the buffer's remaining floats
+    public void updateVertices(FloatBuffer vertices) {
+        int vertexCount = vertices.remaining() / DYNAMIC_VERTEX_SIZE;
+        glBindBuffer(GL_ARRAY_BUFFER, this.vboIDs.get(0));
+        if (vertexCount > this.vertexCapacity) {
+            this.vertexCapacity = Math.max(vertexCount, this.vertexCapacity * 2);
+            glBufferData(GL_ARRAY_BUFFER, 4L * DYNAMIC_VERTEX_SIZE * this.vertexCapacity, GL_DYNAMIC_DRAW);
+            this.bufferSize = 4L * (DYNAMIC_VERTEX_SIZE * this.vertexCapacity + this.indexCapacity);
+        }
+        glBufferSubData(GL_ARRAY_BUFFER, 0, vertices);
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+        this.revision++;
+    }
+
+    //replaces the start of a dynamic mesh's indices with the buffer's remaining indices
+    public void updateIndices(IntBuffer indices) {
+        glBindVertexArray(this.vaoID);
+        glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, this.indexVboID);
+        if (indices.remaining() > this.indexCapacity) {
+            this.indexCapacity = Math.max(indices.remaining(), this.indexCapacity * 2);
+            glBufferData(GL_ELEMENT_ARRAY_BUFFER, 4L * this.indexCapacity, GL_DYNAMIC_DRAW);
+            this.bufferSize = 4L * (DYNAMIC_VERTEX_SIZE * this.vertexCapacity + this.indexCapacity);
+        }
+        glBufferSubData(GL_ELEMENT_ARRAY_BUFFER, 0, indices);
+        glBindVertexArray(0);
+        this.revision++;
+    }
+
+    //sets the number of indices a dynamic mesh draws
+    public void setVertexCount(int vertexCount) {
+        if (vertexCount != this.vertexCount) this.revision++;
+        this.vertexCount = vertexCount;
+    }
+
     //Accessors
     public Material getMaterial() { return this.material; }
     public int getVaoID() { return this.vaoID; }
     public int getVertexCount() { return this.vertexCount; }
+    public int getVertexCapacity() { return this.vertexCapacity; }
+    public int getIndexCapacity() { return this.indexCapacity; }
+    public Vector3f getMinBound() { return this.minBound; }
+    public Vector3f getMaxBound() { return this.maxBound; }
+    public long getBufferSize() { return this.bufferSize; }
+    int getPositionBufferID() { return this.vboIDs.get(0); } //interleaved with texture coordinates if dynamic
+    int getTextureCoordBufferID() { return this.vboIDs.get(this.vertexCapacity > 0 ? 0 : 1); }
+    int getIndexBufferID() { return this.indexVboID; }
+    public int getRevision() { return this.revision; } //changes whenever a dynamic mesh's contents do
+    public boolean hasOcclusion() { return this.hasOcclusion; }
+    public boolean isShadowCaster() { return this.shadowCaster; }
 
     //Mutators
     public void setMaterial(Material material) { this.material = material; }
+    public void setShadowCaster(boolean shadowCaster) { this.shadowCaster = shadowCaster; }
+
+    //Occlusion Method
+    //adds a per-vertex ambient occlusion attribute (0.0f unoccluded - 1.0f fully occluded) at location 5. meshes without
+    //it read the attribute's default of 0.0f and are lit normally. setting it again replaces the existing attribute's data
+    public void setOcclusion(float[] occlusion) {
+        FloatBuffer occlusionBuffer = MemoryUtil.memAllocFloat(occlusion.length);
+        try {
+            occlusionBuffer.put(occlusion).flip();
+            if (!this.hasOcclusion) {
+                this.occlusionVboID = glGenBuffers();
+                this.vboIDs.add(this.occlusionVboID);
+                this.bufferSize += 4L * occlusion.length;
+            }
+            glBindVertexArray(this.vaoID);
+            glBindBuffer(GL_ARRAY_BUFFER, this.occlusionVboID);
+            glBufferData(GL_ARRAY_BUFFER, occlusionBuffer, GL_STATIC_DRAW);
+            glVertexAttribPointer(5, 1, GL_FLOAT, false, 0, 0);
+            glBindBuffer(GL_ARRAY_BUFFER, 0);
+            glBindVertexArray(0);
+            this.hasOcclusion = true;
+        } finally {
+            MemoryUtil.memFree(occlusionBuffer);
+        }
+    }
 
     //Render Method
     public void render() {
@@ -167,43 +310,99 @@ public class Mesh {
         this.postRender();
     }
 
+    //Filtered Render List Method
+    //only renders the game items accepted by the filter
+    public void renderList(List<GameItem> gameItems, Predicate<GameItem> filter, Consumer<GameItem> consumer) {
+        this.preRender();
+        for (GameItem gi : gameItems) {
+            if (!filter.test(gi)) continue;
+            consumer.accept(gi);
+            glDrawElements(GL_TRIANGLES, this.vertexCount, GL_UNSIGNED_INT, 0);
+        }
+        this.postRender();
+    }
+
+    //Render Count Method
+    //renders this mesh count times, letting the consumer set up the data for each draw
+    public void renderCount(int count, IntConsumer consumer) {
+        this.preRender();
+        for (int i = 0; i < count; i++) {
+            consumer.accept(i);
+            glDrawElements(GL_TRIANGLES, this.vertexCount, GL_UNSIGNED_INT, 0);
+        }
+        this.postRender();
+    }
+
+    //Instanced Render Method
+    //renders a number of instanced batches. for each batch the function sets up the batch's instance data and returns
+    //its instance count (batches with no instances are skipped)
+    public void renderInstanced(int batches, IntUnaryOperator batchSetup) {
+        this.preRender();
+        for (int i = 0; i < batches; i++) {
+            int instances = batchSetup.applyAsInt(i);
+            if (instances > 0) glDrawElementsInstanced(GL_TRIANGLES, this.vertexCount, GL_UNSIGNED_INT, 0, instances);
+        }
+        this.postRender();
+    }
+
     //Pre-Render
     private void preRender() {
 
-        //bind texture
+        //bind texture and normal map, recording their use for the texture residency
         if (this.material.isTextured()) {
-            glActiveTexture(GL_TEXTURE0); //activate first texture bank
-            glBindTexture(GL_TEXTURE_2D, this.material.getTexture().getID()); //bind texture
+            TextureResidency.touch(this.material.getTexture());
+            bindTexture(0, this.material.getTexture().getID());
         }
-
-        //bind normal map
         if (this.material.hasNormalMap()) {
-            glActiveTexture(GL_TEXTURE1);
-            glBindTexture(GL_TEXTURE_2D, this.material.getNormalMap().getID());
+            TextureResidency.touch(this.material.getNormalMap());
+            bindTexture(1, this.material.getNormalMap().getID());
         }
 
         //bind VAO and attribute arrays
         glBindVertexArray(this.vaoID);
-        glEnableVertexAttribArray(0);
-        glEnableVertexAttribArray(1);
-        glEnableVertexAttribArray(2);
-        glEnableVertexAttribArray(3);
-        glEnableVertexAttribArray(4);
+        for (int attribute = 0; attribute < this.attributeCount; attribute++) glEnableVertexAttribArray(attribute);
+        if (this.hasOcclusion) glEnableVertexAttribArray(5);
     }
 
     //Post-Render
     private void postRender() {
 
         //restore state
-        glDisableVertexAttribArray(this.vaoID);
-        glDisableVertexAttribArray(0);
-        glDisableVertexAttribArray(1);
-        glDisableVertexAttribArray(2);
-        glEnableVertexAttribArray(3);
-        glEnableVertexAttribArray(4);
-        glBindTexture(GL_TEXTURE_2D, 0);
+        for (int attribute = 0; attribute < this.attributeCount; attribute++) glDisableVertexAttribArray(attribute);
+        if (this.hasOcclusion) glDisableVertexAttribArray(5);
+        if (!batching) glBindTexture(GL_TEXTURE_2D, 0);
+    }
+
+    //Texture Binding Methods
+    //binds a texture to a unit, skipping the bind if a batch already has it bound there
+    private static void bindTexture(int unit, int textureID) {
+        if (batching && BOUND_TEXTURES[unit] == textureID) return;
+        glActiveTexture(GL_TEXTURE0 + unit);
+        glBindTexture(GL_TEXTURE_2D, textureID);
+        BOUND_TEXTURES[unit] = textureID;
+        textureBinds++;
+    }
+
+    //starts a batch - until it ends, meshes leave their textures bound so that the next mesh using the same textures
+    //(e.g. sharing a texture atlas page) does not rebind them. nothing else may bind textures on units 0 and 1 meanwhile
+    public static void beginBatch() {
+        batching = true;
+        BOUND_TEXTURES[0] = BOUND_TEXTURES[1] = 0;
     }
 
+    public static void endBatch() {
+        batching = false;
+        for (int unit = 0; unit < BOUND_TEXTURES.length; unit++) {
+            if (BOUND_TEXTURES[unit] == 0) continue;
+            glActiveTexture(GL_TEXTURE0 + unit);
+            glBindTexture(GL_TEXTURE_2D, 0);
+            BOUND_TEXTURES[unit] = 0;
+        }
+        glActiveTexture(GL_TEXTURE0);
+    }
+
+    public static long getTextureBinds() { return textureBinds; }
+
     //Cleanup Method
     public void cleanup() {
 
@@ -216,6 +415,7 @@ public class Mesh {
 
     //Buffer Deletion Method
     public void deleteBuffers() {
+        if (this.vaoID == 0) return; //material only
 
         //Disable VAO
         glDisableVertexAttribArray(0);
@@ -227,6 +427,24 @@ public class Mesh {
         glDeleteVertexArrays(this.vaoID);
     }
 
+    //Bounds Calculation Method
+    //finds the bounds of packed x/y/z positions (zero if there are none)
+    private static void calculateBounds(float[] positions, Vector3f min, Vector3f max) {
+        if (positions.length < 3) return;
+        float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE, minZ = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE, maxZ = -Float.MAX_VALUE;
+        for (int i = 0; i + 2 < positions.length; i += 3) {
+            minX = Math.min(minX, positions[i]);
+            minY = Math.min(minY, positions[i + 1]);
+            minZ = Math.min(minZ, positions[i + 2]);
+            maxX = Math.max(maxX, positions[i]);
+            maxY = Math.max(maxY, positions[i + 1]);
+            maxZ = Math.max(maxZ, positions[i + 2]);
+        }
+        min.set(minX, minY, minZ);
+        max.set(maxX, maxY, maxZ);
+    }
+
     //Empty Array Creation Methods
     private static float[] createEmptyFloatArray(int length, float defaultValue) {
         float[] result = new float[length];
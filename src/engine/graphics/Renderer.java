@@ -7,11 +7,16 @@ import engine.gameitem.GameItem;
 import engine.Utils;
 import engine.Window;
 import engine.gameitem.SkyBox;
-import engine.graphics.anim.AnimatedFrame;
+import engine.graphics.anim.AnimLOD;
 import engine.graphics.light.DirectionalLight;
 import engine.graphics.light.LightPoint;
 import engine.graphics.light.SceneLighting;
 import engine.graphics.light.SpotLight;
+import engine.graphics.terrain.HorizonCuller;
+import engine.graphics.terrain.TerrainLOD;
+import engine.graphics.terrain.TerrainMesh;
+import engine.graphics.terrain.TerrainScatter;
+import org.joml.FrustumIntersection;
 import org.joml.Matrix4f;
 import org.joml.Vector3f;
 import org.joml.Vector4f;
@@ -19,12 +24,15 @@ import org.lwjgl.BufferUtils;
 
 import java.nio.ByteBuffer;
 import java.nio.IntBuffer;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
 import static org.lwjgl.glfw.GLFW.glfwGetWindowSize;
 import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL13.GL_TEXTURE0;
 import static org.lwjgl.opengl.GL13.GL_TEXTURE2;
+import static org.lwjgl.opengl.GL13.GL_TEXTURE3;
 import static org.lwjgl.opengl.GL13.glActiveTexture;
 import static org.lwjgl.opengl.GL30.GL_FRAMEBUFFER;
 import static org.lwjgl.opengl.GL30.glBindFramebuffer;
@@ -44,13 +52,42 @@ public class Renderer {
     private ShaderProgram depthShaderProgram;
     private ShaderProgram skyBoxShaderProgram;
     private ShaderProgram sceneShaderProgram;
+    private ShaderProgram terrainShaderProgram;
+    private ShaderProgram terrainDepthShaderProgram;
+    private ShaderProgram terrainMeshShaderProgram;
+    private ShaderProgram terrainMeshDepthShaderProgram;
+    private ShaderProgram scatterShaderProgram;
+    private ShaderProgram scatterDepthShaderProgram;
     private ShaderProgram hudShaderProgram;
+    private HudBatch hudBatch; //draws hud items in as few draw calls as possible
+    private AnimLOD animLOD;
+    private HorizonCuller horizonCuller; //scene's culler for the current frame (null if none)
+    private FrustumIntersection lightFrustum;
+    private FrustumIntersection cameraFrustum;
+    private final Matrix4f lightProjView;
+    private final Matrix4f cameraProjView, invModelView;
+    private final Vector3f localCamera, nodeParams;
+    private final Vector3f boundsMin, boundsMax;
     private float specularPower;
+    private final List<Mesh> sortedMeshes; //scene meshes ordered by their textures, reused every frame
+    private int textureBinds; //made by scene meshes during the last frame
+    private int terrainTriangles, terrainShadowTriangles; //drawn by the terrain's level of detail during the last frame
 
     //Constructor
     public Renderer() {
         this.transformation = new Transformation();
+        this.animLOD = new AnimLOD();
+        this.lightFrustum = new FrustumIntersection();
+        this.cameraFrustum = new FrustumIntersection();
+        this.lightProjView = new Matrix4f();
+        this.cameraProjView = new Matrix4f();
+        this.invModelView = new Matrix4f();
+        this.localCamera = new Vector3f();
+        this.nodeParams = new Vector3f();
+        this.boundsMin = new Vector3f();
+        this.boundsMax = new Vector3f();
         this.specularPower = 10f;
+        this.sortedMeshes = new ArrayList<>();
     }
 
     //Initializer
@@ -59,6 +96,9 @@ public class Renderer {
         this.setupDepthShader();
         this.setupSkyBoxShader();
         this.setupSceneShader();
+        this.setupTerrainShader();
+        this.setupTerrainMeshShader();
+        this.setupScatterShader();
         this.setupHudShader();
     }
 
@@ -110,24 +150,142 @@ public class Renderer {
         this.sceneShaderProgram.createUniform("textureSampler");
         this.sceneShaderProgram.createUniform("normalMapSampler");
 
-        //create lighting, material, and fog uniforms
-        this.sceneShaderProgram.createMaterialUniform("material");
-        this.sceneShaderProgram.createUniform("ambientLight");
-        this.sceneShaderProgram.createUniform("specularPower");
-        this.sceneShaderProgram.createLightPointListUniform("lightPoints", MAX_LIGHT_POINTS);
-        this.sceneShaderProgram.createSpotLightListUniform("spotLights", MAX_SPOT_LIGHTS);
-        this.sceneShaderProgram.createDirectionalLightUniform("directionalLight");
-        this.sceneShaderProgram.createFogUniform("fog");
-
-        //create uniforms for shadow mapping
-        this.sceneShaderProgram.createUniform("shadowMap");
-        this.sceneShaderProgram.createUniform("orthoProjectionMatrix");
-        this.sceneShaderProgram.createUniform("modelLightViewMatrix");
+        //create lighting, material, fog and shadow mapping uniforms
+        this.createLightingUniforms(this.sceneShaderProgram);
 
         //create joint matrices uniform
         this.sceneShaderProgram.createUniform("jointsMatrix");
     }
 
+    //Terrain Shader Setup Method
+    //the terrain vertex shader displaces shared grid meshes by the height texture and feeds the scene fragment shader
+    private void setupTerrainShader() throws Exception {
+
+        //create shader program
+        this.terrainShaderProgram = new ShaderProgram();
+        this.terrainShaderProgram.createVertexShader(Utils.loadResource("/shaders/terrainV.glsl"));
+        this.terrainShaderProgram.createFragmentShader(Utils.loadResource("/shaders/sceneF.glsl"));
+        this.terrainShaderProgram.link();
+
+        //create matrix and texture sampler uniforms
+        this.terrainShaderProgram.createUniform("projection");
+        this.terrainShaderProgram.createUniform("modelView");
+        this.terrainShaderProgram.createUniform("textureSampler");
+        this.terrainShaderProgram.createUniform("normalMapSampler");
+        this.terrainShaderProgram.createUniform("heightMapSampler");
+
+        //create node and morph uniforms
+        this.terrainShaderProgram.createUniform("cameraPos");
+        this.terrainShaderProgram.createUniform("nodeParams");
+        this.terrainShaderProgram.createUniform("morphStart");
+        this.terrainShaderProgram.createUniform("morphEnd");
+        this.terrainShaderProgram.createUniform("gridDim");
+        this.terrainShaderProgram.createUniform("textureInc");
+
+        //create lighting, material, fog and shadow mapping uniforms
+        this.createLightingUniforms(this.terrainShaderProgram);
+
+        //create the depth pass program - the same vertex shader, given the light's matrices in place of the camera's
+        this.terrainDepthShaderProgram = new ShaderProgram();
+        this.terrainDepthShaderProgram.createVertexShader(Utils.loadResource("/shaders/terrainV.glsl"));
+        this.terrainDepthShaderProgram.createFragmentShader(Utils.loadResource("/shaders/depthF.glsl"));
+        this.terrainDepthShaderProgram.link();
+        this.terrainDepthShaderProgram.createUniform("projection");
+        this.terrainDepthShaderProgram.createUniform("modelView");
+        this.terrainDepthShaderProgram.createUniform("heightMapSampler");
+        this.terrainDepthShaderProgram.createUniform("cameraPos");
+        this.terrainDepthShaderProgram.createUniform("nodeParams");
+        this.terrainDepthShaderProgram.createUniform("morphStart");
+        this.terrainDepthShaderProgram.createUniform("morphEnd");
+        this.terrainDepthShaderProgram.createUniform("gridDim");
+    }
+
+    //Terrain Mesh Shader Setup Method
+    //the terrain mesh vertex shader builds vertices from the vertex index and a 16-bit height texture
+    private void setupTerrainMeshShader() throws Exception {
+
+        //create shader program
+        this.terrainMeshShaderProgram = new ShaderProgram();
+        this.terrainMeshShaderProgram.createVertexShader(Utils.loadResource("/shaders/terrainMeshV.glsl"));
+        this.terrainMeshShaderProgram.createFragmentShader(Utils.loadResource("/shaders/sceneF.glsl"));
+        this.terrainMeshShaderProgram.link();
+
+        //create matrix, texture sampler and height uniforms
+        this.terrainMeshShaderProgram.createUniform("projection");
+        this.terrainMeshShaderProgram.createUniform("modelView");
+        this.terrainMeshShaderProgram.createUniform("textureSampler");
+        this.terrainMeshShaderProgram.createUniform("normalMapSampler");
+        this.terrainMeshShaderProgram.createUniform("heightMapSampler");
+        this.terrainMeshShaderProgram.createUniform("minY");
+        this.terrainMeshShaderProgram.createUniform("maxY");
+        this.terrainMeshShaderProgram.createUniform("textureInc");
+
+        //create lighting, material, fog and shadow mapping uniforms
+        this.createLightingUniforms(this.terrainMeshShaderProgram);
+
+        //create the depth pass program - the same vertex shader, given the light's matrices in place of the camera's
+        this.terrainMeshDepthShaderProgram = new ShaderProgram();
+        this.terrainMeshDepthShaderProgram.createVertexShader(Utils.loadResource("/shaders/terrainMeshV.glsl"));
+        this.terrainMeshDepthShaderProgram.createFragmentShader(Utils.loadResource("/shaders/depthF.glsl"));
+        this.terrainMeshDepthShaderProgram.link();
+        this.terrainMeshDepthShaderProgram.createUniform("projection");
+        this.terrainMeshDepthShaderProgram.createUniform("modelView");
+        this.terrainMeshDepthShaderProgram.createUniform("heightMapSampler");
+        this.terrainMeshDepthShaderProgram.createUniform("minY");
+        this.terrainMeshDepthShaderProgram.createUniform("maxY");
+    }
+
+    //Scatter Shader Setup Method
+    //the scatter vertex shader places mesh instances read from a buffer texture by instance id
+    private void setupScatterShader() throws Exception {
+
+        //create shader program
+        this.scatterShaderProgram = new ShaderProgram();
+        this.scatterShaderProgram.createVertexShader(Utils.loadResource("/shaders/scatterV.glsl"));
+        this.scatterShaderProgram.createFragmentShader(Utils.loadResource("/shaders/sceneF.glsl"));
+        this.scatterShaderProgram.link();
+
+        //create matrix, texture sampler and instance uniforms
+        this.scatterShaderProgram.createUniform("projection");
+        this.scatterShaderProgram.createUniform("modelView");
+        this.scatterShaderProgram.createUniform("textureSampler");
+        this.scatterShaderProgram.createUniform("normalMapSampler");
+        this.scatterShaderProgram.createUniform("instanceSampler");
+        this.scatterShaderProgram.createUniform("instanceOffset");
+
+        //create lighting, material, fog and shadow mapping uniforms
+        this.createLightingUniforms(this.scatterShaderProgram);
+
+        //create the depth pass program - the same vertex shader, given the light's matrices in place of the camera's
+        this.scatterDepthShaderProgram = new ShaderProgram();
+        this.scatterDepthShaderProgram.createVertexShader(Utils.loadResource("/shaders/scatterV.glsl"));
+        this.scatterDepthShaderProgram.createFragmentShader(Utils.loadResource("/shaders/depthF.glsl"));
+        this.scatterDepthShaderProgram.link();
+        this.scatterDepthShaderProgram.createUniform("projection");
+        this.scatterDepthShaderProgram.createUniform("modelView");
+        this.scatterDepthShaderProgram.createUniform("instanceSampler");
+        this.scatterDepthShaderProgram.createUniform("instanceOffset");
+    }
+
+    //Lighting Uniform Creation Method
+    //creates the uniforms used by the scene fragment shader
+    private void createLightingUniforms(ShaderProgram shaderProgram) throws Exception {
+
+        //create lighting, material, and fog uniforms
+        shaderProgram.createMaterialUniform("material");
+        shaderProgram.createUniform("ambientLight");
+        shaderProgram.createUniform("specularPower");
+        shaderProgram.createLightPointListUniform("lightPoints", MAX_LIGHT_POINTS);
+        shaderProgram.createSpotLightListUniform("spotLights", MAX_SPOT_LIGHTS);
+        shaderProgram.createDirectionalLightUniform("directionalLight");
+        shaderProgram.createFogUniform("fog");
+
+        //create uniforms for shadow mapping
+        shaderProgram.createUniform("shadowMap");
+        shaderProgram.createUniform("orthoProjectionMatrix");
+        shaderProgram.createUniform("modelLightViewMatrix");
+    }
+
     //HUD Shader Setup Method
     private void setupHudShader() throws Exception {
 
@@ -137,12 +295,18 @@ public class Renderer {
         this.hudShaderProgram.createFragmentShader(Utils.loadResource("/shaders/hudF.glsl"));
         this.hudShaderProgram.link();
 
-        //create uniforms
-        this.hudShaderProgram.createUniform("projectionModel");
-        this.hudShaderProgram.createUniform("color");
-        this.hudShaderProgram.createUniform("hasTexture");
+        //create uniform and batch
+        this.hudShaderProgram.createUniform("textureSampler");
+        this.hudBatch = new HudBatch();
     }
 
+    //Accessors
+    public AnimLOD getAnimLOD() { return this.animLOD; }
+    public int getTextureBinds() { return this.textureBinds; } //made by scene meshes during the last frame
+    public int getHudDrawCalls() { return this.hudBatch.getDrawCalls(); } //made by the hud during the last frame
+    public int getTerrainTriangles() { return this.terrainTriangles; } //drawn by the terrain during the last frame
+    public int getTerrainShadowTriangles() { return this.terrainShadowTriangles; } //drawn into the last shadow map
+
     //Clear Method
     public void clear() { glClear(GL_COLOR_BUFFER_BIT | GL_DEPTH_BUFFER_BIT); }
 
@@ -152,6 +316,9 @@ public class Renderer {
         //clear screen
         this.clear();
 
+        //restore bound textures and keep texture memory within its budget
+        TextureResidency.update();
+
         //render depth map
         this.renderDepthMap(window, camera, scene);
 
@@ -162,8 +329,19 @@ public class Renderer {
         this.transformation.updateProjectionMatrix(FOV, window.getWidth(), window.getHeight(), Z_NEAR, Z_FAR);
         this.transformation.updateViewMatrix(camera);
 
+        //update animation level of detail
+        this.animLOD.update(scene.getMeshMap(), this.transformation.getProjectionMatrix(),
+                this.transformation.getViewMatrix(), window.getHeight());
+
+        //update terrain occlusion from the camera's position
+        this.horizonCuller = scene.getHorizonCuller();
+        if (this.horizonCuller != null) this.horizonCuller.update(camera.getPosition());
+
         //render
         this.renderScene(window, camera, scene);
+        if (scene.getTerrainLOD() != null) this.renderTerrain(camera, scene);
+        if (scene.getTerrainMesh() != null) this.renderTerrainMesh(scene);
+        if (scene.getTerrainScatter() != null) this.renderScatter(camera, scene);
         if (scene.getSkyBox() != null) this.renderSkyBox(window, camera, scene);
         this.renderHud(window, hud);
     }
@@ -195,26 +373,142 @@ public class Renderer {
         depthShaderProgram.setUniform("orthoProjectionMatrix", orthoProjMatrix);
         Map<Mesh, List<GameItem>> meshes = scene.getMeshMap();
 
-        //render each mesh
+        //build light frustum for shadow caster selection
+        this.lightFrustum.set(this.lightProjView.set(orthoProjMatrix).mul(lightViewMatrix));
+
+        //render each mesh (meshes such as terrain relying on baked occlusion are left out)
         for (Mesh mesh : meshes.keySet()) {
-            mesh.renderList(meshes.get(mesh), (GameItem item) -> {
+            if (!mesh.isShadowCaster()) continue;
+            mesh.renderList(meshes.get(mesh), this::isShadowCaster, (GameItem item) -> {
                 Matrix4f modelLightViewMatrix = transformation.updateModelViewMatrix(item, lightViewMatrix);
                 depthShaderProgram.setUniform("modelLightViewMatrix", modelLightViewMatrix);
 
                 //handle animation
                 if (item instanceof AnimGameItem) {
                     AnimGameItem aitem = (AnimGameItem)item;
-                    AnimatedFrame frame = aitem.getCurrentFrame();
-                    depthShaderProgram.setUniform("jointsMatrix", frame.getJointMatrices());
+                    depthShaderProgram.setUniform("jointsMatrix", aitem.getJointMatrices());
                 }
             });
         }
 
-        //unbind shader program and buffer
+        //unbind shader program
         this.depthShaderProgram.unbind();
+
+        //render terrain drawn by its own vertex shaders, unless it is left out of the shadow map
+        this.terrainShadowTriangles = 0;
+        if (scene.getTerrainLOD() != null && scene.getTerrainLOD().isShadowCaster())
+            this.renderTerrainDepth(camera, scene, orthoProjMatrix, lightViewMatrix);
+        if (scene.getTerrainMesh() != null && scene.getTerrainMesh().isShadowCaster())
+            this.renderTerrainMeshDepth(scene, orthoProjMatrix, lightViewMatrix);
+        if (scene.getTerrainScatter() != null) this.renderScatterDepth(camera, scene, orthoProjMatrix, lightViewMatrix);
+
+        //unbind buffer
         glBindFramebuffer(GL_FRAMEBUFFER, 0);
     }
 
+    //Terrain Depth Rendering Method
+    //selects the terrain's level of detail nodes within the light's frustum, at the camera's levels of detail so that
+    //the shadows match the terrain drawn, and renders them into the shadow map
+    private void renderTerrainDepth(Camera camera, Scene scene, Matrix4f orthoProjMatrix, Matrix4f lightViewMatrix) {
+
+        //select nodes against the light frustum
+        TerrainLOD terrainLOD = scene.getTerrainLOD();
+        terrainLOD.select(camera.getPosition(), this.lightFrustum);
+        this.terrainShadowTriangles = terrainLOD.getTriangleCount();
+
+        //bind shader program, set uniforms shared by every node and bind the height texture
+        this.terrainDepthShaderProgram.bind();
+        this.terrainDepthShaderProgram.setUniform("projection", orthoProjMatrix);
+        this.terrainDepthShaderProgram.setUniform("heightMapSampler", 3);
+        glActiveTexture(GL_TEXTURE3);
+        glBindTexture(GL_TEXTURE_2D, terrainLOD.getHeightTexture().getID());
+
+        //render whole nodes, then node quadrants
+        this.renderTerrainNodeDepths(terrainLOD, terrainLOD.getGridMesh(), terrainLOD.getNodes(), terrainLOD.getGridSize(),
+                camera.getPosition(), lightViewMatrix);
+        this.renderTerrainNodeDepths(terrainLOD, terrainLOD.getHalfGridMesh(), terrainLOD.getHalfNodes(), terrainLOD.getGridSize() / 2,
+                camera.getPosition(), lightViewMatrix);
+
+        //unbind height texture and shader program
+        glActiveTexture(GL_TEXTURE3);
+        glBindTexture(GL_TEXTURE_2D, 0);
+        glActiveTexture(GL_TEXTURE0);
+        this.terrainDepthShaderProgram.unbind();
+    }
+
+    //renders a list of selected nodes with a grid mesh into the shadow map, morphing them as seen from the camera
+    private void renderTerrainNodeDepths(TerrainLOD terrainLOD, Mesh gridMesh, TerrainLOD.NodeList nodes, int gridDim,
+                                         Vector3f cameraPosition, Matrix4f lightViewMatrix) {
+        GameItem[] chunks = terrainLOD.getChunks();
+        this.terrainDepthShaderProgram.setUniform("gridDim", (float)gridDim);
+        gridMesh.renderCount(nodes.size(), (int i) -> {
+
+            //set chunk matrix and camera position in chunk local space
+            GameItem chunk = chunks[nodes.getChunk(i)];
+            Transformation.updateWorldMatrix(chunk, this.invModelView).invert().transformPosition(this.localCamera.set(cameraPosition));
+            this.terrainDepthShaderProgram.setUniform("modelView", this.transformation.updateModelViewMatrix(chunk, lightViewMatrix));
+            this.terrainDepthShaderProgram.setUniform("cameraPos", this.localCamera);
+
+            //set node area and morph range
+            int level = nodes.getLevel(i);
+            this.terrainDepthShaderProgram.setUniform("nodeParams", this.nodeParams.set(nodes.getX(i), nodes.getZ(i), nodes.getSize(i)));
+            this.terrainDepthShaderProgram.setUniform("morphStart", terrainLOD.getMorphStart(level));
+            this.terrainDepthShaderProgram.setUniform("morphEnd", terrainLOD.getMorphEnd(level));
+        });
+    }
+
+    //Scatter Depth Rendering Method
+    //culls the scatter's resident cells against the light's frustum and renders the layers whose meshes cast shadows
+    //into the shadow map - the scene pass culls them again against the camera's frustum
+    private void renderScatterDepth(Camera camera, Scene scene, Matrix4f orthoProjMatrix, Matrix4f lightViewMatrix) {
+
+        //cull cells
+        TerrainScatter scatter = scene.getTerrainScatter();
+        scatter.cull(camera.getPosition(), this.lightFrustum);
+
+        //bind shader program and set uniforms shared by every layer - instances are in world space
+        this.scatterDepthShaderProgram.bind();
+        this.scatterDepthShaderProgram.setUniform("projection", orthoProjMatrix);
+        this.scatterDepthShaderProgram.setUniform("modelView", lightViewMatrix);
+        this.scatterDepthShaderProgram.setUniform("instanceSampler", 4);
+
+        //render each shadow casting layer
+        for (int i = 0; i < scatter.getLayers().size(); i++) {
+            if (!scatter.getLayers().get(i).getMesh().isShadowCaster()) continue;
+            scatter.render(i, (int offset) -> this.scatterDepthShaderProgram.setUniform("instanceOffset", offset));
+        }
+
+        //unbind shader program
+        this.scatterDepthShaderProgram.unbind();
+    }
+
+    //Terrain Mesh Depth Rendering Method
+    //renders the compact terrain mesh's chunks into the shadow map
+    private void renderTerrainMeshDepth(Scene scene, Matrix4f orthoProjMatrix, Matrix4f lightViewMatrix) {
+
+        //bind shader program, set uniforms shared by every chunk and bind the height texture
+        TerrainMesh terrainMesh = scene.getTerrainMesh();
+        this.terrainMeshDepthShaderProgram.bind();
+        this.terrainMeshDepthShaderProgram.setUniform("projection", orthoProjMatrix);
+        this.terrainMeshDepthShaderProgram.setUniform("heightMapSampler", 3);
+        this.terrainMeshDepthShaderProgram.setUniform("minY", terrainMesh.getMinY());
+        this.terrainMeshDepthShaderProgram.setUniform("maxY", terrainMesh.getMaxY());
+        glActiveTexture(GL_TEXTURE3);
+        glBindTexture(GL_TEXTURE_2D, terrainMesh.getHeightTexture().getID());
+
+        //render each chunk
+        for (GameItem chunk : terrainMesh.getChunks()) {
+            if (!this.isShadowCaster(chunk)) continue;
+            this.terrainMeshDepthShaderProgram.setUniform("modelView", this.transformation.updateModelViewMatrix(chunk, lightViewMatrix));
+            terrainMesh.render();
+        }
+
+        //unbind height texture and shader program
+        glBindTexture(GL_TEXTURE_2D, 0);
+        glActiveTexture(GL_TEXTURE0);
+        this.terrainMeshDepthShaderProgram.unbind();
+    }
+
     //SkyBox Rendering Method
     private void renderSkyBox(Window window, Camera camera, Scene scene) {
 
@@ -259,7 +553,7 @@ public class Renderer {
         Matrix4f viewMatrix = transformation.getViewMatrix();
 
         //render lights
-        renderLights(viewMatrix, scene.getLighting());
+        renderLights(this.sceneShaderProgram, viewMatrix, scene.getLighting());
 
         //set the sampler and fog uniforms
         sceneShaderProgram.setUniform("textureSampler", 0);
@@ -267,17 +561,24 @@ public class Renderer {
         sceneShaderProgram.setUniform("shadowMap", 2);
         sceneShaderProgram.setUniform("fog", scene.getFog());
 
-        //loop through each mesh and render each game item for that mesh
+        //enable shadow map texture
+        glActiveTexture(GL_TEXTURE2);
+        glBindTexture(GL_TEXTURE_2D, this.shadowMap.getDepthMap().getID());
+
+        //order meshes by texture so that meshes sharing textures (e.g. atlas pages) are drawn without rebinding them
         Map<Mesh, List<GameItem>> meshMap = scene.getMeshMap();
-        for (Mesh m : meshMap.keySet()) {
+        this.sortedMeshes.clear();
+        this.sortedMeshes.addAll(meshMap.keySet());
+        this.sortedMeshes.sort(Renderer::compareTextures);
+
+        //loop through each mesh and render each game item for that mesh
+        long binds = Mesh.getTextureBinds();
+        Mesh.beginBatch();
+        for (Mesh m : this.sortedMeshes) {
 
             //set material then set game item specifics using a lambda
             this.sceneShaderProgram.setUniform("material", m.getMaterial());
-
-            //enable shadow map texture
-            glActiveTexture(GL_TEXTURE2);
-            glBindTexture(GL_TEXTURE_2D, this.shadowMap.getDepthMap().getID());
-            m.renderList(meshMap.get(m), (GameItem item) -> {
+            m.renderList(meshMap.get(m), this::isVisible, (GameItem item) -> {
 
                 //set model view and light model view matrices
                 this.sceneShaderProgram.setUniform("modelView", this.transformation.updateModelViewMatrix(item, viewMatrix));
@@ -286,24 +587,203 @@ public class Renderer {
                 //set animation info
                 if (item instanceof AnimGameItem) {
                     AnimGameItem aitem = (AnimGameItem)item;
-                    AnimatedFrame frame = aitem.getCurrentFrame();
-                    this.sceneShaderProgram.setUniform("jointsMatrix", frame.getJointMatrices());
+                    this.sceneShaderProgram.setUniform("jointsMatrix", aitem.getJointMatrices());
                 }
 
             });
         }
+        Mesh.endBatch();
+        this.textureBinds = (int)(Mesh.getTextureBinds() - binds);
 
         //Unbind shader program
         sceneShaderProgram.unbind();
     }
 
+    //Texture Comparison Method
+    //orders meshes by texture, then normal map (untextured meshes first)
+    private static int compareTextures(Mesh a, Mesh b) {
+        Material ma = a.getMaterial(), mb = b.getMaterial();
+        int result = Integer.compare(ma.isTextured() ? ma.getTexture().getID() : 0, mb.isTextured() ? mb.getTexture().getID() : 0);
+        if (result != 0) return result;
+        return Integer.compare(ma.hasNormalMap() ? ma.getNormalMap().getID() : 0, mb.hasNormalMap() ? mb.getNormalMap().getID() : 0);
+    }
+
+    //Terrain Rendering Method
+    //selects the terrain's level of detail nodes for the camera and renders them with the shared grid meshes
+    private void renderTerrain(Camera camera, Scene scene) {
+
+        //select nodes against the camera frustum
+        TerrainLOD terrainLOD = scene.getTerrainLOD();
+        Matrix4f viewMatrix = this.transformation.getViewMatrix();
+        Matrix4f lightViewMatrix = this.transformation.getLightViewMatrix();
+        this.cameraFrustum.set(this.cameraProjView.set(this.transformation.getProjectionMatrix()).mul(viewMatrix));
+        terrainLOD.select(camera.getPosition(), this.cameraFrustum);
+        this.terrainTriangles = terrainLOD.getTriangleCount();
+
+        //bind shader program and set uniforms shared by every node
+        this.terrainShaderProgram.bind();
+        this.terrainShaderProgram.setUniform("projection", this.transformation.getProjectionMatrix());
+        this.terrainShaderProgram.setUniform("orthoProjectionMatrix", this.transformation.getOrthoProjectionMatrix());
+        this.renderLights(this.terrainShaderProgram, viewMatrix, scene.getLighting());
+        this.terrainShaderProgram.setUniform("textureSampler", 0);
+        this.terrainShaderProgram.setUniform("normalMapSampler", 1);
+        this.terrainShaderProgram.setUniform("shadowMap", 2);
+        this.terrainShaderProgram.setUniform("heightMapSampler", 3);
+        this.terrainShaderProgram.setUniform("fog", scene.getFog());
+        this.terrainShaderProgram.setUniform("textureInc", (float)terrainLOD.getHeightMap().getTextureInc());
+        this.terrainShaderProgram.setUniform("material", terrainLOD.getGridMesh().getMaterial());
+
+        //bind shadow map and height textures
+        glActiveTexture(GL_TEXTURE2);
+        glBindTexture(GL_TEXTURE_2D, this.shadowMap.getDepthMap().getID());
+        glActiveTexture(GL_TEXTURE3);
+        glBindTexture(GL_TEXTURE_2D, terrainLOD.getHeightTexture().getID());
+
+        //render whole nodes, then node quadrants
+        this.renderTerrainNodes(terrainLOD, terrainLOD.getGridMesh(), terrainLOD.getNodes(), terrainLOD.getGridSize(),
+                viewMatrix, lightViewMatrix);
+        this.renderTerrainNodes(terrainLOD, terrainLOD.getHalfGridMesh(), terrainLOD.getHalfNodes(), terrainLOD.getGridSize() / 2,
+                viewMatrix, lightViewMatrix);
+
+        //unbind height texture and shader program
+        glActiveTexture(GL_TEXTURE3);
+        glBindTexture(GL_TEXTURE_2D, 0);
+        glActiveTexture(GL_TEXTURE0);
+        this.terrainShaderProgram.unbind();
+    }
+
+    //Terrain Mesh Rendering Method
+    //renders every chunk of the scene's compact terrain mesh
+    private void renderTerrainMesh(Scene scene) {
+
+        //bind shader program and set uniforms shared by every chunk
+        TerrainMesh terrainMesh = scene.getTerrainMesh();
+        HeightMap heightMap = terrainMesh.getHeightMap();
+        Matrix4f viewMatrix = this.transformation.getViewMatrix();
+        Matrix4f lightViewMatrix = this.transformation.getLightViewMatrix();
+        this.terrainMeshShaderProgram.bind();
+        this.terrainMeshShaderProgram.setUniform("projection", this.transformation.getProjectionMatrix());
+        this.terrainMeshShaderProgram.setUniform("orthoProjectionMatrix", this.transformation.getOrthoProjectionMatrix());
+        this.renderLights(this.terrainMeshShaderProgram, viewMatrix, scene.getLighting());
+        this.terrainMeshShaderProgram.setUniform("textureSampler", 0);
+        this.terrainMeshShaderProgram.setUniform("normalMapSampler", 1);
+        this.terrainMeshShaderProgram.setUniform("shadowMap", 2);
+        this.terrainMeshShaderProgram.setUniform("heightMapSampler", 3);
+        this.terrainMeshShaderProgram.setUniform("fog", scene.getFog());
+        this.terrainMeshShaderProgram.setUniform("minY", terrainMesh.getMinY());
+        this.terrainMeshShaderProgram.setUniform("maxY", terrainMesh.getMaxY());
+        this.terrainMeshShaderProgram.setUniform("textureInc", (float)heightMap.getTextureInc());
+        this.terrainMeshShaderProgram.setUniform("material", terrainMesh.getMaterial());
+
+        //bind diffuse, shadow map and height textures
+        if (terrainMesh.getMaterial().isTextured()) {
+            TextureResidency.touch(terrainMesh.getMaterial().getTexture());
+            glActiveTexture(GL_TEXTURE0);
+            glBindTexture(GL_TEXTURE_2D, terrainMesh.getMaterial().getTexture().getID());
+        }
+        glActiveTexture(GL_TEXTURE2);
+        glBindTexture(GL_TEXTURE_2D, this.shadowMap.getDepthMap().getID());
+        glActiveTexture(GL_TEXTURE3);
+        glBindTexture(GL_TEXTURE_2D, terrainMesh.getHeightTexture().getID());
+
+        //render each chunk
+        for (GameItem chunk : terrainMesh.getChunks()) {
+            if (!this.isVisible(chunk)) continue;
+            this.terrainMeshShaderProgram.setUniform("modelView", this.transformation.updateModelViewMatrix(chunk, viewMatrix));
+            this.terrainMeshShaderProgram.setUniform("modelLightViewMatrix", this.transformation.updateModelLightViewMatrix(chunk, lightViewMatrix));
+            terrainMesh.render();
+        }
+
+        //unbind textures and shader program
+        glBindTexture(GL_TEXTURE_2D, 0);
+        glActiveTexture(GL_TEXTURE0);
+        glBindTexture(GL_TEXTURE_2D, 0);
+        this.terrainMeshShaderProgram.unbind();
+    }
+
+    //Scatter Rendering Method
+    //updates the scene's scatter around the camera, culls its cells and draws each layer instanced
+    private void renderScatter(Camera camera, Scene scene) {
+
+        //update and cull cells
+        TerrainScatter scatter = scene.getTerrainScatter();
+        Matrix4f viewMatrix = this.transformation.getViewMatrix();
+        scatter.update(camera.getPosition());
+        this.cameraFrustum.set(this.cameraProjView.set(this.transformation.getProjectionMatrix()).mul(viewMatrix));
+        scatter.cull(camera.getPosition(), this.cameraFrustum);
+
+        //bind shader program and set uniforms shared by every layer - instances are in world space
+        this.scatterShaderProgram.bind();
+        this.scatterShaderProgram.setUniform("projection", this.transformation.getProjectionMatrix());
+        this.scatterShaderProgram.setUniform("modelView", viewMatrix);
+        this.scatterShaderProgram.setUniform("orthoProjectionMatrix", this.transformation.getOrthoProjectionMatrix());
+        this.scatterShaderProgram.setUniform("modelLightViewMatrix", this.transformation.getLightViewMatrix());
+        this.renderLights(this.scatterShaderProgram, viewMatrix, scene.getLighting());
+        this.scatterShaderProgram.setUniform("textureSampler", 0);
+        this.scatterShaderProgram.setUniform("normalMapSampler", 1);
+        this.scatterShaderProgram.setUniform("shadowMap", 2);
+        this.scatterShaderProgram.setUniform("instanceSampler", 4);
+        this.scatterShaderProgram.setUniform("fog", scene.getFog());
+
+        //bind shadow map
+        glActiveTexture(GL_TEXTURE2);
+        glBindTexture(GL_TEXTURE_2D, this.shadowMap.getDepthMap().getID());
+
+        //render each layer
+        for (int i = 0; i < scatter.getLayers().size(); i++) {
+            this.scatterShaderProgram.setUniform("material", scatter.getLayers().get(i).getMesh().getMaterial());
+            scatter.render(i, (int offset) -> this.scatterShaderProgram.setUniform("instanceOffset", offset));
+        }
+
+        //unbind shader program
+        this.scatterShaderProgram.unbind();
+    }
+
+    //Terrain Node Rendering Method
+    private void renderTerrainNodes(TerrainLOD terrainLOD, Mesh gridMesh, TerrainLOD.NodeList nodes, int gridDim,
+                                    Matrix4f viewMatrix, Matrix4f lightViewMatrix) {
+        GameItem[] chunks = terrainLOD.getChunks();
+        this.terrainShaderProgram.setUniform("gridDim", (float)gridDim);
+        gridMesh.renderCount(nodes.size(), (int i) -> {
+
+            //set chunk matrices and camera position in chunk local space (the view space origin)
+            GameItem chunk = chunks[nodes.getChunk(i)];
+            Matrix4f modelView = this.transformation.updateModelViewMatrix(chunk, viewMatrix);
+            modelView.invert(this.invModelView).transformPosition(this.localCamera.set(0, 0, 0));
+            this.terrainShaderProgram.setUniform("modelView", modelView);
+            this.terrainShaderProgram.setUniform("modelLightViewMatrix", this.transformation.updateModelLightViewMatrix(chunk, lightViewMatrix));
+            this.terrainShaderProgram.setUniform("cameraPos", this.localCamera);
+
+            //set node area and morph range
+            int level = nodes.getLevel(i);
+            this.terrainShaderProgram.setUniform("nodeParams", this.nodeParams.set(nodes.getX(i), nodes.getZ(i), nodes.getSize(i)));
+            this.terrainShaderProgram.setUniform("morphStart", terrainLOD.getMorphStart(level));
+            this.terrainShaderProgram.setUniform("morphEnd", terrainLOD.getMorphEnd(level));
+        });
+    }
+
+    //Visibility Method
+    //animated items which the animation level of detail found to be off-screen and items behind hills are culled
+    private boolean isVisible(GameItem item) {
+        if (item instanceof AnimGameItem && ((AnimGameItem)item).getLODLevel() == AnimLOD.LEVEL_FROZEN) return false;
+        return this.horizonCuller == null || !this.horizonCuller.isOccluded(item);
+    }
+
+    //Shadow Caster Method
+    //animated items only cast shadows if their current bounds intersect the light's frustum
+    private boolean isShadowCaster(GameItem item) {
+        if (!(item instanceof AnimGameItem)) return true;
+        ((AnimGameItem)item).getWorldBounds(this.boundsMin, this.boundsMax);
+        return this.lightFrustum.testAab(this.boundsMin, this.boundsMax);
+    }
+
     //A Private Light Rendering Method
     //REQUIREMENT: all light arrays must be either full or empty - no null elements
-    private void renderLights(Matrix4f viewMatrix, SceneLighting lighting) {
+    private void renderLights(ShaderProgram shaderProgram, Matrix4f viewMatrix, SceneLighting lighting) {
 
         //set ambient light and specular power
-        this.sceneShaderProgram.setUniform("ambientLight", lighting.getAmbientLight());
-        this.sceneShaderProgram.setUniform("specularPower", this.specularPower);
+        shaderProgram.setUniform("ambientLight", lighting.getAmbientLight());
+        shaderProgram.setUniform("specularPower", this.specularPower);
 
         //render light points
         LightPoint[] lightPoints = lighting.getLightPoints();
@@ -318,7 +798,7 @@ public class Renderer {
             pos.x = posT.x;
             pos.y = posT.y;
             pos.z = posT.z;
-            sceneShaderProgram.setUniform("lightPoints[" + i + "]", lpCopy);
+            shaderProgram.setUniform("lightPoints[" + i + "]", lpCopy);
         }
 
         //render spot lights
@@ -337,7 +817,7 @@ public class Renderer {
             pos.x = posT.x;
             pos.y = posT.y;
             pos.z = posT.z;
-            sceneShaderProgram.setUniform("spotLights[" + i + "]", slCopy);
+            shaderProgram.setUniform("spotLights[" + i + "]", slCopy);
         }
 
         //render directional light
@@ -345,7 +825,7 @@ public class Renderer {
         Vector4f dirT = new Vector4f(dlCopy.getDirection(), 0);
         dirT.mul(viewMatrix);
         dlCopy.setDirection(new Vector3f(dirT.x, dirT.y, dirT.z));
-        sceneShaderProgram.setUniform("directionalLight", dlCopy);
+        shaderProgram.setUniform("directionalLight", dlCopy);
     }
 
     //HUD Rendering Method
@@ -357,18 +837,9 @@ public class Renderer {
         //calculate orthographic projection matrix
         Matrix4f ortho = this.transformation.updateOrtho2DProjectionMatrix(0, window.getWidth(), window.getHeight(), 0);
 
-        //render each hud item
-        for (GameItem gameItem : hud.getGameItems()) {
-
-            //calculate model matrix and set uniforms
-            Matrix4f projectionModelMatrix = this.transformation.updateOrthoProjModelMatrix(gameItem, ortho);
-            this.hudShaderProgram.setUniform("projectionModel", projectionModelMatrix);
-            this.hudShaderProgram.setUniform("color", gameItem.getMesh().getMaterial().getAmbientColor());
-            this.hudShaderProgram.setUniform("hasTexture", gameItem.getMesh().getMaterial().isTextured() ? 1 : 0);
-
-            //render
-            gameItem.getMesh().render();
-        }
+        //render hud items in as few draws as possible
+        this.hudShaderProgram.setUniform("textureSampler", 0);
+        this.hudBatch.render(hud.getGameItems(), ortho, this.transformation);
 
         //unbind
         this.hudShaderProgram.unbind();
@@ -377,6 +848,13 @@ public class Renderer {
     //Cleanup Method
     public void cleanup() {
         if (sceneShaderProgram != null) sceneShaderProgram.cleanup();
+        if (terrainShaderProgram != null) terrainShaderProgram.cleanup();
+        if (terrainDepthShaderProgram != null) terrainDepthShaderProgram.cleanup();
+        if (terrainMeshShaderProgram != null) terrainMeshShaderProgram.cleanup();
+        if (terrainMeshDepthShaderProgram != null) terrainMeshDepthShaderProgram.cleanup();
+        if (scatterShaderProgram != null) scatterShaderProgram.cleanup();
+        if (scatterDepthShaderProgram != null) scatterDepthShaderProgram.cleanup();
         if (hudShaderProgram != null) hudShaderProgram.cleanup();
+        if (hudBatch != null) hudBatch.cleanup();
     }
 }
@@ -87,6 +87,7 @@ public class ShaderProgram {
         createUniform(uniformName + ".specular");
         createUniform(uniformName + ".hasTexture");
         createUniform(uniformName + ".hasNormalMap");
+        createUniform(uniformName + ".hasTwoChannelNormalMap");
         createUniform(uniformName + ".reflectance");
     }
 
@@ -154,6 +155,7 @@ public class ShaderProgram {
         setUniform(uniformName + ".specular", value.getSpecularColor());
         setUniform(uniformName + ".hasTexture", value.isTextured() ? 1 : 0);
         setUniform(uniformName + ".hasNormalMap", value.hasNormalMap() ? 1 : 0);
+        setUniform(uniformName + ".hasTwoChannelNormalMap", value.hasNormalMap() && value.getNormalMap().isTwoChannel() ? 1 : 0);
         setUniform(uniformName + ".reflectance", value.getReflectance());
     }
 
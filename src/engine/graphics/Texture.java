@@ -1,80 +1,95 @@
 package engine.graphics;
 
-import org.lwjgl.system.MemoryStack;
-
-import java.io.File;
-import java.net.URL;
 import java.nio.ByteBuffer;
-import java.nio.IntBuffer;
-import java.nio.file.Paths;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
 import static org.lwjgl.opengl.GL11.*;
 import static org.lwjgl.opengl.GL12.GL_CLAMP_TO_EDGE;
+import static org.lwjgl.opengl.GL12.GL_TEXTURE_MAX_LEVEL;
+import static org.lwjgl.opengl.GL13.glCompressedTexImage2D;
+import static org.lwjgl.opengl.GL30.GL_R16;
+import static org.lwjgl.opengl.GL30.GL_R32F;
 import static org.lwjgl.opengl.GL30.glGenerateMipmap;
 import static org.lwjgl.opengl.GL30.glTexParameterIi;
-import static org.lwjgl.stb.STBImage.*;
 
 public class Texture {
 
     //Data
-    private final int id;
-    private final int width, height;
+    private int id; //replaced when the texture residency downgrades or restores the texture
+    private int width, height; //of the full texture - replaced when an asynchronously decoded image arrives
+    private int format; //compressed internal format (0 if uncompressed)
+    private int levelCount = 1; //mip levels of the full texture
+    String cacheKey; //key within the texture cache (null if not cached)
+    int references; //references held through the texture cache
+    boolean deleted; //set on deletion so that a pending asynchronous upload is dropped
+
+    //Residency Data (see TextureResidency)
+    String sourceFile; //file the full texture can be reloaded from (null if it cannot be)
+    int residentLevel; //first mip level held in video memory (0 when fully resident)
+    long lastUse; //frame the texture was last bound in
+    boolean restoring; //set while an asynchronous loader restores the texture
+
+    //every texture is tracked by the texture residency
+    {
+        TextureResidency.register(this);
+    }
 
     //Constructors
     public Texture(String fileName) throws Exception { //from filename
-
-        //creat buffer
-        ByteBuffer buffer;
-
-        //load texture from file
-        try (MemoryStack stack = MemoryStack.stackPush()) {
-            IntBuffer w = stack.mallocInt(1); //buffer to hold width
-            IntBuffer h = stack.mallocInt(1); //buffer to hold height
-            IntBuffer channels = stack.mallocInt(1); //buffer to hold the channel amount
-
-            URL url = Texture.class.getResource(fileName);
-            File file = Paths.get(url.toURI()).toFile();
-            String filePath = file.getAbsolutePath();
-            buffer = stbi_load(filePath, w, h, channels, 4); //four channels: r, g, b, a -
-            if (buffer == null) throw new Exception("Image file [" + filePath + "] not loaded: " + stbi_failure_reason());
-
-            this.width = w.get();
-            this.height = h.get();
-        }
-
-        //set id
-        this.id = createTexture(buffer);
-
-        //free image memory
-        stbi_image_free(buffer);
+        this(Image.load(fileName));
     }
 
     public Texture(ByteBuffer imageBuffer) throws Exception { //from buffer
+        this(Image.decode(imageBuffer, "memory"));
+    }
 
-        //create buffer
-        ByteBuffer buffer;
-
-        //load texture from memory
-        try (MemoryStack stack = MemoryStack.stackPush()) {
-
-            //allocate space for width, height, channels
-            IntBuffer w = stack.mallocInt(1);
-            IntBuffer h = stack.mallocInt(1);
-            IntBuffer channels = stack.mallocInt(1);
-
-            //load image from memory
-            buffer = stbi_load_from_memory(imageBuffer, w, h, channels, 4);
-            if (buffer == null) throw new Exception("Image file not loaded: " + stbi_failure_reason());
+    Texture(Image image) { //uploads and frees a decoded image
+        try {
+            this.width = image.getWidth();
+            this.height = image.getHeight();
+            this.id = createTexture(image.getPixels());
+        } finally {
+            image.free();
+        }
+    }
 
-            //set width and height
-            this.width = w.get();
-            this.height = h.get();
+    public Texture(CompressedImage image) { //block compressed, with the image's mip chain (see TextureCompressor)
+        this.id = glGenTextures();
+        this.width = image.getWidth();
+        this.height = image.getHeight();
+        this.format = image.getFormat();
+        this.levelCount = image.getLevelCount();
+        glBindTexture(GL_TEXTURE_2D, this.id);
+        for (int level = 0; level < image.getLevelCount(); level++) {
+            glCompressedTexImage2D(GL_TEXTURE_2D, level, image.getFormat(), Math.max(1, this.width >> level),
+                    Math.max(1, this.height >> level), 0, image.getLevel(level));
         }
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAX_LEVEL, image.getLevelCount() - 1);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR_MIPMAP_LINEAR);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
+    }
 
-        //create texture
+    Texture() { //single white pixel placeholder, filled in later by upload (see AsyncTextureLoader)
+        ByteBuffer buffer = ByteBuffer.allocateDirect(4);
+        buffer.put(0, (byte)0xFF).put(1, (byte)0xFF).put(2, (byte)0xFF).put(3, (byte)0xFF);
+        this.width = this.height = 1;
         this.id = createTexture(buffer);
+    }
 
-        //free image memory
-        stbi_image_free(buffer);
+    Texture(int width, int height, ByteBuffer[] levels) { //RGBA with a prepared mip chain or one level (see TextureAtlas)
+        this.id = glGenTextures();
+        this.width = width;
+        this.height = height;
+        this.levelCount = levels.length;
+        glBindTexture(GL_TEXTURE_2D, this.id);
+        glPixelStorei(GL_UNPACK_ALIGNMENT, 1);
+        for (int level = 0; level < levels.length; level++) {
+            glTexImage2D(GL_TEXTURE_2D, level, GL_RGBA, Math.max(1, width >> level), Math.max(1, height >> level), 0,
+                    GL_RGBA, GL_UNSIGNED_BYTE, levels[level]);
+        }
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAX_LEVEL, levels.length - 1);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, levels.length > 1 ? GL_LINEAR_MIPMAP_LINEAR : GL_LINEAR);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
     }
 
     public Texture(int width, int height, int pixelFormat) throws Exception {
@@ -89,6 +104,32 @@ public class Texture {
         glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
     }
 
+    public Texture(int width, int height, FloatBuffer data) { //single channel float texture (e.g. heights)
+        this.id = glGenTextures();
+        this.width = width;
+        this.height = height;
+        glBindTexture(GL_TEXTURE_2D, this.id);
+        glPixelStorei(GL_UNPACK_ALIGNMENT, 4);
+        glTexImage2D(GL_TEXTURE_2D, 0, GL_R32F, this.width, this.height, 0, GL_RED, GL_FLOAT, data);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
+    }
+
+    public Texture(int width, int height, ShortBuffer data) { //single channel normalized 16-bit texture (e.g. compact heights)
+        this.id = glGenTextures();
+        this.width = width;
+        this.height = height;
+        glBindTexture(GL_TEXTURE_2D, this.id);
+        glPixelStorei(GL_UNPACK_ALIGNMENT, 2);
+        glTexImage2D(GL_TEXTURE_2D, 0, GL_R16, this.width, this.height, 0, GL_RED, GL_UNSIGNED_SHORT, data);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
+    }
+
     //Texture Creation Method
     private int createTexture(ByteBuffer buffer) {
 
@@ -115,17 +156,98 @@ public class Texture {
         //(@type) - specifies the data type of the pixel data. we are using unsigned bytes for this.
         //(@data) - the buffer storing the data
         glGenerateMipmap(GL_TEXTURE_2D); //Generate MipMaps
+        this.levelCount = getFullLevelCount(this.width, this.height);
 
         //return texture ID
         return textureId;
     }
 
+    //Upload Method
+    //replaces the texture's image with decoded RGBA pixels, keeping its id so that materials holding it see the change
+    void upload(ByteBuffer buffer, int width, int height) {
+        this.width = width;
+        this.height = height;
+        glBindTexture(GL_TEXTURE_2D, this.id);
+        glPixelStorei(GL_UNPACK_ALIGNMENT, 1);
+        glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA, this.width, this.height, 0, GL_RGBA, GL_UNSIGNED_BYTE, buffer);
+        glGenerateMipmap(GL_TEXTURE_2D);
+        this.levelCount = getFullLevelCount(width, height);
+    }
+
+    //Residency Methods
+    //replaces the texture's storage with the given mip levels, starting at a level of the full texture - frees the
+    //video memory of the levels above it while keeping the texture's parameters
+    void respecify(ByteBuffer[] levels, int residentLevel) {
+        glBindTexture(GL_TEXTURE_2D, this.id);
+        int minFilter = glGetTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER);
+        int magFilter = glGetTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER);
+        int wrapS = glGetTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S);
+        int wrapT = glGetTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T);
+        glDeleteTextures(this.id);
+        this.id = glGenTextures();
+        glBindTexture(GL_TEXTURE_2D, this.id);
+        glPixelStorei(GL_UNPACK_ALIGNMENT, 1);
+        for (int level = 0; level < levels.length; level++) {
+            int levelWidth = this.getLevelWidth(residentLevel + level), levelHeight = this.getLevelHeight(residentLevel + level);
+            if (this.format != 0) glCompressedTexImage2D(GL_TEXTURE_2D, level, this.format, levelWidth, levelHeight, 0, levels[level]);
+            else glTexImage2D(GL_TEXTURE_2D, level, GL_RGBA, levelWidth, levelHeight, 0, GL_RGBA, GL_UNSIGNED_BYTE, levels[level]);
+        }
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAX_LEVEL, levels.length - 1);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, minFilter);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, magFilter);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, wrapS);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, wrapT);
+        this.residentLevel = residentLevel;
+    }
+
+    //takes over a freshly loaded copy of the full texture, deleting this texture's storage
+    void adopt(Texture loaded) {
+        glDeleteTextures(this.id);
+        this.id = loaded.id;
+        this.width = loaded.width;
+        this.height = loaded.height;
+        this.format = loaded.format;
+        this.levelCount = loaded.levelCount;
+        this.residentLevel = 0;
+        loaded.deleted = true;
+        TextureResidency.unregister(loaded);
+    }
+
+    //returns the bytes of the mip levels from a level down
+    public long getSize(int fromLevel) {
+        long size = 0;
+        for (int level = fromLevel; level < this.levelCount; level++) {
+            int levelWidth = this.getLevelWidth(level), levelHeight = this.getLevelHeight(level);
+            size += this.format != 0 ? TextureCompressor.getLevelSize(this.format, levelWidth, levelHeight) : 4L * levelWidth * levelHeight;
+        }
+        return size;
+    }
+
+    private static int getFullLevelCount(int width, int height) { return 32 - Integer.numberOfLeadingZeros(Math.max(width, height)); }
+
     //Accessors
     public int getID() { return this.id; }
     public int getWidth() { return this.width; }
     public int getHeight() { return this.height; }
+    public long getMemorySize() { return this.getSize(0); } //of the full texture with mipmaps, in bytes
+    public long getResidentSize() { return this.getSize(this.residentLevel); } //held in video memory
+    public int getFormat() { return this.format; }
+    public int getLevelCount() { return this.levelCount; }
+    public int getLevelWidth(int level) { return Math.max(1, this.width >> level); }
+    public int getLevelHeight(int level) { return Math.max(1, this.height >> level); }
+    public int getResidentLevel() { return this.residentLevel; }
+    public boolean isCompressed() { return this.format != 0; }
+    public boolean isTwoChannel() { return this.format == TextureCompressor.BC5; } //normal maps without a stored z
+    public boolean isCached() { return this.cacheKey != null; }
 
     //Other Methods
     public void bind() { glBindTexture(GL_TEXTURE_2D, this.id); }
-    public void cleanup() { glDeleteTextures(this.id); }
+    public void cleanup() { //cached textures release a reference instead
+        if (this.cacheKey != null) TextureCache.release(this);
+        else {
+            glDeleteTextures(this.id);
+            this.deleted = true;
+            TextureResidency.unregister(this);
+        }
+    }
 }
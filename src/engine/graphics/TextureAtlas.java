@@ -0,0 +1,344 @@
+package engine.graphics;
+
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+//packs small textures (and their normal maps) into shared pages at load time so that meshes using them bind the same
+//textures and can be drawn one after the other without rebinding. textures with normal maps are packed onto their own
+//pages, so that textures without one are never given a page normal map and lit as if they had. entries are placed with
+//a bottom-left skyline packer on a grid of aligned cells, surrounded by padding filled with their clamped edges. as
+//every entry's padded rectangle starts and ends on a cell boundary, each mip level down to the cell size only averages
+//texels of a single entry, so mips never bleed between entries. meshes must keep their texture coordinates within
+//0.0f - 1.0f to be remapped
+//must only be built and used on the OpenGL thread
+public class TextureAtlas {
+
+    //Static Data
+    private static final int DEFAULT_PAGE_SIZE = 2048;
+    private static final int DEFAULT_PADDING = 8;
+    private static final float UV_TOLERANCE = 1e-4f;
+    private static int nextAtlasID;
+
+    //Data
+    private final int atlasID;
+    private final int pageSize; //page width, and maximum page height, in texels
+    private final int padding; //texels around each entry
+    private final int cellSize; //packing alignment - the largest power of two not above the padding
+    private final int mipLevels; //mip levels below the base level, until a cell shrinks to a single texel
+    private final List<Entry> entries;
+    private final Map<String, Region> regions; //by texture file
+    private final List<Page> pages;
+    private boolean built;
+
+    //Constructors
+    public TextureAtlas() { this(DEFAULT_PAGE_SIZE, DEFAULT_PADDING); }
+
+    public TextureAtlas(int pageSize, int padding) {
+        this.atlasID = nextAtlasID++;
+        this.pageSize = pageSize;
+        this.padding = Math.max(1, padding);
+        this.cellSize = Integer.highestOneBit(this.padding);
+        this.mipLevels = Integer.numberOfTrailingZeros(this.cellSize);
+        this.entries = new ArrayList<>();
+        this.regions = new HashMap<>();
+        this.pages = new ArrayList<>();
+    }
+
+    //Add Methods
+    //decodes a texture (and its normal map, if not null) to be packed on build. returns false, leaving the texture
+    //out of the atlas, if it is too large to share a page or has already been added
+    public boolean add(String textureFile) throws Exception { return this.add(textureFile, null); }
+
+    public boolean add(String textureFile, String normalMapFile) throws Exception {
+        if (this.built) throw new Exception("Texture atlas has already been built");
+        for (Entry entry : this.entries) if (entry.textureFile.equals(textureFile)) return false;
+        Image texture = Image.load(textureFile);
+        int paddedWidth = texture.getWidth() + 2 * this.padding, paddedHeight = texture.getHeight() + 2 * this.padding;
+        if (paddedWidth > this.pageSize / 2 || paddedHeight > this.pageSize / 2) {
+            texture.free();
+            return false;
+        }
+        Image normalMap = null;
+        if (normalMapFile != null) {
+            normalMap = Image.load(normalMapFile);
+            if (normalMap.getWidth() != texture.getWidth() || normalMap.getHeight() != texture.getHeight()) {
+                normalMap.free();
+                texture.free();
+                throw new Exception("Normal map [" + normalMapFile + "] does not match the size of [" + textureFile + "]");
+            }
+        }
+        this.entries.add(new Entry(textureFile, texture, normalMap));
+        return true;
+    }
+
+    //Build Method
+    //packs every added texture into pages and uploads them with their mip chains
+    public void build() {
+        if (this.built) return;
+        this.built = true;
+
+        //pack tallest entries first - the skyline packer wastes the least space that way
+        this.entries.sort((a, b) -> a.texture.getHeight() != b.texture.getHeight() ?
+                b.texture.getHeight() - a.texture.getHeight() : b.texture.getWidth() - a.texture.getWidth());
+        int pageCells = this.pageSize / this.cellSize;
+        for (Entry entry : this.entries) {
+            int width = this.toCells(entry.texture.getWidth()), height = this.toCells(entry.texture.getHeight());
+            boolean normalMapped = entry.normalMap != null;
+            for (int i = 0; entry.page == null; i++) {
+                if (i == this.pages.size()) this.pages.add(new Page(this.pages.size(), pageCells, normalMapped));
+                if (this.pages.get(i).normalMapped != normalMapped) continue;
+                int[] position = this.pages.get(i).place(width, height, pageCells);
+                if (position == null) continue;
+                entry.page = this.pages.get(i);
+                entry.x = position[0] * this.cellSize + this.padding;
+                entry.y = position[1] * this.cellSize + this.padding;
+                entry.page.entries.add(entry);
+            }
+        }
+
+        //rasterize and upload pages, then create regions
+        for (Page page : this.pages) {
+            page.height = Math.min(this.pageSize, nextPowerOfTwo(page.getUsedCells() * this.cellSize));
+            page.texture = this.createPageTexture(page, false);
+            TextureCache.add("atlas:" + this.atlasID + ":" + page.index, page.texture);
+            page.texture.references++; //held by the atlas until cleanup
+            if (page.normalMapped) {
+                page.normalMap = this.createPageTexture(page, true);
+                TextureCache.add("atlas:" + this.atlasID + ":" + page.index + ":normal", page.normalMap);
+                page.normalMap.references++;
+            }
+        }
+        for (Entry entry : this.entries) {
+            Page page = entry.page;
+            float u0 = entry.x / (float)this.pageSize, v0 = entry.y / (float)page.height;
+            float u1 = (entry.x + entry.texture.getWidth()) / (float)this.pageSize;
+            float v1 = (entry.y + entry.texture.getHeight()) / (float)page.height;
+            this.regions.put(entry.textureFile, new Region(page, u0, v0, u1, v1));
+            page.usedTexels += (long)entry.texture.getWidth() * entry.texture.getHeight();
+            entry.texture.free();
+            if (entry.normalMap != null) entry.normalMap.free();
+        }
+    }
+
+    //Page Texture Creation Method
+    //copies the page's entries (or their normal maps) with clamped padding and uploads them with a box filtered mip chain
+    private Texture createPageTexture(Page page, boolean normalMaps) {
+        ByteBuffer[] levels = new ByteBuffer[this.mipLevels + 1];
+        try {
+            levels[0] = MemoryUtil.memCalloc(this.pageSize * page.height * 4);
+            for (Entry entry : page.entries) {
+                Image image = normalMaps ? entry.normalMap : entry.texture;
+                this.copyEntry(levels[0], image, entry.x, entry.y, entry.texture.getWidth(), entry.texture.getHeight());
+            }
+            for (int level = 1; level <= this.mipLevels; level++) {
+                int width = this.pageSize >> level, height = Math.max(1, page.height >> level);
+                levels[level] = MemoryUtil.memAlloc(width * height * 4);
+                Image.downsample(levels[level - 1], width * 2, Math.max(1, page.height >> (level - 1)), levels[level], width, height);
+            }
+            return new Texture(this.pageSize, page.height, levels);
+        } finally {
+            for (ByteBuffer level : levels) if (level != null) MemoryUtil.memFree(level);
+        }
+    }
+
+    //copies an image into a page with its edges clamped into the padding around it
+    private void copyEntry(ByteBuffer page, Image image, int x, int y, int width, int height) {
+        ByteBuffer pixels = image.getPixels();
+        int startX = x - this.padding, startY = y - this.padding;
+        int endX = startX + this.toCells(width) * this.cellSize, endY = startY + this.toCells(height) * this.cellSize;
+        for (int py = startY; py < endY; py++) {
+            int sy = Math.max(0, Math.min(height - 1, py - y));
+            for (int px = startX; px < endX; px++) {
+                int sx = Math.max(0, Math.min(width - 1, px - x));
+                page.putInt((py * this.pageSize + px) * 4, pixels.getInt((sy * width + sx) * 4));
+            }
+        }
+    }
+
+    //Size Methods
+    //returns the number of cells covering a size and its padding
+    private int toCells(int size) { return (size + 2 * this.padding + this.cellSize - 1) / this.cellSize; }
+
+    private static int nextPowerOfTwo(int value) { return value <= 1 ? 1 : Integer.highestOneBit(value - 1) << 1; }
+
+    //Accessors
+    public Region getRegion(String textureFile) { return this.regions.get(textureFile); }
+    public int getPageCount() { return this.pages.size(); }
+    public int getEntryCount() { return this.entries.size(); }
+    public boolean isBuilt() { return this.built; }
+    public float getOccupancy() { //share of page texels covered by entries, excluding padding
+        long used = 0, total = 0;
+        for (Page page : this.pages) {
+            used += page.usedTexels;
+            total += (long)this.pageSize * page.height;
+        }
+        return total == 0 ? 0.0f : used / (float)total;
+    }
+    public String getReport() {
+        StringBuilder report = new StringBuilder("Texture atlas: " + this.entries.size() + " textures in " +
+                this.pages.size() + " pages, " + String.format("%.1f", this.getOccupancy() * 100) + "% occupied");
+        int bindsBefore = 0, bindsAfter = 0;
+        for (Page page : this.pages) {
+            report.append(String.format(", page %d %dx%d %.1f%%", page.index, this.pageSize, page.height,
+                    page.usedTexels * 100.0f / ((long)this.pageSize * page.height)));
+            for (Entry entry : page.entries) bindsBefore += entry.normalMap != null ? 2 : 1;
+            bindsAfter += page.normalMap != null ? 2 : 1;
+        }
+        report.append(", texture binds for one mesh per texture: ").append(bindsBefore).append(" before, ")
+                .append(bindsAfter).append(" after");
+        return report.toString();
+    }
+
+    //Cleanup Method
+    //releases the atlas' references to its pages - pages still used by materials are deleted by their last user
+    public void cleanup() {
+        for (Page page : this.pages) {
+            if (page.texture != null) page.texture.cleanup();
+            if (page.normalMap != null) page.normalMap.cleanup();
+        }
+        for (Entry entry : this.entries) {
+            if (entry.page != null) continue; //images of built entries are already freed
+            entry.texture.free();
+            if (entry.normalMap != null) entry.normalMap.free();
+        }
+    }
+
+    //an added texture and where it was packed
+    private static class Entry {
+
+        //Data
+        private final String textureFile;
+        private final Image texture, normalMap;
+        private Page page;
+        private int x, y; //position of the texture (inside its padding) within its page, in texels
+
+        //Constructor
+        Entry(String textureFile, Image texture, Image normalMap) {
+            this.textureFile = textureFile;
+            this.texture = texture;
+            this.normalMap = normalMap;
+        }
+    }
+
+    //a page texture and the skyline of its packed cells
+    private static class Page {
+
+        //Data
+        private final int index;
+        private final List<int[]> skyline; //x, y and width of each skyline segment, in cells, ordered by x
+        private final List<Entry> entries;
+        private final boolean normalMapped; //whether the page holds only textures with normal maps, or only without
+        private Texture texture, normalMap; //normal map is null unless normal mapped
+        private int height; //in texels, a power of two covering the packed cells
+        private long usedTexels;
+
+        //Constructor
+        Page(int index, int cells, boolean normalMapped) {
+            this.index = index;
+            this.normalMapped = normalMapped;
+            this.skyline = new ArrayList<>();
+            this.skyline.add(new int[] { 0, 0, cells });
+            this.entries = new ArrayList<>();
+        }
+
+        //Place Method
+        //finds the lowest (then leftmost) position a rectangle fits at and raises the skyline over it. returns the
+        //position in cells, or null if the rectangle does not fit
+        int[] place(int width, int height, int cells) {
+            int bestIndex = -1, bestX = 0, bestY = Integer.MAX_VALUE;
+            for (int i = 0; i < this.skyline.size(); i++) {
+                int x = this.skyline.get(i)[0];
+                if (x + width > cells) break;
+                int y = 0;
+                for (int j = i, remaining = width; remaining > 0; j++) {
+                    int[] segment = this.skyline.get(j);
+                    y = Math.max(y, segment[1]);
+                    remaining -= segment[2];
+                }
+                if (y + height > cells || y >= bestY) continue;
+                bestIndex = i;
+                bestX = x;
+                bestY = y;
+            }
+            if (bestIndex < 0) return null;
+
+            //raise skyline - shrink or remove the segments now covered, then merge segments of equal height
+            this.skyline.add(bestIndex, new int[] { bestX, bestY + height, width });
+            for (int i = bestIndex + 1; i < this.skyline.size(); ) {
+                int[] segment = this.skyline.get(i);
+                int overlap = bestX + width - segment[0];
+                if (overlap <= 0) break;
+                segment[0] += overlap;
+                segment[2] -= overlap;
+                if (segment[2] > 0) break;
+                this.skyline.remove(i);
+            }
+            for (int i = 0; i + 1 < this.skyline.size(); ) {
+                int[] segment = this.skyline.get(i), next = this.skyline.get(i + 1);
+                if (segment[1] != next[1]) { i++; continue; }
+                segment[2] += next[2];
+                this.skyline.remove(i + 1);
+            }
+            return new int[] { bestX, bestY };
+        }
+
+        //returns the height of the highest packed cell
+        int getUsedCells() {
+            int used = 0;
+            for (int[] segment : this.skyline) used = Math.max(used, segment[1]);
+            return used;
+        }
+    }
+
+    //the part of a page a texture was packed into
+    public static class Region {
+
+        //Data
+        private final Page page;
+        private final float u0, v0, u1, v1;
+
+        //Constructor
+        Region(Page page, float u0, float v0, float u1, float v1) {
+            this.page = page;
+            this.u0 = u0;
+            this.v0 = v0;
+            this.u1 = u1;
+            this.v1 = v1;
+        }
+
+        //Remap Method
+        //maps packed u/v texture coordinates into the region. returns false, leaving them untouched, if any coordinate is
+        //outside of 0.0f - 1.0f (e.g. the texture is repeated) and the mesh must keep its own texture
+        public boolean remap(float[] texCoords) {
+            for (float coord : texCoords) if (coord < -UV_TOLERANCE || coord > 1.0f + UV_TOLERANCE) return false;
+            for (int i = 0; i + 1 < texCoords.length; i += 2) {
+                texCoords[i] = this.u0 + Math.max(0.0f, Math.min(1.0f, texCoords[i])) * (this.u1 - this.u0);
+                texCoords[i + 1] = this.v0 + Math.max(0.0f, Math.min(1.0f, texCoords[i + 1])) * (this.v1 - this.v0);
+            }
+            return true;
+        }
+
+        //Material Creation Method
+        //creates a material using the region's page (and its normal map, if the region's texture has one), holding a
+        //reference to each
+        public Material createMaterial() {
+            Material material = new Material(this.page.texture);
+            this.page.texture.references++;
+            if (this.page.normalMap != null) {
+                material.setNormalMap(this.page.normalMap);
+                this.page.normalMap.references++;
+            }
+            return material;
+        }
+
+        //Accessors
+        public Texture getTexture() { return this.page.texture; }
+        public Texture getNormalMap() { return this.page.normalMap; }
+        public int getPageIndex() { return this.page.index; }
+    }
+}
@@ -0,0 +1,181 @@
+package engine.graphics;
+
+import org.lwjgl.system.MemoryUtil;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+//bakes images into texture containers offline. mip levels are filtered with a Kaiser windowed sinc, which keeps
+//detail the box filter blurs away without its aliasing, and can then be block compressed. run with a resource root
+//(e.g. "res"), the folders below it to bake (e.g. "/textures/bob") and optionally "raw" to skip compression. baked
+//files are written beside their images, where the texture cache picks them up instead of decoding the images
+public class TextureBaker {
+
+    //Static Data
+    private static final float FILTER_RADIUS = 3.0f; //in texels of the smaller level
+    private static final float KAISER_ALPHA = 4.0f;
+
+    //Data
+    private final TextureCompressor compressor; //null to bake raw RGBA levels
+
+    //Constructor
+    public TextureBaker(TextureCompressor compressor) {
+        this.compressor = compressor;
+    }
+
+    //Bake Method
+    //bakes an image resource into a file - must be run with the resource root on the class path
+    public void bake(String fileName, Path target) throws Exception {
+        Image image = Image.load(fileName);
+        ByteBuffer[] levels = null;
+        CompressedImage compressed = null;
+        try {
+            levels = createMipChain(image.getPixels(), image.getWidth(), image.getHeight());
+            if (this.compressor == null) {
+                TextureContainer.write(target, TextureContainer.RAW, image.getWidth(), image.getHeight(), levels);
+                return;
+            }
+            int format = TextureCompressor.chooseFormat(fileName, image);
+            compressed = this.compressor.compress(levels, image.getWidth(), image.getHeight(), format);
+            ByteBuffer[] compressedLevels = new ByteBuffer[compressed.getLevelCount()];
+            for (int level = 0; level < compressedLevels.length; level++) compressedLevels[level] = compressed.getLevel(level);
+            TextureContainer.write(target, format, image.getWidth(), image.getHeight(), compressedLevels);
+        } finally {
+            image.free();
+            if (compressed != null) compressed.free();
+            if (levels != null) for (int level = 1; level < levels.length; level++) MemoryUtil.memFree(levels[level]);
+        }
+    }
+
+    //Mip Chain Method
+    //returns the base level followed by every level down to 1x1. the base level is the given buffer
+    public static ByteBuffer[] createMipChain(ByteBuffer pixels, int width, int height) {
+        int levelCount = 32 - Integer.numberOfLeadingZeros(Math.max(width, height));
+        ByteBuffer[] levels = new ByteBuffer[levelCount];
+        levels[0] = pixels;
+        for (int level = 1; level < levelCount; level++) {
+            int sourceWidth = Math.max(1, width >> (level - 1)), sourceHeight = Math.max(1, height >> (level - 1));
+            int levelWidth = Math.max(1, width >> level), levelHeight = Math.max(1, height >> level);
+            levels[level] = MemoryUtil.memAlloc(levelWidth * levelHeight * 4);
+            downsample(levels[level - 1], sourceWidth, sourceHeight, levels[level], levelWidth, levelHeight);
+        }
+        return levels;
+    }
+
+    //Downsample Method
+    //resamples RGBA texels to a smaller size with a separable Kaiser windowed sinc, clamping at the edges
+    public static void downsample(ByteBuffer source, int sourceWidth, int sourceHeight, ByteBuffer target, int width, int height) {
+
+        //horizontal pass into floats, then vertical pass into the target
+        float[] horizontal = new float[width * sourceHeight * 4];
+        Kernel kernelX = new Kernel(sourceWidth, width), kernelY = new Kernel(sourceHeight, height);
+        for (int y = 0; y < sourceHeight; y++) {
+            for (int x = 0; x < width; x++) {
+                float r = 0, g = 0, b = 0, a = 0;
+                for (int tap = kernelX.starts[x], i = 0; i < kernelX.counts[x]; tap++, i++) {
+                    float weight = kernelX.weights[x][i];
+                    int p = (y * sourceWidth + Math.max(0, Math.min(sourceWidth - 1, tap))) * 4;
+                    r += weight * (source.get(p) & 0xFF);
+                    g += weight * (source.get(p + 1) & 0xFF);
+                    b += weight * (source.get(p + 2) & 0xFF);
+                    a += weight * (source.get(p + 3) & 0xFF);
+                }
+                int h = (y * width + x) * 4;
+                horizontal[h] = r;
+                horizontal[h + 1] = g;
+                horizontal[h + 2] = b;
+                horizontal[h + 3] = a;
+            }
+        }
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                for (int channel = 0; channel < 4; channel++) {
+                    float value = 0;
+                    for (int tap = kernelY.starts[y], i = 0; i < kernelY.counts[y]; tap++, i++) {
+                        int row = Math.max(0, Math.min(sourceHeight - 1, tap));
+                        value += kernelY.weights[y][i] * horizontal[(row * width + x) * 4 + channel];
+                    }
+                    target.put((y * width + x) * 4 + channel, (byte)Math.max(0, Math.min(255, Math.round(value))));
+                }
+            }
+        }
+    }
+
+    //Filter Methods
+    //Kaiser windowed sinc, with x in texels of the smaller level
+    private static float filter(float x) {
+        if (Math.abs(x) >= FILTER_RADIUS) return 0.0f;
+        float sinc = x == 0 ? 1.0f : (float)(Math.sin(Math.PI * x) / (Math.PI * x));
+        float t = x / FILTER_RADIUS;
+        return sinc * (float)(besselI0(KAISER_ALPHA * Math.sqrt(1 - t * t)) / besselI0(KAISER_ALPHA));
+    }
+
+    //zeroth order modified Bessel function of the first kind, by its power series
+    private static double besselI0(double x) {
+        double sum = 1, term = 1, quarter = x * x / 4;
+        for (int k = 1; k < 32 && term > sum * 1e-12; k++) {
+            term *= quarter / (k * k);
+            sum += term;
+        }
+        return sum;
+    }
+
+    //Main Method
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.out.println("Usage: TextureBaker <resource root> <folder>... [raw]");
+            return;
+        }
+        boolean raw = args[args.length - 1].equals("raw");
+        TextureCompressor compressor = raw ? null : new TextureCompressor(Runtime.getRuntime().availableProcessors());
+        TextureBaker baker = new TextureBaker(compressor);
+        File root = new File(args[0]);
+        for (int i = 1; i < args.length - (raw ? 1 : 0); i++) {
+            File[] files = new File(root, args[i]).listFiles((dir, name) -> name.endsWith(".png"));
+            if (files == null) throw new Exception("Folder [" + args[i] + "] not found under [" + root + "]");
+            for (File file : files) {
+                String fileName = (args[i].endsWith("/") ? args[i] : args[i] + "/") + file.getName();
+                Path target = Paths.get(root.getPath(), TextureContainer.getBakedName(fileName));
+                baker.bake(fileName, target);
+                System.out.println("Baked [" + fileName + "] to [" + target + "]");
+            }
+        }
+        if (compressor != null) {
+            System.out.println(compressor.getReport());
+            compressor.cleanup();
+        }
+    }
+
+    //filter taps and normalized weights for each texel of a resampled axis
+    private static class Kernel {
+
+        //Data
+        private final int[] starts, counts; //first source texel and tap count (source texels may be out of range)
+        private final float[][] weights;
+
+        //Constructor
+        Kernel(int sourceSize, int size) {
+            this.starts = new int[size];
+            this.counts = new int[size];
+            this.weights = new float[size][];
+            float scale = sourceSize / (float)size; //source texels per texel
+            for (int i = 0; i < size; i++) {
+                float center = (i + 0.5f) * scale; //in source texels
+                int start = (int)Math.floor(center - FILTER_RADIUS * scale);
+                int end = (int)Math.ceil(center + FILTER_RADIUS * scale);
+                float[] w = new float[end - start];
+                float sum = 0;
+                for (int tap = start; tap < end; tap++) {
+                    w[tap - start] = filter((tap + 0.5f - center) / scale);
+                    sum += w[tap - start];
+                }
+                for (int tap = 0; tap < w.length; tap++) w[tap] /= sum;
+                this.starts[i] = start;
+                this.counts[i] = w.length;
+                this.weights[i] = w;
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package engine.graphics;
+
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Map;
+
+//shares textures between their users. textures are keyed by their normalized resource path (or a hash of an image's
+//encoded bytes) and reference counted - each acquire must be balanced by a release, and the last release deletes the
+//texture. cached textures release themselves on cleanup, so materials and meshes sharing them clean up safely
+//must only be used on the OpenGL thread
+public class TextureCache {
+
+    //Static Data
+    private static final Map<String, Texture> TEXTURES = new HashMap<>();
+
+    //Stats
+    private static int hits, misses;
+
+    //Settings
+    private static TextureCompressor compressor; //compresses textures loaded by path (null to keep them uncompressed)
+
+    //Acquire Methods
+    //returns the shared texture for a resource path, decoding and uploading it on first use
+    public static Texture acquire(String fileName) throws Exception {
+        URL url = Texture.class.getResource(fileName);
+        if (url == null) throw new Exception("Texture file [" + fileName + "] not found");
+        String key = url.toURI().normalize().toString();
+        Texture texture = TEXTURES.get(key);
+        if (texture == null) {
+            texture = add(key, load(fileName));
+            texture.sourceFile = fileName; //reloadable once downgraded (see TextureResidency)
+        } else hits++;
+        texture.references++;
+        return texture;
+    }
+
+    //returns the shared texture for an encoded image, keyed by a hash of its bytes
+    public static Texture acquire(ByteBuffer imageBuffer) throws Exception {
+        String key = "sha1:" + hash(imageBuffer);
+        Texture texture = TEXTURES.get(key);
+        if (texture == null) texture = add(key, new Texture(imageBuffer));
+        else hits++;
+        texture.references++;
+        return texture;
+    }
+
+    //returns the shared texture for a resource path, decoding it on the loader's threads on first use. until the
+    //loader uploads it, the texture is a placeholder
+    public static Texture acquire(String fileName, AsyncTextureLoader loader) throws Exception {
+        URL url = Texture.class.getResource(fileName);
+        if (url == null) throw new Exception("Texture file [" + fileName + "] not found");
+        String key = url.toURI().normalize().toString();
+        Texture texture = TEXTURES.get(key);
+        if (texture == null) {
+            texture = add(key, loader.load(fileName));
+            texture.sourceFile = fileName;
+        } else hits++;
+        texture.references++;
+        return texture;
+    }
+
+    //loads a texture by path, from its baked container if one has been baked beside the image
+    static Texture load(String fileName) throws Exception {
+        String bakedName = TextureContainer.getBakedName(fileName);
+        if (Texture.class.getResource(bakedName) != null) return TextureContainer.load(bakedName);
+        return compressor != null ? compressor.load(fileName) : new Texture(fileName);
+    }
+
+    //adds a newly loaded texture to the cache
+    static Texture add(String key, Texture texture) {
+        misses++;
+        texture.cacheKey = key;
+        TEXTURES.put(key, texture);
+        return texture;
+    }
+
+    //Release Method
+    //releases a reference to a cached texture, deleting it when no references remain
+    static void release(Texture texture) {
+        if (--texture.references > 0) return;
+        TEXTURES.remove(texture.cacheKey);
+        texture.cacheKey = null;
+        texture.cleanup();
+    }
+
+    //Hash Method
+    private static String hash(ByteBuffer buffer) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-1");
+        digest.update(buffer.duplicate());
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) hex.append(String.format("%02x", b));
+        return hex.toString();
+    }
+
+    //Mutator
+    //sets the compressor used for textures first loaded by path from now on (null for uncompressed textures)
+    public static void setCompressor(TextureCompressor textureCompressor) { compressor = textureCompressor; }
+
+    //Accessors
+    static TextureCompressor getCompressor() { return compressor; }
+    public static int getHits() { return hits; }
+    public static int getMisses() { return misses; }
+    public static int getResidentCount() { return TEXTURES.size(); }
+    public static long getResidentBytes() { //including mipmaps - summed as asynchronously loaded textures change size
+        long residentBytes = 0;
+        for (Texture texture : TEXTURES.values()) residentBytes += texture.getMemorySize();
+        return residentBytes;
+    }
+    public static int getReferences(Texture texture) { return texture.references; }
+    public static String getReport() {
+        return "Texture cache: " + TEXTURES.size() + " textures, " + getResidentBytes() + " bytes resident, " + hits +
+                " hits, " + misses + " misses";
+    }
+}
@@ -0,0 +1,455 @@
+package engine.graphics;
+
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GLCapabilities;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+import static org.lwjgl.opengl.EXTTextureCompressionS3TC.GL_COMPRESSED_RGBA_S3TC_DXT5_EXT;
+import static org.lwjgl.opengl.EXTTextureCompressionS3TC.GL_COMPRESSED_RGB_S3TC_DXT1_EXT;
+import static org.lwjgl.opengl.GL30.GL_COMPRESSED_RG_RGTC2;
+
+//encodes RGBA images and their mip chains into block compressed formats on the cpu: BC1 for opaque colour (8 bytes
+//per 4x4 block, 8x smaller than RGBA), BC3 for colour with alpha and BC5 for the x and y of normal maps (16 bytes per
+//block, 4x smaller). rows of blocks are encoded in parallel. colour endpoints are fitted along the block's principal
+//axis and refined by least squares, channel endpoints are the block's extremes
+public class TextureCompressor {
+
+    //Static Data
+    public static final int BC1 = GL_COMPRESSED_RGB_S3TC_DXT1_EXT; //formats are their OpenGL internal formats
+    public static final int BC3 = GL_COMPRESSED_RGBA_S3TC_DXT5_EXT;
+    public static final int BC5 = GL_COMPRESSED_RG_RGTC2;
+    private static final String[] NORMAL_FILE_SUFFIXES = { "_normal", "_normals" };
+    private static final int ROWS_PER_TASK = 4; //rows of blocks
+    private static final int POWER_ITERATIONS = 8;
+    private static final int REFINEMENTS = 2;
+
+    //Data
+    private final ForkJoinPool pool; //null to encode on the calling thread
+
+    //Stats
+    private int imageCount;
+    private long sourceBytes, compressedBytes, compressTime;
+
+    //Constructor
+    public TextureCompressor(int threads) {
+        this.pool = threads <= 1 ? null :
+                (threads == ForkJoinPool.getCommonPoolParallelism() ? ForkJoinPool.commonPool() : new ForkJoinPool(threads));
+    }
+
+    //Load Method
+    //decodes an image and uploads it compressed in the format chosen for it, or uncompressed if the driver does not
+    //support that format - must be called on the OpenGL thread
+    public Texture load(String fileName) throws Exception {
+        Image image = Image.load(fileName);
+        int format = chooseFormat(fileName, image);
+        if (!isSupported(format)) return new Texture(image);
+        CompressedImage compressed = null;
+        try {
+            compressed = this.compress(image, format);
+            return new Texture(compressed);
+        } finally {
+            image.free();
+            if (compressed != null) compressed.free();
+        }
+    }
+
+    //Compress Method
+    //encodes an image and a box filtered mip chain down to 1x1. the image is not freed
+    public CompressedImage compress(Image image, int format) {
+        long start = System.nanoTime();
+        int width = image.getWidth(), height = image.getHeight();
+        int levelCount = 32 - Integer.numberOfLeadingZeros(Math.max(width, height));
+        ByteBuffer[] levels = new ByteBuffer[levelCount];
+        ByteBuffer pixels = image.getPixels();
+        try {
+            for (int level = 0; level < levelCount; level++) {
+                levels[level] = MemoryUtil.memAlloc(getLevelSize(format, width, height));
+                this.compressLevel(pixels, width, height, levels[level], format);
+                if (level + 1 == levelCount) break;
+
+                //downsample the next level
+                int nextWidth = Math.max(1, width / 2), nextHeight = Math.max(1, height / 2);
+                ByteBuffer next = MemoryUtil.memAlloc(nextWidth * nextHeight * 4);
+                Image.downsample(pixels, width, height, next, nextWidth, nextHeight);
+                if (pixels != image.getPixels()) MemoryUtil.memFree(pixels);
+                pixels = next;
+                width = nextWidth;
+                height = nextHeight;
+            }
+        } finally {
+            if (pixels != image.getPixels()) MemoryUtil.memFree(pixels);
+        }
+        return this.record(new CompressedImage(format, image.getWidth(), image.getHeight(), levels), start);
+    }
+
+    //encodes an RGBA mip chain filtered elsewhere (e.g. when baking). the levels are not freed
+    public CompressedImage compress(ByteBuffer[] rgbaLevels, int width, int height, int format) {
+        long start = System.nanoTime();
+        ByteBuffer[] levels = new ByteBuffer[rgbaLevels.length];
+        for (int level = 0; level < levels.length; level++) {
+            int levelWidth = Math.max(1, width >> level), levelHeight = Math.max(1, height >> level);
+            levels[level] = MemoryUtil.memAlloc(getLevelSize(format, levelWidth, levelHeight));
+            this.compressLevel(rgbaLevels[level], levelWidth, levelHeight, levels[level], format);
+        }
+        return this.record(new CompressedImage(format, width, height, levels), start);
+    }
+
+    //adds a compressed image to the stats
+    private synchronized CompressedImage record(CompressedImage compressed, long start) { //compressors may be shared by threads
+        this.imageCount++;
+        this.sourceBytes += 4L * compressed.getWidth() * compressed.getHeight() * 4 / 3;
+        this.compressedBytes += compressed.getSize();
+        this.compressTime += System.nanoTime() - start;
+        return compressed;
+    }
+
+    //encodes one level, a row of blocks per task
+    private void compressLevel(ByteBuffer pixels, int width, int height, ByteBuffer out, int format) {
+        int blocksX = (width + 3) / 4, blocksY = (height + 3) / 4, blockSize = getBlockSize(format);
+        IntConsumer rowCompressor = blockY -> {
+            int[] r = new int[16], g = new int[16], b = new int[16], a = new int[16];
+            int[] indices = new int[16], trial = new int[16];
+            for (int blockX = 0; blockX < blocksX; blockX++) {
+
+                //gather block, clamping partial blocks at the edges
+                for (int i = 0; i < 16; i++) {
+                    int x = Math.min(blockX * 4 + (i & 3), width - 1), y = Math.min(blockY * 4 + (i >> 2), height - 1);
+                    int p = (y * width + x) * 4;
+                    r[i] = pixels.get(p) & 0xFF;
+                    g[i] = pixels.get(p + 1) & 0xFF;
+                    b[i] = pixels.get(p + 2) & 0xFF;
+                    a[i] = pixels.get(p + 3) & 0xFF;
+                }
+
+                //encode block
+                int offset = (blockY * blocksX + blockX) * blockSize;
+                if (format == BC1) encodeColor(r, g, b, indices, trial, out, offset);
+                else if (format == BC3) {
+                    encodeChannel(a, out, offset);
+                    encodeColor(r, g, b, indices, trial, out, offset + 8);
+                } else {
+                    encodeChannel(r, out, offset);
+                    encodeChannel(g, out, offset + 8);
+                }
+            }
+        };
+        if (this.pool == null) for (int row = 0; row < blocksY; row++) rowCompressor.accept(row);
+        else this.pool.invoke(new RowTask(0, blocksY, rowCompressor));
+    }
+
+    //Colour Block Encoding Method
+    //fits two 5:6:5 endpoints to a block along its principal axis, refines them by least squares and writes the block
+    //in four colour mode (first endpoint greater than the second)
+    private static void encodeColor(int[] r, int[] g, int[] b, int[] indices, int[] trial, ByteBuffer out, int offset) {
+
+        //mean and covariance
+        float mr = 0, mg = 0, mb = 0;
+        for (int i = 0; i < 16; i++) {
+            mr += r[i];
+            mg += g[i];
+            mb += b[i];
+        }
+        mr /= 16;
+        mg /= 16;
+        mb /= 16;
+        float crr = 0, crg = 0, crb = 0, cgg = 0, cgb = 0, cbb = 0;
+        for (int i = 0; i < 16; i++) {
+            float dr = r[i] - mr, dg = g[i] - mg, db = b[i] - mb;
+            crr += dr * dr;
+            crg += dr * dg;
+            crb += dr * db;
+            cgg += dg * dg;
+            cgb += dg * db;
+            cbb += db * db;
+        }
+
+        //principal axis by power iteration
+        float vr = 1, vg = 1, vb = 1;
+        for (int iteration = 0; iteration < POWER_ITERATIONS; iteration++) {
+            float nr = crr * vr + crg * vg + crb * vb;
+            float ng = crg * vr + cgg * vg + cgb * vb;
+            float nb = crb * vr + cgb * vg + cbb * vb;
+            float length = (float)Math.sqrt(nr * nr + ng * ng + nb * nb);
+            if (length < 1e-6f) break; //flat block - any axis works
+            vr = nr / length;
+            vg = ng / length;
+            vb = nb / length;
+        }
+
+        //endpoints at the extremes of the projections onto the axis
+        float minT = Float.MAX_VALUE, maxT = -Float.MAX_VALUE;
+        for (int i = 0; i < 16; i++) {
+            float t = (r[i] - mr) * vr + (g[i] - mg) * vg + (b[i] - mb) * vb;
+            minT = Math.min(minT, t);
+            maxT = Math.max(maxT, t);
+        }
+        int c0 = to565(mr + vr * maxT, mg + vg * maxT, mb + vb * maxT);
+        int c1 = to565(mr + vr * minT, mg + vg * minT, mb + vb * minT);
+        int error = selectColorIndices(r, g, b, c0, c1, indices);
+
+        //least squares refinement - solve for the endpoints which best fit the chosen indices
+        for (int refinement = 0; refinement < REFINEMENTS && error > 0; refinement++) {
+            float aa = 0, ab = 0, bb = 0, ar = 0, ag = 0, ax = 0, br = 0, bg = 0, bx = 0;
+            for (int i = 0; i < 16; i++) {
+                float w = indices[i] == 0 ? 1.0f : indices[i] == 1 ? 0.0f : indices[i] == 2 ? 2.0f / 3 : 1.0f / 3;
+                aa += w * w;
+                ab += w * (1 - w);
+                bb += (1 - w) * (1 - w);
+                ar += w * r[i];
+                ag += w * g[i];
+                ax += w * b[i];
+                br += (1 - w) * r[i];
+                bg += (1 - w) * g[i];
+                bx += (1 - w) * b[i];
+            }
+            float determinant = aa * bb - ab * ab;
+            if (Math.abs(determinant) < 1e-6f) break;
+            float inverse = 1.0f / determinant;
+            int t0 = to565((ar * bb - br * ab) * inverse, (ag * bb - bg * ab) * inverse, (ax * bb - bx * ab) * inverse);
+            int t1 = to565((br * aa - ar * ab) * inverse, (bg * aa - ag * ab) * inverse, (bx * aa - ax * ab) * inverse);
+            int trialError = selectColorIndices(r, g, b, t0, t1, trial);
+            if (trialError >= error) break;
+            c0 = t0;
+            c1 = t1;
+            error = trialError;
+            System.arraycopy(trial, 0, indices, 0, 16);
+        }
+
+        //order endpoints for four colour mode - swapping them swaps indices 0 with 1 and 2 with 3
+        if (c0 < c1) {
+            int swap = c0;
+            c0 = c1;
+            c1 = swap;
+            for (int i = 0; i < 16; i++) indices[i] ^= 1;
+        } else if (c0 == c1) for (int i = 0; i < 16; i++) indices[i] = 0;
+
+        //write block
+        int bits = 0;
+        for (int i = 0; i < 16; i++) bits |= indices[i] << (i * 2);
+        out.put(offset, (byte)c0).put(offset + 1, (byte)(c0 >> 8));
+        out.put(offset + 2, (byte)c1).put(offset + 3, (byte)(c1 >> 8));
+        for (int i = 0; i < 4; i++) out.put(offset + 4 + i, (byte)(bits >> (i * 8)));
+    }
+
+    //picks the nearest of the four palette colours for each texel and returns the summed squared error
+    private static int selectColorIndices(int[] r, int[] g, int[] b, int c0, int c1, int[] indices) {
+        int r0 = expand5(c0 >> 11), g0 = expand6(c0 >> 5 & 0x3F), b0 = expand5(c0 & 0x1F);
+        int r1 = expand5(c1 >> 11), g1 = expand6(c1 >> 5 & 0x3F), b1 = expand5(c1 & 0x1F);
+        int[] pr = { r0, r1, (2 * r0 + r1) / 3, (r0 + 2 * r1) / 3 };
+        int[] pg = { g0, g1, (2 * g0 + g1) / 3, (g0 + 2 * g1) / 3 };
+        int[] pb = { b0, b1, (2 * b0 + b1) / 3, (b0 + 2 * b1) / 3 };
+        int error = 0;
+        for (int i = 0; i < 16; i++) {
+            int best = 0, bestError = Integer.MAX_VALUE;
+            for (int p = 0; p < 4; p++) {
+                int dr = r[i] - pr[p], dg = g[i] - pg[p], db = b[i] - pb[p];
+                int e = dr * dr + dg * dg + db * db;
+                if (e < bestError) {
+                    bestError = e;
+                    best = p;
+                }
+            }
+            indices[i] = best;
+            error += bestError;
+        }
+        return error;
+    }
+
+    //Channel Block Encoding Method
+    //writes a single channel block (as in BC3 alpha and BC5) in eight value mode between the block's extremes
+    private static void encodeChannel(int[] values, ByteBuffer out, int offset) {
+        int min = 255, max = 0;
+        for (int value : values) {
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+        long bits = 0;
+        if (max > min) {
+            for (int i = 0; i < 16; i++) {
+
+                //nearest of the eight palette values - 0 is max, 1 is min and 2 - 7 step from max to min
+                int step = Math.round((max - values[i]) * 7.0f / (max - min));
+                int index = step == 0 ? 0 : step == 7 ? 1 : step + 1;
+                bits |= (long)index << (i * 3);
+            }
+        }
+        out.put(offset, (byte)max).put(offset + 1, (byte)min);
+        for (int i = 0; i < 6; i++) out.put(offset + 2 + i, (byte)(bits >> (i * 8)));
+    }
+
+    //Decode Methods
+    //decodes a level back to RGBA (BC5 as red and green, with blue rebuilt as the unit normal's z) - used to measure
+    //encoding error and to upload formats the driver does not support
+    public static ByteBuffer decode(CompressedImage image, int level) {
+        int width = Math.max(1, image.getWidth() >> level), height = Math.max(1, image.getHeight() >> level);
+        int format = image.getFormat(), blockSize = getBlockSize(format), blocksX = (width + 3) / 4;
+        ByteBuffer data = image.getLevel(level);
+        ByteBuffer pixels = MemoryUtil.memAlloc(width * height * 4);
+        int[] c = new int[64], v = new int[16];
+        for (int blockY = 0; blockY < (height + 3) / 4; blockY++) {
+            for (int blockX = 0; blockX < blocksX; blockX++) {
+                int offset = (blockY * blocksX + blockX) * blockSize;
+                if (format == BC5) {
+                    decodeChannel(data, offset, v);
+                    for (int i = 0; i < 16; i++) c[i * 4] = v[i];
+                    decodeChannel(data, offset + 8, v);
+                    for (int i = 0; i < 16; i++) {
+                        c[i * 4 + 1] = v[i];
+                        float x = c[i * 4] / 127.5f - 1, y = v[i] / 127.5f - 1;
+                        c[i * 4 + 2] = Math.round(((float)Math.sqrt(Math.max(0, 1 - x * x - y * y)) + 1) * 127.5f);
+                        c[i * 4 + 3] = 255;
+                    }
+                } else {
+                    decodeColor(data, format == BC3 ? offset + 8 : offset, c);
+                    if (format == BC3) {
+                        decodeChannel(data, offset, v);
+                        for (int i = 0; i < 16; i++) c[i * 4 + 3] = v[i];
+                    }
+                }
+                for (int i = 0; i < 16; i++) {
+                    int x = blockX * 4 + (i & 3), y = blockY * 4 + (i >> 2);
+                    if (x >= width || y >= height) continue;
+                    for (int channel = 0; channel < 4; channel++) {
+                        pixels.put((y * width + x) * 4 + channel, (byte)c[i * 4 + channel]);
+                    }
+                }
+            }
+        }
+        return pixels;
+    }
+
+    private static void decodeColor(ByteBuffer data, int offset, int[] out) {
+        int c0 = (data.get(offset) & 0xFF) | (data.get(offset + 1) & 0xFF) << 8;
+        int c1 = (data.get(offset + 2) & 0xFF) | (data.get(offset + 3) & 0xFF) << 8;
+        int r0 = expand5(c0 >> 11), g0 = expand6(c0 >> 5 & 0x3F), b0 = expand5(c0 & 0x1F);
+        int r1 = expand5(c1 >> 11), g1 = expand6(c1 >> 5 & 0x3F), b1 = expand5(c1 & 0x1F);
+        int[][] palette = c0 > c1 ?
+                new int[][] { { r0, g0, b0, 255 }, { r1, g1, b1, 255 }, { (2 * r0 + r1) / 3, (2 * g0 + g1) / 3, (2 * b0 + b1) / 3, 255 },
+                        { (r0 + 2 * r1) / 3, (g0 + 2 * g1) / 3, (b0 + 2 * b1) / 3, 255 } } :
+                new int[][] { { r0, g0, b0, 255 }, { r1, g1, b1, 255 }, { (r0 + r1) / 2, (g0 + g1) / 2, (b0 + b1) / 2, 255 },
+                        { 0, 0, 0, 0 } };
+        for (int i = 0; i < 16; i++) {
+            int index = (data.get(offset + 4 + i / 4) & 0xFF) >> ((i & 3) * 2) & 3;
+            System.arraycopy(palette[index], 0, out, i * 4, 4);
+        }
+    }
+
+    private static void decodeChannel(ByteBuffer data, int offset, int[] out) {
+        int v0 = data.get(offset) & 0xFF, v1 = data.get(offset + 1) & 0xFF;
+        long bits = 0;
+        for (int i = 0; i < 6; i++) bits |= (long)(data.get(offset + 2 + i) & 0xFF) << (i * 8);
+        for (int i = 0; i < 16; i++) {
+            int index = (int)(bits >> (i * 3)) & 7;
+            if (index == 0) out[i] = v0;
+            else if (index == 1) out[i] = v1;
+            else if (v0 > v1) out[i] = ((8 - index) * v0 + (index - 1) * v1) / 7;
+            else if (index < 6) out[i] = ((6 - index) * v0 + (index - 1) * v1) / 5;
+            else out[i] = index == 6 ? 0 : 255;
+        }
+    }
+
+    //Error Measurement Method
+    //returns the root mean square error (0 - 255) of a compressed base level against its source, over the channels
+    //the format stores
+    public static float measureError(Image source, CompressedImage compressed) {
+        ByteBuffer decoded = decode(compressed, 0);
+        try {
+            ByteBuffer pixels = source.getPixels();
+            int format = compressed.getFormat(), channels = format == BC5 ? 2 : format == BC1 ? 3 : 4;
+            double sum = 0;
+            for (int p = 0; p < source.getWidth() * source.getHeight(); p++) {
+                for (int channel = 0; channel < channels; channel++) {
+                    int d = (pixels.get(p * 4 + channel) & 0xFF) - (decoded.get(p * 4 + channel) & 0xFF);
+                    sum += d * d;
+                }
+            }
+            return (float)Math.sqrt(sum / ((double)source.getWidth() * source.getHeight() * channels));
+        } finally {
+            MemoryUtil.memFree(decoded);
+        }
+    }
+
+    //Format Methods
+    //normal maps (named with a normal suffix) are BC5, images with any translucent texel BC3 and the rest BC1
+    public static int chooseFormat(String fileName, Image image) {
+        int extension = fileName.lastIndexOf('.');
+        String baseName = extension > 0 ? fileName.substring(0, extension) : fileName;
+        for (String suffix : NORMAL_FILE_SUFFIXES) if (baseName.endsWith(suffix)) return BC5;
+        ByteBuffer pixels = image.getPixels();
+        for (int p = 3; p < pixels.limit(); p += 4) if ((pixels.get(p) & 0xFF) != 255) return BC3;
+        return BC1;
+    }
+
+    //returns true if the current OpenGL context can sample a format - must be called on the OpenGL thread
+    public static boolean isSupported(int format) {
+        GLCapabilities capabilities = GL.getCapabilities();
+        if (format == BC5) return capabilities.OpenGL30 || capabilities.GL_ARB_texture_compression_rgtc;
+        return capabilities.GL_EXT_texture_compression_s3tc;
+    }
+
+    public static int getBlockSize(int format) { return format == BC1 ? 8 : 16; }
+
+    public static int getLevelSize(int format, int width, int height) {
+        return ((width + 3) / 4) * ((height + 3) / 4) * getBlockSize(format);
+    }
+
+    //Colour Conversion Methods
+    private static int to565(float r, float g, float b) {
+        int r5 = Math.round(Math.max(0, Math.min(255, r)) * 31 / 255.0f);
+        int g6 = Math.round(Math.max(0, Math.min(255, g)) * 63 / 255.0f);
+        int b5 = Math.round(Math.max(0, Math.min(255, b)) * 31 / 255.0f);
+        return r5 << 11 | g6 << 5 | b5;
+    }
+
+    private static int expand5(int value) { return value << 3 | value >> 2; }
+    private static int expand6(int value) { return value << 2 | value >> 4; }
+
+    //Accessors
+    public String getReport() {
+        return String.format("Texture compressor: %d images, %d bytes as RGBA, %d bytes compressed (%.1fx smaller), %.1f ms",
+                this.imageCount, this.sourceBytes, this.compressedBytes,
+                this.compressedBytes == 0 ? 0.0f : this.sourceBytes / (float)this.compressedBytes, this.compressTime / 1000_000.0f);
+    }
+    public long getSourceBytes() { return this.sourceBytes; } //as RGBA with mipmaps
+    public long getCompressedBytes() { return this.compressedBytes; }
+
+    //Cleanup Method
+    public void cleanup() {
+        if (this.pool != null && this.pool != ForkJoinPool.commonPool()) this.pool.shutdown();
+    }
+
+    //Row Task Inner Class
+    //splits a range of block rows across fork-join workers
+    private static class RowTask extends RecursiveAction {
+
+        //Static Data
+        private static final long serialVersionUID = 1L;
+
+        //Data
+        private final int from, to;
+        private final IntConsumer rowProcessor;
+
+        //Constructor
+        public RowTask(int from, int to, IntConsumer rowProcessor) {
+            this.from = from;
+            this.to = to;
+            this.rowProcessor = rowProcessor;
+        }
+
+        //Compute Method
+        @Override
+        protected void compute() {
+            if (this.to - this.from <= ROWS_PER_TASK) {
+                for (int row = this.from; row < this.to; row++) this.rowProcessor.accept(row);
+            } else {
+                int mid = (this.from + this.to) >>> 1;
+                invokeAll(new RowTask(this.from, mid, this.rowProcessor), new RowTask(mid, this.to, this.rowProcessor));
+            }
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package engine.graphics;
+
+import java.util.concurrent.ForkJoinPool;
+
+//checks the texture compressor's encoding error on the bundled textures (or the resource paths given as arguments)
+//against a threshold per format, exiting with a non-zero status if any texture exceeds its threshold. needs no OpenGL
+//context - run with the resources on the class path: java engine.graphics.TextureCompressorCheck [files]
+public class TextureCompressorCheck {
+
+    //Static Data
+    private static final float COLOR_THRESHOLD = 10.0f; //root mean square error (0 - 255) allowed for BC1 and BC3
+    private static final float NORMAL_THRESHOLD = 4.0f; //allowed for BC5, whose channels are encoded separately
+    private static final String[] BUNDLED_TEXTURES = {
+            "/textures/bob/guard1_body.png", "/textures/bob/guard1_body_h.png", "/textures/bob/guard1_body_s.png",
+            "/textures/bob/guard1_face.png", "/textures/bob/guard1_face_local.png", "/textures/bob/guard1_face_s.png",
+            "/textures/bob/guard1_helmet.png", "/textures/bob/guard1_helmet_h.png", "/textures/bob/guard1_helmet_s.png",
+            "/textures/bob/iron_grill.png", "/textures/bob/round_grill.png", "/textures/bob/round_grill_h.png",
+            "/textures/monster/gob.png", "/textures/monster/gob_s.png", "/textures/monster/gob2.png",
+            "/textures/monster/gob2_s.png", "/textures/monster/hellknight.png", "/textures/monster/hellknight_local.png",
+            "/textures/monster/hellknight_s.png", "/textures/monster/tongue.png", "/textures/monster/tongue_local.png",
+            "/textures/monster/tongue_s.png", "/textures/dirt.png", "/textures/grass.png", "/textures/heightmap.png",
+            "/textures/rock.png", "/textures/rock_normals.png", "/textures/skybox.png", "/textures/templepillar.png",
+            "/textures/terrain.png"
+    };
+
+    //Main Method
+    public static void main(String[] args) throws Exception {
+        String[] files = args.length > 0 ? args : BUNDLED_TEXTURES;
+        TextureCompressor compressor = new TextureCompressor(ForkJoinPool.getCommonPoolParallelism());
+        int failures = 0;
+        try {
+            for (String file : files) {
+
+                //compress in the format chosen for the texture and measure the base level's error
+                Image image = Image.load(file);
+                CompressedImage compressed = null;
+                try {
+                    int format = TextureCompressor.chooseFormat(file, image);
+                    compressed = compressor.compress(image, format);
+                    float error = TextureCompressor.measureError(image, compressed);
+                    float threshold = format == TextureCompressor.BC5 ? NORMAL_THRESHOLD : COLOR_THRESHOLD;
+                    boolean passed = error <= threshold;
+                    if (!passed) failures++;
+                    System.out.println(String.format("%-8s%-44s%s %.2f (threshold %.1f)", passed ? "PASS" : "FAIL", file,
+                            getFormatName(format), error, threshold));
+                } finally {
+                    image.free();
+                    if (compressed != null) compressed.free();
+                }
+            }
+            System.out.println(compressor.getReport());
+        } finally {
+            compressor.cleanup();
+        }
+        System.out.println(failures == 0 ? "All " + files.length + " textures passed" : failures + " of " + files.length + " textures failed");
+        if (failures > 0) System.exit(1);
+    }
+
+    //Format Name Method
+    private static String getFormatName(int format) {
+        return format == TextureCompressor.BC1 ? "BC1" : format == TextureCompressor.BC3 ? "BC3" : "BC5";
+    }
+}
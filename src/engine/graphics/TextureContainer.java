@@ -0,0 +1,105 @@
+package engine.graphics;
+
+import engine.ResourceBuffer;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+//reads and writes baked textures - a whole mip chain, raw RGBA or block compressed, ready to be uploaded without
+//decoding. the file is a little endian header (magic, version, format, width, height and level count), a table of
+//each level's offset and size, then the levels, each starting on a 16 byte boundary. files on disk are memory mapped
+//and each level is uploaded straight from its mapped slice
+public class TextureContainer {
+
+    //Static Data
+    public static final String EXTENSION = ".mips";
+    public static final int RAW = 0; //RGBA, one byte per channel (otherwise a texture compressor format)
+    private static final int MAGIC = 0x5350494D; //"MIPS"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 24;
+    private static final int ALIGNMENT = 16;
+
+    //Load Method
+    //uploads a baked texture - compressed formats the driver does not support are decoded to RGBA first
+    //must be called on the OpenGL thread
+    public static Texture load(String fileName) throws Exception {
+        try (ResourceBuffer resource = ResourceBuffer.read(fileName)) {
+            ByteBuffer file = resource.getBuffer().duplicate().order(ByteOrder.LITTLE_ENDIAN);
+
+            //read header
+            if (file.remaining() < HEADER_SIZE || file.getInt(0) != MAGIC)
+                throw new Exception("Texture container [" + fileName + "] is not a baked texture");
+            if (file.getInt(4) != VERSION)
+                throw new Exception("Texture container [" + fileName + "] has unsupported version " + file.getInt(4));
+            int format = file.getInt(8), width = file.getInt(12), height = file.getInt(16), levelCount = file.getInt(20);
+            if (width < 1 || height < 1 || levelCount < 1 || levelCount > 32 || file.remaining() < HEADER_SIZE + levelCount * 8)
+                throw new Exception("Texture container [" + fileName + "] has a corrupt header");
+
+            //slice levels
+            ByteBuffer[] levels = new ByteBuffer[levelCount];
+            for (int level = 0; level < levelCount; level++) {
+                int offset = file.getInt(HEADER_SIZE + level * 8), size = file.getInt(HEADER_SIZE + level * 8 + 4);
+                int levelWidth = Math.max(1, width >> level), levelHeight = Math.max(1, height >> level);
+                int expected = format == RAW ? levelWidth * levelHeight * 4 : TextureCompressor.getLevelSize(format, levelWidth, levelHeight);
+                if (size != expected || offset < 0 || offset > file.limit() - size)
+                    throw new Exception("Texture container [" + fileName + "] has a corrupt level " + level);
+                ByteBuffer slice = file.duplicate();
+                slice.limit(offset + size).position(offset);
+                levels[level] = slice.slice();
+            }
+
+            //upload
+            if (format == RAW) return new Texture(width, height, levels);
+            CompressedImage image = new CompressedImage(format, width, height, levels); //mapped - not freed
+            if (TextureCompressor.isSupported(format)) return new Texture(image);
+            ByteBuffer[] decoded = new ByteBuffer[levelCount];
+            try {
+                for (int level = 0; level < levelCount; level++) decoded[level] = TextureCompressor.decode(image, level);
+                return new Texture(width, height, decoded);
+            } finally {
+                for (ByteBuffer level : decoded) if (level != null) MemoryUtil.memFree(level);
+            }
+        }
+    }
+
+    //Write Method
+    //writes a mip chain (RGBA levels if the format is raw, compressed levels otherwise) to a file
+    public static void write(Path path, int format, int width, int height, ByteBuffer[] levels) throws Exception {
+        int tableEnd = HEADER_SIZE + levels.length * 8;
+        ByteBuffer header = ByteBuffer.allocate(tableEnd).order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putInt(format).putInt(width).putInt(height).putInt(levels.length);
+        int offset = align(tableEnd);
+        for (ByteBuffer level : levels) {
+            header.putInt(offset).putInt(level.remaining());
+            offset = align(offset + level.remaining());
+        }
+        header.flip();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(channel, header, 0);
+            offset = align(tableEnd);
+            for (ByteBuffer level : levels) {
+                writeFully(channel, level.duplicate(), offset);
+                offset = align(offset + level.remaining());
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws Exception {
+        while (buffer.hasRemaining()) position += channel.write(buffer, position);
+    }
+
+    private static int align(int offset) { return (offset + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT; }
+
+    //Naming Method
+    //returns the baked texture's name for an image file (e.g. "/textures/grass.png" to "/textures/grass.mips")
+    public static String getBakedName(String fileName) {
+        int extension = fileName.lastIndexOf('.');
+        int separator = fileName.lastIndexOf('/');
+        return (extension > separator ? fileName.substring(0, extension) : fileName) + EXTENSION;
+    }
+}
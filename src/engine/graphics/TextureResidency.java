@@ -0,0 +1,176 @@
+package engine.graphics;
+
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL13.glGetCompressedTexImage;
+
+//keeps the video memory held by textures within a budget. every texture is tracked with the bytes of the mip levels it
+//holds. while over budget, textures that can be reloaded from their file (those loaded by path through the texture
+//cache) and have not been bound for a while are downgraded to their smaller mip levels - least recently bound first,
+//down to their last level when evicted - by reading the remaining levels back and re-creating the texture. a
+//downgraded texture is restored from its file when it is bound again - through the asynchronous loader if one is set,
+//which decodes and compresses it on its worker threads, otherwise on this thread within the restore budget. usage is
+//recorded as meshes bind their textures
+//must only be used on the OpenGL thread
+public class TextureResidency {
+
+    //Static Data
+    private static final Set<Texture> TEXTURES = new HashSet<>();
+    private static final Set<Texture> RESTORES = new LinkedHashSet<>(); //downgraded textures bound since the last update
+    private static final List<Texture> CANDIDATES = new ArrayList<>(); //reused when choosing textures to downgrade
+
+    //Settings
+    private static long budget = Long.MAX_VALUE; //bytes of video memory textures may hold
+    private static int idleFrames = 120; //frames a texture must go unbound before it may be downgraded
+    private static long restoreBudget = 4_000_000L; //nanoseconds per frame spent restoring textures without a loader
+    private static AsyncTextureLoader loader; //restores textures off this thread (null to restore them here)
+
+    //Stats
+    private static long frame;
+    private static long residentBytes; //as of the last update
+    private static int downgrades, evictions, restores;
+
+    //Registration Methods
+    static void register(Texture texture) { TEXTURES.add(texture); }
+
+    static void unregister(Texture texture) {
+        TEXTURES.remove(texture);
+        RESTORES.remove(texture);
+    }
+
+    //Touch Method
+    //records that a texture is being bound this frame, requesting its restoration if it has been downgraded
+    public static void touch(Texture texture) {
+        texture.lastUse = frame;
+        if (texture.residentLevel > 0 && !texture.restoring) RESTORES.add(texture);
+    }
+
+    //counts a texture restored by the asynchronous loader
+    static void restored() { restores++; }
+
+    //Update Method
+    //called once per frame before rendering - requests the restoration of bound textures (or restores them within the
+    //restore budget without a loader), then downgrades idle textures until the budget is met
+    public static void update() {
+        frame++;
+        residentBytes = 0;
+        for (Texture texture : TEXTURES) { //textures being restored count in full, their room being reserved
+            residentBytes += texture.restoring ? texture.getMemorySize() : texture.getResidentSize();
+        }
+
+        //restore textures bound since the last update, making room if possible
+        long start = System.nanoTime();
+        while (!RESTORES.isEmpty() && (loader != null || System.nanoTime() - start < restoreBudget)) {
+            Texture texture = RESTORES.iterator().next();
+            RESTORES.remove(texture);
+            long needed = texture.getMemorySize() - texture.getResidentSize();
+            if (residentBytes + needed > budget) reclaim(residentBytes + needed - budget);
+            if (residentBytes + needed > budget) continue; //stays downgraded until bound again with room to spare
+            if (loader != null) {
+                loader.restore(texture);
+                residentBytes += needed;
+                continue;
+            }
+            try {
+                long before = texture.getResidentSize();
+                texture.adopt(TextureCache.load(texture.sourceFile));
+                residentBytes += texture.getResidentSize() - before;
+                restores++;
+            } catch (Exception e) {
+                System.err.println("Unable to restore texture [" + texture.sourceFile + "]: " + e.getMessage());
+            }
+        }
+
+        //downgrade idle textures while over budget
+        if (residentBytes > budget) reclaim(residentBytes - budget);
+    }
+
+    //Reclaim Method
+    //downgrades idle textures, least recently bound first, until the given bytes have been freed or none are left
+    private static void reclaim(long bytes) {
+        CANDIDATES.clear();
+        for (Texture texture : TEXTURES) {
+            if (texture.sourceFile != null && !texture.deleted && !texture.restoring && texture.residentLevel < texture.getLevelCount() - 1 &&
+                    frame - texture.lastUse > idleFrames) CANDIDATES.add(texture);
+        }
+        CANDIDATES.sort((a, b) -> Long.compare(a.lastUse, b.lastUse));
+        for (int i = 0; i < CANDIDATES.size() && bytes > 0; i++) {
+            Texture texture = CANDIDATES.get(i);
+
+            //drop levels until enough has been freed or only the last level is left
+            long before = texture.getResidentSize();
+            int level = texture.residentLevel;
+            while (level < texture.getLevelCount() - 1 && before - texture.getSize(level) < bytes) level++;
+            downgrade(texture, level);
+            long freed = before - texture.getResidentSize();
+            residentBytes -= freed;
+            bytes -= freed;
+        }
+        CANDIDATES.clear();
+    }
+
+    //Downgrade Method
+    //reads back a texture's mip levels from a level down and re-creates the texture from them
+    private static void downgrade(Texture texture, int level) {
+        ByteBuffer[] levels = new ByteBuffer[texture.getLevelCount() - level];
+        try {
+            texture.bind();
+            glPixelStorei(GL_PACK_ALIGNMENT, 1);
+            for (int i = 0; i < levels.length; i++) {
+                int width = texture.getLevelWidth(level + i), height = texture.getLevelHeight(level + i);
+                int residentIndex = level + i - texture.residentLevel; //level within the texture as it is now
+                if (texture.isCompressed()) {
+                    levels[i] = MemoryUtil.memAlloc(TextureCompressor.getLevelSize(texture.getFormat(), width, height));
+                    glGetCompressedTexImage(GL_TEXTURE_2D, residentIndex, levels[i]);
+                } else {
+                    levels[i] = MemoryUtil.memAlloc(width * height * 4);
+                    glGetTexImage(GL_TEXTURE_2D, residentIndex, GL_RGBA, GL_UNSIGNED_BYTE, levels[i]);
+                }
+            }
+            texture.respecify(levels, level);
+            glBindTexture(GL_TEXTURE_2D, 0);
+            if (level == texture.getLevelCount() - 1) evictions++;
+            else downgrades++;
+        } finally {
+            for (ByteBuffer buffer : levels) if (buffer != null) MemoryUtil.memFree(buffer);
+        }
+    }
+
+    //Mutators
+    public static void setBudget(long bytes) { budget = bytes; }
+    public static void setIdleFrames(int frames) { idleFrames = frames; }
+    public static void setRestoreBudget(float milliseconds) { restoreBudget = (long)(milliseconds * 1_000_000L); }
+    public static void setLoader(AsyncTextureLoader textureLoader) { loader = textureLoader; }
+
+    //Accessors
+    public static long getBudget() { return budget; }
+    public static long getResidentBytes() { return residentBytes; } //as of the last update
+    public static long getFullBytes() { //if every texture were fully resident
+        long fullBytes = 0;
+        for (Texture texture : TEXTURES) fullBytes += texture.getMemorySize();
+        return fullBytes;
+    }
+    public static int getTextureCount() { return TEXTURES.size(); }
+    public static int getDowngradedCount() {
+        int downgraded = 0;
+        for (Texture texture : TEXTURES) if (texture.residentLevel > 0) downgraded++;
+        return downgraded;
+    }
+    public static int getPendingRestores() { return RESTORES.size(); }
+    public static int getDowngrades() { return downgrades; }
+    public static int getEvictions() { return evictions; }
+    public static int getRestores() { return restores; }
+    public static String getReport() {
+        return "Texture residency: " + TEXTURES.size() + " textures, " + residentBytes + " of " +
+                (budget == Long.MAX_VALUE ? "unlimited" : String.valueOf(budget)) + " bytes resident (" +
+                getFullBytes() + " if fully resident), " + getDowngradedCount() + " downgraded, " + downgrades +
+                " downgrades, " + evictions + " evictions, " + restores + " restores";
+    }
+}
@@ -74,6 +74,17 @@ public class Transformation {
         return matrix;
     }
 
+    //World Matrix
+    //calculates the world matrix of a single GameItem into the given matrix
+    public static Matrix4f updateWorldMatrix(GameItem gameItem, Matrix4f matrix) {
+        Vector3f rotation = gameItem.getRotation();
+        return matrix.identity().translate(gameItem.getPosition())
+                .rotateX((float)Math.toRadians(-rotation.x))
+                .rotateY((float)Math.toRadians(-rotation.y))
+                .rotateZ((float)Math.toRadians(-rotation.z))
+                .scale(gameItem.getScale());
+    }
+
     //Orthographic 2D Projection Matrix
     public final Matrix4f updateOrtho2DProjectionMatrix(float left, float right, float bottom, float top) {
         this.ortho2D.identity();
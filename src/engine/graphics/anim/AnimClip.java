@@ -0,0 +1,24 @@
+package engine.graphics.anim;
+
+import java.util.List;
+
+public class AnimClip {
+
+    //Data
+    private final String name;
+    private final List<AnimatedFrame> frames;
+    private final float frameRate;
+
+    //Constructor
+    public AnimClip(String name, List<AnimatedFrame> frames, float frameRate) {
+        this.name = name;
+        this.frames = frames;
+        this.frameRate = frameRate;
+    }
+
+    //Accessors
+    public String getName() { return this.name; }
+    public List<AnimatedFrame> getFrames() { return this.frames; }
+    public float getFrameRate() { return this.frameRate; }
+    public int getFrameCount() { return this.frames.size(); }
+}
@@ -0,0 +1,121 @@
+package engine.graphics.anim;
+
+import engine.gameitem.AnimGameItem;
+import engine.gameitem.GameItem;
+import engine.graphics.Mesh;
+import org.joml.FrustumIntersection;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public class AnimLOD {
+
+    //Static Data
+    public static final int LEVEL_FULL = 0; //pose evaluated every update
+    public static final int LEVEL_HALF = 1; //pose evaluated every 2nd update
+    public static final int LEVEL_QUARTER = 2; //pose evaluated every 4th update
+    public static final int LEVEL_FROZEN = 3; //off-screen - animation does not advance at all
+    public static final int LEVEL_COUNT = 4;
+    private static final int[] UPDATE_INTERVALS = { 1, 2, 4, 0 };
+
+    //Data
+    private final FrustumIntersection frustum;
+    private final Matrix4f projView;
+    private final Vector3f viewPos;
+    private final Vector3f worldMin, worldMax, center;
+    private final int[] levelCounts;
+    private final Set<AnimGameItem> classified; //items classified this update - items with several meshes appear once per mesh
+    private float fullSize; //projected size (in pixels) at or above which items animate every update
+    private float halfSize; //projected size (in pixels) at or above which items animate every 2nd update
+    private float leafSize; //projected size (in pixels) below which leaf joints are no longer evaluated
+    private int leafSkipCount;
+
+    //Constructor
+    public AnimLOD() {
+        this.frustum = new FrustumIntersection();
+        this.projView = new Matrix4f();
+        this.viewPos = new Vector3f();
+        this.worldMin = new Vector3f();
+        this.worldMax = new Vector3f();
+        this.center = new Vector3f();
+        this.levelCounts = new int[LEVEL_COUNT];
+        this.classified = Collections.newSetFromMap(new IdentityHashMap<>());
+        this.fullSize = 200f;
+        this.halfSize = 80f;
+        this.leafSize = 40f;
+    }
+
+    //Update Method
+    //classifies every animated item in the mesh map by the projected screen size of its current world bounds
+    public void update(Map<Mesh, List<GameItem>> meshMap, Matrix4f projection, Matrix4f view, int screenHeight) {
+
+        //reset counts and rebuild frustum
+        Arrays.fill(this.levelCounts, 0);
+        this.leafSkipCount = 0;
+        this.projView.set(projection).mul(view);
+        this.frustum.set(this.projView);
+        this.classified.clear();
+
+        //classify each animated item
+        for (List<GameItem> items : meshMap.values()) {
+            for (GameItem item : items) {
+                if (!(item instanceof AnimGameItem)) continue;
+                AnimGameItem aitem = (AnimGameItem)item;
+                if (!this.classified.add(aitem)) continue;
+                aitem.getWorldBounds(this.worldMin, this.worldMax);
+
+                //items outside of the view frustum are frozen
+                int level;
+                boolean skipLeafJoints = false;
+                if (!this.frustum.testAab(this.worldMin, this.worldMax)) level = LEVEL_FROZEN;
+                else {
+                    this.worldMin.add(this.worldMax, this.center).mul(0.5f);
+                    float radius = this.worldMax.distance(this.worldMin) * 0.5f;
+                    float size = this.getProjectedSize(this.center, radius, projection, view, screenHeight);
+                    if (size >= this.fullSize) level = LEVEL_FULL;
+                    else if (size >= this.halfSize) level = LEVEL_HALF;
+                    else level = LEVEL_QUARTER;
+                    skipLeafJoints = size < this.leafSize;
+                }
+
+                //apply level and record stats
+                aitem.setLOD(level, skipLeafJoints);
+                this.levelCounts[level]++;
+                if (skipLeafJoints) this.leafSkipCount++;
+            }
+        }
+    }
+
+    //Projected Size Calculation Method
+    //calculates the approximate on-screen diameter (in pixels) of a bounding sphere
+    private float getProjectedSize(Vector3f position, float radius, Matrix4f projection, Matrix4f view, int screenHeight) {
+        this.viewPos.set(position);
+        view.transformPosition(this.viewPos);
+        float distance = -this.viewPos.z;
+        if (distance <= radius) return Float.MAX_VALUE; //camera is inside of the sphere
+        return radius * projection.m11() * screenHeight / distance;
+    }
+
+    //Static Accessors
+    public static int getUpdateInterval(int level) { return UPDATE_INTERVALS[level]; }
+
+    //Accessors
+    public int getLevelCount(int level) { return this.levelCounts[level]; }
+    public int getLeafSkipCount() { return this.leafSkipCount; }
+    public float getFullSize() { return this.fullSize; }
+    public float getHalfSize() { return this.halfSize; }
+    public float getLeafSize() { return this.leafSize; }
+
+    //Mutator
+    public void setThresholds(float fullSize, float halfSize, float leafSize) {
+        this.fullSize = fullSize;
+        this.halfSize = halfSize;
+        this.leafSize = leafSize;
+    }
+}
@@ -0,0 +1,58 @@
+package engine.graphics.anim;
+
+import engine.graphics.Mesh;
+import org.joml.Matrix4f;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class AnimSkeleton {
+
+    //Data
+    private final String name;
+    private final Mesh[] meshes;
+    private final List<Matrix4f> invJointMatrices; //inverse bind pose
+    private final int[] jointParents;
+    private final boolean[] leafJoints;
+    private final float boundingRadius;
+    private final Map<String, AnimClip> clips;
+
+    //Constructor
+    public AnimSkeleton(String name, Mesh[] meshes, List<Matrix4f> invJointMatrices, int[] jointParents, float boundingRadius) {
+        this.name = name;
+        this.meshes = meshes;
+        this.invJointMatrices = invJointMatrices;
+        this.jointParents = jointParents;
+        this.boundingRadius = boundingRadius;
+        this.clips = new HashMap<>();
+
+        //find leaf joints - joints which no other joint uses as parent
+        int numJoints = jointParents.length;
+        this.leafJoints = new boolean[numJoints];
+        boolean[] hasChildren = new boolean[numJoints];
+        for (int i = 0; i < numJoints; i++) if (jointParents[i] > -1) hasChildren[jointParents[i]] = true;
+        for (int i = 0; i < numJoints; i++) this.leafJoints[i] = jointParents[i] > -1 && !hasChildren[i];
+    }
+
+    //Accessors
+    public String getName() { return this.name; }
+    public Mesh[] getMeshes() { return this.meshes; }
+    public List<Matrix4f> getInvJointMatrices() { return this.invJointMatrices; }
+    public int getJointCount() { return this.jointParents.length; }
+    public int getJointParent(int joint) { return this.jointParents[joint]; }
+    public boolean isLeafJoint(int joint) { return this.leafJoints[joint]; }
+    public float getBoundingRadius() { return this.boundingRadius; }
+    public AnimClip getClip(String name) { return this.clips.get(name); }
+    public Map<String, AnimClip> getClips() { return this.clips; }
+
+    //Mutator
+    public void addClip(AnimClip clip) { this.clips.put(clip.getName(), clip); }
+
+    //Cleanup Method
+    public void cleanup() {
+        for (Mesh mesh : this.meshes) {
+            if (mesh != null) mesh.cleanup();
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package engine.graphics.anim;
 
 import org.joml.Matrix4f;
+import org.joml.Vector3f;
 
 import java.util.Arrays;
 
@@ -13,6 +14,7 @@ public class AnimatedFrame {
     //Data
     private final Matrix4f[] localJointMatrices;
     private final Matrix4f[] jointMatrices;
+    private Vector3f minBound, maxBound; //model space bounds of this frame (null if unknown)
 
     //Constructor
     public AnimatedFrame() {
@@ -25,6 +27,15 @@ public class AnimatedFrame {
     //Accessors
     public Matrix4f[] getLocalJointMatrices() { return this.localJointMatrices; }
     public Matrix4f[] getJointMatrices() { return this.jointMatrices; }
+    public Vector3f getMinBound() { return this.minBound; }
+    public Vector3f getMaxBound() { return this.maxBound; }
+    public boolean hasBounds() { return this.minBound != null && this.maxBound != null; }
+
+    //Bounds Mutator
+    public void setBounds(Vector3f minBound, Vector3f maxBound) {
+        this.minBound = minBound;
+        this.maxBound = maxBound;
+    }
 
     //Matrix Mutator
     public void setMatrix(int pos, Matrix4f localJointMatrix, Matrix4f invJointMatrix) {
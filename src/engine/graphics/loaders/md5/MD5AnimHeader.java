@@ -79,7 +79,7 @@ public class MD5AnimHeader {
     private String getCommandLine() { return this.commandLine; }
     private int getNumFrames() { return this.numFrames; }
     private int getNumJoints() { return this.numJoints; }
-    private int getFrameRate() { return this.frameRate; }
+    public int getFrameRate() { return this.frameRate; }
     private int getNumAnimatedComponents() { return this.numAnimatedComponents; }
 
     //Mutators
@@ -40,7 +40,7 @@ public class MD5BoundInfo {
     }
 
     //Bound Inner Class
-    private static class MD5Bound {
+    public static class MD5Bound {
 
         //Static Data
         private static final Pattern PATTERN_BOUND = Pattern.compile("\\s*" + MD5Utils.VECTOR3_REGEXP + "\\s*" +
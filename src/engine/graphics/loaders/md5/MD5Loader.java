@@ -2,39 +2,156 @@ package engine.graphics.loaders.md5;
 
 import engine.Utils;
 import engine.gameitem.AnimGameItem;
-import engine.gameitem.GameItem;
+import engine.graphics.AsyncTextureLoader;
 import engine.graphics.Material;
 import engine.graphics.Mesh;
 import engine.graphics.Texture;
+import engine.graphics.TextureAtlas;
+import engine.graphics.TextureCache;
+import engine.graphics.anim.AnimClip;
+import engine.graphics.anim.AnimSkeleton;
 import engine.graphics.anim.AnimVertex;
 import engine.graphics.anim.AnimatedFrame;
 import org.joml.*;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class MD5Loader {
 
     //Static Data
     private static final String NORMAL_FILE_SUFFIX = "_normal";
+    private static final Map<List<Object>, AnimSkeleton> SKELETONS = new HashMap<>(); //loaded skeletons (see getSkeletonKey)
 
     //Model Processing Method
     public static AnimGameItem process(MD5Model md5Model, MD5AnimModel animModel, Vector4f defaultColor) throws Exception {
+        AnimSkeleton skeleton = processSkeleton(null, md5Model, defaultColor, null, null);
+        return new AnimGameItem(skeleton, processClip(skeleton, null, animModel));
+    }
+
+    //Skeleton Loading Method
+    //loads a skeleton with its meshes and inverse bind pose once and returns the cached one afterwards
+    public static AnimSkeleton loadSkeleton(String meshFile, Vector4f defaultColor) throws Exception {
+        return loadSkeleton(meshFile, defaultColor, null, null);
+    }
+
+    //loads textures through an asynchronous loader (blocking if null) - meshes show placeholders until it uploads them
+    public static AnimSkeleton loadSkeleton(String meshFile, Vector4f defaultColor, AsyncTextureLoader textureLoader)
+            throws Exception {
+        return loadSkeleton(meshFile, defaultColor, textureLoader, null);
+    }
+
+    //textures meshes from an atlas where it holds their textures and their texture coordinates stay within 0 - 1
+    public static AnimSkeleton loadSkeleton(String meshFile, Vector4f defaultColor, TextureAtlas atlas) throws Exception {
+        return loadSkeleton(meshFile, defaultColor, null, atlas);
+    }
+
+    public static AnimSkeleton loadSkeleton(String meshFile, Vector4f defaultColor, AsyncTextureLoader textureLoader,
+                                            TextureAtlas atlas) throws Exception {
+        List<Object> key = getSkeletonKey(meshFile, defaultColor, textureLoader, atlas);
+        AnimSkeleton skeleton = SKELETONS.get(key);
+        if (skeleton == null) {
+            skeleton = processSkeleton(meshFile, MD5Model.parse(meshFile), defaultColor, textureLoader, atlas);
+            SKELETONS.put(key, skeleton);
+        }
+        return skeleton;
+    }
+
+    //untextured meshes take the default color, atlas textured meshes have remapped texture coordinates and materials, and
+    //asynchronously textured meshes start with placeholders - so skeletons loaded each of these ways are cached apart
+    private static List<Object> getSkeletonKey(String meshFile, Vector4f defaultColor, AsyncTextureLoader textureLoader,
+                                               TextureAtlas atlas) {
+        String color = defaultColor == null ? null : defaultColor.x + "," + defaultColor.y + "," + defaultColor.z + "," +
+                defaultColor.w;
+        return Arrays.asList(meshFile, color, atlas, textureLoader != null);
+    }
+
+    //Clip Loading Method
+    //loads an animation clip for a skeleton once and returns the attached one afterwards
+    public static AnimClip loadClip(AnimSkeleton skeleton, String animFile) throws Exception {
+        AnimClip clip = skeleton.getClip(animFile);
+        if (clip == null) {
+            clip = processClip(skeleton, animFile, MD5AnimModel.parse(animFile));
+            skeleton.addClip(clip);
+        }
+        return clip;
+    }
+
+    //Cache Methods
+    //returns whether a mesh belongs to a cached skeleton - such meshes are cleaned up by clearing the cache
+    public static boolean isCached(Mesh mesh) {
+        for (AnimSkeleton skeleton : SKELETONS.values()) {
+            for (Mesh skeletonMesh : skeleton.getMeshes()) if (skeletonMesh == mesh) return true;
+        }
+        return false;
+    }
+
+    public static void clearCache() {
+        for (AnimSkeleton skeleton : SKELETONS.values()) skeleton.cleanup();
+        SKELETONS.clear();
+    }
+
+    //Skeleton Processing Method
+    private static AnimSkeleton processSkeleton(String name, MD5Model md5Model, Vector4f defaultColor,
+                                                AsyncTextureLoader textureLoader, TextureAtlas atlas) throws Exception {
         List<Matrix4f> invJointMatrices = calcInJointMatrices(md5Model);
-        List<AnimatedFrame> animatedFrames = processAnimationFrames(md5Model, animModel, invJointMatrices);
 
         List<Mesh> meshes = new ArrayList<>();
         for (MD5Mesh md5Mesh : md5Model.getMeshes()) {
-            Mesh mesh = generateMesh(md5Model, md5Mesh);
-            handleTexture(mesh, md5Mesh, defaultColor);
+            TextureAtlas.Region region = atlas != null ? atlas.getRegion(md5Mesh.getTexture()) : null;
+            Mesh mesh = generateMesh(md5Model, md5Mesh, region);
+            if (mesh.getMaterial() == null) handleTexture(mesh, md5Mesh, defaultColor, textureLoader);
             meshes.add(mesh);
         }
 
         Mesh[] meshesArr = new Mesh[meshes.size()];
         meshesArr = meshes.toArray(meshesArr);
 
-        return new AnimGameItem(meshesArr, animatedFrames, invJointMatrices);
+        return new AnimSkeleton(name, meshesArr, invJointMatrices, getJointParents(md5Model), calcBoundingRadius(md5Model));
+    }
+
+    //Clip Processing Method
+    private static AnimClip processClip(AnimSkeleton skeleton, String name, MD5AnimModel animModel) throws Exception {
+        int numJoints = animModel.getHierarchy().getHierarchyData().size();
+        if (numJoints != skeleton.getJointCount())
+            throw new Exception("Animation has " + numJoints + " joints but skeleton has " + skeleton.getJointCount());
+        List<AnimatedFrame> animatedFrames = processAnimationFrames(skeleton, animModel);
+        return new AnimClip(name, animatedFrames, animModel.getHeader().getFrameRate());
+    }
+
+    //Joint Parents Method
+    private static int[] getJointParents(MD5Model md5Model) {
+        List<MD5JointInfo.MD5JointData> joints = md5Model.getJointInfo().getJoints();
+        int[] result = new int[joints.size()];
+        for (int i = 0; i < result.length; i++) result[i] = joints.get(i).getParentIndex();
+        return result;
+    }
+
+    //Bounding Radius Calculation Method
+    //calculates the radius of a sphere around the model origin containing every bind pose vertex
+    private static float calcBoundingRadius(MD5Model md5Model) {
+        float result = 0;
+        Vector3f position = new Vector3f();
+        Vector3f weighted = new Vector3f();
+        List<MD5JointInfo.MD5JointData> joints = md5Model.getJointInfo().getJoints();
+        for (MD5Mesh md5Mesh : md5Model.getMeshes()) {
+            List<MD5Mesh.MD5Weight> weights = md5Mesh.getWeights();
+            for (MD5Mesh.MD5Vertex md5Vertex : md5Mesh.getVertices()) {
+                position.zero();
+                int startWeight = md5Vertex.getStartWeight();
+                for (int i = startWeight; i < startWeight + md5Vertex.getWeightCount(); i++) {
+                    MD5Mesh.MD5Weight weight = weights.get(i);
+                    MD5JointInfo.MD5JointData joint = joints.get(weight.getJointIndex());
+                    weighted.set(weight.getPosition()).rotate(joint.getOrientation()).add(joint.getPosition());
+                    position.add(weighted.mul(weight.getBias()));
+                }
+                if (position.length() > result) result = position.length();
+            }
+        }
+        return result;
     }
 
     //Joint Matrices Calculation Method
@@ -52,33 +169,39 @@ public class MD5Loader {
     }
 
     //Animation Frame List Processing Method
-    private static List<AnimatedFrame> processAnimationFrames(MD5Model md5Model, MD5AnimModel animModel,
-                                                              List<Matrix4f> invJointMatrices) {
+    private static List<AnimatedFrame> processAnimationFrames(AnimSkeleton skeleton, MD5AnimModel animModel) {
         List<AnimatedFrame> animatedFrames = new ArrayList<>();
         List<MD5Frame> frames = animModel.getFrames();
+        MD5BoundInfo boundInfo = animModel.getBoundInfo();
+        List<MD5BoundInfo.MD5Bound> bounds = boundInfo != null ? boundInfo.getBounds() : null;
         for (MD5Frame frame : frames) {
-            AnimatedFrame data = processAnimationFrame(md5Model, animModel, frame, invJointMatrices);
+            AnimatedFrame data = processAnimationFrame(skeleton, animModel, frame);
+
+            //carry over the frame's bounds (bounds are listed in frame order)
+            int id = frame.getId();
+            if (bounds != null && id >= 0 && id < bounds.size()) {
+                MD5BoundInfo.MD5Bound bound = bounds.get(id);
+                data.setBounds(new Vector3f(bound.getMinBound()), new Vector3f(bound.getMaxBound()));
+            }
             animatedFrames.add(data);
         }
         return animatedFrames;
     }
 
     //Single Animation Frame Processing Method
-    private static AnimatedFrame processAnimationFrame(MD5Model md5Model, MD5AnimModel animModel, MD5Frame frame,
-                                                       List<Matrix4f> invJointMatrices) {
+    private static AnimatedFrame processAnimationFrame(AnimSkeleton skeleton, MD5AnimModel animModel, MD5Frame frame) {
         //get appropriate data
         AnimatedFrame result = new AnimatedFrame();
         MD5BaseFrame baseFrame = animModel.getBaseFrame();
         List<MD5Hierarchy.MD5HierarchyData> hierarchyList = animModel.getHierarchy().getHierarchyData();
-        List<MD5JointInfo.MD5JointData> joints = md5Model.getJointInfo().getJoints();
-        int numJoints = joints.size();
+        List<Matrix4f> invJointMatrices = skeleton.getInvJointMatrices();
+        int numJoints = skeleton.getJointCount();
         float[] frameData = frame.getFrameData();
 
         //apply transformations according to flags
         for (int i = 0; i < numJoints; i++) {
 
             //get appropriate data
-            MD5JointInfo.MD5JointData joint = joints.get(i);
             MD5BaseFrame.MD5BaseFrameData baseFrameData = baseFrame.getFrameData().get(i);
             Vector3f position = baseFrameData.getPosition();
             Quaternionf orientation = baseFrameData.getOrientation();
@@ -103,8 +226,9 @@ public class MD5Loader {
 
             //joint position is relative to joint's parent index position. use parent matrices
             //to transform it to model space
-            if (joint.getParentIndex() > -1) {
-                Matrix4f parentMatrix = result.getLocalJointMatrices()[joint.getParentIndex()];
+            int parentIndex = skeleton.getJointParent(i);
+            if (parentIndex > -1) {
+                Matrix4f parentMatrix = result.getLocalJointMatrices()[parentIndex];
                 jointMat = new Matrix4f(parentMatrix).mul(jointMat);
             }
 
@@ -117,7 +241,7 @@ public class MD5Loader {
     }
 
     //Mesh Generation Method
-    private static Mesh generateMesh(MD5Model md5Model, MD5Mesh md5Mesh) throws Exception {
+    private static Mesh generateMesh(MD5Model md5Model, MD5Mesh md5Mesh, TextureAtlas.Region region) throws Exception {
 
         //create lists
         List<AnimVertex> vertices = new ArrayList<>();
@@ -183,11 +307,12 @@ public class MD5Loader {
         for (AnimVertex v : vertices) v.normal.normalize();
 
         //create and return mesh
-        return createMesh(vertices, indices);
+        return createMesh(vertices, indices, region);
     }
 
     //Mesh Creation Method
-    private static Mesh createMesh(List<AnimVertex> vertices, List<Integer> indices) {
+    //remaps texture coordinates into an atlas region (if not null) and gives the mesh the region's material
+    private static Mesh createMesh(List<AnimVertex> vertices, List<Integer> indices, TextureAtlas.Region region) {
 
         //create lists
         List<Float> positions = new ArrayList<>();
@@ -235,14 +360,18 @@ public class MD5Loader {
         float[] weightsArr = Utils.listToArray(weights);
 
         //create and return mesh
-        return new Mesh(positionsArr, texCoordsArr, normalsArr, indicesArr, jointIndicesArr, weightsArr);
+        boolean remapped = region != null && region.remap(texCoordsArr);
+        Mesh mesh = new Mesh(positionsArr, texCoordsArr, normalsArr, indicesArr, jointIndicesArr, weightsArr);
+        if (remapped) mesh.setMaterial(region.createMaterial());
+        return mesh;
     }
 
     //Texture Handling Method
-    private static void handleTexture(Mesh mesh, MD5Mesh md5Mesh, Vector4f defaultColor) throws Exception {
+    private static void handleTexture(Mesh mesh, MD5Mesh md5Mesh, Vector4f defaultColor, AsyncTextureLoader textureLoader)
+            throws Exception {
         String texturePath = md5Mesh.getTexture();
         if (texturePath != null && texturePath.length() > 0) {
-            Texture texture = new Texture(texturePath);
+            Texture texture = acquireTexture(texturePath, textureLoader);
             Material material = new Material(texture);
 
             //handle normal maps
@@ -252,7 +381,7 @@ public class MD5Loader {
                 String extension = texturePath.substring(pos, texturePath.length());
                 String normalMapFileName = basePath + NORMAL_FILE_SUFFIX + extension;
                 if (Utils.resourceFileExists(normalMapFileName)) {
-                    Texture normalMap = new Texture(normalMapFileName);
+                    Texture normalMap = acquireTexture(normalMapFileName, textureLoader);
                     material.setNormalMap(normalMap);
                 }
             }
@@ -261,4 +390,10 @@ public class MD5Loader {
             mesh.setMaterial(new Material(defaultColor, 1));
         }
     }
+
+    //Texture Acquiring Method
+    private static Texture acquireTexture(String fileName, AsyncTextureLoader textureLoader) throws Exception {
+        if (textureLoader == null) return TextureCache.acquire(fileName);
+        return TextureCache.acquire(fileName, textureLoader);
+    }
 }
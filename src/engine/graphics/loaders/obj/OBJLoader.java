@@ -2,6 +2,7 @@ package engine.graphics.loaders.obj;
 
 import engine.Utils;
 import engine.graphics.Mesh;
+import engine.graphics.TextureAtlas;
 import org.joml.Vector2f;
 import org.joml.Vector3f;
 import java.util.ArrayList;
@@ -11,7 +12,11 @@ import java.util.List;
 public class OBJLoader {
 
     //Static Method for loading an OBJ into a mesh
-    public static Mesh loadMesh(String fileName) throws Exception {
+    public static Mesh loadMesh(String fileName) throws Exception { return loadMesh(fileName, null); }
+
+    //Static Method for loading an OBJ into a mesh textured from an atlas region (ignored if null, or if the mesh's
+    //texture coordinates fall outside of 0 - 1) - the mesh is given a material using the region's page
+    public static Mesh loadMesh(String fileName, TextureAtlas.Region region) throws Exception {
 
         //Read OBJ file in
         List<String> file = Utils.readEntireFile(fileName);
@@ -55,11 +60,12 @@ public class OBJLoader {
             }
         }
 
-        return reoorderLists(vertices, normals, textures, faces);
+        return reoorderLists(vertices, normals, textures, faces, region);
     }
 
     //Other Methods
-    private static Mesh reoorderLists(List<Vector3f> vertices, List<Vector3f> normals, List<Vector2f> textures, List<Face> faces) {
+    private static Mesh reoorderLists(List<Vector3f> vertices, List<Vector3f> normals, List<Vector2f> textures, List<Face> faces,
+                                      TextureAtlas.Region region) {
 
         List<Integer> indices = new ArrayList();
 
@@ -84,7 +90,10 @@ public class OBJLoader {
 
         int[] indicesArr = new int[indices.size()];
         indicesArr = indices.stream().mapToInt((Integer v) -> v).toArray();
-        return new Mesh(posArr, textureCoordsArr, normalVectorsArr, indicesArr);
+        boolean remapped = region != null && region.remap(textureCoordsArr); //into atlas space
+        Mesh mesh = new Mesh(posArr, textureCoordsArr, normalVectorsArr, indicesArr);
+        if (remapped) mesh.setMaterial(region.createMaterial());
+        return mesh;
     }
 
     private static void processIndexGroup(IndexGroup indexGroup, List<Vector2f> textures, List<Vector3f> normals, List<Integer> indices, float[] textureCoordsArr, float[] normalVectorsArr) {
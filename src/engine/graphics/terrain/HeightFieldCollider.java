@@ -0,0 +1,408 @@
+package engine.graphics.terrain;
+
+import engine.gameitem.GameItem;
+import engine.graphics.HeightMap;
+import org.joml.Vector3f;
+
+import java.util.stream.IntStream;
+
+//sphere, capsule and swept sphere queries against the triangles of a height map shared by a set of chunks. queries take
+//world space input, run in each overlapping chunk's local space (chunks are translated and uniformly scaled only) and
+//write into a caller supplied contact. no query allocates, and queries may run on multiple threads with one contact each
+public class HeightFieldCollider {
+
+    //Static Data
+    private static final float EPSILON = 1e-6f;
+    private static final int MAX_SWEEP_STEPS = 32;
+    private static final ThreadLocal<TerrainContact> BATCH_CONTACTS = ThreadLocal.withInitial(TerrainContact::new);
+
+    //Data
+    private final HeightMap heightMap;
+    private final GameItem[] chunks;
+    private final int cols, rows;
+    private final float incX, incZ; //local size of a cell
+
+    //Constructor
+    public HeightFieldCollider(HeightMap heightMap, GameItem[] chunks) {
+        this.heightMap = heightMap;
+        this.chunks = chunks;
+        this.cols = heightMap.getCols();
+        this.rows = heightMap.getRows();
+        this.incX = HeightMap.getXLength() / (this.cols - 1);
+        this.incZ = HeightMap.getZLength() / (this.rows - 1);
+    }
+
+    //Sphere Query Method
+    //finds the deepest contact of a sphere with the terrain, returning true if they touch
+    public boolean collideSphere(float x, float y, float z, float radius, TerrainContact contact) {
+        return this.collide(x, y, z, x, y, z, radius, contact);
+    }
+
+    public boolean collideSphere(Vector3f center, float radius, TerrainContact contact) {
+        return this.collide(center.x, center.y, center.z, center.x, center.y, center.z, radius, contact);
+    }
+
+    //Capsule Query Method
+    //finds the deepest contact of a capsule (the segment from a to b swept by radius) with the terrain
+    public boolean collideCapsule(Vector3f a, Vector3f b, float radius, TerrainContact contact) {
+        return this.collide(a.x, a.y, a.z, b.x, b.y, b.z, radius, contact);
+    }
+
+    //Swept Sphere Query Method
+    //moves a sphere along a displacement by conservative advancement, stopping at the first time of impact
+    //returns true on impact, with the contact's time set to the fraction of the displacement travelled
+    public boolean sweepSphere(Vector3f center, float radius, Vector3f displacement, TerrainContact contact) {
+        float length = displacement.length();
+        float tolerance = Math.max(radius * 1e-3f, EPSILON);
+        float t = 0;
+        for (int i = 0; i < MAX_SWEEP_STEPS; i++) {
+            float x = center.x + displacement.x * t, y = center.y + displacement.y * t, z = center.z + displacement.z * t;
+
+            //search as far as the sphere can still travel so that the nearest surface within reach is found
+            float reach = radius + length * (1 - t);
+            this.collide(x, y, z, x, y, z, reach, contact);
+            if (contact.getDepth() < 0) break; //no terrain within reach
+            float separation = reach - contact.getDepth() - radius; //between the sphere's surface and the terrain
+            if (separation <= tolerance) {
+                Vector3f normal = contact.getNormal(), point = contact.getPoint();
+                contact.set(-separation, normal.x, normal.y, normal.z, point.x, point.y, point.z);
+                contact.setTime(t);
+                return true;
+            }
+
+            //nothing is closer than the separation, so the sphere can safely advance that far
+            if (length <= EPSILON) break;
+            t += separation / length;
+            if (t > 1) break;
+        }
+        contact.clear();
+        return false;
+    }
+
+    //Batched Sphere Query Method
+    //centers holds packed x/y/z triples. results receives packed depth/normal x/y/z quadruples (depth 0 if apart)
+    //parallel batches run on the common fork-join pool
+    public void collideSpheres(float[] centers, float[] radii, float[] results, boolean parallel) {
+        IntStream indices = IntStream.range(0, radii.length);
+        if (parallel) indices = indices.parallel();
+        indices.forEach(i -> {
+            TerrainContact contact = BATCH_CONTACTS.get();
+            boolean touching = this.collideSphere(centers[i * 3], centers[i * 3 + 1], centers[i * 3 + 2], radii[i], contact);
+            results[i * 4] = touching ? contact.getDepth() : 0;
+            results[i * 4 + 1] = contact.getNormal().x;
+            results[i * 4 + 2] = contact.getNormal().y;
+            results[i * 4 + 3] = contact.getNormal().z;
+        });
+    }
+
+    //World Query Method
+    //tests the swept segment against every chunk it overlaps and keeps the deepest contact
+    private boolean collide(float ax, float ay, float az, float bx, float by, float bz, float radius, TerrainContact contact) {
+        contact.clear();
+        float depth = -Float.MAX_VALUE;
+        float nx = 0, ny = 1, nz = 0, px = 0, py = 0, pz = 0;
+        float minX = Math.min(ax, bx) - radius, maxX = Math.max(ax, bx) + radius;
+        float minZ = Math.min(az, bz) - radius, maxZ = Math.max(az, bz) + radius;
+        for (GameItem chunk : this.chunks) {
+
+            //skip chunks the query's bounds miss
+            Vector3f position = chunk.getPosition();
+            float scale = chunk.getScale();
+            float halfX = HeightMap.getXLength() * 0.5f * scale, halfZ = HeightMap.getZLength() * 0.5f * scale;
+            if (maxX < position.x - halfX || minX > position.x + halfX || maxZ < position.z - halfZ || minZ > position.z + halfZ) continue;
+
+            //query in local space and convert back
+            float invScale = 1.0f / scale;
+            float localDepth = this.collideLocal((ax - position.x) * invScale, (ay - position.y) * invScale, (az - position.z) * invScale,
+                    (bx - position.x) * invScale, (by - position.y) * invScale, (bz - position.z) * invScale, radius * invScale, contact);
+            if (localDepth == -Float.MAX_VALUE || localDepth * scale <= depth) continue;
+            depth = localDepth * scale;
+            nx = contact.nx;
+            ny = contact.ny;
+            nz = contact.nz;
+            px = contact.qx * scale + position.x;
+            py = contact.qy * scale + position.y;
+            pz = contact.qz * scale + position.z;
+        }
+        if (depth == -Float.MAX_VALUE) return false;
+        contact.set(depth, nx, ny, nz, px, py, pz);
+        contact.setTime(0);
+        return depth > 0;
+    }
+
+    //Local Query Method
+    //returns the penetration depth (negative if apart) of the segment from a to b swept by radius, or -MAX_VALUE if no
+    //triangle lies within reach. on return the contact's scratch holds the surface point and outward normal
+    private float collideLocal(float ax, float ay, float az, float bx, float by, float bz, float radius, TerrainContact c) {
+
+        //find the cells within reach
+        int col0 = Math.max(0, (int)Math.floor((Math.min(ax, bx) - radius - HeightMap.STARTX) / this.incX));
+        int col1 = Math.min(this.cols - 2, (int)Math.floor((Math.max(ax, bx) + radius - HeightMap.STARTX) / this.incX));
+        int row0 = Math.max(0, (int)Math.floor((Math.min(az, bz) - radius - HeightMap.STARTZ) / this.incZ));
+        int row1 = Math.min(this.rows - 2, (int)Math.floor((Math.max(az, bz) + radius - HeightMap.STARTZ) / this.incZ));
+        if (col0 > col1 || row0 > row1) return -Float.MAX_VALUE;
+
+        //find the closest triangle
+        boolean point = ax == bx && ay == by && az == bz;
+        float best = Float.MAX_VALUE;
+        float bqx = 0, bqy = 0, bqz = 0, bsx = 0, bsy = 0, bsz = 0, bnx = 0, bny = 1, bnz = 0;
+        for (int row = row0; row <= row1; row++) {
+            for (int col = col0; col <= col1; col++) {
+                float x0 = HeightMap.STARTX + col * this.incX, x1 = x0 + this.incX;
+                float z0 = HeightMap.STARTZ + row * this.incZ, z1 = z0 + this.incZ;
+                float topLeft = this.heightMap.getHeight(row, col);
+                float topRight = this.heightMap.getHeight(row, col + 1);
+                float bottomLeft = this.heightMap.getHeight(row + 1, col);
+                float bottomRight = this.heightMap.getHeight(row + 1, col + 1);
+                for (int tri = 0; tri < 2; tri++) {
+
+                    //triangles are split like the height map's mesh (top left and bottom right halves)
+                    float t0x = tri == 0 ? x0 : x1, t0y = tri == 0 ? topLeft : topRight;
+                    float t2x = tri == 0 ? x1 : x1, t2y = tri == 0 ? topRight : bottomRight, t2z = tri == 0 ? z0 : z1;
+                    float distance = point
+                            ? this.closestPointTriangle(ax, ay, az, t0x, t0y, z0, x0, bottomLeft, z1, t2x, t2y, t2z, c)
+                            : this.closestSegmentTriangle(ax, ay, az, bx, by, bz, t0x, t0y, z0, x0, bottomLeft, z1, t2x, t2y, t2z, c);
+                    if (point) {
+                        c.sx = ax;
+                        c.sy = ay;
+                        c.sz = az;
+                    }
+                    if (distance < best) {
+                        best = distance;
+                        bqx = c.qx; bqy = c.qy; bqz = c.qz;
+                        bsx = c.sx; bsy = c.sy; bsz = c.sz;
+                        bnx = c.nx; bny = c.ny; bnz = c.nz;
+                    }
+                }
+            }
+        }
+
+        //points below the surface push out along the way to the closest surface point
+        boolean below = this.isBelowSurface(bsx, bsy, bsz) || best <= EPSILON;
+        float nx = bsx - bqx, ny = bsy - bqy, nz = bsz - bqz;
+        if (best > EPSILON) {
+            float sign = below ? -1 : 1;
+            nx *= sign / best;
+            ny *= sign / best;
+            nz *= sign / best;
+        } else { //touching the surface exactly - use the face normal
+            nx = bnx;
+            ny = bny;
+            nz = bnz;
+        }
+
+        //segments crossing the surface penetrate by the radius plus the depth of their deepest end
+        float depth = below ? radius + best : radius - best;
+        if (!point && best <= EPSILON) {
+            float endDepth = Math.max(this.getDepthBelowSurface(ax, ay, az), this.getDepthBelowSurface(bx, by, bz));
+            depth = radius + endDepth;
+        }
+        c.qx = bqx;
+        c.qy = bqy;
+        c.qz = bqz;
+        c.nx = nx;
+        c.ny = ny;
+        c.nz = nz;
+        return depth;
+    }
+
+    //Surface Methods
+    private boolean isBelowSurface(float x, float y, float z) { return this.getDepthBelowSurface(x, y, z) > 0; }
+
+    //vertical distance below the surface (negative above it, 0 outside of the height map)
+    private float getDepthBelowSurface(float x, float y, float z) {
+        float cellX = (x - HeightMap.STARTX) / this.incX, cellZ = (z - HeightMap.STARTZ) / this.incZ;
+        if (cellX < 0 || cellZ < 0 || cellX > this.cols - 1 || cellZ > this.rows - 1) return 0;
+        int cx = Math.min((int)cellX, this.cols - 2), cz = Math.min((int)cellZ, this.rows - 2);
+        float fx = cellX - cx, fz = cellZ - cz;
+        float topLeft = this.heightMap.getHeight(cz, cx);
+        float topRight = this.heightMap.getHeight(cz, cx + 1);
+        float bottomLeft = this.heightMap.getHeight(cz + 1, cx);
+        float h;
+        if (fx + fz <= 1.0f) h = topLeft + (topRight - topLeft) * fx + (bottomLeft - topLeft) * fz;
+        else {
+            float bottomRight = this.heightMap.getHeight(cz + 1, cx + 1);
+            h = bottomRight + (bottomLeft - bottomRight) * (1.0f - fx) + (topRight - bottomRight) * (1.0f - fz);
+        }
+        return h - y;
+    }
+
+    //Closest Point on Triangle Method
+    //returns the distance from p to triangle abc and stores the closest point and the face normal in the contact
+    private float closestPointTriangle(float px, float py, float pz, float ax, float ay, float az, float bx, float by,
+                                       float bz, float cx, float cy, float cz, TerrainContact c) {
+        this.storeFaceNormal(ax, ay, az, bx, by, bz, cx, cy, cz, c);
+        float abx = bx - ax, aby = by - ay, abz = bz - az;
+        float acx = cx - ax, acy = cy - ay, acz = cz - az;
+        float apx = px - ax, apy = py - ay, apz = pz - az;
+
+        //vertex region a
+        float d1 = abx * apx + aby * apy + abz * apz;
+        float d2 = acx * apx + acy * apy + acz * apz;
+        if (d1 <= 0 && d2 <= 0) return storeClosest(ax, ay, az, px, py, pz, c);
+
+        //vertex region b
+        float bpx = px - bx, bpy = py - by, bpz = pz - bz;
+        float d3 = abx * bpx + aby * bpy + abz * bpz;
+        float d4 = acx * bpx + acy * bpy + acz * bpz;
+        if (d3 >= 0 && d4 <= d3) return storeClosest(bx, by, bz, px, py, pz, c);
+
+        //edge region ab
+        float vc = d1 * d4 - d3 * d2;
+        if (vc <= 0 && d1 >= 0 && d3 <= 0) {
+            float v = d1 / (d1 - d3);
+            return storeClosest(ax + abx * v, ay + aby * v, az + abz * v, px, py, pz, c);
+        }
+
+        //vertex region c
+        float cpx = px - cx, cpy = py - cy, cpz = pz - cz;
+        float d5 = abx * cpx + aby * cpy + abz * cpz;
+        float d6 = acx * cpx + acy * cpy + acz * cpz;
+        if (d6 >= 0 && d5 <= d6) return storeClosest(cx, cy, cz, px, py, pz, c);
+
+        //edge region ac
+        float vb = d5 * d2 - d1 * d6;
+        if (vb <= 0 && d2 >= 0 && d6 <= 0) {
+            float w = d2 / (d2 - d6);
+            return storeClosest(ax + acx * w, ay + acy * w, az + acz * w, px, py, pz, c);
+        }
+
+        //edge region bc
+        float va = d3 * d6 - d5 * d4;
+        if (va <= 0 && (d4 - d3) >= 0 && (d5 - d6) >= 0) {
+            float w = (d4 - d3) / ((d4 - d3) + (d5 - d6));
+            return storeClosest(bx + (cx - bx) * w, by + (cy - by) * w, bz + (cz - bz) * w, px, py, pz, c);
+        }
+
+        //face region
+        float denom = 1.0f / (va + vb + vc);
+        float v = vb * denom, w = vc * denom;
+        return storeClosest(ax + abx * v + acx * w, ay + aby * v + acy * w, az + abz * v + acz * w, px, py, pz, c);
+    }
+
+    //Closest Segment to Triangle Method
+    //returns the distance between segment pq and triangle abc, storing both closest points and the face normal
+    private float closestSegmentTriangle(float px, float py, float pz, float qx, float qy, float qz, float ax, float ay,
+                                         float az, float bx, float by, float bz, float cx, float cy, float cz, TerrainContact c) {
+
+        //a segment crossing the triangle touches it
+        if (this.intersectSegmentTriangle(px, py, pz, qx, qy, qz, ax, ay, az, bx, by, bz, cx, cy, cz, c)) return 0;
+
+        //otherwise the closest points involve an end of the segment or an edge of the triangle
+        float best = this.closestPointTriangle(px, py, pz, ax, ay, az, bx, by, bz, cx, cy, cz, c);
+        float bqx = c.qx, bqy = c.qy, bqz = c.qz, bsx = px, bsy = py, bsz = pz;
+        float distance = this.closestPointTriangle(qx, qy, qz, ax, ay, az, bx, by, bz, cx, cy, cz, c);
+        if (distance < best) {
+            best = distance;
+            bqx = c.qx; bqy = c.qy; bqz = c.qz;
+            bsx = qx; bsy = qy; bsz = qz;
+        }
+        for (int edge = 0; edge < 3; edge++) {
+            float ex0 = edge == 2 ? cx : (edge == 0 ? ax : bx), ey0 = edge == 2 ? cy : (edge == 0 ? ay : by), ez0 = edge == 2 ? cz : (edge == 0 ? az : bz);
+            float ex1 = edge == 0 ? bx : (edge == 1 ? cx : ax), ey1 = edge == 0 ? by : (edge == 1 ? cy : ay), ez1 = edge == 0 ? bz : (edge == 1 ? cz : az);
+            distance = closestSegmentSegment(px, py, pz, qx, qy, qz, ex0, ey0, ez0, ex1, ey1, ez1, c);
+            if (distance < best) {
+                best = distance;
+                bqx = c.qx; bqy = c.qy; bqz = c.qz;
+                bsx = c.sx; bsy = c.sy; bsz = c.sz;
+            }
+        }
+        c.qx = bqx; c.qy = bqy; c.qz = bqz;
+        c.sx = bsx; c.sy = bsy; c.sz = bsz;
+        return best;
+    }
+
+    //Segment Triangle Intersection Method
+    //moller-trumbore with the ray parameter limited to the segment, storing the intersection as both closest points
+    private boolean intersectSegmentTriangle(float px, float py, float pz, float qx, float qy, float qz, float ax, float ay,
+                                             float az, float bx, float by, float bz, float cx, float cy, float cz, TerrainContact c) {
+        float dx = qx - px, dy = qy - py, dz = qz - pz;
+        float e1x = bx - ax, e1y = by - ay, e1z = bz - az;
+        float e2x = cx - ax, e2y = cy - ay, e2z = cz - az;
+        float hx = dy * e2z - dz * e2y, hy = dz * e2x - dx * e2z, hz = dx * e2y - dy * e2x;
+        float det = e1x * hx + e1y * hy + e1z * hz;
+        if (Math.abs(det) < EPSILON) return false;
+        float invDet = 1.0f / det;
+        float sx = px - ax, sy = py - ay, sz = pz - az;
+        float u = (sx * hx + sy * hy + sz * hz) * invDet;
+        if (u < 0 || u > 1) return false;
+        float kx = sy * e1z - sz * e1y, ky = sz * e1x - sx * e1z, kz = sx * e1y - sy * e1x;
+        float v = (dx * kx + dy * ky + dz * kz) * invDet;
+        if (v < 0 || u + v > 1) return false;
+        float t = (e2x * kx + e2y * ky + e2z * kz) * invDet;
+        if (t < 0 || t > 1) return false;
+        this.storeFaceNormal(ax, ay, az, bx, by, bz, cx, cy, cz, c);
+        c.qx = c.sx = px + dx * t;
+        c.qy = c.sy = py + dy * t;
+        c.qz = c.sz = pz + dz * t;
+        return true;
+    }
+
+    //Closest Segment to Segment Method
+    //returns the distance between segments p1q1 and p2q2, storing the closest points (s on the first, q on the second)
+    private static float closestSegmentSegment(float p1x, float p1y, float p1z, float q1x, float q1y, float q1z, float p2x,
+                                               float p2y, float p2z, float q2x, float q2y, float q2z, TerrainContact c) {
+        float d1x = q1x - p1x, d1y = q1y - p1y, d1z = q1z - p1z;
+        float d2x = q2x - p2x, d2y = q2y - p2y, d2z = q2z - p2z;
+        float rx = p1x - p2x, ry = p1y - p2y, rz = p1z - p2z;
+        float a = d1x * d1x + d1y * d1y + d1z * d1z;
+        float e = d2x * d2x + d2y * d2y + d2z * d2z;
+        float f = d2x * rx + d2y * ry + d2z * rz;
+        float s, t;
+        if (a <= EPSILON && e <= EPSILON) {
+            s = t = 0;
+        } else if (a <= EPSILON) {
+            s = 0;
+            t = clamp(f / e);
+        } else {
+            float cc = d1x * rx + d1y * ry + d1z * rz;
+            if (e <= EPSILON) {
+                t = 0;
+                s = clamp(-cc / a);
+            } else {
+                float b = d1x * d2x + d1y * d2y + d1z * d2z;
+                float denom = a * e - b * b;
+                s = denom != 0 ? clamp((b * f - cc * e) / denom) : 0;
+                t = (b * s + f) / e;
+                if (t < 0) {
+                    t = 0;
+                    s = clamp(-cc / a);
+                } else if (t > 1) {
+                    t = 1;
+                    s = clamp((b - cc) / a);
+                }
+            }
+        }
+        c.sx = p1x + d1x * s; c.sy = p1y + d1y * s; c.sz = p1z + d1z * s;
+        c.qx = p2x + d2x * t; c.qy = p2y + d2y * t; c.qz = p2z + d2z * t;
+        float dx = c.sx - c.qx, dy = c.sy - c.qy, dz = c.sz - c.qz;
+        return (float)Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    //Helper Methods
+    private static float clamp(float value) { return value < 0 ? 0 : (value > 1 ? 1 : value); }
+
+    private static float storeClosest(float x, float y, float z, float px, float py, float pz, TerrainContact c) {
+        c.qx = x;
+        c.qy = y;
+        c.qz = z;
+        float dx = px - x, dy = py - y, dz = pz - z;
+        return (float)Math.sqrt(dx * dx + dy * dy + dz * dz);
+    }
+
+    private void storeFaceNormal(float ax, float ay, float az, float bx, float by, float bz, float cx, float cy, float cz,
+                                 TerrainContact c) {
+        float e1x = bx - ax, e1y = by - ay, e1z = bz - az;
+        float e2x = cx - ax, e2y = cy - ay, e2z = cz - az;
+        float nx = e1y * e2z - e1z * e2y, ny = e1z * e2x - e1x * e2z, nz = e1x * e2y - e1y * e2x;
+        float length = (float)Math.sqrt(nx * nx + ny * ny + nz * nz);
+        if (ny < 0) length = -length; //height field faces point up
+        c.nx = nx / length;
+        c.ny = ny / length;
+        c.nz = nz / length;
+    }
+
+    //Accessors
+    public HeightMap getHeightMap() { return this.heightMap; }
+    public GameItem[] getChunks() { return this.chunks; }
+}
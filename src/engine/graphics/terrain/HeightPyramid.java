@@ -0,0 +1,248 @@
+package engine.graphics.terrain;
+
+import engine.graphics.HeightMap;
+
+//a min/max mip pyramid over a height map's cells used to intersect rays with the height map's surface. rays are given
+//in the height map's local space and the returned ray parameters are unaffected by the conversion to cell space
+public class HeightPyramid {
+
+    //Static Data
+    public static final float MISS = -1;
+    private static final float EPSILON = 1e-6f;
+
+    //Data
+    private final HeightMap heightMap;
+    private final int cellsX, cellsZ;
+    private final int levels;
+    private final int[] levelWidths, levelDepths;
+    private final float[][] minHeights, maxHeights; //per level, row-major
+    private final long buildTime; //in nanoseconds
+
+    //Constructor
+    public HeightPyramid(HeightMap heightMap) {
+        long start = System.nanoTime();
+        this.heightMap = heightMap;
+        this.cellsX = heightMap.getCols() - 1;
+        this.cellsZ = heightMap.getRows() - 1;
+
+        //count levels until a single node covers every cell
+        int levels = 1;
+        for (int w = this.cellsX, d = this.cellsZ; w > 1 || d > 1; w = (w + 1) / 2, d = (d + 1) / 2) levels++;
+        this.levels = levels;
+        this.levelWidths = new int[levels];
+        this.levelDepths = new int[levels];
+        this.minHeights = new float[levels][];
+        this.maxHeights = new float[levels][];
+
+        //finest level - bounds of each cell's four corners
+        this.allocateLevel(0, this.cellsX, this.cellsZ);
+        for (int z = 0; z < this.cellsZ; z++) {
+            for (int x = 0; x < this.cellsX; x++) {
+                float h0 = heightMap.getHeight(z, x), h1 = heightMap.getHeight(z, x + 1);
+                float h2 = heightMap.getHeight(z + 1, x), h3 = heightMap.getHeight(z + 1, x + 1);
+                this.minHeights[0][z * this.cellsX + x] = Math.min(Math.min(h0, h1), Math.min(h2, h3));
+                this.maxHeights[0][z * this.cellsX + x] = Math.max(Math.max(h0, h1), Math.max(h2, h3));
+            }
+        }
+
+        //coarser levels - bounds of up to four children
+        for (int level = 1; level < levels; level++) {
+            int childWidth = this.levelWidths[level - 1], childDepth = this.levelDepths[level - 1];
+            this.allocateLevel(level, (childWidth + 1) / 2, (childDepth + 1) / 2);
+            float[] childMin = this.minHeights[level - 1], childMax = this.maxHeights[level - 1];
+            for (int z = 0; z < this.levelDepths[level]; z++) {
+                for (int x = 0; x < this.levelWidths[level]; x++) {
+                    float min = Float.MAX_VALUE, max = -Float.MAX_VALUE;
+                    for (int cz = z * 2; cz < Math.min(z * 2 + 2, childDepth); cz++) {
+                        for (int cx = x * 2; cx < Math.min(x * 2 + 2, childWidth); cx++) {
+                            min = Math.min(min, childMin[cz * childWidth + cx]);
+                            max = Math.max(max, childMax[cz * childWidth + cx]);
+                        }
+                    }
+                    this.minHeights[level][z * this.levelWidths[level] + x] = min;
+                    this.maxHeights[level][z * this.levelWidths[level] + x] = max;
+                }
+            }
+        }
+        this.buildTime = System.nanoTime() - start;
+    }
+
+    //Level Allocation Method
+    private void allocateLevel(int level, int width, int depth) {
+        this.levelWidths[level] = width;
+        this.levelDepths[level] = depth;
+        this.minHeights[level] = new float[width * depth];
+        this.maxHeights[level] = new float[width * depth];
+    }
+
+    //Intersection Method
+    //returns the smallest ray parameter in [0, tMax] at which the ray hits the surface, or MISS
+    //safe to call from multiple threads at once
+    public float intersect(float ox, float oy, float oz, float dx, float dy, float dz, float tMax) {
+        Ray ray = this.toCellSpace(ox, oy, oz, dx, dy, dz);
+        int top = this.levels - 1;
+        return this.intersectNode(ray, top, 0, 0, 0, tMax);
+    }
+
+    //Node Intersection Method
+    //clips the ray against a node's bounds, then descends into its children front to back
+    private float intersectNode(Ray ray, int level, int nx, int nz, float tMin, float tMax) {
+
+        //clip against node bounds
+        int i = nz * this.levelWidths[level] + nx;
+        float x0 = nx << level, x1 = Math.min((nx + 1) << level, this.cellsX);
+        float z0 = nz << level, z1 = Math.min((nz + 1) << level, this.cellsZ);
+        if (!ray.clip(x0, x1, this.minHeights[level][i], this.maxHeights[level][i], z0, z1, tMin, tMax)) return MISS;
+        float t0 = ray.clipMin, t1 = ray.clipMax;
+
+        //finest level - intersect the cell's triangles
+        if (level == 0) return this.intersectCell(ray, nx, nz, t0, t1);
+
+        //visit children nearest to farthest - the ray can only pass through one of the two middle children
+        int firstX = ray.dx >= 0 ? 0 : 1;
+        int firstZ = ray.dz >= 0 ? 0 : 1;
+        int childWidth = this.levelWidths[level - 1], childDepth = this.levelDepths[level - 1];
+        for (int c = 0; c < 4; c++) {
+            int cx = nx * 2 + (c == 1 || c == 3 ? 1 - firstX : firstX);
+            int cz = nz * 2 + (c == 2 || c == 3 ? 1 - firstZ : firstZ);
+            if (cx >= childWidth || cz >= childDepth) continue;
+            float t = this.intersectNode(ray, level - 1, cx, cz, t0, t1);
+            if (t != MISS) return t;
+        }
+        return MISS;
+    }
+
+    //Cell Intersection Method
+    //intersects the two triangles of a cell, split like the height map's mesh (top left and bottom right halves)
+    private float intersectCell(Ray ray, int x, int z, float tMin, float tMax) {
+        float topLeft = this.heightMap.getHeight(z, x);
+        float topRight = this.heightMap.getHeight(z, x + 1);
+        float bottomLeft = this.heightMap.getHeight(z + 1, x);
+        float bottomRight = this.heightMap.getHeight(z + 1, x + 1);
+        float t1 = intersectTriangle(ray, x, topLeft, z, x + 1, topRight, z, x, bottomLeft, z + 1);
+        float t2 = intersectTriangle(ray, x + 1, topRight, z, x + 1, bottomRight, z + 1, x, bottomLeft, z + 1);
+        float t = MISS;
+        if (t1 >= tMin - EPSILON && t1 <= tMax + EPSILON) t = t1;
+        if (t2 >= tMin - EPSILON && t2 <= tMax + EPSILON && (t == MISS || t2 < t)) t = t2;
+        return t;
+    }
+
+    //Triangle Intersection Method
+    //moller-trumbore ray/triangle intersection, returns the ray parameter or MISS
+    private static float intersectTriangle(Ray ray, float ax, float ay, float az, float bx, float by, float bz,
+                                           float cx, float cy, float cz) {
+        float e1x = bx - ax, e1y = by - ay, e1z = bz - az;
+        float e2x = cx - ax, e2y = cy - ay, e2z = cz - az;
+        float px = ray.dy * e2z - ray.dz * e2y;
+        float py = ray.dz * e2x - ray.dx * e2z;
+        float pz = ray.dx * e2y - ray.dy * e2x;
+        float det = e1x * px + e1y * py + e1z * pz;
+        if (Math.abs(det) < EPSILON) return MISS;
+        float invDet = 1.0f / det;
+        float sx = ray.ox - ax, sy = ray.oy - ay, sz = ray.oz - az;
+        float u = (sx * px + sy * py + sz * pz) * invDet;
+        if (u < -EPSILON || u > 1 + EPSILON) return MISS;
+        float qx = sy * e1z - sz * e1y;
+        float qy = sz * e1x - sx * e1z;
+        float qz = sx * e1y - sy * e1x;
+        float v = (ray.dx * qx + ray.dy * qy + ray.dz * qz) * invDet;
+        if (v < -EPSILON || u + v > 1 + EPSILON) return MISS;
+        return (e2x * qx + e2y * qy + e2z * qz) * invDet;
+    }
+
+    //Ray March Method
+    //naive reference intersection - steps along the ray and bisects the first step that ends below the surface
+    public float march(float ox, float oy, float oz, float dx, float dy, float dz, float tMax, int refinements) {
+        Ray ray = this.toCellSpace(ox, oy, oz, dx, dy, dz);
+        float stepLength = (float)Math.sqrt(ray.dx * ray.dx + ray.dz * ray.dz);
+        float step = stepLength > 0 ? 0.5f / stepLength : tMax; //half a cell per step
+        float previous = 0;
+        for (float t = 0; t <= tMax; t += step) {
+            if (this.isBelowSurface(ray, t)) {
+                if (t == 0) return 0;
+                float low = previous, high = t;
+                for (int i = 0; i < refinements; i++) {
+                    float mid = (low + high) * 0.5f;
+                    if (this.isBelowSurface(ray, mid)) high = mid;
+                    else low = mid;
+                }
+                return high;
+            }
+            previous = t;
+        }
+        return MISS;
+    }
+
+    //Surface Test Method
+    private boolean isBelowSurface(Ray ray, float t) {
+        float x = ray.ox + ray.dx * t, z = ray.oz + ray.dz * t;
+        if (x < 0 || z < 0 || x > this.cellsX || z > this.cellsZ) return false;
+        return ray.oy + ray.dy * t <= this.getCellSpaceHeight(x, z);
+    }
+
+    //Cell Space Height Method
+    //interpolates the height at a cell space position within the same triangles as the mesh
+    private float getCellSpaceHeight(float x, float z) {
+        int cx = Math.min((int)x, this.cellsX - 1);
+        int cz = Math.min((int)z, this.cellsZ - 1);
+        float fx = x - cx, fz = z - cz;
+        float topLeft = this.heightMap.getHeight(cz, cx);
+        float topRight = this.heightMap.getHeight(cz, cx + 1);
+        float bottomLeft = this.heightMap.getHeight(cz + 1, cx);
+        if (fx + fz <= 1.0f) return topLeft + (topRight - topLeft) * fx + (bottomLeft - topLeft) * fz;
+        float bottomRight = this.heightMap.getHeight(cz + 1, cx + 1);
+        return bottomRight + (bottomLeft - bottomRight) * (1.0f - fx) + (topRight - bottomRight) * (1.0f - fz);
+    }
+
+    //Cell Space Conversion Method
+    //maps local x/z onto cell indices - a linear map, so ray parameters stay the same
+    private Ray toCellSpace(float ox, float oy, float oz, float dx, float dy, float dz) {
+        float sx = this.cellsX / HeightMap.getXLength();
+        float sz = this.cellsZ / HeightMap.getZLength();
+        return new Ray((ox - HeightMap.STARTX) * sx, oy, (oz - HeightMap.STARTZ) * sz, dx * sx, dy, dz * sz);
+    }
+
+    //Accessors
+    public HeightMap getHeightMap() { return this.heightMap; }
+    public int getLevels() { return this.levels; }
+    public float getMinHeight() { return this.minHeights[this.levels - 1][0]; }
+    public float getMaxHeight() { return this.maxHeights[this.levels - 1][0]; }
+    public float getBuildTime() { return this.buildTime / 1000_000.0f; } //in milliseconds
+
+    //Ray Inner Class
+    //a ray in cell space along with the result of the last clip
+    private static class Ray {
+
+        //Data
+        private final float ox, oy, oz, dx, dy, dz;
+        private float clipMin, clipMax;
+
+        //Constructor
+        private Ray(float ox, float oy, float oz, float dx, float dy, float dz) {
+            this.ox = ox;
+            this.oy = oy;
+            this.oz = oz;
+            this.dx = dx;
+            this.dy = dy;
+            this.dz = dz;
+        }
+
+        //Clip Method
+        //clips [tMin, tMax] to a box, returning false if nothing remains
+        private boolean clip(float x0, float x1, float y0, float y1, float z0, float z1, float tMin, float tMax) {
+            this.clipMin = tMin;
+            this.clipMax = tMax;
+            return this.clipAxis(this.ox, this.dx, x0, x1) && this.clipAxis(this.oy, this.dy, y0, y1) &&
+                    this.clipAxis(this.oz, this.dz, z0, z1);
+        }
+
+        private boolean clipAxis(float o, float d, float min, float max) {
+            if (d == 0) return o >= min - EPSILON && o <= max + EPSILON;
+            float a = (min - o) / d, b = (max - o) / d;
+            if (a > b) { float tmp = a; a = b; b = tmp; }
+            if (a > this.clipMin) this.clipMin = a;
+            if (b < this.clipMax) this.clipMax = b;
+            return this.clipMin <= this.clipMax + EPSILON;
+        }
+    }
+}
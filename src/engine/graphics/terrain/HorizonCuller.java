@@ -0,0 +1,165 @@
+package engine.graphics.terrain;
+
+import engine.gameitem.GameItem;
+import engine.gameitem.Terrain;
+import org.joml.Vector3f;
+
+//culls items hidden behind the terrain. each update divides the horizon around the camera into sectors and marches
+//outward through them, storing per sector and distance the highest elevation (as a slope) of the terrain seen so far.
+//the terrain's height at each distance is the lowest found across the sector's whole arc, sampled about once per cell,
+//so a gap anywhere within a sector keeps it open. an item is occluded if, across every sector its bounds span, the
+//terrain nearer than the item rises above the top of its bounds
+public class HorizonCuller {
+
+    //Static Data
+    private static final float TWO_PI = (float)(Math.PI * 2);
+
+    //Data
+    private final Terrain terrain;
+    private final int rays; //azimuth sectors, each between two neighbouring rays
+    private final int samples; //distances sampled per sector, spaced exponentially
+    private final float[] distances; //horizontal distance of each sample
+    private final float[] dirX, dirZ; //direction of each ray
+    private final float[] profiles; //running maximum slope per sector and sample (rays * samples)
+    private final float logStart, logGrowth;
+    private final Vector3f eye, worldMin, worldMax;
+    private boolean enabled;
+
+    //Stats
+    private int testedCount, culledCount;
+    private long updateTime; //in nanoseconds
+
+    //Constructors
+    public HorizonCuller(Terrain terrain) { this(terrain, 256, 48); }
+
+    public HorizonCuller(Terrain terrain, int rays, int samples) {
+        this.terrain = terrain;
+        this.rays = rays;
+        this.samples = samples;
+        this.distances = new float[samples];
+        this.dirX = new float[rays];
+        this.dirZ = new float[rays];
+        this.profiles = new float[rays * samples];
+        this.eye = new Vector3f();
+        this.worldMin = new Vector3f();
+        this.worldMax = new Vector3f();
+        this.enabled = true;
+
+        //space samples from one cell out to the terrain's diagonal, growing exponentially
+        float start = terrain.getCellSize();
+        float end = (float)Math.sqrt(terrain.getWidth() * terrain.getWidth() + terrain.getDepth() * terrain.getDepth());
+        float growth = (float)Math.pow(end / start, 1.0 / Math.max(1, samples - 1));
+        for (int i = 0; i < samples; i++) this.distances[i] = start * (float)Math.pow(growth, i);
+        this.logStart = (float)Math.log(start);
+        this.logGrowth = (float)Math.log(growth);
+
+        //create ray directions
+        for (int i = 0; i < rays; i++) {
+            double angle = i * TWO_PI / rays;
+            this.dirX[i] = (float)Math.cos(angle);
+            this.dirZ[i] = (float)Math.sin(angle);
+        }
+    }
+
+    //Update Method
+    //rebuilds the horizon profiles for the given eye position and resets the stats
+    public void update(Vector3f eyePosition) {
+        long start = System.nanoTime();
+        this.eye.set(eyePosition);
+        this.testedCount = 0;
+        this.culledCount = 0;
+        float step = TWO_PI / this.rays;
+        for (int i = 0; i < this.samples; i++) {
+            float d = this.distances[i];
+
+            //find the lowest height across each sector's arc, sampled no further than a cell apart, and extend the
+            //sector's running maximum slope with it
+            int arcSamples = Math.max(1, (int)Math.ceil(d * step / this.terrain.getCellSize()));
+            float cos = (float)Math.cos(step / arcSamples), sin = (float)Math.sin(step / arcSamples);
+            for (int r = 0; r < this.rays; r++) {
+                float x = this.dirX[r], z = this.dirZ[r];
+                float lowest = Float.MAX_VALUE;
+                for (int k = 0; k <= arcSamples; k++) {
+                    float h = this.terrain.getHeight(this.eye.x + x * d, this.eye.z + z * d);
+                    if (h == Float.MIN_VALUE) { //off the terrain - nothing occludes this sector at this distance
+                        lowest = -Float.MAX_VALUE;
+                        break;
+                    }
+                    lowest = Math.min(lowest, h);
+                    float rotatedX = x * cos - z * sin;
+                    z = x * sin + z * cos;
+                    x = rotatedX;
+                }
+                float highest = i == 0 ? -Float.MAX_VALUE : this.profiles[r * this.samples + i - 1];
+                if (lowest != -Float.MAX_VALUE) highest = Math.max(highest, (lowest - this.eye.y) / d);
+                this.profiles[r * this.samples + i] = highest;
+            }
+        }
+        this.updateTime = System.nanoTime() - start;
+    }
+
+    //Occlusion Test Methods
+    //tests an item's world bounds, counting it in the stats
+    public boolean isOccluded(GameItem item) {
+        if (!this.enabled) return false;
+        item.getWorldBounds(this.worldMin, this.worldMax);
+        this.testedCount++;
+        boolean occluded = this.isOccluded(this.worldMin, this.worldMax);
+        if (occluded) this.culledCount++;
+        return occluded;
+    }
+
+    //returns true if world space bounds lie entirely below the horizon
+    public boolean isOccluded(Vector3f min, Vector3f max) {
+
+        //horizontal distances from the eye to the nearest and farthest points of the bounds
+        float dx = Math.max(Math.max(min.x - this.eye.x, 0), this.eye.x - max.x);
+        float dz = Math.max(Math.max(min.z - this.eye.z, 0), this.eye.z - max.z);
+        float near = (float)Math.sqrt(dx * dx + dz * dz);
+        if (near <= this.distances[0]) return false; //eye is above or right next to the bounds
+        float fx = Math.max(Math.abs(min.x - this.eye.x), Math.abs(max.x - this.eye.x));
+        float fz = Math.max(Math.abs(min.z - this.eye.z), Math.abs(max.z - this.eye.z));
+        float far = (float)Math.sqrt(fx * fx + fz * fz);
+
+        //the steepest slope from the eye to the top of the bounds
+        float rise = max.y - this.eye.y;
+        float slope = rise >= 0 ? rise / near : rise / far;
+
+        //last sample nearer than the bounds
+        int sample = (int)((Math.log(near) - this.logStart) / this.logGrowth);
+        if (sample >= this.samples) sample = this.samples - 1;
+        while (sample > 0 && this.distances[sample] >= near) sample--;
+
+        //find the angular range of the bounds around the center's azimuth
+        float centerAngle = (float)Math.atan2((min.z + max.z) * 0.5f - this.eye.z, (min.x + max.x) * 0.5f - this.eye.x);
+        float from = 0, to = 0;
+        for (int c = 0; c < 4; c++) {
+            float x = (c & 1) == 0 ? min.x : max.x;
+            float z = (c & 2) == 0 ? min.z : max.z;
+            float offset = (float)Math.atan2(z - this.eye.z, x - this.eye.x) - centerAngle;
+            if (offset > Math.PI) offset -= TWO_PI;
+            if (offset < -Math.PI) offset += TWO_PI;
+            from = Math.min(from, offset);
+            to = Math.max(to, offset);
+        }
+
+        //every sector the range overlaps must see terrain above the bounds
+        float step = TWO_PI / this.rays;
+        int first = (int)Math.floor((centerAngle + from) / step);
+        int last = (int)Math.floor((centerAngle + to) / step);
+        for (int r = first; r <= last; r++) {
+            int sector = ((r % this.rays) + this.rays) % this.rays;
+            if (this.profiles[sector * this.samples + sample] <= slope) return false;
+        }
+        return true;
+    }
+
+    //Accessors
+    public boolean isEnabled() { return this.enabled; }
+    public int getTestedCount() { return this.testedCount; } //items tested since the last update
+    public int getCulledCount() { return this.culledCount; } //items culled since the last update
+    public float getUpdateTime() { return this.updateTime / 1000_000.0f; } //in milliseconds
+
+    //Mutator
+    public void setEnabled(boolean enabled) { this.enabled = enabled; }
+}
@@ -0,0 +1,158 @@
+package engine.graphics.terrain;
+
+import java.io.File;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+//a raw little-endian unsigned 16-bit heightfield (.r16), row-major with no header. the file is memory-mapped in windows
+//of rows which are mapped the first time they are sampled, so fields larger than memory only occupy the pages in use
+public class RawHeightField {
+
+    //Static Data
+    private static final int MAX_VALUE = 0xFFFF;
+    private static final long DEFAULT_WINDOW_BYTES = 64L * 1024 * 1024;
+    private static final int DEFAULT_MAX_WINDOWS = 16;
+
+    //Data
+    private final String filePath;
+    private final FileChannel channel;
+    private final int width, height;
+    private final float minY, maxY;
+    private final int rowsPerWindow;
+    private final int maxWindows; //mapped windows beyond which the least recently used one is released
+    private final AtomicReferenceArray<ByteBuffer> windows;
+    private final long[] windowUse; //last use tick per window
+    private long useTick;
+    private int mappedCount;
+    private final long openTime; //in nanoseconds
+
+    //Constructors
+    public RawHeightField(String file, float minY, float maxY) throws Exception { //square field - size taken from file length
+        this(file, -1, -1, minY, maxY, DEFAULT_WINDOW_BYTES, DEFAULT_MAX_WINDOWS);
+    }
+
+    public RawHeightField(String file, int width, int height, float minY, float maxY) throws Exception {
+        this(file, width, height, minY, maxY, DEFAULT_WINDOW_BYTES, DEFAULT_MAX_WINDOWS);
+    }
+
+    public RawHeightField(String file, int width, int height, float minY, float maxY, long windowBytes, int maxWindows) throws Exception {
+
+        //open file
+        long start = System.nanoTime();
+        this.filePath = getFilePath(file);
+        this.channel = FileChannel.open(Paths.get(this.filePath), StandardOpenOption.READ);
+        long samples = this.channel.size() / 2;
+
+        //find or validate size
+        if (width < 0 || height < 0) {
+            int size = (int)Math.round(Math.sqrt(samples));
+            if ((long)size * size != samples) {
+                this.channel.close();
+                throw new Exception("Height field [" + this.filePath + "] is not square and needs an explicit size");
+            }
+            width = height = size;
+        } else if ((long)width * height != samples) {
+            this.channel.close();
+            throw new Exception("Height field [" + this.filePath + "] holds " + samples + " samples, expected " + width + "x" + height);
+        }
+        this.width = width;
+        this.height = height;
+        this.minY = minY;
+        this.maxY = maxY;
+
+        //prepare windows - nothing is mapped until first sampled
+        long rowBytes = (long)width * 2;
+        this.rowsPerWindow = (int)Math.max(1, Math.min(windowBytes, Integer.MAX_VALUE) / rowBytes);
+        int windowCount = (height + this.rowsPerWindow - 1) / this.rowsPerWindow;
+        this.windows = new AtomicReferenceArray<>(windowCount);
+        this.windowUse = new long[windowCount];
+        this.maxWindows = Math.max(1, maxWindows);
+        this.openTime = System.nanoTime() - start;
+    }
+
+    //File Path Method
+    //resolves a classpath resource to its file, falling back to treating the name as a file system path
+    private static String getFilePath(String file) throws Exception {
+        URL url = RawHeightField.class.getResource(file);
+        if (url != null && "file".equals(url.getProtocol())) return Paths.get(url.toURI()).toFile().getAbsolutePath();
+        File f = new File(file);
+        if (!f.isFile()) throw new Exception("Height field file [" + file + "] not found");
+        return f.getAbsolutePath();
+    }
+
+    //Sampling Methods
+    //raw 16-bit sample (0 - 65535), or 0 outside of the field. safe to call from multiple threads
+    public int getRaw(int row, int col) {
+        if (row < 0 || row >= this.height || col < 0 || col >= this.width) return 0;
+        int window = row / this.rowsPerWindow;
+        ByteBuffer buffer = this.getWindow(window);
+        int offset = ((row - window * this.rowsPerWindow) * this.width + col) * 2;
+        return buffer.getShort(offset) & MAX_VALUE;
+    }
+
+    public float getHeight(int row, int col) {
+        return this.minY + (this.maxY - this.minY) * (this.getRaw(row, col) / (float)MAX_VALUE);
+    }
+
+    //Window Method
+    //returns a mapped window, mapping it (and releasing the least recently used window if needed) when not mapped yet
+    private ByteBuffer getWindow(int window) {
+        ByteBuffer buffer = this.windows.get(window);
+        if (buffer != null) {
+            this.windowUse[window] = ++this.useTick; //racy, but only used as an eviction hint
+            return buffer;
+        }
+        synchronized (this) {
+            buffer = this.windows.get(window);
+            if (buffer != null) return buffer;
+
+            //release least recently used window - unmapped by the garbage collector once no sampler holds it
+            if (this.mappedCount >= this.maxWindows) {
+                int lru = -1;
+                for (int i = 0; i < this.windows.length(); i++) {
+                    if (this.windows.get(i) != null && (lru < 0 || this.windowUse[i] < this.windowUse[lru])) lru = i;
+                }
+                this.windows.set(lru, null);
+                this.mappedCount--;
+            }
+
+            //map window
+            try {
+                long rowBytes = (long)this.width * 2;
+                long position = window * (long)this.rowsPerWindow * rowBytes;
+                long size = Math.min(this.rowsPerWindow, this.height - window * this.rowsPerWindow) * rowBytes;
+                buffer = this.channel.map(FileChannel.MapMode.READ_ONLY, position, size).order(ByteOrder.LITTLE_ENDIAN);
+            } catch (Exception e) {
+                throw new RuntimeException("Height field [" + this.filePath + "] window " + window + " not mapped: " + e.getMessage(), e);
+            }
+            this.windows.set(window, buffer);
+            this.windowUse[window] = ++this.useTick;
+            this.mappedCount++;
+            return buffer;
+        }
+    }
+
+    //Accessors
+    public int getWidth() { return this.width; }
+    public int getHeight() { return this.height; }
+    public float getMinY() { return this.minY; }
+    public float getMaxY() { return this.maxY; }
+    public int getMappedWindowCount() { return this.mappedCount; }
+    public float getOpenTime() { return this.openTime / 1000_000.0f; } //in milliseconds
+
+    //Cleanup Method
+    public void cleanup() {
+        for (int i = 0; i < this.windows.length(); i++) this.windows.set(i, null);
+        this.mappedCount = 0;
+        try {
+            this.channel.close();
+        } catch (Exception e) {
+            System.err.println("Height field [" + this.filePath + "] not closed: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package engine.graphics.terrain;
+
+import engine.graphics.Mesh;
+import engine.graphics.Image;
+import org.joml.Vector3f;
+
+import java.nio.ByteBuffer;
+
+
+//the rules for scattering one mesh over a terrain - a base density, an optional density map stretched over the whole
+//terrain, and height, slope and scale ranges. layers are read by generator threads, so set them up before scattering
+public class ScatterLayer {
+
+    //Data
+    private final Mesh mesh;
+    private final float density; //instances per square world unit where the density map is white
+    private final float radius; //distance from the mesh's origin to the farthest corner of its bounds
+    private float[] densityMap; //row-major 0.0f - 1.0f (null for a uniform density)
+    private int densityWidth, densityHeight;
+    private float minHeight, maxHeight; //world heights
+    private float maxSlope; //rise over run
+    private float minScale, maxScale;
+    private float drawDistance;
+
+    //Constructor
+    public ScatterLayer(Mesh mesh, float density, float drawDistance) {
+        this.mesh = mesh;
+        this.density = density;
+        this.drawDistance = drawDistance;
+        this.minHeight = -Float.MAX_VALUE;
+        this.maxHeight = Float.MAX_VALUE;
+        this.maxSlope = Float.MAX_VALUE;
+        this.minScale = this.maxScale = 1.0f;
+        Vector3f min = mesh.getMinBound(), max = mesh.getMaxBound();
+        float x = Math.max(Math.abs(min.x), Math.abs(max.x));
+        float y = Math.max(Math.abs(min.y), Math.abs(max.y));
+        float z = Math.max(Math.abs(min.z), Math.abs(max.z));
+        this.radius = (float)Math.sqrt(x * x + y * y + z * z);
+    }
+
+    //Density Methods
+    //returns the density map's value at a position given in 0.0f - 1.0f across the terrain
+    public float getDensity(float u, float v) {
+        if (this.densityMap == null) return 1.0f;
+        int x = Math.max(0, Math.min(this.densityWidth - 1, (int)(u * this.densityWidth)));
+        int y = Math.max(0, Math.min(this.densityHeight - 1, (int)(v * this.densityHeight)));
+        return this.densityMap[y * this.densityWidth + x];
+    }
+
+    //returns true if a height and slope pass the layer's rules
+    public boolean accepts(float height, float slope) {
+        return height >= this.minHeight && height <= this.maxHeight && slope <= this.maxSlope;
+    }
+
+    //Accessors
+    public Mesh getMesh() { return this.mesh; }
+    public float getBaseDensity() { return this.density; }
+    public float getRadius() { return this.radius; }
+    public float getMinScale() { return this.minScale; }
+    public float getMaxScale() { return this.maxScale; }
+    public float getDrawDistance() { return this.drawDistance; }
+
+    //Mutators
+    public void setHeightRange(float minHeight, float maxHeight) {
+        this.minHeight = minHeight;
+        this.maxHeight = maxHeight;
+    }
+    public void setMaxSlope(float maxSlope) { this.maxSlope = maxSlope; }
+    public void setScaleRange(float minScale, float maxScale) {
+        this.minScale = minScale;
+        this.maxScale = maxScale;
+    }
+    public void setDrawDistance(float drawDistance) { this.drawDistance = drawDistance; }
+    public void setDensityMap(float[] densityMap, int width, int height) {
+        this.densityMap = densityMap;
+        this.densityWidth = width;
+        this.densityHeight = height;
+    }
+
+    //loads a density map from an image's red channel
+    public void setDensityMap(String densityMapFile) throws Exception {
+        Image image = Image.load(densityMapFile);
+        try {
+            int w = image.getWidth(), h = image.getHeight();
+            ByteBuffer pixels = image.getPixels();
+            float[] densityMap = new float[w * h];
+            for (int i = 0; i < densityMap.length; i++) densityMap[i] = (pixels.get(i * 4) & 0xFF) / 255.0f;
+            this.setDensityMap(densityMap, w, h);
+        } finally {
+            image.free();
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package engine.graphics.terrain;
+
+import org.joml.Vector3f;
+
+//the result of a terrain collision query. reuse one per caller (or per thread) so that queries do not allocate
+public class TerrainContact {
+
+    //Data
+    private final Vector3f normal; //surface normal pointing out of the terrain, towards the body
+    private final Vector3f point; //closest point on the terrain's surface
+    private float depth; //penetration depth (zero or less if not touching)
+    private float time; //time of impact (0.0f - 1.0f) for swept queries
+
+    //Scratch Data
+    //intermediate results of the collider's geometry routines
+    float qx, qy, qz; //closest point on a triangle
+    float sx, sy, sz; //closest point on a segment
+    float nx, ny, nz; //face normal of the closest triangle
+
+    //Constructor
+    public TerrainContact() {
+        this.normal = new Vector3f(0, 1, 0);
+        this.point = new Vector3f();
+    }
+
+    //Accessors
+    public Vector3f getNormal() { return this.normal; }
+    public Vector3f getPoint() { return this.point; }
+    public float getDepth() { return this.depth; }
+    public float getTime() { return this.time; }
+    public boolean isTouching() { return this.depth > 0; }
+
+    //Mutators
+    void set(float depth, float nx, float ny, float nz, float px, float py, float pz) {
+        this.depth = depth;
+        this.normal.set(nx, ny, nz);
+        this.point.set(px, py, pz);
+    }
+    void setTime(float time) { this.time = time; }
+    void clear() {
+        this.depth = -Float.MAX_VALUE;
+        this.time = 1.0f;
+        this.normal.set(0, 1, 0);
+        this.point.zero();
+    }
+}
@@ -0,0 +1,332 @@
+package engine.graphics.terrain;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+//generates procedural heights - multi-octave gradient noise sampled through a domain warp, followed by hydraulic
+//erosion passes of simulated droplets. work is split into square tiles run on a fork-join pool. noise is a pure
+//function of position and seed, and each erosion pass runs tiles in four phases so that tiles eroding at the same time
+//never share a height. every tile seeds its own random droplets, so the output depends only on the seed and settings
+public class TerrainGenerator {
+
+    //Static Data
+    private static final int TILE_SIZE = 64; //cells along each side of a tile
+    private static final int TILES_PER_TASK = 4;
+    private static final int WARP_OCTAVES = 3;
+    private static final int DROPLET_LIFETIME = 32;
+    private static final float INERTIA = 0.05f; //how much a droplet keeps its direction rather than following the slope
+    private static final float CAPACITY = 4.0f; //sediment carried per unit of height lost, speed and water
+    private static final float MIN_CAPACITY = 0.01f; //minimum capacity, in cells of height
+    private static final float ERODE_RATE = 0.3f;
+    private static final float DEPOSIT_RATE = 0.3f;
+    private static final float EVAPORATE_RATE = 0.02f;
+    private static final float GRAVITY = 4.0f;
+
+    //Data
+    private final long seed;
+    private int octaves;
+    private float frequency; //noise features across the whole map at the first octave
+    private float lacunarity, gain;
+    private float warpStrength; //warp offset in first octave noise features
+    private int erosionPasses;
+    private float dropletsPerSample; //droplets per height sample per erosion pass
+
+    //Stats
+    private long samples;
+    private int threads;
+    private long noiseTime, erosionTime; //in nanoseconds
+
+    //Constructor
+    public TerrainGenerator(long seed) {
+        this.seed = seed;
+        this.octaves = 8;
+        this.frequency = 4.0f;
+        this.lacunarity = 2.0f;
+        this.gain = 0.5f;
+        this.warpStrength = 0.6f;
+        this.erosionPasses = 4;
+        this.dropletsPerSample = 0.05f;
+    }
+
+    //Generate Methods
+    //returns row-major heights between 0.0f and 1.0f, generated with the given number of threads
+    public float[] generate(int width, int height, int threads) {
+        float[] heights = new float[width * height];
+        if (threads <= 1) this.generate(heights, width, height, null);
+        else if (threads == ForkJoinPool.getCommonPoolParallelism()) this.generate(heights, width, height, ForkJoinPool.commonPool());
+        else {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            try {
+                this.generate(heights, width, height, pool);
+            } finally {
+                pool.shutdown();
+            }
+        }
+        return heights;
+    }
+
+    //fills row-major heights between 0.0f and 1.0f on the given pool, or on the calling thread if the pool is null
+    public void generate(float[] heights, int width, int height, ForkJoinPool pool) {
+        long start = System.nanoTime();
+        int tilesX = (width + TILE_SIZE - 1) / TILE_SIZE, tilesZ = (height + TILE_SIZE - 1) / TILE_SIZE;
+
+        //sample noise per tile, keeping each tile's range
+        float[] tileMin = new float[tilesX * tilesZ], tileMax = new float[tilesX * tilesZ];
+        run(pool, tilesX * tilesZ, tile -> this.fillNoise(heights, width, height, tile, tilesX, tileMin, tileMax));
+
+        //normalize into 0.0f - 1.0f
+        float min = Float.MAX_VALUE, max = -Float.MAX_VALUE;
+        for (int i = 0; i < tileMin.length; i++) {
+            min = Math.min(min, tileMin[i]);
+            max = Math.max(max, tileMax[i]);
+        }
+        float range = max - min, offset = min;
+        run(pool, tilesX * tilesZ, tile -> normalize(heights, width, height, tile % tilesX, tile / tilesX, offset, range));
+        this.noiseTime = System.nanoTime() - start;
+
+        //erode - the tile grid shifts by half a tile every other pass so that tile borders do not leave seams
+        start = System.nanoTime();
+        for (int pass = 0; pass < this.erosionPasses; pass++) {
+            int shift = (pass & 1) * TILE_SIZE / 2;
+            int passTilesX = (width - 2 + shift) / TILE_SIZE + 1, passTilesZ = (height - 2 + shift) / TILE_SIZE + 1;
+            int phaseTilesX = (passTilesX + 1) / 2, phaseTilesZ = (passTilesZ + 1) / 2;
+            for (int phase = 0; phase < 4; phase++) {
+                int phaseX = phase & 1, phaseZ = phase >> 1, currentPass = pass;
+                run(pool, phaseTilesX * phaseTilesZ, i -> {
+                    int tileX = (i % phaseTilesX) * 2 + phaseX, tileZ = (i / phaseTilesX) * 2 + phaseZ;
+                    if (tileX < passTilesX && tileZ < passTilesZ) this.erodeTile(heights, width, height, currentPass, shift, tileX, tileZ);
+                });
+            }
+        }
+        this.erosionTime = System.nanoTime() - start;
+        this.samples = (long)width * height;
+        this.threads = pool == null ? 1 : pool.getParallelism();
+    }
+
+    //Noise Filling Method
+    //samples warped fractal noise for every height of a tile, recording the tile's range
+    private void fillNoise(float[] heights, int width, int height, int tile, int tilesX, float[] tileMin, float[] tileMax) {
+        int tileX = tile % tilesX, tileZ = tile / tilesX;
+        int seed = (int)(this.seed ^ (this.seed >>> 32));
+        float min = Float.MAX_VALUE, max = -Float.MAX_VALUE;
+        for (int row = tileZ * TILE_SIZE; row < Math.min((tileZ + 1) * TILE_SIZE, height); row++) {
+            for (int col = tileX * TILE_SIZE; col < Math.min((tileX + 1) * TILE_SIZE, width); col++) {
+                float x = col * this.frequency / (width - 1), z = row * this.frequency / (height - 1);
+
+                //offset the sample position by two lower detail noise fields
+                float warpX = this.fractalNoise(x + 5.2f, z + 1.3f, WARP_OCTAVES, seed + 101) * this.warpStrength;
+                float warpZ = this.fractalNoise(x + 1.7f, z + 9.2f, WARP_OCTAVES, seed + 202) * this.warpStrength;
+                float h = this.fractalNoise(x + warpX, z + warpZ, this.octaves, seed);
+                heights[row * width + col] = h;
+                min = Math.min(min, h);
+                max = Math.max(max, h);
+            }
+        }
+        tileMin[tile] = min;
+        tileMax[tile] = max;
+    }
+
+    private static void normalize(float[] heights, int width, int height, int tileX, int tileZ, float offset, float range) {
+        for (int row = tileZ * TILE_SIZE; row < Math.min((tileZ + 1) * TILE_SIZE, height); row++) {
+            for (int col = tileX * TILE_SIZE; col < Math.min((tileX + 1) * TILE_SIZE, width); col++) {
+                int i = row * width + col;
+                heights[i] = range != 0 ? (heights[i] - offset) / range : 0;
+            }
+        }
+    }
+
+    //Erosion Method
+    //simulates droplets within a tile's cells. droplets flow downhill, eroding sediment while they speed up and
+    //depositing it as they slow down or evaporate, and stop on leaving the tile. only heights at the corners of the
+    //tile's cells change, so tiles two apart never touch the same height
+    private void erodeTile(float[] heights, int width, int height, int pass, int shift, int tileX, int tileZ) {
+        int x0 = Math.max(0, tileX * TILE_SIZE - shift), x1 = Math.min(width - 1, (tileX + 1) * TILE_SIZE - shift);
+        int z0 = Math.max(0, tileZ * TILE_SIZE - shift), z1 = Math.min(height - 1, (tileZ + 1) * TILE_SIZE - shift);
+        if (x1 <= x0 || z1 <= z0) return;
+        Random random = new Random(this.seed * 31 + ((long)pass << 40) + ((long)tileZ << 20) + tileX);
+        int droplets = Math.round((x1 - x0) * (z1 - z0) * this.dropletsPerSample);
+        float cellHeight = 1.0f / Math.max(width, height); //height of one cell in normalized units
+        for (int d = 0; d < droplets; d++) {
+            float posX = x0 + random.nextFloat() * (x1 - x0), posZ = z0 + random.nextFloat() * (z1 - z0);
+            float dirX = 0, dirZ = 0, speed = 1, water = 1, sediment = 0;
+            for (int step = 0; step < DROPLET_LIFETIME; step++) {
+                int cellX = (int)posX, cellZ = (int)posZ;
+                float fx = posX - cellX, fz = posZ - cellZ;
+                int i = cellZ * width + cellX;
+                float h00 = heights[i], h10 = heights[i + 1], h01 = heights[i + width], h11 = heights[i + width + 1];
+
+                //follow the slope, keeping some of the previous direction
+                float gradX = (h10 - h00) * (1 - fz) + (h11 - h01) * fz;
+                float gradZ = (h01 - h00) * (1 - fx) + (h11 - h10) * fx;
+                dirX = dirX * INERTIA - gradX * (1 - INERTIA);
+                dirZ = dirZ * INERTIA - gradZ * (1 - INERTIA);
+                float length = (float)Math.sqrt(dirX * dirX + dirZ * dirZ);
+                if (length == 0) break;
+                dirX /= length;
+                dirZ /= length;
+                float oldHeight = h00 * (1 - fx) * (1 - fz) + h10 * fx * (1 - fz) + h01 * (1 - fx) * fz + h11 * fx * fz;
+                posX += dirX;
+                posZ += dirZ;
+                if (posX < x0 || posX >= x1 || posZ < z0 || posZ >= z1) break;
+                float delta = this.sampleHeight(heights, width, posX, posZ) - oldHeight;
+
+                //deposit when going uphill or carrying more than the capacity, otherwise erode
+                float capacity = Math.max(-delta, MIN_CAPACITY * cellHeight) * speed * water * CAPACITY;
+                if (delta > 0 || sediment > capacity) {
+                    float amount = delta > 0 ? Math.min(delta, sediment) : (sediment - capacity) * DEPOSIT_RATE;
+                    sediment -= amount;
+                    addBilinear(heights, i, width, fx, fz, amount);
+                } else {
+                    float amount = Math.min((capacity - sediment) * ERODE_RATE, -delta);
+                    sediment += amount;
+                    addBilinear(heights, i, width, fx, fz, -amount);
+                }
+                speed = (float)Math.sqrt(Math.max(0, speed * speed - delta / cellHeight * GRAVITY));
+                water *= 1 - EVAPORATE_RATE;
+            }
+        }
+    }
+
+    //Height Sampling Methods
+    private float sampleHeight(float[] heights, int width, float x, float z) {
+        int cellX = (int)x, cellZ = (int)z, i = cellZ * width + cellX;
+        float fx = x - cellX, fz = z - cellZ;
+        return heights[i] * (1 - fx) * (1 - fz) + heights[i + 1] * fx * (1 - fz) + heights[i + width] * (1 - fx) * fz +
+                heights[i + width + 1] * fx * fz;
+    }
+
+    private static void addBilinear(float[] heights, int i, int width, float fx, float fz, float amount) {
+        heights[i] += amount * (1 - fx) * (1 - fz);
+        heights[i + 1] += amount * fx * (1 - fz);
+        heights[i + width] += amount * (1 - fx) * fz;
+        heights[i + width + 1] += amount * fx * fz;
+    }
+
+    //Noise Methods
+    //sums octaves of gradient noise, returning roughly -1.0f - 1.0f
+    private float fractalNoise(float x, float z, int octaves, int seed) {
+        float sum = 0, amplitude = 1, total = 0;
+        for (int o = 0; o < octaves; o++) {
+            sum += gradientNoise(x, z, seed + o * 1013) * amplitude;
+            total += amplitude;
+            amplitude *= this.gain;
+            x *= this.lacunarity;
+            z *= this.lacunarity;
+        }
+        return sum / total * 1.4f;
+    }
+
+    //interpolates the dot products of hashed corner gradients with the offsets to the corners
+    private static float gradientNoise(float x, float z, int seed) {
+        int ix = (int)x, iz = (int)z; //truncate, then floor negative coordinates
+        if (x < ix) ix--;
+        if (z < iz) iz--;
+        float fx = x - ix, fz = z - iz;
+        float u = fx * fx * fx * (fx * (fx * 6 - 15) + 10), v = fz * fz * fz * (fz * (fz * 6 - 15) + 10);
+        float n00 = gradient(hash(ix, iz, seed), fx, fz);
+        float n10 = gradient(hash(ix + 1, iz, seed), fx - 1, fz);
+        float n01 = gradient(hash(ix, iz + 1, seed), fx, fz - 1);
+        float n11 = gradient(hash(ix + 1, iz + 1, seed), fx - 1, fz - 1);
+        float top = n00 + (n10 - n00) * u, bottom = n01 + (n11 - n01) * u;
+        return top + (bottom - top) * v;
+    }
+
+    private static int hash(int x, int z, int seed) {
+        int h = seed ^ x * 0x27D4EB2D ^ z * 0x165667B1;
+        h = (h ^ (h >>> 15)) * 0x2C1B3C6D;
+        h = (h ^ (h >>> 12)) * 0x297A2D39;
+        return h ^ (h >>> 15);
+    }
+
+    private static float gradient(int hash, float x, float z) {
+        switch (hash & 7) {
+            case 0: return x + z;
+            case 1: return x - z;
+            case 2: return -x + z;
+            case 3: return -x - z;
+            case 4: return x * 1.4142f;
+            case 5: return -x * 1.4142f;
+            case 6: return z * 1.4142f;
+            default: return -z * 1.4142f;
+        }
+    }
+
+    //Tile Running Method
+    //runs a task per tile on the pool, or in order on the calling thread if the pool is null
+    private static void run(ForkJoinPool pool, int tiles, IntConsumer tileProcessor) {
+        if (pool == null) for (int tile = 0; tile < tiles; tile++) tileProcessor.accept(tile);
+        else pool.invoke(new TileTask(0, tiles, tileProcessor));
+    }
+
+    //Benchmark Report Method
+    //generates a square map on one thread and then on the given threads, checking that both produce the same heights
+    public String getBenchmarkReport(int size, int threads) {
+        float[] sequential = this.generate(size, size, 1);
+        float sequentialTime = this.getGenerateTime();
+        float[] parallel = this.generate(size, size, threads);
+        return "Sequential: " + String.format("%.2f", this.samples / (sequentialTime * 1000.0f)) + " Msamples/s, " +
+                this.getReport() + (Arrays.equals(sequential, parallel) ? " (identical output)" : " (OUTPUT DIFFERS)");
+    }
+
+    //Accessors
+    public long getSeed() { return this.seed; }
+    public int getOctaves() { return this.octaves; }
+    public float getFrequency() { return this.frequency; }
+    public float getWarpStrength() { return this.warpStrength; }
+    public int getErosionPasses() { return this.erosionPasses; }
+    public float getNoiseTime() { return this.noiseTime / 1000_000.0f; } //in milliseconds, of the last generation
+    public float getErosionTime() { return this.erosionTime / 1000_000.0f; } //in milliseconds, of the last generation
+    public float getGenerateTime() { return (this.noiseTime + this.erosionTime) / 1000_000.0f; } //in milliseconds
+    public float getThroughput() { return this.samples / (this.getGenerateTime() * 1000.0f); } //in megasamples per second
+    public String getReport() {
+        return "Generated " + this.samples + " samples in " + this.getGenerateTime() + "ms (noise " + this.getNoiseTime() +
+                "ms, erosion " + this.getErosionTime() + "ms) using " + this.threads + " threads: " +
+                String.format("%.2f", this.getThroughput()) + " Msamples/s";
+    }
+
+    //Mutators
+    public void setNoise(int octaves, float frequency, float lacunarity, float gain) {
+        this.octaves = octaves;
+        this.frequency = frequency;
+        this.lacunarity = lacunarity;
+        this.gain = gain;
+    }
+    public void setWarpStrength(float warpStrength) { this.warpStrength = warpStrength; }
+    public void setErosion(int passes, float dropletsPerSample) {
+        this.erosionPasses = passes;
+        this.dropletsPerSample = dropletsPerSample;
+    }
+
+    //Tile Task Inner Class
+    //splits a range of tiles across fork-join workers
+    private static class TileTask extends RecursiveAction {
+
+        //Static Data
+        private static final long serialVersionUID = 1L;
+
+        //Data
+        private final int from, to;
+        private final IntConsumer tileProcessor;
+
+        //Constructor
+        public TileTask(int from, int to, IntConsumer tileProcessor) {
+            this.from = from;
+            this.to = to;
+            this.tileProcessor = tileProcessor;
+        }
+
+        //Compute Method
+        @Override
+        protected void compute() {
+            if (this.to - this.from <= TILES_PER_TASK) {
+                for (int tile = this.from; tile < this.to; tile++) this.tileProcessor.accept(tile);
+            } else {
+                int mid = (this.from + this.to) >>> 1;
+                invokeAll(new TileTask(this.from, mid, this.tileProcessor), new TileTask(mid, this.to, this.tileProcessor));
+            }
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package engine.graphics.terrain;
+
+import engine.gameitem.GameItem;
+import engine.graphics.HeightMap;
+import engine.graphics.Mesh;
+import engine.graphics.Texture;
+import engine.graphics.Transformation;
+import org.joml.FrustumIntersection;
+import org.joml.Matrix4f;
+import org.joml.Vector3f;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+public class TerrainLOD {
+
+    //Static Data
+    private static final float LOD_RANGE_FACTOR = 2.0f; //finest level range in multiples of the finest node size
+    private static final float MORPH_START_RATIO = 0.66f; //where morphing starts between two level ranges
+
+    //Shared Data
+    private final HeightMap heightMap;
+    private final GameItem[] chunks;
+    private final Texture heightTexture;
+    private final Mesh gridMesh; //grid used for whole nodes
+    private final Mesh halfGridMesh; //grid with half the resolution used for node quadrants
+    private final int gridSize;
+    private final int levels;
+
+    //Quadtree Data
+    private final float[] ranges; //selection range per level (in terrain local units)
+    private final float[][] minHeights, maxHeights; //height bounds per node per level
+
+    //Selection Data
+    private final NodeList nodes, halfNodes;
+    private final Matrix4f worldMatrix, invWorldMatrix;
+    private final Vector3f localCamera, boxMin, boxMax, worldMin, worldMax;
+    private FrustumIntersection frustum;
+    private int triangleCount;
+    private boolean shadowCaster = true; //false to leave the terrain out of the shadow map
+
+    //Constructor
+    public TerrainLOD(HeightMap heightMap, GameItem[] chunks, int gridSize) {
+        this.heightMap = heightMap;
+        this.chunks = chunks;
+        this.gridSize = gridSize;
+
+        //calculate amount of levels so that the finest nodes cover about as many cells as the grid has
+        int vertices = Math.max(heightMap.getCols(), heightMap.getRows());
+        int levels = 1;
+        while ((vertices >> levels) >= gridSize) levels++;
+        this.levels = levels;
+
+        //calculate selection ranges - each level covers twice the range of the previous
+        this.ranges = new float[levels];
+        float range = this.getNodeSize(0) * LOD_RANGE_FACTOR;
+        for (int i = 0; i < levels; i++, range *= 2) this.ranges[i] = range;
+        this.ranges[levels - 1] = Float.MAX_VALUE;
+
+        //create shared resources
+        this.minHeights = new float[levels][];
+        this.maxHeights = new float[levels][];
+        this.calculateHeightBounds();
+        this.heightTexture = createHeightTexture(heightMap);
+        this.gridMesh = createGridMesh(gridSize);
+        this.halfGridMesh = createGridMesh(gridSize / 2);
+        this.gridMesh.setMaterial(heightMap.getMesh().getMaterial());
+        this.halfGridMesh.setMaterial(heightMap.getMesh().getMaterial());
+
+        //create selection data
+        this.nodes = new NodeList();
+        this.halfNodes = new NodeList();
+        this.worldMatrix = new Matrix4f();
+        this.invWorldMatrix = new Matrix4f();
+        this.localCamera = new Vector3f();
+        this.boxMin = new Vector3f();
+        this.boxMax = new Vector3f();
+        this.worldMin = new Vector3f();
+        this.worldMax = new Vector3f();
+    }
+
+    //Height Bounds Calculation Method
+    //calculates the minimum and maximum heights of every node, finest level first
+    private void calculateHeightBounds() {
+        int cols = this.heightMap.getCols();
+        int rows = this.heightMap.getRows();
+        for (int level = 0; level < this.levels; level++) {
+            int count = this.getNodeCount(level);
+            float[] min = this.minHeights[level] = new float[count * count];
+            float[] max = this.maxHeights[level] = new float[count * count];
+            for (int nz = 0; nz < count; nz++) {
+                for (int nx = 0; nx < count; nx++) {
+                    int i = nz * count + nx;
+                    if (level == 0) { //finest level - read the heights covered by the node
+                        int c0 = (int)Math.floor((float)nx / count * (cols - 1));
+                        int c1 = (int)Math.ceil((float)(nx + 1) / count * (cols - 1));
+                        int r0 = (int)Math.floor((float)nz / count * (rows - 1));
+                        int r1 = (int)Math.ceil((float)(nz + 1) / count * (rows - 1));
+                        min[i] = Float.MAX_VALUE;
+                        max[i] = -Float.MAX_VALUE;
+                        for (int row = r0; row <= r1; row++) {
+                            for (int col = c0; col <= c1; col++) {
+                                float h = this.heightMap.getHeight(row, col);
+                                if (h < min[i]) min[i] = h;
+                                if (h > max[i]) max[i] = h;
+                            }
+                        }
+                    } else { //coarser levels - combine the four children
+                        int childCount = count * 2;
+                        int c = (nz * 2) * childCount + nx * 2;
+                        float[] childMin = this.minHeights[level - 1];
+                        float[] childMax = this.maxHeights[level - 1];
+                        min[i] = Math.min(Math.min(childMin[c], childMin[c + 1]), Math.min(childMin[c + childCount], childMin[c + childCount + 1]));
+                        max[i] = Math.max(Math.max(childMax[c], childMax[c + 1]), Math.max(childMax[c + childCount], childMax[c + childCount + 1]));
+                    }
+                }
+            }
+        }
+    }
+
+    //Selection Method
+    //selects the nodes to render for every chunk given the camera position and view frustum (both in world space)
+    public void select(Vector3f cameraPosition, FrustumIntersection frustum) {
+        this.frustum = frustum;
+        this.nodes.clear();
+        this.halfNodes.clear();
+        for (int c = 0; c < this.chunks.length; c++) {
+
+            //transform camera into the chunk's local space
+            Transformation.updateWorldMatrix(this.chunks[c], this.worldMatrix);
+            this.worldMatrix.invert(this.invWorldMatrix);
+            this.localCamera.set(cameraPosition);
+            this.invWorldMatrix.transformPosition(this.localCamera);
+
+            //select from root - the root's range is unbounded
+            this.selectNode(c, this.levels - 1, 0, 0);
+        }
+        this.triangleCount = (this.nodes.count * this.gridSize * this.gridSize
+                + this.halfNodes.count * (this.gridSize / 2) * (this.gridSize / 2)) * 2;
+    }
+
+    //Node Selection Method
+    //returns false if the node is out of its level's range so that its parent covers its area instead
+    private boolean selectNode(int chunk, int level, int nx, int nz) {
+
+        //calculate node bounds in local space
+        float size = this.getNodeSize(level);
+        int i = nz * this.getNodeCount(level) + nx;
+        this.boxMin.set(HeightMap.STARTX + nx * size, this.minHeights[level][i], HeightMap.STARTZ + nz * size);
+        this.boxMax.set(this.boxMin.x + size, this.maxHeights[level][i], this.boxMin.z + size);
+
+        //check range and visibility
+        if (!this.inRange(this.ranges[level])) return false;
+        if (!this.isVisible()) return true; //culled, but handled
+
+        //add whole node if finest level or if no child could be in range
+        if (level == 0 || !this.inRange(this.ranges[level - 1])) {
+            this.nodes.add(chunk, level, nx * size, nz * size, size);
+            return true;
+        }
+
+        //otherwise select children - children out of range are drawn as quadrants at this level
+        for (int cz = nz * 2; cz < nz * 2 + 2; cz++) {
+            for (int cx = nx * 2; cx < nx * 2 + 2; cx++) {
+                if (!this.selectNode(chunk, level - 1, cx, cz)) {
+                    this.halfNodes.add(chunk, level, cx * size / 2, cz * size / 2, size / 2);
+                }
+            }
+        }
+        return true;
+    }
+
+    //Range Check Method
+    //checks whether the current node box intersects a sphere around the local camera position
+    private boolean inRange(float range) {
+        float dx = Math.max(Math.max(this.boxMin.x - this.localCamera.x, 0), this.localCamera.x - this.boxMax.x);
+        float dy = Math.max(Math.max(this.boxMin.y - this.localCamera.y, 0), this.localCamera.y - this.boxMax.y);
+        float dz = Math.max(Math.max(this.boxMin.z - this.localCamera.z, 0), this.localCamera.z - this.boxMax.z);
+        return dx * dx + dy * dy + dz * dz <= range * range;
+    }
+
+    //Visibility Check Method
+    //checks the current node box (in world space) against the frustum
+    private boolean isVisible() {
+        if (this.frustum == null) return true;
+        this.worldMatrix.transformAab(this.boxMin, this.boxMax, this.worldMin, this.worldMax);
+        return this.frustum.testAab(this.worldMin, this.worldMax);
+    }
+
+    //Node Size and Count Methods
+    private float getNodeSize(int level) { return 1.0f / this.getNodeCount(level); }
+    private int getNodeCount(int level) { return 1 << (this.levels - 1 - level); }
+
+    //Morph Accessors
+    //distances (in terrain local units) over which vertices of a level morph into the next coarser level
+    public float getMorphStart(int level) {
+        if (level >= this.levels - 1) return Float.MAX_VALUE / 2;
+        float previous = level > 0 ? this.ranges[level - 1] : 0;
+        return previous + (this.ranges[level] - previous) * MORPH_START_RATIO;
+    }
+    public float getMorphEnd(int level) {
+        if (level >= this.levels - 1) return Float.MAX_VALUE;
+        return this.ranges[level];
+    }
+
+    //Accessors
+    public HeightMap getHeightMap() { return this.heightMap; }
+    public GameItem[] getChunks() { return this.chunks; }
+    public Texture getHeightTexture() { return this.heightTexture; }
+    public Mesh getGridMesh() { return this.gridMesh; }
+    public Mesh getHalfGridMesh() { return this.halfGridMesh; }
+    public int getGridSize() { return this.gridSize; }
+    public int getLevels() { return this.levels; }
+    public NodeList getNodes() { return this.nodes; }
+    public NodeList getHalfNodes() { return this.halfNodes; }
+    public int getTriangleCount() { return this.triangleCount; }
+    public boolean isShadowCaster() { return this.shadowCaster; }
+    public int getFullResolutionTriangleCount() {
+        return (this.heightMap.getCols() - 1) * (this.heightMap.getRows() - 1) * 2 * this.chunks.length;
+    }
+
+    //Mutator
+    public void setShadowCaster(boolean shadowCaster) { this.shadowCaster = shadowCaster; }
+
+    //Cleanup Method
+    //the material is shared with the height map's mesh and is not cleaned up here
+    public void cleanup() {
+        this.gridMesh.deleteBuffers();
+        this.halfGridMesh.deleteBuffers();
+        this.heightTexture.cleanup();
+    }
+
+    //Height Texture Creation Method
+    private static Texture createHeightTexture(HeightMap heightMap) {
+        int cols = heightMap.getCols();
+        int rows = heightMap.getRows();
+        FloatBuffer data = MemoryUtil.memAllocFloat(cols * rows);
+        try {
+            for (int row = 0; row < rows; row++) {
+                for (int col = 0; col < cols; col++) data.put(heightMap.getHeight(row, col));
+            }
+            data.flip();
+            return new Texture(cols, rows, data);
+        } finally {
+            MemoryUtil.memFree(data);
+        }
+    }
+
+    //Grid Mesh Creation Method
+    //creates a flat grid of size x size cells with x and z in [0, 1]
+    private static Mesh createGridMesh(int size) {
+        int vertices = size + 1;
+        float[] positions = new float[vertices * vertices * 3];
+        float[] textureCoordinates = new float[vertices * vertices * 2];
+        float[] normals = new float[vertices * vertices * 3];
+        int[] indices = new int[size * size * 6];
+        for (int row = 0; row < vertices; row++) {
+            for (int col = 0; col < vertices; col++) {
+                int v = row * vertices + col;
+                positions[v * 3] = (float)col / size;
+                positions[v * 3 + 2] = (float)row / size;
+                textureCoordinates[v * 2] = (float)col / size;
+                textureCoordinates[v * 2 + 1] = (float)row / size;
+                normals[v * 3 + 1] = 1;
+                if (col < size && row < size) {
+                    int i = (row * size + col) * 6;
+                    indices[i] = v; //top left
+                    indices[i + 1] = v + vertices; //bottom left
+                    indices[i + 2] = v + 1; //top right
+                    indices[i + 3] = v + 1; //top right
+                    indices[i + 4] = v + vertices; //bottom left
+                    indices[i + 5] = v + vertices + 1; //bottom right
+                }
+            }
+        }
+        return new Mesh(positions, textureCoordinates, normals, indices);
+    }
+
+    //Node List Inner Class
+    //a growable list of selected nodes stored in primitive arrays to avoid per-frame allocation
+    public static class NodeList {
+
+        //Data
+        private int[] chunk = new int[64];
+        private int[] level = new int[64];
+        private float[] x = new float[64]; //offset in [0, 1] terrain space
+        private float[] z = new float[64];
+        private float[] sizes = new float[64];
+        private int count;
+
+        //Mutators
+        private void clear() { this.count = 0; }
+        private void add(int chunk, int level, float x, float z, float size) {
+            if (this.count == this.chunk.length) {
+                int capacity = this.count * 2;
+                this.chunk = Arrays.copyOf(this.chunk, capacity);
+                this.level = Arrays.copyOf(this.level, capacity);
+                this.x = Arrays.copyOf(this.x, capacity);
+                this.z = Arrays.copyOf(this.z, capacity);
+                this.sizes = Arrays.copyOf(this.sizes, capacity);
+            }
+            this.chunk[this.count] = chunk;
+            this.level[this.count] = level;
+            this.x[this.count] = x;
+            this.z[this.count] = z;
+            this.sizes[this.count] = size;
+            this.count++;
+        }
+
+        //Accessors
+        public int size() { return this.count; }
+        public int getChunk(int i) { return this.chunk[i]; }
+        public int getLevel(int i) { return this.level[i]; }
+        public float getX(int i) { return this.x[i]; }
+        public float getZ(int i) { return this.z[i]; }
+        public float getSize(int i) { return this.sizes[i]; }
+    }
+}
@@ -0,0 +1,193 @@
+package engine.graphics.terrain;
+
+import engine.gameitem.GameItem;
+import engine.graphics.HeightMap;
+import engine.graphics.Material;
+import engine.graphics.Texture;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL30.*;
+
+//a compact terrain mesh storing nothing but a normalized 16-bit height per vertex, kept in a height texture. the vertex
+//shader derives x/z and texture coordinates from the vertex index and normals from neighbouring heights. vertices are
+//drawn through a triangle strip index buffer shared by every terrain mesh of the same size
+public class TerrainMesh {
+
+    //Static Data
+    private static final int MAX_QUANTIZED = 0xFFFF;
+    private static final Map<Long, SharedIndices> SHARED_INDICES = new HashMap<>(); //keyed by grid size
+
+    //Data
+    private final HeightMap heightMap;
+    private final GameItem[] chunks;
+    private final Texture heightTexture;
+    private final SharedIndices indices;
+    private final int vaoID;
+    private final int cols, rows;
+    private final float minY, maxY; //range of the heights present, which the normalized heights span
+    private Material material;
+    private boolean shadowCaster = true; //false to leave the terrain out of the shadow map
+
+    //Constructor
+    public TerrainMesh(HeightMap heightMap, GameItem[] chunks) {
+        this.heightMap = heightMap;
+        this.chunks = chunks;
+        this.cols = heightMap.getCols();
+        this.rows = heightMap.getRows();
+        this.material = heightMap.getMesh() != null ? heightMap.getMesh().getMaterial() : null;
+
+        //find the range of the heights present, then quantize heights against it into a 16-bit texture
+        float minY = Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+        for (int row = 0; row < this.rows; row++) {
+            for (int col = 0; col < this.cols; col++) {
+                minY = Math.min(minY, heightMap.getHeight(row, col));
+                maxY = Math.max(maxY, heightMap.getHeight(row, col));
+            }
+        }
+        this.minY = minY;
+        this.maxY = maxY;
+        ShortBuffer heights = MemoryUtil.memAllocShort(this.cols * this.rows);
+        try {
+            float range = this.maxY - this.minY;
+            for (int row = 0; row < this.rows; row++) {
+                for (int col = 0; col < this.cols; col++) {
+                    float t = range != 0 ? (heightMap.getHeight(row, col) - this.minY) / range : 0;
+                    heights.put((short)Math.round(Math.max(0, Math.min(1, t)) * MAX_QUANTIZED));
+                }
+            }
+            heights.flip();
+            this.heightTexture = new Texture(this.cols, this.rows, heights);
+        } finally {
+            MemoryUtil.memFree(heights);
+        }
+
+        //create an attribute-less VAO with the shared index buffer bound
+        this.indices = acquireIndices(this.cols, this.rows);
+        this.vaoID = glGenVertexArrays();
+        glBindVertexArray(this.vaoID);
+        glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, this.indices.id);
+        glBindVertexArray(0);
+    }
+
+    //Render Method
+    public void render() {
+        glBindVertexArray(this.vaoID);
+        glDrawElements(GL_TRIANGLE_STRIP, this.indices.count, this.indices.type, 0);
+        glBindVertexArray(0);
+    }
+
+    //Accessors
+    public HeightMap getHeightMap() { return this.heightMap; }
+    public GameItem[] getChunks() { return this.chunks; }
+    public Texture getHeightTexture() { return this.heightTexture; }
+    public Material getMaterial() { return this.material; }
+    public int getCols() { return this.cols; }
+    public int getRows() { return this.rows; }
+    public float getMinY() { return this.minY; } //of the heights present
+    public float getMaxY() { return this.maxY; } //of the heights present
+    public boolean isShadowCaster() { return this.shadowCaster; }
+    public long getHeightBufferSize() { return 2L * this.cols * this.rows; }
+    public long getIndexBufferSize() { return this.indices.size; }
+    public long getBufferSize() { return this.getHeightBufferSize() + this.getIndexBufferSize(); } //bytes of video memory
+    public String getMemoryReport() {
+        String report = "Terrain mesh " + this.cols + "x" + this.rows + ": " + this.getBufferSize() + " bytes (heights " +
+                this.getHeightBufferSize() + ", shared indices " + this.getIndexBufferSize() + ")";
+        if (this.heightMap.getMesh() == null) return report;
+        long standard = this.heightMap.getMesh().getBufferSize();
+        return report + " vs " + standard + " bytes for the standard mesh (" +
+                String.format("%.1f", (double)standard / this.getBufferSize()) + "x smaller)";
+    }
+
+    //Mutators
+    public void setMaterial(Material material) { this.material = material; }
+    public void setShadowCaster(boolean shadowCaster) { this.shadowCaster = shadowCaster; }
+
+    //Cleanup Method
+    //the material is shared with the height map's mesh and is not cleaned up here
+    public void cleanup() {
+        glDeleteVertexArrays(this.vaoID);
+        this.heightTexture.cleanup();
+        releaseIndices(this.indices);
+    }
+
+    //Shared Index Methods
+    //returns the strip index buffer for a grid size, creating it when no mesh of that size holds it
+    private static SharedIndices acquireIndices(int cols, int rows) {
+        long key = ((long)cols << 32) | rows;
+        SharedIndices indices = SHARED_INDICES.get(key);
+        if (indices == null) {
+            indices = new SharedIndices(key, cols, rows);
+            SHARED_INDICES.put(key, indices);
+        }
+        indices.references++;
+        return indices;
+    }
+
+    private static void releaseIndices(SharedIndices indices) {
+        if (--indices.references > 0) return;
+        glDeleteBuffers(indices.id);
+        SHARED_INDICES.remove(indices.key);
+    }
+
+    //Shared Indices Inner Class
+    //one triangle strip per row of cells, joined by degenerate triangles. the strip order (top, bottom, top, ...)
+    //produces the same triangles and winding as the standard height map mesh
+    private static class SharedIndices {
+
+        //Data
+        private final long key;
+        private final int id;
+        private final int count;
+        private final int type; //GL_UNSIGNED_SHORT when every vertex index fits, otherwise GL_UNSIGNED_INT
+        private final long size; //in bytes
+        private int references;
+
+        //Constructor
+        private SharedIndices(long key, int cols, int rows) {
+            this.key = key;
+            this.count = (rows - 1) * cols * 2 + (rows - 2) * 2;
+            boolean shortIndices = (long)cols * rows <= MAX_QUANTIZED + 1;
+            this.type = shortIndices ? GL_UNSIGNED_SHORT : GL_UNSIGNED_INT;
+            this.size = (long)this.count * (shortIndices ? 2 : 4);
+
+            //fill strip indices
+            ByteBuffer buffer = MemoryUtil.memAlloc((int)this.size);
+            try {
+                ShortBuffer shorts = shortIndices ? buffer.asShortBuffer() : null;
+                IntBuffer ints = shortIndices ? null : buffer.asIntBuffer();
+                for (int row = 0; row < rows - 1; row++) {
+                    if (row > 0) { //degenerate join - repeat the last index and the next row's first index
+                        put(shorts, ints, row * cols + cols - 1);
+                        put(shorts, ints, row * cols);
+                    }
+                    for (int col = 0; col < cols; col++) {
+                        put(shorts, ints, row * cols + col); //top
+                        put(shorts, ints, (row + 1) * cols + col); //bottom
+                    }
+                }
+
+                //upload through the array buffer target - element array bindings belong to a VAO
+                this.id = glGenBuffers();
+                glBindBuffer(GL_ARRAY_BUFFER, this.id);
+                glBufferData(GL_ARRAY_BUFFER, buffer, GL_STATIC_DRAW);
+                glBindBuffer(GL_ARRAY_BUFFER, 0);
+            } finally {
+                MemoryUtil.memFree(buffer);
+            }
+        }
+
+        //Index Put Method
+        private static void put(ShortBuffer shorts, IntBuffer ints, int index) {
+            if (shorts != null) shorts.put((short)index);
+            else ints.put(index);
+        }
+    }
+}
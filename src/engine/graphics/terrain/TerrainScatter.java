@@ -0,0 +1,368 @@
+package engine.graphics.terrain;
+
+import engine.gameitem.Terrain;
+import org.joml.FrustumIntersection;
+import org.joml.Vector3f;
+import org.lwjgl.system.MemoryUtil;
+
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.IntConsumer;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL13.*;
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL30.GL_RGBA32F;
+import static org.lwjgl.opengl.GL31.*;
+
+//scatters instances of each layer's mesh over a terrain. the terrain is divided into square cells which are generated
+//on worker threads as the camera nears them - instances are placed by the layers' rules and snapped to the terrain's
+//heights. each cell uploads its instances (x, y, z and scale) into a buffer texture which the scatter vertex shader
+//reads by instance id, so a layer draws a whole cell with one instanced draw. a buffer texture rather than per-instance
+//attributes keeps the cells independent of the layers' meshes - switching cells binds a texture instead of pointing
+//every layer mesh's VAO at the cell's buffer. cells are kept in a bounded cache
+public class TerrainScatter {
+
+    //Static Data
+    private static final int DEFAULT_THREADS = 2;
+    private static final int FLOATS_PER_INSTANCE = 4;
+    private static final int MAX_CELL_INSTANCES = 65536; //the smallest buffer texture size OpenGL 3 guarantees
+
+    //Data
+    private final Terrain terrain;
+    private final List<ScatterLayer> layers;
+    private final float cellSize;
+    private final int cellsX, cellsZ;
+    private final float originX, originZ; //world position of the cell grid's minimum x/z corner
+    private final long seed;
+    private final ExecutorService generator;
+    private final LinkedHashMap<Long, Cell> residentCells; //access ordered - least recently used first
+    private final Set<Long> pendingCells; //requested but not yet uploaded
+    private final Queue<Cell> generatedCells; //filled by the generator threads, drained on the render thread
+    private final List<long[]> candidates; //cell key and distance (in thousandths) of the cells wanted this update
+    private final List<Cell> visibleCells;
+
+    //Settings
+    private int maxCells; //cache size - must hold every cell within the draw distance
+    private long uploadBudget; //per-frame upload time in nanoseconds
+
+    //Stats
+    private long residentBytes;
+    private int uploadCount, evictionCount, drawnInstances;
+
+    //Constructors
+    public TerrainScatter(Terrain terrain, float cellSize, long seed) { this(terrain, cellSize, seed, DEFAULT_THREADS); }
+
+    public TerrainScatter(Terrain terrain, float cellSize, long seed, int threads) {
+        this.terrain = terrain;
+        this.layers = new ArrayList<>();
+        this.cellSize = cellSize;
+        this.cellsX = (int)Math.ceil(terrain.getWidth() / cellSize);
+        this.cellsZ = (int)Math.ceil(terrain.getDepth() / cellSize);
+        this.originX = terrain.getOriginX();
+        this.originZ = terrain.getOriginZ();
+        this.seed = seed;
+
+        //create generator threads - daemons so that they never keep the game alive
+        this.generator = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "scatter-generator");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.residentCells = new LinkedHashMap<>(64, 0.75f, true);
+        this.pendingCells = new HashSet<>();
+        this.generatedCells = new ConcurrentLinkedQueue<>();
+        this.candidates = new ArrayList<>();
+        this.visibleCells = new ArrayList<>();
+
+        //default settings
+        this.maxCells = 1024;
+        this.uploadBudget = 1_000_000L;
+    }
+
+    //Layer Method
+    //layers must all be added before the first update
+    public void addLayer(ScatterLayer layer) { this.layers.add(layer); }
+
+    //Update Method
+    //requests cells within the draw distance, uploads generated cells within the frame's budget and evicts cells
+    //must be called on the render thread
+    public void update(Vector3f cameraPosition) {
+        float drawDistance = this.getMaxDrawDistance();
+        this.requestCells(cameraPosition, drawDistance);
+        this.uploadCells(cameraPosition, drawDistance);
+        this.evictCells(cameraPosition, drawDistance);
+    }
+
+    //Cell Request Method
+    //requests the missing cells within the draw distance, nearest first
+    private void requestCells(Vector3f position, float drawDistance) {
+
+        //gather wanted cells
+        this.candidates.clear();
+        int minX = Math.max(0, (int)Math.floor((position.x - drawDistance - this.originX) / this.cellSize));
+        int maxX = Math.min(this.cellsX - 1, (int)Math.floor((position.x + drawDistance - this.originX) / this.cellSize));
+        int minZ = Math.max(0, (int)Math.floor((position.z - drawDistance - this.originZ) / this.cellSize));
+        int maxZ = Math.min(this.cellsZ - 1, (int)Math.floor((position.z + drawDistance - this.originZ) / this.cellSize));
+        for (int z = minZ; z <= maxZ; z++) {
+            for (int x = minX; x <= maxX; x++) {
+                float distance = this.getCellDistance(x, z, position.x, position.z);
+                if (distance > drawDistance) continue;
+                long key = key(x, z);
+                if (this.residentCells.get(key) != null) continue; //touched for least recently used ordering
+                if (this.pendingCells.contains(key)) continue;
+                this.candidates.add(new long[] { key, (long)(distance * 1000) });
+            }
+        }
+
+        //submit in order of distance - the generator runs tasks first in, first out
+        this.candidates.sort((a, b) -> Long.compare(a[1], b[1]));
+        for (long[] candidate : this.candidates) {
+            int x = (int)(candidate[0] >> 32);
+            int z = (int)candidate[0];
+            this.pendingCells.add(candidate[0]);
+            this.generator.submit(() -> this.generatedCells.add(this.tryGenerateCell(x, z)));
+        }
+    }
+
+    //generates a cell, logging a failure and returning the cell empty so that it stops being pending - it is not
+    //requested again until it has been evicted
+    private Cell tryGenerateCell(int cellX, int cellZ) {
+        try {
+            return this.generateCell(cellX, cellZ);
+        } catch (Exception e) {
+            System.err.println("Unable to scatter cell [" + cellX + ", " + cellZ + "]: " + e);
+            return new Cell(cellX, cellZ, this.layers.size());
+        }
+    }
+
+    //Cell Generation Method
+    //places each layer's instances within a cell - runs on a generator thread. each cell seeds its own random numbers,
+    //so a cell's instances do not depend on the order cells are generated in
+    private Cell generateCell(int cellX, int cellZ) {
+        Cell cell = new Cell(cellX, cellZ, this.layers.size());
+        Random random = new Random(this.seed * 31 + key(cellX, cellZ));
+        float minX = this.originX + cellX * this.cellSize, minZ = this.originZ + cellZ * this.cellSize;
+        float step = this.terrain.getCellSize();
+
+        //find candidate counts
+        int[] candidates = new int[this.layers.size()];
+        int capacity = 0;
+        for (int l = 0; l < candidates.length; l++) {
+            float expected = this.layers.get(l).getBaseDensity() * this.cellSize * this.cellSize;
+            candidates[l] = (int)expected + (random.nextFloat() < expected - (int)expected ? 1 : 0);
+            capacity += candidates[l];
+        }
+        float[] instances = new float[Math.min(capacity, MAX_CELL_INSTANCES) * FLOATS_PER_INSTANCE];
+
+        //place instances
+        int count = 0;
+        cell.minY = Float.MAX_VALUE;
+        cell.maxY = -Float.MAX_VALUE;
+        for (int l = 0; l < candidates.length; l++) {
+            ScatterLayer layer = this.layers.get(l);
+            cell.offsets[l] = count;
+            for (int i = 0; i < candidates[l] && count < MAX_CELL_INSTANCES; i++) {
+                float x = minX + random.nextFloat() * this.cellSize, z = minZ + random.nextFloat() * this.cellSize;
+                float keep = random.nextFloat(), scale = layer.getMinScale() + random.nextFloat() * (layer.getMaxScale() - layer.getMinScale());
+                if (keep >= layer.getDensity((x - this.originX) / this.terrain.getWidth(), (z - this.originZ) / this.terrain.getDepth())) continue;
+
+                //snap to the terrain and check its height and slope
+                float y = this.terrain.getHeight(x, z);
+                if (y == Float.MIN_VALUE) continue;
+                float dx = this.terrain.getHeight(x + step, z), dz = this.terrain.getHeight(x, z + step);
+                dx = dx == Float.MIN_VALUE ? 0 : dx - y;
+                dz = dz == Float.MIN_VALUE ? 0 : dz - y;
+                if (!layer.accepts(y, (float)Math.sqrt(dx * dx + dz * dz) / step)) continue;
+                int f = count++ * FLOATS_PER_INSTANCE;
+                instances[f] = x;
+                instances[f + 1] = y;
+                instances[f + 2] = z;
+                instances[f + 3] = scale;
+
+                //grow the cell's bounds by the instance's mesh
+                float reach = layer.getRadius() * scale;
+                cell.minY = Math.min(cell.minY, y - reach);
+                cell.maxY = Math.max(cell.maxY, y + reach);
+                cell.padding = Math.max(cell.padding, reach);
+            }
+            cell.counts[l] = count - cell.offsets[l];
+        }
+        cell.instances = instances;
+        cell.instanceCount = count;
+        return cell;
+    }
+
+    //Cell Upload Method
+    //uploads generated cells until the frame's upload budget is used up
+    private void uploadCells(Vector3f position, float drawDistance) {
+        long start = System.nanoTime();
+        this.uploadCount = 0;
+        Cell cell;
+        while (System.nanoTime() - start < this.uploadBudget && (cell = this.generatedCells.poll()) != null) {
+            this.pendingCells.remove(cell.key);
+
+            //cells the camera moved away from while generating are dropped
+            if (this.getCellDistance(cell.x, cell.z, position.x, position.z) > drawDistance + this.cellSize) continue;
+            if (cell.instanceCount > 0) {
+                FloatBuffer buffer = MemoryUtil.memAllocFloat(cell.instanceCount * FLOATS_PER_INSTANCE);
+                try {
+                    buffer.put(cell.instances, 0, cell.instanceCount * FLOATS_PER_INSTANCE).flip();
+                    cell.bufferID = glGenBuffers();
+                    glBindBuffer(GL_TEXTURE_BUFFER, cell.bufferID);
+                    glBufferData(GL_TEXTURE_BUFFER, buffer, GL_STATIC_DRAW);
+                    glBindBuffer(GL_TEXTURE_BUFFER, 0);
+                    cell.textureID = glGenTextures();
+                    glBindTexture(GL_TEXTURE_BUFFER, cell.textureID);
+                    glTexBuffer(GL_TEXTURE_BUFFER, GL_RGBA32F, cell.bufferID);
+                    glBindTexture(GL_TEXTURE_BUFFER, 0);
+                } finally {
+                    MemoryUtil.memFree(buffer);
+                }
+            }
+            cell.instances = null;
+            this.residentCells.put(cell.key, cell);
+            this.residentBytes += cell.getMemorySize();
+            this.uploadCount++;
+        }
+    }
+
+    //Cell Eviction Method
+    //evicts, least recently used first, cells beyond the draw distance and, while over the cache size, any cell
+    private void evictCells(Vector3f position, float drawDistance) {
+        this.evictionCount = 0;
+        Iterator<Cell> iterator = this.residentCells.values().iterator();
+        while (iterator.hasNext()) {
+            Cell cell = iterator.next();
+            boolean overBudget = this.residentCells.size() > this.maxCells;
+            if (!overBudget && this.getCellDistance(cell.x, cell.z, position.x, position.z) <= drawDistance + this.cellSize) continue;
+            iterator.remove();
+            cell.delete();
+            this.residentBytes -= cell.getMemorySize();
+            this.evictionCount++;
+        }
+    }
+
+    //Culling Method
+    //finds the resident cells within the draw distance whose bounds intersect the frustum
+    public void cull(Vector3f cameraPosition, FrustumIntersection frustum) {
+        this.visibleCells.clear();
+        this.drawnInstances = 0;
+        float drawDistance = this.getMaxDrawDistance();
+        for (Cell cell : this.residentCells.values()) {
+            if (cell.instanceCount == 0) continue;
+            cell.distance = this.getCellDistance(cell.x, cell.z, cameraPosition.x, cameraPosition.z);
+            if (cell.distance > drawDistance) continue;
+            float minX = this.originX + cell.x * this.cellSize - cell.padding, minZ = this.originZ + cell.z * this.cellSize - cell.padding;
+            float size = this.cellSize + cell.padding * 2;
+            if (!frustum.testAab(minX, cell.minY, minZ, minX + size, cell.maxY, minZ + size)) continue;
+            this.visibleCells.add(cell);
+        }
+    }
+
+    //Render Method
+    //draws a layer's instances in the visible cells within the layer's draw distance. the consumer sets the shader's
+    //offset into the bound instance buffer. the scatter shader must be bound, reading instances from texture unit 4
+    public void render(int layerIndex, IntConsumer offsetConsumer) {
+        ScatterLayer layer = this.layers.get(layerIndex);
+        layer.getMesh().renderInstanced(this.visibleCells.size(), (int i) -> {
+            Cell cell = this.visibleCells.get(i);
+            if (cell.distance > layer.getDrawDistance() || cell.counts[layerIndex] == 0) return 0;
+            glActiveTexture(GL_TEXTURE4);
+            glBindTexture(GL_TEXTURE_BUFFER, cell.textureID);
+            offsetConsumer.accept(cell.offsets[layerIndex]);
+            this.drawnInstances += cell.counts[layerIndex];
+            return cell.counts[layerIndex];
+        });
+        glBindTexture(GL_TEXTURE_BUFFER, 0);
+        glActiveTexture(GL_TEXTURE0);
+    }
+
+    //Cell Distance Method
+    //calculates the distance on the x/z plane from a point to a cell's bounds
+    private float getCellDistance(int x, int z, float px, float pz) {
+        float minX = this.originX + x * this.cellSize;
+        float minZ = this.originZ + z * this.cellSize;
+        float dx = Math.max(Math.max(minX - px, 0), px - (minX + this.cellSize));
+        float dz = Math.max(Math.max(minZ - pz, 0), pz - (minZ + this.cellSize));
+        return (float)Math.sqrt(dx * dx + dz * dz);
+    }
+
+    //Key Method
+    private static long key(int x, int z) { return ((long)x << 32) | (z & 0xFFFFFFFFL); }
+
+    //Accessors
+    public List<ScatterLayer> getLayers() { return this.layers; }
+    public float getCellSize() { return this.cellSize; }
+    public float getMaxDrawDistance() {
+        float distance = 0;
+        for (ScatterLayer layer : this.layers) distance = Math.max(distance, layer.getDrawDistance());
+        return distance;
+    }
+    public int getResidentCellCount() { return this.residentCells.size(); }
+    public int getPendingCellCount() { return this.pendingCells.size(); }
+    public int getVisibleCellCount() { return this.visibleCells.size(); }
+    public long getResidentBytes() { return this.residentBytes; }
+    public int getUploadCount() { return this.uploadCount; } //cells uploaded during the last update
+    public int getEvictionCount() { return this.evictionCount; } //cells evicted during the last update
+    public int getDrawnInstances() { return this.drawnInstances; } //instances drawn since the last cull
+
+    //Mutators
+    public void setMaxCells(int maxCells) { this.maxCells = maxCells; }
+    public void setUploadBudget(float milliseconds) { this.uploadBudget = (long)(milliseconds * 1000_000); }
+
+    //Cleanup Method
+    //the layers' meshes are not cleaned up here
+    public void cleanup() {
+        this.generator.shutdownNow();
+        for (Cell cell : this.residentCells.values()) cell.delete();
+        this.residentCells.clear();
+        this.generatedCells.clear();
+        this.pendingCells.clear();
+        this.visibleCells.clear();
+        this.residentBytes = 0;
+    }
+
+    //Cell Inner Class
+    //a cell's instances, packed layer after layer
+    private static class Cell {
+
+        //Data
+        private final long key;
+        private final int x, z;
+        private final int[] offsets, counts; //first instance and instance count of each layer
+        private float[] instances; //packed x, y, z and scale (null once uploaded)
+        private int instanceCount;
+        private float minY, maxY, padding; //vertical bounds and horizontal overhang of the instances' meshes
+        private float distance; //from the camera at the last cull
+        private int bufferID, textureID;
+
+        //Constructor
+        private Cell(int x, int z, int layers) {
+            this.key = key(x, z);
+            this.x = x;
+            this.z = z;
+            this.offsets = new int[layers];
+            this.counts = new int[layers];
+        }
+
+        //Memory Size Method
+        private long getMemorySize() { return 4L * FLOATS_PER_INSTANCE * this.instanceCount; }
+
+        //Delete Method
+        private void delete() {
+            if (this.textureID != 0) glDeleteTextures(this.textureID);
+            if (this.bufferID != 0) glDeleteBuffers(this.bufferID);
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package engine.graphics.terrain;
+
+import engine.Scene;
+import engine.gameitem.GameItem;
+import engine.graphics.Camera;
+import engine.graphics.HeightMap;
+import engine.graphics.Image;
+import engine.graphics.Material;
+import engine.graphics.TextureCache;
+import org.joml.Vector3f;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+
+//streams a tiled terrain in and out of a scene around the camera. a tile set is a grid of heightmap images named by a
+//format pattern taking the tile's x and z coordinates (e.g. "/textures/terrain/tile_%d_%d.png"). neighbouring tiles
+//must share their edge pixels so that their meshes meet without cracks
+public class TerrainStreamer {
+
+    //Static Data
+    private static final int DEFAULT_LOADER_THREADS = 2;
+
+    //Tile Set Data
+    private final String tileFile; //format pattern taking the tile's x and z coordinates
+    private final int tilesX, tilesZ;
+    private final float tileSize; //world size of a single tile
+    private final float minY, maxY;
+    private final int textureInc;
+    private final float originX, originZ; //world position of the tile grid's minimum x/z corner
+    private final Material material; //shared by every tile
+
+    //Streaming Data
+    private final Scene scene;
+    private final ExecutorService loader;
+    private final LinkedHashMap<Long, TerrainTile> residentTiles; //access ordered - least recently used first
+    private final Set<Long> pendingTiles; //requested but not yet uploaded
+    private final Set<Long> missingTiles; //failed to load - never requested again
+    private final Queue<TerrainTile> loadedTiles; //filled by the loader threads, drained on the render thread
+    private final List<long[]> candidates; //tile key and distance (in thousandths) of the tiles wanted this update
+    private final Vector3f prefetchPosition;
+
+    //Settings
+    private float loadRadius; //tiles within this distance of the camera (or its predicted position) are loaded
+    private float evictRadius; //tiles beyond this distance of the camera and its predicted position are evicted
+    private float prefetchTime; //how far ahead (in seconds) the camera's position is predicted
+    private long byteBudget; //resident tile memory above which tiles outside of the load radius are evicted
+    private long uploadBudget; //per-frame upload time in nanoseconds
+
+    //Stats
+    private long residentBytes;
+    private int uploadCount, evictionCount;
+
+    //Constructors
+    public TerrainStreamer(Scene scene, String tileFile, int tilesX, int tilesZ, float tileSize, float minY, float maxY,
+                           String textureFile, int textureInc) throws Exception {
+        this(scene, tileFile, tilesX, tilesZ, tileSize, minY, maxY, new Material(TextureCache.acquire(textureFile), 0.0f),
+                textureInc, DEFAULT_LOADER_THREADS);
+    }
+
+    public TerrainStreamer(Scene scene, String tileFile, int tilesX, int tilesZ, float tileSize, float minY, float maxY,
+                           Material material, int textureInc, int loaderThreads) {
+        this.scene = scene;
+        this.tileFile = tileFile;
+        this.tilesX = tilesX;
+        this.tilesZ = tilesZ;
+        this.tileSize = tileSize;
+        this.minY = minY;
+        this.maxY = maxY;
+        this.material = material;
+        this.textureInc = textureInc;
+        this.originX = -tilesX * tileSize / 2.0f;
+        this.originZ = -tilesZ * tileSize / 2.0f;
+
+        //create loader threads - daemons so that they never keep the game alive
+        this.loader = Executors.newFixedThreadPool(loaderThreads, r -> {
+            Thread thread = new Thread(r, "terrain-loader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.residentTiles = new LinkedHashMap<>(16, 0.75f, true);
+        this.pendingTiles = new HashSet<>();
+        this.missingTiles = new HashSet<>();
+        this.loadedTiles = new ConcurrentLinkedQueue<>();
+        this.candidates = new ArrayList<>();
+        this.prefetchPosition = new Vector3f();
+
+        //default settings
+        this.loadRadius = tileSize * 1.5f;
+        this.evictRadius = tileSize * 2.5f;
+        this.prefetchTime = 1.0f;
+        this.byteBudget = 256L * 1024 * 1024;
+        this.uploadBudget = 2_000_000L;
+    }
+
+    //Update Method
+    //requests tiles around the camera, uploads finished tiles within the frame's budget and evicts distant tiles
+    //must be called on the render thread
+    public void update(Camera camera) {
+        Vector3f position = camera.getPosition();
+        this.prefetchPosition.set(camera.getVelocity()).mul(this.prefetchTime).add(position);
+        this.requestTiles(position);
+        this.uploadTiles(position);
+        this.evictTiles(position);
+    }
+
+    //Tile Request Method
+    //requests every tile near the camera or its predicted position, nearest to the camera first
+    private void requestTiles(Vector3f position) {
+
+        //gather wanted tiles
+        this.candidates.clear();
+        for (int z = 0; z < this.tilesZ; z++) {
+            for (int x = 0; x < this.tilesX; x++) {
+                float distance = this.getTileDistance(x, z, position.x, position.z);
+                float prefetchDistance = this.getTileDistance(x, z, this.prefetchPosition.x, this.prefetchPosition.z);
+                if (distance > this.loadRadius && prefetchDistance > this.loadRadius) continue;
+                long key = TerrainTile.key(x, z);
+                if (this.residentTiles.get(key) != null) continue; //touched for least recently used ordering
+                if (this.pendingTiles.contains(key) || this.missingTiles.contains(key)) continue;
+                this.candidates.add(new long[] { key, (long)(distance * 1000) });
+            }
+        }
+
+        //submit in order of distance - the loader runs tasks first in, first out
+        this.candidates.sort((a, b) -> Long.compare(a[1], b[1]));
+        for (long[] candidate : this.candidates) {
+            int x = (int)(candidate[0] >> 32);
+            int z = (int)candidate[0];
+            this.pendingTiles.add(candidate[0]);
+            this.loader.submit(() -> this.loadedTiles.add(this.loadTile(x, z)));
+        }
+    }
+
+    //Tile Loading Method
+    //loads a tile's image and builds its height map without touching OpenGL - runs on a loader thread
+    private TerrainTile loadTile(int x, int z) {
+        String file = String.format(this.tileFile, x, z);
+        Image image = null;
+        try {
+
+            //load image
+            image = Image.load(file);
+
+            //build height map on this thread
+            HeightMap heightMap = new HeightMap(this.minY, this.maxY, image.getPixels(), image.getWidth(), image.getHeight(),
+                    this.textureInc, false, 1);
+            return new TerrainTile(x, z, heightMap);
+        } catch (Exception e) {
+            System.err.println(e.getMessage());
+            return new TerrainTile(x, z, null);
+        } finally {
+            if (image != null) image.free();
+        }
+    }
+
+    //Tile Upload Method
+    //uploads loaded tiles until the frame's upload budget is used up
+    private void uploadTiles(Vector3f position) {
+        long start = System.nanoTime();
+        this.uploadCount = 0;
+        TerrainTile tile;
+        while (System.nanoTime() - start < this.uploadBudget && (tile = this.loadedTiles.poll()) != null) {
+            this.pendingTiles.remove(tile.getKey());
+
+            //tiles which failed to load, or which the camera moved away from while loading, are dropped
+            if (!tile.isLoaded()) {
+                this.missingTiles.add(tile.getKey());
+                continue;
+            }
+            if (this.getStreamingDistance(tile.getX(), tile.getZ(), position) > this.evictRadius) continue;
+
+            //upload mesh and place tile in the scene
+            tile.getHeightMap().upload(this.material);
+            GameItem gameItem = new GameItem(tile.getHeightMap().getMesh());
+            gameItem.setScale(this.tileSize);
+            gameItem.setPosition(this.originX + (tile.getX() + 0.5f) * this.tileSize, 0, this.originZ + (tile.getZ() + 0.5f) * this.tileSize);
+            tile.setGameItem(gameItem);
+            this.scene.addGameItem(gameItem);
+            this.residentTiles.put(tile.getKey(), tile);
+            this.residentBytes += tile.getMemorySize();
+            this.uploadCount++;
+        }
+    }
+
+    //Tile Eviction Method
+    //evicts, least recently used first, tiles beyond the evict radius and, while over budget, tiles beyond the load radius.
+    //distances are to the nearer of the camera and its predicted position, so that prefetched tiles are kept
+    private void evictTiles(Vector3f position) {
+        this.evictionCount = 0;
+        Iterator<TerrainTile> iterator = this.residentTiles.values().iterator();
+        while (iterator.hasNext()) {
+            TerrainTile tile = iterator.next();
+            float distance = this.getStreamingDistance(tile.getX(), tile.getZ(), position);
+            boolean overBudget = this.residentBytes > this.byteBudget && distance > this.loadRadius;
+            if (distance <= this.evictRadius && !overBudget) continue;
+            iterator.remove();
+            this.scene.removeGameItem(tile.getGameItem());
+            tile.getHeightMap().getMesh().deleteBuffers();
+            this.residentBytes -= tile.getMemorySize();
+            this.evictionCount++;
+        }
+    }
+
+    //Tile Distance Method
+    //calculates the distance on the x/z plane from a point to a tile's bounds
+    private float getTileDistance(int x, int z, float px, float pz) {
+        float minX = this.originX + x * this.tileSize;
+        float minZ = this.originZ + z * this.tileSize;
+        float dx = Math.max(Math.max(minX - px, 0), px - (minX + this.tileSize));
+        float dz = Math.max(Math.max(minZ - pz, 0), pz - (minZ + this.tileSize));
+        return (float)Math.sqrt(dx * dx + dz * dz);
+    }
+
+    //calculates the distance from the nearer of the camera and its predicted position to a tile's bounds
+    private float getStreamingDistance(int x, int z, Vector3f position) {
+        return Math.min(this.getTileDistance(x, z, position.x, position.z),
+                this.getTileDistance(x, z, this.prefetchPosition.x, this.prefetchPosition.z));
+    }
+
+    //Accessors
+    public int getResidentTileCount() { return this.residentTiles.size(); }
+    public int getPendingTileCount() { return this.pendingTiles.size(); }
+    public long getResidentBytes() { return this.residentBytes; }
+    public int getUploadCount() { return this.uploadCount; } //tiles uploaded during the last update
+    public int getEvictionCount() { return this.evictionCount; } //tiles evicted during the last update
+    public Vector3f getPrefetchPosition() { return this.prefetchPosition; }
+    public TerrainTile getTile(int x, int z) { return this.residentTiles.get(TerrainTile.key(x, z)); }
+
+    //Mutators
+    public void setRadii(float loadRadius, float evictRadius) {
+        this.loadRadius = loadRadius;
+        this.evictRadius = Math.max(loadRadius, evictRadius);
+    }
+    public void setPrefetchTime(float prefetchTime) { this.prefetchTime = prefetchTime; }
+    public void setByteBudget(long byteBudget) { this.byteBudget = byteBudget; }
+    public void setUploadBudget(float milliseconds) { this.uploadBudget = (long)(milliseconds * 1000_000); }
+
+    //Cleanup Method
+    public void cleanup() {
+        this.loader.shutdownNow();
+        for (TerrainTile tile : this.residentTiles.values()) {
+            this.scene.removeGameItem(tile.getGameItem());
+            tile.getHeightMap().getMesh().deleteBuffers();
+        }
+        this.residentTiles.clear();
+        this.loadedTiles.clear();
+        this.pendingTiles.clear();
+        this.residentBytes = 0;
+        this.material.cleanup();
+    }
+}
@@ -0,0 +1,35 @@
+package engine.graphics.terrain;
+
+import engine.gameitem.GameItem;
+import engine.graphics.HeightMap;
+
+public class TerrainTile {
+
+    //Data
+    private final int x, z; //tile coordinates in the tile grid
+    private final HeightMap heightMap; //null if the tile could not be loaded
+    private GameItem gameItem; //null until uploaded
+
+    //Constructor
+    public TerrainTile(int x, int z, HeightMap heightMap) {
+        this.x = x;
+        this.z = z;
+        this.heightMap = heightMap;
+    }
+
+    //Key Method
+    //packs tile coordinates into a single map key
+    public static long key(int x, int z) { return ((long)x << 32) | (z & 0xFFFFFFFFL); }
+
+    //Accessors
+    public int getX() { return this.x; }
+    public int getZ() { return this.z; }
+    public long getKey() { return key(this.x, this.z); }
+    public HeightMap getHeightMap() { return this.heightMap; }
+    public GameItem getGameItem() { return this.gameItem; }
+    public boolean isLoaded() { return this.heightMap != null; }
+    public long getMemorySize() { return this.heightMap != null ? this.heightMap.getMemorySize() : 0; }
+
+    //Mutator
+    void setGameItem(GameItem gameItem) { this.gameItem = gameItem; }
+}
@@ -3,19 +3,22 @@ package game;
 import engine.*;
 import engine.gameitem.AnimGameItem;
 import engine.gameitem.GameItem;
+import engine.gameitem.Terrain;
 import engine.graphics.*;
+import engine.graphics.anim.AnimClip;
+import engine.graphics.anim.AnimSkeleton;
 import engine.graphics.light.DirectionalLight;
 import engine.graphics.light.SceneLighting;
-import engine.graphics.loaders.md5.MD5AnimModel;
 import engine.graphics.loaders.md5.MD5Loader;
-import engine.graphics.loaders.md5.MD5Model;
 import engine.graphics.loaders.obj.OBJLoader;
+import engine.graphics.terrain.TerrainLOD;
 import org.joml.Vector2f;
 import org.joml.Vector3f;
 import org.joml.Vector4f;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
 import static org.lwjgl.glfw.GLFW.*;
 
@@ -29,6 +32,8 @@ public class Game implements IGameLogic {
     private final Vector3f cameraInc;
     private final Renderer renderer;
     private final Camera camera;
+    private final AsyncTextureLoader textureLoader;
+    private final TextureCompressor textureCompressor;
 
     //Scene and HUD
     private Scene scene;
@@ -36,11 +41,15 @@ public class Game implements IGameLogic {
     private float directionalLightAngle;
     private float directionalLightAngleInc = 0;
     private AnimGameItem monster;
+    private Terrain terrain;
+    private TerrainLOD terrainLOD;
 
     //Constructor
     public Game() {
         this.renderer = new Renderer();
         this.camera = new Camera();
+        this.textureLoader = new AsyncTextureLoader();
+        this.textureCompressor = new TextureCompressor(ForkJoinPool.getCommonPoolParallelism());
         this.cameraInc = new Vector3f(0.0f, 0.0f, 0.0f);
         this.directionalLightAngle = 45;
     }
@@ -49,8 +58,10 @@ public class Game implements IGameLogic {
     @Override
     public void init(Window window) throws Exception {
 
-        //initialize renderer and create scene
+        //initialize renderer, compress textures loaded by path from now on and create scene
         this.renderer.init(window);
+        TextureCache.setCompressor(this.textureCompressor);
+        TextureResidency.setLoader(this.textureLoader);
         this.scene = new Scene();
 
         //setup plane/quad beneath cube
@@ -61,16 +72,23 @@ public class Game implements IGameLogic {
         quad.setPosition(0, -1, 0);
         quad.setScale(9f);
 
-        //add monster
-        MD5Model md5Model = MD5Model.parse("/models/monster.md5mesh");
-        MD5AnimModel md5AnimModel = MD5AnimModel.parse("/models/monster.md5anim");
-        this.monster = MD5Loader.process(md5Model, md5AnimModel, new Vector4f(1, 1, 1, 1));
+        //add monster (skeleton and clip are shared by every monster instance)
+        AnimSkeleton monsterSkeleton = MD5Loader.loadSkeleton("/models/monster.md5mesh", new Vector4f(1, 1, 1, 1),
+                this.textureLoader);
+        AnimClip monsterIdle = MD5Loader.loadClip(monsterSkeleton, "/models/monster.md5anim");
+        this.monster = new AnimGameItem(monsterSkeleton, monsterIdle);
         monster.setScale(0.05f);
         monster.setRotation(90, 0, 0);
 
         //add items to scene
         this.scene.setGameItems(new GameItem[] { monster, quad });
 
+        //add terrain beneath the plane, drawn and shadowed through its level of detail
+        this.terrain = new Terrain(1, 40, 0.0f, 0.05f, "/textures/heightmap.png", "/textures/terrain.png", 40);
+        for (GameItem chunk : this.terrain.getChunks()) chunk.getPosition().y = -3;
+        this.terrainLOD = this.terrain.createLOD(32);
+        this.scene.setTerrainLOD(this.terrainLOD);
+
         //setup lights
         setupLights();
 
@@ -117,15 +135,18 @@ public class Game implements IGameLogic {
         if (window.isKeyPressed(GLFW_KEY_LEFT_SHIFT)) cameraInc.y -= 1;
         if (window.isKeyPressed(GLFW_KEY_LEFT)) this.directionalLightAngleInc -= 1f;
         if (window.isKeyPressed(GLFW_KEY_RIGHT)) this.directionalLightAngleInc += 1f;
-        if (window.isKeyPressed(GLFW_KEY_ENTER)) this.monster.nextFrame();
     }
 
     //Update Method
     @Override
     public void update(float interval, MouseInput mouseInput) {
 
+        //update animations
+        this.monster.update(interval);
+
         //update camera position
         camera.movePosition(cameraInc.x * CAMERA_SPEED, cameraInc.y * CAMERA_SPEED, cameraInc.z * CAMERA_SPEED);
+        camera.updateVelocity(interval);
 
         //update camera rotation and compass
         if (Window.MOUSE_GRABBED) {
@@ -151,24 +172,36 @@ public class Game implements IGameLogic {
         float angle = (float)Math.toDegrees(Math.acos(lightDir.z));
 
         //update text
-        this.hud.setStatusText("FPS: " + GameEngine.CURRENT_FPS + " LIGHT ANGLE: " + angle);
+        this.hud.setStatus(GameEngine.CURRENT_FPS, angle, this.renderer.getTerrainTriangles(),
+                this.renderer.getTerrainShadowTriangles());
     }
 
     //Render Method
     @Override
     public void render(Window window) {
         if (window.isResized()) this.hud.updateSize(window);
+        this.textureLoader.update();
+        for (Exception e = this.textureLoader.pollFailure(); e != null; e = this.textureLoader.pollFailure()) {
+            System.err.println(e.getMessage()); //the texture keeps its placeholder
+        }
         this.renderer.render(window, this.camera, this.scene, this.hud);
     }
 
     //Cleanup Method
     @Override
     public void cleanup() {
+        TextureResidency.setLoader(null);
+        this.textureLoader.cleanup();
+        TextureCache.setCompressor(null);
+        this.textureCompressor.cleanup();
         this.renderer.cleanup();
         if (this.scene != null) {
             Map<Mesh, List<GameItem>> meshMap = this.scene.getMeshMap();
-            for (Mesh mesh : meshMap.keySet()) mesh.cleanup();
+            for (Mesh mesh : meshMap.keySet()) if (!MD5Loader.isCached(mesh)) mesh.cleanup();
         }
+        MD5Loader.clearCache();
+        if (this.terrainLOD != null) this.terrainLOD.cleanup();
+        if (this.terrain != null) this.terrain.getHeightMap().getMesh().cleanup();
         if (this.hud != null) this.hud.cleanup();
     }
 }
@@ -21,12 +21,14 @@ public class Hud implements IHud {
     //Instance Data
     private final GameItem[] gameItems;
     private final TextItem statusText;
+    private final StringBuilder status; //status text formatted in place every update
     private final GameItem compass;
 
     //Constructor
     public Hud(String statusText) throws Exception {
 
         //create status text
+        this.status = new StringBuilder(64);
         FontTexture fontTexture = new FontTexture(FONT, CHARSET);
         this.statusText = new TextItem(statusText, fontTexture);
         this.statusText.getMesh().getMaterial().setAmbientColor(new Vector4f(1, 1, 1, 1));
@@ -56,6 +58,14 @@ public class Hud implements IHud {
 
     //Mutators
     public void setStatusText(String statusText) { this.statusText.setText(statusText); }
+    public void setStatus(float fps, float lightAngle, int terrainTriangles, int shadowTriangles) { //formats the numbers without allocating
+        this.status.setLength(0);
+        this.status.append("FPS: ").append((int)fps).append(" LIGHT ANGLE: ");
+        int tenths = Math.round(lightAngle * 10);
+        this.status.append(tenths / 10).append('.').append(Math.abs(tenths % 10));
+        this.status.append(" TERRAIN TRIS: ").append(terrainTriangles).append(" SHADOW TRIS: ").append(shadowTriangles);
+        this.statusText.setText(this.status);
+    }
     public void setCompassRotation(float angle) { this.compass.setRotation(0, 0, 180 + angle); }
 
 }